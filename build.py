@@ -125,6 +125,7 @@ def taskBuildTestJars():
 	buildTestJar("constructors", "cuchaz/enigma/inputs/constructors/*.class")
 	buildTestJar("inheritanceTree", "cuchaz/enigma/inputs/inheritanceTree/*.class")
 	buildTestJar("innerClasses", "cuchaz/enigma/inputs/innerClasses/*.class")
+	buildTestJar("constants", "cuchaz/enigma/inputs/constants/*.class")
 	taskBuildTranslationTestJar()
 
 def taskBuildTranslationTestJar():
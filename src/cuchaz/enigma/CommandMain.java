@@ -11,19 +11,37 @@
 package cuchaz.enigma;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.jar.JarFile;
 
 import cuchaz.enigma.Deobfuscator.ProgressListener;
+import cuchaz.enigma.analysis.IndexStats;
+import cuchaz.enigma.analysis.JarClassSource;
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.JarIndexCache;
+import cuchaz.enigma.analysis.LibraryIndex;
+import cuchaz.enigma.mapping.BehaviorEntry;
+import cuchaz.enigma.mapping.BinaryMappings;
+import cuchaz.enigma.mapping.BinaryMappingsWriter;
+import cuchaz.enigma.mapping.DirectoryMappingsReader;
+import cuchaz.enigma.mapping.DirectoryMappingsWriter;
 import cuchaz.enigma.mapping.Mappings;
 import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.MappingsWriter;
 
 public class CommandMain {
 	
 	public static class ConsoleProgressListener implements ProgressListener {
 		
 		private static final int ReportTime = 5000; // 5s
-
+		
 		private int m_totalWork;
 		private long m_startTime;
 		private long m_lastReportTime;
@@ -35,7 +53,7 @@ public class CommandMain {
 			m_lastReportTime = m_startTime;
 			System.out.println(title);
 		}
-
+		
 		@Override
 		public void onProgress(int numDone, String message) {
 			
@@ -70,6 +88,12 @@ public class CommandMain {
 				protectify(args);
 			} else if (command.equalsIgnoreCase("publify")) {
 				publify(args);
+			} else if (command.equalsIgnoreCase("index")) {
+				index(args);
+			} else if (command.equalsIgnoreCase("constants")) {
+				constants(args);
+			} else if (command.equalsIgnoreCase("convertmappings")) {
+				convertMappings(args);
 			} else {
 				throw new IllegalArgumentException("Command not recognized: " + command);
 			}
@@ -78,7 +102,7 @@ public class CommandMain {
 			printHelp();
 		}
 	}
-
+	
 	private static void printHelp() {
 		System.out.println(String.format("%s - %s", Constants.Name, Constants.Version));
 		System.out.println("Usage:");
@@ -87,6 +111,9 @@ public class CommandMain {
 		System.out.println("\t\tdeobfuscate <in jar> <out jar> [<mappings file>]");
 		System.out.println("\t\tdecompile <in jar> <out folder> [<mappings file>]");
 		System.out.println("\t\tprotectify <in jar> <out jar>");
+		System.out.println("\t\tindex <in jar> [<stats json file>]");
+		System.out.println("\t\tconstants <in jar> <text> [<mappings file>]");
+		System.out.println("\t\tconvertmappings <in mappings file> <out mappings file or existing folder>");
 	}
 	
 	private static void decompile(String[] args)
@@ -97,7 +124,7 @@ public class CommandMain {
 		Deobfuscator deobfuscator = getDeobfuscator(fileMappings, new JarFile(fileJarIn));
 		deobfuscator.writeSources(fileJarOut, new ConsoleProgressListener());
 	}
-
+	
 	private static void deobfuscate(String[] args)
 	throws Exception {
 		File fileJarIn = getReadableFile(getArg(args, 1, "in jar", true));
@@ -123,18 +150,88 @@ public class CommandMain {
 		deobfuscator.publifyJar(fileJarOut, new ConsoleProgressListener());
 	}
 	
+	private static void index(String[] args)
+	throws Exception {
+		File fileJarIn = getReadableFile(getArg(args, 1, "in jar", true));
+		File fileStats = getWritableFile(getArg(args, 2, "stats json file", false));
+		
+		// always index from scratch, the cache would hide where the time goes
+		JarIndex index = new JarIndex();
+		index.setMemoryBudget(JarIndex.getDefaultMemoryBudget());
+		index.setLibraryIndex(LibraryIndex.getDefault());
+		try (JarClassSource source = new JarClassSource(fileJarIn)) {
+			index.indexJar(source, true, Runtime.getRuntime().availableProcessors(), new ConsoleProgressListener());
+		}
+		
+		IndexStats stats = index.getStats();
+		System.out.print(stats);
+		if (fileStats != null) {
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(fileStats), StandardCharsets.UTF_8)) {
+				out.write(stats.toJson());
+			}
+		}
+	}
+	
+	private static void constants(String[] args)
+	throws Exception {
+		File fileJarIn = getReadableFile(getArg(args, 1, "in jar", true));
+		String text = getArg(args, 2, "text", true);
+		File fileMappings = getReadableFile(getArg(args, 3, "mappings file", false));
+		Deobfuscator deobfuscator = getDeobfuscator(fileMappings, new JarFile(fileJarIn));
+		for (Map.Entry<String,List<BehaviorEntry>> mapEntry : deobfuscator.searchConstants(text).entrySet()) {
+			System.out.println(mapEntry.getKey());
+			for (BehaviorEntry deobfBehaviorEntry : mapEntry.getValue()) {
+				System.out.println("\t" + deobfBehaviorEntry);
+			}
+		}
+	}
+	
+	private static void convertMappings(String[] args)
+	throws Exception {
+		
+		// text mappings get converted to binary, and binary mappings get converted to text
+		// unless the output is a folder, then any mappings get split into one file per class
+		File fileMappingsIn = getReadableFile(getArg(args, 1, "in mappings file", true));
+		File fileMappingsOut = getWritableFile(getArg(args, 2, "out mappings file", true));
+		Mappings mappings = readMappings(fileMappingsIn);
+		if (fileMappingsOut.isDirectory()) {
+			new DirectoryMappingsWriter().write(fileMappingsOut, mappings);
+			System.out.println("Wrote mappings folder " + fileMappingsOut.getAbsolutePath());
+		} else if (mappings instanceof BinaryMappings) {
+			try (FileWriter out = new FileWriter(fileMappingsOut)) {
+				new MappingsWriter().write(out, mappings);
+			}
+			System.out.println("Wrote text mappings to " + fileMappingsOut.getAbsolutePath());
+		} else {
+			new BinaryMappingsWriter().write(fileMappingsOut, mappings);
+			System.out.println("Wrote binary mappings to " + fileMappingsOut.getAbsolutePath());
+		}
+	}
+	
 	private static Deobfuscator getDeobfuscator(File fileMappings, JarFile jar)
 	throws Exception {
 		System.out.println("Reading jar...");
-		Deobfuscator deobfuscator = new Deobfuscator(jar);
+		Deobfuscator deobfuscator = new Deobfuscator(jar, JarIndexCache.getDefault(), new ConsoleProgressListener());
 		if (fileMappings != null) {
 			System.out.println("Reading mappings...");
-			Mappings mappings = new MappingsReader().read(new FileReader(fileMappings));
-			deobfuscator.setMappings(mappings);
+			deobfuscator.setMappings(readMappings(fileMappings));
 		}
 		return deobfuscator;
 	}
 	
+	private static Mappings readMappings(File file)
+	throws Exception {
+		if (file.isDirectory()) {
+			return new DirectoryMappingsReader().read(file, Runtime.getRuntime().availableProcessors());
+		}
+		if (BinaryMappings.isBinary(file)) {
+			return new BinaryMappings(file);
+		}
+		try (FileReader in = new FileReader(file)) {
+			return new MappingsReader().read(in);
+		}
+	}
+	
 	private static String getArg(String[] args, int i, String name, boolean required) {
 		if (i >= args.length) {
 			if (required) {
@@ -145,7 +242,7 @@ public class CommandMain {
 		}
 		return args[i];
 	}
-
+	
 	private static File getWritableFile(String path) {
 		if (path == null) {
 			return null;
@@ -161,7 +258,7 @@ public class CommandMain {
 		}
 		return file;
 	}
-
+	
 	private static File getWritableFolder(String path) {
 		if (path == null) {
 			return null;
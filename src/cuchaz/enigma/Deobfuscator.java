@@ -15,6 +15,7 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -25,6 +26,7 @@ import java.util.jar.JarOutputStream;
 import javassist.CtClass;
 import javassist.bytecode.Descriptor;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.strobel.assembler.metadata.MetadataSystem;
@@ -38,9 +40,12 @@ import com.strobel.decompiler.languages.java.ast.AstBuilder;
 import com.strobel.decompiler.languages.java.ast.CompilationUnit;
 import com.strobel.decompiler.languages.java.ast.InsertParenthesesVisitor;
 
+import cuchaz.enigma.analysis.ClassSource;
 import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.JarClassIterator;
 import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.JarIndexCache;
+import cuchaz.enigma.analysis.LibraryIndex;
 import cuchaz.enigma.analysis.SourceIndex;
 import cuchaz.enigma.analysis.SourceIndexVisitor;
 import cuchaz.enigma.analysis.Token;
@@ -48,6 +53,7 @@ import cuchaz.enigma.bytecode.ClassProtectifier;
 import cuchaz.enigma.bytecode.ClassPublifier;
 import cuchaz.enigma.mapping.ArgumentEntry;
 import cuchaz.enigma.mapping.BehaviorEntry;
+import cuchaz.enigma.mapping.BinaryMappings;
 import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.ClassMapping;
 import cuchaz.enigma.mapping.ConstructorEntry;
@@ -70,6 +76,7 @@ public class Deobfuscator {
 	}
 	
 	private JarFile m_jar;
+	private ClassSource m_source;
 	private DecompilerSettings m_settings;
 	private JarIndex m_jarIndex;
 	private Mappings m_mappings;
@@ -77,11 +84,28 @@ public class Deobfuscator {
 	private Map<TranslationDirection,Translator> m_translatorCache;
 	
 	public Deobfuscator(JarFile jar) throws IOException {
+		this(jar, null);
+	}
+	
+	public Deobfuscator(JarFile jar, JarIndexCache indexCache) throws IOException {
+		this(jar, indexCache, null);
+	}
+	
+	public Deobfuscator(JarFile jar, JarIndexCache indexCache, ProgressListener progress) throws IOException {
 		m_jar = jar;
+		m_source = JarClassIterator.openSource(jar);
 		
-		// build the jar index
-		m_jarIndex = new JarIndex();
-		m_jarIndex.indexJar(m_jar, true);
+		// build the jar index, or load it from the cache if we've seen this jar before
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		LibraryIndex libraryIndex = LibraryIndex.getDefault();
+		if (indexCache != null) {
+			m_jarIndex = indexCache.getIndex(m_source, new File(m_jar.getName()), true, numThreads, libraryIndex, progress);
+		} else {
+			m_jarIndex = new JarIndex();
+			m_jarIndex.setMemoryBudget(JarIndex.getDefaultMemoryBudget());
+			m_jarIndex.setLibraryIndex(libraryIndex);
+			m_jarIndex.indexJar(m_source, true, numThreads, progress);
+		}
 		
 		// config the decompiler
 		m_settings = DecompilerSettings.javaDefaults();
@@ -107,6 +131,17 @@ public class Deobfuscator {
 		return m_jar.getName();
 	}
 	
+	public void close()
+	throws IOException {
+		// lets go of the jar file, so other programs can change or delete it (Windows won't let them while it's open)
+		m_source.close();
+		m_jar.close();
+	}
+	
+	public ClassSource getClassSource() {
+		return m_source;
+	}
+	
 	public JarIndex getJarIndex() {
 		return m_jarIndex;
 	}
@@ -119,39 +154,63 @@ public class Deobfuscator {
 		setMappings(val, true);
 	}
 	
-	public void setMappings(Mappings val, boolean warnAboutDrops) {
+	public void setMappings(Mappings val, final boolean warnAboutDrops) {
 		if (val == null) {
 			val = new Mappings();
 		}
 		
-		// drop mappings that don't match the jar
-		MappingsChecker checker = new MappingsChecker(m_jarIndex);
-		checker.dropBrokenMappings(val);
-		if (warnAboutDrops) {
-			for (java.util.Map.Entry<ClassEntry,ClassMapping> mapping : checker.getDroppedClassMappings().entrySet()) {
-				System.out.println("WARNING: Couldn't find class entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
-			}
-			for (java.util.Map.Entry<ClassEntry,ClassMapping> mapping : checker.getDroppedInnerClassMappings().entrySet()) {
-				System.out.println("WARNING: Couldn't find inner class entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
-			}
-			for (java.util.Map.Entry<FieldEntry,FieldMapping> mapping : checker.getDroppedFieldMappings().entrySet()) {
-				System.out.println("WARNING: Couldn't find field entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+		if (val instanceof BinaryMappings) {
+			
+			// binary mappings only load classes when something asks for them,
+			// so check each class as it loads instead of loading the whole file now
+			// NOTE: this can't find related method inconsistencies that span classes
+			((BinaryMappings)val).setClassChecker(new BinaryMappings.ClassChecker() {
+				@Override
+				public boolean checkClass(ClassMapping classMapping) {
+					MappingsChecker checker = new MappingsChecker(m_jarIndex);
+					boolean isGood = checker.dropBrokenMappings(classMapping);
+					if (warnAboutDrops) {
+						printDroppedMappings(checker);
+					}
+					return isGood;
+				}
+			});
+			
+		} else {
+			
+			// drop mappings that don't match the jar
+			MappingsChecker checker = new MappingsChecker(m_jarIndex);
+			checker.dropBrokenMappings(val);
+			if (warnAboutDrops) {
+				printDroppedMappings(checker);
 			}
-			for (java.util.Map.Entry<BehaviorEntry,MethodMapping> mapping : checker.getDroppedMethodMappings().entrySet()) {
-				System.out.println("WARNING: Couldn't find behavior entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+			
+			// check for related method inconsistencies
+			if (checker.getRelatedMethodChecker().hasProblems()) {
+				throw new Error("Related methods are inconsistent! Need to fix the mappings manually.\n" + checker.getRelatedMethodChecker().getReport());
 			}
 		}
 		
-		// check for related method inconsistencies
-		if (checker.getRelatedMethodChecker().hasProblems()) {
-			throw new Error("Related methods are inconsistent! Need to fix the mappings manually.\n" + checker.getRelatedMethodChecker().getReport());
-		}
-		
 		m_mappings = val;
 		m_renamer = new MappingsRenamer(m_jarIndex, val);
 		m_translatorCache.clear();
 	}
 	
+	private void printDroppedMappings(MappingsChecker checker) {
+		for (java.util.Map.Entry<ClassEntry,ClassMapping> mapping : checker.getDroppedClassMappings().entrySet()) {
+			System.out.println("WARNING: Couldn't find class entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+		}
+		for (java.util.Map.Entry<ClassEntry,ClassMapping> mapping : checker.getDroppedInnerClassMappings().entrySet()) {
+			System.out.println("WARNING: Couldn't find inner class entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+		}
+		for (java.util.Map.Entry<FieldEntry,FieldMapping> mapping : checker.getDroppedFieldMappings().entrySet()) {
+			System.out.println("WARNING: Couldn't find field entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+		}
+		for (java.util.Map.Entry<BehaviorEntry,MethodMapping> mapping : checker.getDroppedMethodMappings().entrySet()) {
+			System.out.println("WARNING: Couldn't find behavior entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+		}
+	}
+	
 	public Translator getTranslator(TranslationDirection direction) {
 		Translator translator = m_translatorCache.get(direction);
 		if (translator == null) {
@@ -200,13 +259,13 @@ public class Deobfuscator {
 		
 		// set the type loader
 		TranslatingTypeLoader loader = new TranslatingTypeLoader(
-			m_jar,
+			m_source,
 			m_jarIndex,
 			getTranslator(TranslationDirection.Obfuscating),
 			getTranslator(TranslationDirection.Deobfuscating)
 		); 
 		m_settings.setTypeLoader(loader);
-
+		
 		// see if procyon can find the type
 		TypeReference type = new MetadataSystem(loader).lookupType(deobfClassName);
 		if (type == null) {
@@ -325,13 +384,13 @@ public class Deobfuscator {
 	
 	public void writeJar(File out, ProgressListener progress) {
 		final TranslatingTypeLoader loader = new TranslatingTypeLoader(
-			m_jar,
+			m_source,
 			m_jarIndex,
 			getTranslator(TranslationDirection.Obfuscating),
 			getTranslator(TranslationDirection.Deobfuscating)
 		);
 		transformJar(out, progress, new ClassTransformer() {
-
+			
 			@Override
 			public CtClass transform(CtClass c) throws Exception {
 				return loader.transformClass(c);
@@ -341,7 +400,7 @@ public class Deobfuscator {
 	
 	public void protectifyJar(File out, ProgressListener progress) {
 		transformJar(out, progress, new ClassTransformer() {
-
+			
 			@Override
 			public CtClass transform(CtClass c) throws Exception {
 				return ClassProtectifier.protectify(c);
@@ -351,7 +410,7 @@ public class Deobfuscator {
 	
 	public void publifyJar(File out, ProgressListener progress) {
 		transformJar(out, progress, new ClassTransformer() {
-
+			
 			@Override
 			public CtClass transform(CtClass c) throws Exception {
 				return ClassPublifier.publify(c);
@@ -365,11 +424,11 @@ public class Deobfuscator {
 	private void transformJar(File out, ProgressListener progress, ClassTransformer transformer) {
 		try (JarOutputStream outJar = new JarOutputStream(new FileOutputStream(out))) {
 			if (progress != null) {
-				progress.init(JarClassIterator.getClassEntries(m_jar).size(), "Transforming classes...");
+				progress.init(m_source.getClassNames().size(), "Transforming classes...");
 			}
 			
 			int i = 0;
-			for (CtClass c : JarClassIterator.classes(m_jar)) {
+			for (CtClass c : JarClassIterator.classes(m_source)) {
 				if (progress != null) {
 					progress.onProgress(i++, c.getName());
 				}
@@ -379,6 +438,9 @@ public class Deobfuscator {
 					outJar.putNextEntry(new JarEntry(c.getName().replace('.', '/') + ".class"));
 					outJar.write(c.toBytecode());
 					outJar.closeEntry();
+					
+					// we're done with the class, don't keep it in the pool
+					c.detach();
 				} catch (Throwable t) {
 					throw new Error("Unable to transform class " + c.getName(), t);
 				}
@@ -393,6 +455,45 @@ public class Deobfuscator {
 		}
 	}
 	
+	public Map<String,List<BehaviorEntry>> searchConstants(String text) {
+		
+		// strings match anywhere, numbers and class names have to match exactly
+		// returns the deobfuscated behaviors that use each matching constant, keyed by a description of the constant
+		Map<String,List<BehaviorEntry>> deobfBehaviorEntries = Maps.newLinkedHashMap();
+		for (String constant : m_jarIndex.findStringConstantsContaining(text)) {
+			addConstantUsers(deobfBehaviorEntries, "\"" + constant + "\"", m_jarIndex.getConstantUsers(constant));
+		}
+		try {
+			long val = Long.parseLong(text);
+			if (val == (int)val) {
+				addConstantUsers(deobfBehaviorEntries, text + " (int)", m_jarIndex.getConstantUsers((int)val));
+			}
+			addConstantUsers(deobfBehaviorEntries, text + " (long)", m_jarIndex.getConstantUsers(val));
+		} catch (NumberFormatException ex) {
+			// not a number
+		}
+		if (!text.isEmpty()) {
+			try {
+				ClassEntry obfClassEntry = obfuscateEntry(new ClassEntry(text.replace('.', '/')));
+				addConstantUsers(deobfBehaviorEntries, text + ".class", m_jarIndex.getClassConstantUsers(obfClassEntry));
+			} catch (IllegalArgumentException ex) {
+				// not a class name, eg an inner class with a package
+			}
+		}
+		return deobfBehaviorEntries;
+	}
+	
+	private void addConstantUsers(Map<String,List<BehaviorEntry>> deobfBehaviorEntries, String constant, Collection<BehaviorEntry> obfBehaviorEntries) {
+		if (obfBehaviorEntries.isEmpty()) {
+			return;
+		}
+		List<BehaviorEntry> entries = Lists.newArrayList();
+		for (BehaviorEntry obfBehaviorEntry : obfBehaviorEntries) {
+			entries.add(deobfuscateEntry(obfBehaviorEntry));
+		}
+		deobfBehaviorEntries.put(constant, entries);
+	}
+	
 	public <T extends Entry> T obfuscateEntry(T deobfEntry) {
 		if (deobfEntry == null) {
 			return null;
@@ -431,6 +532,12 @@ public class Deobfuscator {
 	
 	public boolean isObfuscatedIdentifier(Entry obfEntry) {
 		
+		// this runs for every token, and most tokens aren't members of the jar
+		// so check the member flags first, before building any signature strings
+		if (!m_jarIndex.containsObfEntry(obfEntry)) {
+			return false;
+		}
+		
 		if (obfEntry instanceof MethodEntry) {
 			
 			// HACKHACK: Object methods are not obfuscated identifiers
@@ -462,7 +569,7 @@ public class Deobfuscator {
 			}
 		}
 		
-		return m_jarIndex.containsObfEntry(obfEntry);
+		return true;
 	}
 	
 	public boolean isRenameable(EntryReference<Entry,Entry> obfReference) {
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import cuchaz.enigma.mapping.ArgumentEntry;
+import cuchaz.enigma.mapping.BehaviorEntry;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.DirectoryMappingsWriter;
+import cuchaz.enigma.mapping.Entry;
+import cuchaz.enigma.mapping.EntryFactory;
+import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.IllegalNameException;
+import cuchaz.enigma.mapping.MappingParseException;
+import cuchaz.enigma.mapping.MethodEntry;
+
+// an append-only log of the edits made to the mappings since they were last saved,
+// so unsaved work can be replayed over the saved mappings after a crash
+public class MappingsJournal {
+	
+	// the layout is one line per edit, eg.
+	//   ENIGMA-JOURNAL <version> <snapshot stamp>
+	//   RENAME CLASS none/a com/example/Foo
+	//   RENAME FIELD none/a a I m_foo
+	//   REMOVE METHOD none/a a ()V
+	//   MARK ARG none/a <init> (I)V 1 a
+	// names and descriptors never have whitespace in them, so spaces can separate the tokens
+	private static final String Magic = "ENIGMA-JOURNAL";
+	private static final int FormatVersion = 1;
+	
+	// every edit goes to the OS right away, which is enough to survive the app crashing,
+	// but flushing to the disk itself is slow, so only do that every so often
+	private static final long SyncIntervalMillis = 1000;
+	
+	private File m_file;
+	private String m_header;
+	private FileChannel m_channel;
+	private StringBuilder m_buf;
+	private boolean m_needsSync;
+	private Timer m_syncTimer;
+	
+	private MappingsJournal(File file, String header, FileChannel channel) {
+		m_file = file;
+		m_header = header;
+		m_channel = null;
+		m_buf = new StringBuilder();
+		m_needsSync = false;
+		m_syncTimer = null;
+		if (channel != null) {
+			open(channel);
+		}
+	}
+	
+	public static File getJournalFile(File mappingsFile) {
+		return new File(mappingsFile.getPath() + ".journal");
+	}
+	
+	public static String getSnapshotStamp(File mappingsFile) {
+		// the journal only applies to the exact mappings it was started from,
+		// eg. after a crash between saving the mappings and resetting the journal, the journal is stale
+		if (mappingsFile.isDirectory()) {
+			// saving only rewrites the files that changed, so every file counts, not just the newest one
+			Hasher hasher = Hashing.sha1().newHasher();
+			hashFolder(mappingsFile, "", hasher);
+			return hasher.hash().toString();
+		}
+		return mappingsFile.lastModified() + "-" + mappingsFile.length();
+	}
+	
+	public static MappingsJournal start(File mappingsFile)
+	throws IOException {
+		// throw away any old edits and start over from the mappings as they are now
+		// the journal file only gets made once there's an edit to put in it, but the stamp has to be from now
+		File file = getJournalFile(mappingsFile);
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Can't delete mappings journal: " + file.getAbsolutePath());
+		}
+		String header = Magic + " " + FormatVersion + " " + getSnapshotStamp(mappingsFile) + "\n";
+		return new MappingsJournal(file, header, null);
+	}
+	
+	public static MappingsJournal resume(File mappingsFile)
+	throws IOException {
+		// keep the old edits and add new ones after them
+		File file = getJournalFile(mappingsFile);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+		
+		// but first drop any edit that was cut off, or the next one would get glued onto it
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		int size = bytes.length;
+		while (size > 0 && bytes[size - 1] != '\n') {
+			size--;
+		}
+		channel.truncate(size);
+		channel.position(size);
+		return new MappingsJournal(file, null, channel);
+	}
+	
+	public static int replay(File mappingsFile, Deobfuscator deobfuscator)
+	throws IOException, MappingParseException {
+		
+		// returns the number of edits that were replayed, or -1 if there's no journal for these mappings
+		File file = getJournalFile(mappingsFile);
+		if (!file.exists()) {
+			return -1;
+		}
+		String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		
+		int numEdits = 0;
+		int lineNumber = 0;
+		int start = 0;
+		while (true) {
+			int end = text.indexOf('\n', start);
+			if (end < 0) {
+				// anything after the last newline was cut off by a crash, so it never happened
+				break;
+			}
+			String line = text.substring(start, end);
+			start = end + 1;
+			lineNumber++;
+			
+			String[] parts = line.split(" ");
+			if (lineNumber == 1) {
+				if (parts.length != 3 || !parts[0].equals(Magic) || !parts[1].equals(Integer.toString(FormatVersion))
+						|| !parts[2].equals(getSnapshotStamp(mappingsFile))) {
+					return -1;
+				}
+				continue;
+			}
+			
+			try {
+				replay(parts, deobfuscator);
+			} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException | IllegalNameException ex) {
+				throw new MappingParseException(file.getName(), new MappingParseException(lineNumber, "Can't replay edit:\n" + line));
+			}
+			numEdits++;
+		}
+		if (lineNumber == 0) {
+			// not even a header, so it's not a journal
+			return -1;
+		}
+		return numEdits;
+	}
+	
+	public synchronized void rename(Entry obfEntry, String newName)
+	throws IOException {
+		m_buf.append("RENAME ");
+		appendEntry(obfEntry);
+		m_buf.append(' ').append(newName).append('\n');
+		flush();
+	}
+	
+	public synchronized void removeMapping(Entry obfEntry)
+	throws IOException {
+		m_buf.append("REMOVE ");
+		appendEntry(obfEntry);
+		m_buf.append('\n');
+		flush();
+	}
+	
+	public synchronized void markAsDeobfuscated(Entry obfEntry)
+	throws IOException {
+		m_buf.append("MARK ");
+		appendEntry(obfEntry);
+		m_buf.append('\n');
+		flush();
+	}
+	
+	public synchronized void sync()
+	throws IOException {
+		if (m_needsSync && m_channel != null && m_channel.isOpen()) {
+			m_channel.force(false);
+			m_needsSync = false;
+		}
+	}
+	
+	public synchronized void close()
+	throws IOException {
+		if (m_channel != null) {
+			m_syncTimer.cancel();
+			sync();
+			m_channel.close();
+		}
+	}
+	
+	public synchronized void delete()
+	throws IOException {
+		// for when the edits were saved somewhere else, or thrown away on purpose
+		close();
+		if (m_file.exists() && !m_file.delete()) {
+			throw new IOException("Can't delete mappings journal: " + m_file.getAbsolutePath());
+		}
+	}
+	
+	private void open(FileChannel channel) {
+		m_channel = channel;
+		m_syncTimer = new Timer("Mappings journal sync", true);
+		m_syncTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					sync();
+				} catch (IOException ex) {
+					// the next edit or close will try again
+				}
+			}
+		}, SyncIntervalMillis, SyncIntervalMillis);
+	}
+	
+	private void flush()
+	throws IOException {
+		if (m_channel == null) {
+			// first edit, make the journal file
+			open(FileChannel.open(m_file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+			m_buf.insert(0, m_header);
+		}
+		ByteBuffer bytes = StandardCharsets.UTF_8.encode(m_buf.toString());
+		m_buf.setLength(0);
+		while (bytes.hasRemaining()) {
+			m_channel.write(bytes);
+		}
+		m_needsSync = true;
+	}
+	
+	private void appendEntry(Entry obfEntry) {
+		if (obfEntry instanceof ClassEntry) {
+			m_buf.append("CLASS ").append(obfEntry.getName());
+		} else if (obfEntry instanceof FieldEntry) {
+			FieldEntry fieldEntry = (FieldEntry)obfEntry;
+			m_buf.append("FIELD ").append(fieldEntry.getClassName())
+				.append(' ').append(fieldEntry.getName())
+				.append(' ').append(fieldEntry.getType().toString());
+		} else if (obfEntry instanceof MethodEntry) {
+			MethodEntry methodEntry = (MethodEntry)obfEntry;
+			m_buf.append("METHOD ").append(methodEntry.getClassName())
+				.append(' ').append(methodEntry.getName())
+				.append(' ').append(methodEntry.getSignature().toString());
+		} else if (obfEntry instanceof ArgumentEntry) {
+			ArgumentEntry argumentEntry = (ArgumentEntry)obfEntry;
+			BehaviorEntry behaviorEntry = argumentEntry.getBehaviorEntry();
+			m_buf.append("ARG ").append(behaviorEntry.getClassName())
+				.append(' ').append(behaviorEntry.getName())
+				.append(' ').append(behaviorEntry.getSignature().toString())
+				.append(' ').append(argumentEntry.getIndex())
+				.append(' ').append(argumentEntry.getName());
+		} else {
+			throw new IllegalArgumentException("Can't journal entry: " + obfEntry);
+		}
+	}
+	
+	private static void replay(String[] parts, Deobfuscator deobfuscator) {
+		String op = parts[0];
+		String kind = parts[1];
+		Entry obfEntry;
+		int nextPart;
+		if (kind.equals("CLASS")) {
+			obfEntry = EntryFactory.getClassEntry(parts[2]);
+			nextPart = 3;
+		} else if (kind.equals("FIELD")) {
+			obfEntry = EntryFactory.getFieldEntry(parts[2], parts[3], parts[4]);
+			nextPart = 5;
+		} else if (kind.equals("METHOD")) {
+			obfEntry = EntryFactory.getMethodEntry(parts[2], parts[3], parts[4]);
+			nextPart = 5;
+		} else if (kind.equals("ARG")) {
+			BehaviorEntry behaviorEntry = EntryFactory.getBehaviorEntry(parts[2], parts[3], parts[4]);
+			obfEntry = new ArgumentEntry(behaviorEntry, Integer.parseInt(parts[5]), parts[6]);
+			nextPart = 7;
+		} else {
+			throw new IllegalArgumentException("Unknown entry kind: " + kind);
+		}
+		
+		if (op.equals("RENAME")) {
+			deobfuscator.rename(obfEntry, parts[nextPart++]);
+		} else if (op.equals("REMOVE")) {
+			deobfuscator.removeMapping(obfEntry);
+		} else if (op.equals("MARK")) {
+			deobfuscator.markAsDeobfuscated(obfEntry);
+		} else {
+			throw new IllegalArgumentException("Unknown edit: " + op);
+		}
+		if (nextPart != parts.length) {
+			throw new IllegalArgumentException("Too many tokens");
+		}
+	}
+	
+	private static void hashFolder(File dir, String path, Hasher hasher) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		// listFiles() doesn't promise any order, but the stamp has to come out the same every time
+		Arrays.sort(children);
+		for (File child : children) {
+			String childPath = path + child.getName();
+			if (child.isDirectory()) {
+				hashFolder(child, childPath + "/", hasher);
+			} else if (child.getName().endsWith(DirectoryMappingsWriter.FileExtension)) {
+				hasher.putString(childPath, StandardCharsets.UTF_8);
+				hasher.putLong(child.length());
+				hasher.putLong(child.lastModified());
+			}
+		}
+	}
+}
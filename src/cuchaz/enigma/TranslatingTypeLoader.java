@@ -10,17 +10,11 @@
  ******************************************************************************/
 package cuchaz.enigma;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
-import javassist.ByteArrayClassPath;
 import javassist.CannotCompileException;
-import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.NotFoundException;
 import javassist.bytecode.Descriptor;
@@ -32,7 +26,9 @@ import com.strobel.assembler.metadata.ClasspathTypeLoader;
 import com.strobel.assembler.metadata.ITypeLoader;
 
 import cuchaz.enigma.analysis.BridgeMarker;
+import cuchaz.enigma.analysis.ClassSource;
 import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.bytecode.BoundedClassPool;
 import cuchaz.enigma.bytecode.ClassRenamer;
 import cuchaz.enigma.bytecode.ClassTranslator;
 import cuchaz.enigma.bytecode.InnerClassWriter;
@@ -43,23 +39,27 @@ import cuchaz.enigma.mapping.Translator;
 
 public class TranslatingTypeLoader implements ITypeLoader {
 	
-	private JarFile m_jar;
+	private static final int MaxCachedClasses = 256;
+	
+	private ClassSource m_source;
 	private JarIndex m_jarIndex;
 	private Translator m_obfuscatingTranslator;
 	private Translator m_deobfuscatingTranslator;
 	private Map<String,byte[]> m_cache;
+	private BoundedClassPool m_classPool;
 	private ClasspathTypeLoader m_defaultTypeLoader;
 	
-	public TranslatingTypeLoader(JarFile jar, JarIndex jarIndex) {
-		this(jar, jarIndex, new Translator(), new Translator());
+	public TranslatingTypeLoader(ClassSource source, JarIndex jarIndex) {
+		this(source, jarIndex, new Translator(), new Translator());
 	}
 	
-	public TranslatingTypeLoader(JarFile jar, JarIndex jarIndex, Translator obfuscatingTranslator, Translator deobfuscatingTranslator) {
-		m_jar = jar;
+	public TranslatingTypeLoader(ClassSource source, JarIndex jarIndex, Translator obfuscatingTranslator, Translator deobfuscatingTranslator) {
+		m_source = source;
 		m_jarIndex = jarIndex;
 		m_obfuscatingTranslator = obfuscatingTranslator;
 		m_deobfuscatingTranslator = deobfuscatingTranslator;
 		m_cache = Maps.newHashMap();
+		m_classPool = new BoundedClassPool(MaxCachedClasses);
 		m_defaultTypeLoader = new ClasspathTypeLoader();
 	}
 	
@@ -92,24 +92,30 @@ public class TranslatingTypeLoader implements ITypeLoader {
 	}
 	
 	public CtClass loadClass(String deobfClassName) {
+		// return the javassist handle for the class as-is, no need to write it out and parse it again
+		return loadTransformedClass(deobfClassName);
+	}
+	
+	private byte[] loadType(String className) {
 		
-		byte[] data = loadType(deobfClassName);
-		if (data == null) {
+		CtClass c = loadTransformedClass(className);
+		if (c == null) {
 			return null;
 		}
 		
-		// return a javassist handle for the class
-		String javaClassFileName = Descriptor.toJavaName(deobfClassName);
-		ClassPool classPool = new ClassPool();
-		classPool.insertClassPath(new ByteArrayClassPath(javaClassFileName, data));
 		try {
-			return classPool.get(javaClassFileName);
-		} catch (NotFoundException ex) {
+			// we have a transformed class!
+			byte[] data = c.toBytecode();
+			
+			// we're done with the class, don't keep it in the pool
+			c.detach();
+			return data;
+		} catch (IOException | CannotCompileException ex) {
 			throw new Error(ex);
 		}
 	}
 	
-	private byte[] loadType(String className) {
+	private CtClass loadTransformedClass(String className) {
 		
 		// NOTE: don't know if class name is obf or deobf
 		ClassEntry classEntry = new ClassEntry(className);
@@ -142,26 +148,8 @@ public class TranslatingTypeLoader implements ITypeLoader {
 		}
 		
 		try {
-			// read the class file into a buffer
-			ByteArrayOutputStream data = new ByteArrayOutputStream();
-			byte[] buf = new byte[1024 * 1024]; // 1 KiB
-			InputStream in = m_jar.getInputStream(m_jar.getJarEntry(classInJarName + ".class"));
-			while (true) {
-				int bytesRead = in.read(buf);
-				if (bytesRead <= 0) {
-					break;
-				}
-				data.write(buf, 0, bytesRead);
-			}
-			data.close();
-			in.close();
-			buf = data.toByteArray();
-			
-			// load the javassist handle to the raw class
-			ClassPool classPool = new ClassPool();
-			String classInJarJavaName = Descriptor.toJavaName(classInJarName);
-			classPool.insertClassPath(new ByteArrayClassPath(classInJarJavaName, buf));
-			CtClass c = classPool.get(classInJarJavaName);
+			// read the class file and load the javassist handle to the raw class
+			CtClass c = m_classPool.makeClass(m_source.getClassBytes(classInJarName));
 			
 			c = transformClass(c);
 			
@@ -171,8 +159,7 @@ public class TranslatingTypeLoader implements ITypeLoader {
 			// DEBUG
 			//Util.writeClass( c );
 			
-			// we have a transformed class!
-			return c.toBytecode();
+			return c;
 		} catch (IOException | NotFoundException | CannotCompileException ex) {
 			throw new Error(ex);
 		}
@@ -182,8 +169,7 @@ public class TranslatingTypeLoader implements ITypeLoader {
 
 		// try to find the class in the jar
 		for (String className : getClassNamesToTry(obfClassEntry)) {
-			JarEntry jarEntry = m_jar.getJarEntry(className + ".class");
-			if (jarEntry != null) {
+			if (m_source.containsClass(className)) {
 				return className;
 			}
 		}
@@ -222,10 +208,7 @@ public class TranslatingTypeLoader implements ITypeLoader {
 		
 		// re-get the javassist handle since we changed class names
 		ClassEntry obfClassEntry = new ClassEntry(Descriptor.toJvmName(c.getName()));
-		String javaClassReconstructedName = Descriptor.toJavaName(obfClassEntry.getName());
-		ClassPool classPool = new ClassPool();
-		classPool.insertClassPath(new ByteArrayClassPath(javaClassReconstructedName, c.toBytecode()));
-		c = classPool.get(javaClassReconstructedName);
+		c = BoundedClassPool.reload(c);
 		
 		// check that the file is correct after inner class reconstruction (ie cause Javassist to fail fast if something is wrong)
 		assertClassName(c, obfClassEntry);
@@ -46,6 +46,21 @@ public class Util {
 		return result;
 	}
 	
+	public static int compareJoined(String a1, String a2, String b1, String b2) {
+		// same as (a1 + a2).compareTo(b1 + b2), without building the strings
+		int lengthA = a1.length() + a2.length();
+		int lengthB = b1.length() + b2.length();
+		int length = Math.min(lengthA, lengthB);
+		for (int i=0; i<length; i++) {
+			char a = i < a1.length() ? a1.charAt(i) : a2.charAt(i - a1.length());
+			char b = i < b1.length() ? b1.charAt(i) : b2.charAt(i - b1.length());
+			if (a != b) {
+				return a - b;
+			}
+		}
+		return lengthA - lengthB;
+	}
+	
 	public static void closeQuietly(Closeable closeable) {
 		if (closeable != null) {
 			try {
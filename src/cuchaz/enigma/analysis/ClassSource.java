@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// raw class file bytes, looked up by jvm class name (eg a/b/C, without the .class)
+// implementations have to be safe to read from multiple threads at once
+// closing a source lets go of its files, reading classes after that throws
+public interface ClassSource extends Closeable {
+	
+	List<String> getClassNames();
+	
+	boolean containsClass(String className);
+	
+	// returns -1 if there's no such class
+	int getClassSize(String className)
+	throws IOException;
+	
+	byte[] getClassBytes(String className)
+	throws IOException;
+	
+	// reads exactly getClassSize() bytes into the buffer, so callers can bring their own (pooled) buffers
+	void readClassBytes(String className, byte[] buf, int offset)
+	throws IOException;
+	
+	@Override
+	void close();
+}
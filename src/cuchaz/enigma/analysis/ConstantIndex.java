@@ -0,0 +1,445 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+// the string, int, and long constants loaded by each behavior, indexed by constant
+// uses are collected with addUse(), then freeze() packs them into CSR arrays, just like ReferenceGraph
+// string searches use a sorted list of the strings for prefixes, and a suffix array over all the strings for substrings
+// the search structures are built the first time someone searches, since most sessions never do
+public class ConstantIndex implements Serializable {
+	
+	private static final long serialVersionUID = -4735268145312705833L;
+	
+	private static final int[] NoUses = {};
+	
+	// separates the strings in the suffix array text
+	private static final char Separator = '\0';
+	
+	// shorter ranges than this get an insertion sort instead of a partition
+	private static final int MinPartitionSize = 16;
+	
+	private List<Object> m_constants;
+	private transient Map<Object,Integer> m_ids;
+	
+	// frozen uses, the behavior ids for each constant id
+	// constants added since the last freeze don't have offsets yet
+	private int[] m_userOffsets;
+	private int[] m_users;
+	
+	// uses added since the last freeze, packed like this: { constant id, behavior id, constant id, behavior id, ... }
+	private transient int[] m_newUses;
+	private transient int m_numNewUses;
+	
+	// the string constants in sorted order, and the suffixes of all of them
+	private transient String[] m_sortedStrings;
+	private transient char[] m_text;
+	private transient int[] m_textStarts;
+	private transient int[] m_suffixes;
+	
+	public ConstantIndex() {
+		m_constants = Lists.newArrayList();
+		m_ids = Maps.newHashMap();
+		m_userOffsets = new int[] { 0 };
+		m_users = NoUses;
+		m_newUses = NoUses;
+		m_numNewUses = 0;
+	}
+	
+	public static boolean isIndexed(Object constant) {
+		return constant instanceof String || constant instanceof Integer || constant instanceof Long;
+	}
+	
+	public int size() {
+		return m_constants.size();
+	}
+	
+	public int getNumUses() {
+		// only counts the frozen uses
+		return m_userOffsets[m_userOffsets.length - 1];
+	}
+	
+	public List<Object> getConstants() {
+		return Collections.unmodifiableList(m_constants);
+	}
+	
+	public void addUse(Object constant, int behaviorId) {
+		if (!isIndexed(constant)) {
+			throw new IllegalArgumentException("Constant type not supported: " + constant.getClass().getName());
+		}
+		Integer id = m_ids.get(constant);
+		if (id == null) {
+			id = m_constants.size();
+			m_constants.add(constant);
+			m_ids.put(constant, id);
+		}
+		if (m_numNewUses*2 == m_newUses.length) {
+			m_newUses = Arrays.copyOf(m_newUses, Math.max(32, m_newUses.length*2));
+		}
+		m_newUses[m_numNewUses*2] = id;
+		m_newUses[m_numNewUses*2 + 1] = behaviorId;
+		m_numNewUses++;
+	}
+	
+	public void addUses(ConstantIndex other, int[] ids) {
+		// ids maps the other index's behavior ids to behavior ids for this index
+		for (int constantId=0; constantId<other.m_userOffsets.length - 1; constantId++) {
+			for (int i=other.m_userOffsets[constantId]; i<other.m_userOffsets[constantId + 1]; i++) {
+				addUse(other.m_constants.get(constantId), ids[other.m_users[i]]);
+			}
+		}
+		for (int i=0; i<other.m_numNewUses; i++) {
+			addUse(other.m_constants.get(other.m_newUses[i*2]), ids[other.m_newUses[i*2 + 1]]);
+		}
+	}
+	
+	public void freeze() {
+		freeze(new BitSet());
+	}
+	
+	public void freeze(BitSet removedBehaviors) {
+		
+		// count the uses of each constant, the old frozen ones and the new ones
+		// and drop any uses by the removed behaviors while we're at it
+		int numConstants = m_constants.size();
+		int[] counts = new int[numConstants];
+		for (int constantId=0; constantId<m_userOffsets.length - 1; constantId++) {
+			for (int i=m_userOffsets[constantId]; i<m_userOffsets[constantId + 1]; i++) {
+				if (!removedBehaviors.get(m_users[i])) {
+					counts[constantId]++;
+				}
+			}
+		}
+		for (int i=0; i<m_numNewUses; i++) {
+			if (!removedBehaviors.get(m_newUses[i*2 + 1])) {
+				counts[m_newUses[i*2]]++;
+			}
+		}
+		
+		// constants nobody uses anymore get dropped, so the rest get new ids
+		int[] newIds = new int[numConstants];
+		List<Object> constants = Lists.newArrayList();
+		for (int constantId=0; constantId<numConstants; constantId++) {
+			if (counts[constantId] > 0) {
+				newIds[constantId] = constants.size();
+				constants.add(m_constants.get(constantId));
+			} else {
+				newIds[constantId] = -1;
+			}
+		}
+		int[] offsets = new int[constants.size() + 1];
+		for (int constantId=0; constantId<numConstants; constantId++) {
+			if (newIds[constantId] >= 0) {
+				offsets[newIds[constantId] + 1] = counts[constantId];
+			}
+		}
+		for (int i=0; i<constants.size(); i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		
+		// bucket the uses by constant
+		int[] users = new int[offsets[constants.size()]];
+		int[] next = Arrays.copyOf(offsets, constants.size());
+		for (int constantId=0; constantId<m_userOffsets.length - 1; constantId++) {
+			for (int i=m_userOffsets[constantId]; i<m_userOffsets[constantId + 1]; i++) {
+				if (!removedBehaviors.get(m_users[i])) {
+					users[next[newIds[constantId]]++] = m_users[i];
+				}
+			}
+		}
+		for (int i=0; i<m_numNewUses; i++) {
+			if (!removedBehaviors.get(m_newUses[i*2 + 1])) {
+				users[next[newIds[m_newUses[i*2]]]++] = m_newUses[i*2 + 1];
+			}
+		}
+		
+		// sort the users of each constant and remove duplicates, compacting in place
+		m_userOffsets = new int[constants.size() + 1];
+		int n = 0;
+		for (int constantId=0; constantId<constants.size(); constantId++) {
+			m_userOffsets[constantId] = n;
+			Arrays.sort(users, offsets[constantId], offsets[constantId + 1]);
+			for (int i=offsets[constantId]; i<offsets[constantId + 1]; i++) {
+				if (n == m_userOffsets[constantId] || users[i] != users[n - 1]) {
+					users[n++] = users[i];
+				}
+			}
+		}
+		m_userOffsets[constants.size()] = n;
+		m_users = Arrays.copyOf(users, n);
+		
+		m_constants = constants;
+		m_newUses = NoUses;
+		m_numNewUses = 0;
+		indexIds();
+	}
+	
+	public int[] getUsers(Object constant) {
+		Integer id = m_ids.get(constant);
+		if (id == null || id + 1 >= m_userOffsets.length) {
+			return NoUses;
+		}
+		return Arrays.copyOfRange(m_users, m_userOffsets[id], m_userOffsets[id + 1]);
+	}
+	
+	public List<String> findStringsWithPrefix(String prefix) {
+		
+		// returns the matching strings in sorted order
+		buildSearchIndex();
+		List<String> strings = Lists.newArrayList();
+		int start = lowerBound(m_sortedStrings, prefix);
+		for (int i=start; i<m_sortedStrings.length && m_sortedStrings[i].startsWith(prefix); i++) {
+			strings.add(m_sortedStrings[i]);
+		}
+		return strings;
+	}
+	
+	public List<String> findStringsContaining(String text) {
+		
+		// returns the matching strings in sorted order
+		if (text.isEmpty()) {
+			return findStringsWithPrefix(text);
+		}
+		buildSearchIndex();
+		
+		// all the suffixes that start with the text are next to each other in the suffix array
+		BitSet stringIndices = new BitSet(m_sortedStrings.length);
+		for (int i=lowerBound(m_text, m_suffixes, text); i<m_suffixes.length && comparePrefix(m_text, m_suffixes[i], text) == 0; i++) {
+			stringIndices.set(getStringIndex(m_suffixes[i]));
+		}
+		
+		List<String> strings = Lists.newArrayList();
+		for (int i=stringIndices.nextSetBit(0); i>=0; i=stringIndices.nextSetBit(i + 1)) {
+			// a match could run across a separator if the text has one in it, so check the match for real
+			String string = m_sortedStrings[i];
+			if (string.contains(text)) {
+				strings.add(string);
+			}
+		}
+		return strings;
+	}
+	
+	private void buildSearchIndex() {
+		
+		if (m_suffixes != null) {
+			return;
+		}
+		
+		// sort the strings
+		List<String> strings = Lists.newArrayList();
+		for (Object constant : m_constants) {
+			if (constant instanceof String) {
+				strings.add((String)constant);
+			}
+		}
+		String[] sortedStrings = strings.toArray(new String[strings.size()]);
+		Arrays.sort(sortedStrings);
+		
+		// join them into one text, one string after another
+		int[] textStarts = new int[sortedStrings.length + 1];
+		int textLength = 0;
+		for (int i=0; i<sortedStrings.length; i++) {
+			textStarts[i] = textLength;
+			textLength += sortedStrings[i].length() + 1;
+		}
+		textStarts[sortedStrings.length] = textLength;
+		char[] text = new char[textLength];
+		for (int i=0; i<sortedStrings.length; i++) {
+			sortedStrings[i].getChars(0, sortedStrings[i].length(), text, textStarts[i]);
+			text[textStarts[i + 1] - 1] = Separator;
+		}
+		
+		// sort the suffixes, but skip the ones that start with a separator
+		int[] suffixes = new int[textLength - sortedStrings.length];
+		int n = 0;
+		for (int i=0; i<sortedStrings.length; i++) {
+			for (int pos=textStarts[i]; pos<textStarts[i + 1] - 1; pos++) {
+				suffixes[n++] = pos;
+			}
+		}
+		sortSuffixes(text, suffixes);
+		
+		m_sortedStrings = sortedStrings;
+		m_text = text;
+		m_textStarts = textStarts;
+		m_suffixes = suffixes;
+	}
+	
+	private int getStringIndex(int pos) {
+		int i = Arrays.binarySearch(m_textStarts, pos);
+		if (i < 0) {
+			// not the start of a string, so it's in the string before the insertion point
+			i = -i - 2;
+		}
+		return i;
+	}
+	
+	private static int lowerBound(String[] sortedStrings, String prefix) {
+		int i = Arrays.binarySearch(sortedStrings, prefix);
+		return i < 0 ? -i - 1 : i;
+	}
+	
+	private static int lowerBound(char[] text, int[] suffixes, String prefix) {
+		// the first suffix that isn't less than the prefix
+		int lo = 0;
+		int hi = suffixes.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (comparePrefix(text, suffixes[mid], prefix) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
+	private static int comparePrefix(char[] text, int pos, String prefix) {
+		// compares the suffix to the prefix, but only as far as the prefix goes
+		for (int i=0; i<prefix.length(); i++) {
+			int c = charAt(text, pos + i);
+			if (c != prefix.charAt(i)) {
+				return c - prefix.charAt(i);
+			}
+		}
+		return 0;
+	}
+	
+	private static int charAt(char[] text, int pos) {
+		// the end of the text sorts before everything
+		return pos < text.length ? text[pos] : -1;
+	}
+	
+	private static void sortSuffixes(char[] text, int[] suffixes) {
+		
+		// multikey quicksort (Bentley and Sedgewick), partitions on one char at a time
+		// it keeps its own stack of ranges, since long repeated substrings would overflow the call stack
+		// each range is { start, stop, depth }
+		int[] ranges = new int[3*32];
+		int numRanges = 0;
+		ranges[numRanges++] = 0;
+		ranges[numRanges++] = suffixes.length;
+		ranges[numRanges++] = 0;
+		while (numRanges > 0) {
+			int depth = ranges[--numRanges];
+			int stop = ranges[--numRanges];
+			int start = ranges[--numRanges];
+			
+			if (stop - start < MinPartitionSize) {
+				insertionSortSuffixes(text, suffixes, start, stop, depth);
+				continue;
+			}
+			
+			// partition into less than, equal to, and greater than the pivot char
+			int pivot = charAt(text, suffixes[(start + stop) >>> 1] + depth);
+			int lt = start;
+			int gt = stop;
+			int i = start;
+			while (i < gt) {
+				int c = charAt(text, suffixes[i] + depth);
+				if (c < pivot) {
+					swap(suffixes, lt++, i++);
+				} else if (c > pivot) {
+					swap(suffixes, i, --gt);
+				} else {
+					i++;
+				}
+			}
+			
+			if (numRanges + 9 > ranges.length) {
+				ranges = Arrays.copyOf(ranges, ranges.length*2);
+			}
+			ranges[numRanges++] = start;
+			ranges[numRanges++] = lt;
+			ranges[numRanges++] = depth;
+			ranges[numRanges++] = gt;
+			ranges[numRanges++] = stop;
+			ranges[numRanges++] = depth;
+			if (pivot >= 0) {
+				// the suffixes that match so far get compared on the next char
+				ranges[numRanges++] = lt;
+				ranges[numRanges++] = gt;
+				ranges[numRanges++] = depth + 1;
+			}
+		}
+	}
+	
+	private static void insertionSortSuffixes(char[] text, int[] suffixes, int start, int stop, int depth) {
+		for (int i=start + 1; i<stop; i++) {
+			int suffix = suffixes[i];
+			int j = i;
+			while (j > start && compareSuffixes(text, suffixes[j - 1], suffix, depth) > 0) {
+				suffixes[j] = suffixes[j - 1];
+				j--;
+			}
+			suffixes[j] = suffix;
+		}
+	}
+	
+	private static int compareSuffixes(char[] text, int a, int b, int depth) {
+		// the first depth chars are already known to match
+		for (int i=depth; ; i++) {
+			int ca = charAt(text, a + i);
+			int cb = charAt(text, b + i);
+			if (ca != cb) {
+				return ca - cb;
+			}
+			if (ca < 0) {
+				return 0;
+			}
+		}
+	}
+	
+	private static void swap(int[] array, int i, int j) {
+		int temp = array[i];
+		array[i] = array[j];
+		array[j] = temp;
+	}
+	
+	private void indexIds() {
+		m_ids = Maps.newHashMap();
+		for (int i=0; i<m_constants.size(); i++) {
+			m_ids.put(m_constants.get(i), i);
+		}
+		m_sortedStrings = null;
+		m_text = null;
+		m_textStarts = null;
+		m_suffixes = null;
+	}
+	
+	private void writeObject(ObjectOutputStream out)
+	throws IOException {
+		if (m_numNewUses > 0) {
+			throw new IllegalStateException("Constant uses must be frozen before they can be saved!");
+		}
+		out.defaultWriteObject();
+	}
+	
+	private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		m_newUses = NoUses;
+		m_numNewUses = 0;
+		indexIds();
+	}
+}
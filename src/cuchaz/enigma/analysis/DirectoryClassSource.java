@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+// reads classes from an exploded directory of .class files, eg a compiler output folder
+// works with any NIO file system, eg the jrt:/ modules of the running JDK too
+public class DirectoryClassSource implements ClassSource {
+	
+	private Path m_dir;
+	private List<String> m_classNames;
+	private Set<String> m_classNamesSet;
+	
+	public DirectoryClassSource(File dir)
+	throws IOException {
+		this(dir, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public DirectoryClassSource(File dir, int numThreads)
+	throws IOException {
+		this(dir.toPath(), numThreads);
+	}
+	
+	public DirectoryClassSource(Path dir, int numThreads)
+	throws IOException {
+		m_dir = dir;
+		if (!Files.isDirectory(m_dir)) {
+			throw new FileNotFoundException("Not a directory: " + dir);
+		}
+		
+		// walk the sub-directories in parallel, listing big trees is mostly waiting on the file system
+		Queue<String> classNames = new ConcurrentLinkedQueue<String>();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+		try {
+			pool.invoke(new ListClassesTask(m_dir, "", classNames));
+		} finally {
+			pool.shutdown();
+		}
+		
+		// the walk order depends on the threads, so sort the names to keep the class order stable
+		m_classNames = Lists.newArrayList(classNames);
+		Collections.sort(m_classNames);
+		m_classNamesSet = Sets.newHashSet(m_classNames);
+	}
+	
+	public Path getDir() {
+		return m_dir;
+	}
+	
+	@Override
+	public List<String> getClassNames() {
+		return m_classNames;
+	}
+	
+	@Override
+	public boolean containsClass(String className) {
+		return m_classNamesSet.contains(className);
+	}
+	
+	@Override
+	public int getClassSize(String className)
+	throws IOException {
+		if (!containsClass(className)) {
+			return -1;
+		}
+		return (int)Files.size(getPath(className));
+	}
+	
+	@Override
+	public byte[] getClassBytes(String className)
+	throws IOException {
+		try (SeekableByteChannel channel = openClass(className)) {
+			byte[] bytes = new byte[(int)channel.size()];
+			read(channel, ByteBuffer.wrap(bytes), className);
+			return bytes;
+		}
+	}
+	
+	@Override
+	public void readClassBytes(String className, byte[] buf, int offset)
+	throws IOException {
+		try (SeekableByteChannel channel = openClass(className)) {
+			read(channel, ByteBuffer.wrap(buf, offset, (int)channel.size()), className);
+		}
+	}
+	
+	@Override
+	public void close() {
+		// nothing stays open between reads
+	}
+	
+	private Path getPath(String className) {
+		return m_dir.resolve(className + ".class");
+	}
+	
+	private SeekableByteChannel openClass(String className)
+	throws IOException {
+		if (!containsClass(className)) {
+			throw new FileNotFoundException("No class " + className + " in " + m_dir);
+		}
+		return Files.newByteChannel(getPath(className));
+	}
+	
+	private static void read(SeekableByteChannel channel, ByteBuffer buf, String className)
+	throws IOException {
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) < 0) {
+				throw new EOFException("Class " + className + " got shorter while reading it");
+			}
+		}
+	}
+	
+	private static class ListClassesTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 4829402547396585374L;
+		
+		private Path m_dir;
+		private String m_prefix;
+		private Collection<String> m_classNames;
+		
+		public ListClassesTask(Path dir, String prefix, Collection<String> classNames) {
+			m_dir = dir;
+			m_prefix = prefix;
+			m_classNames = classNames;
+		}
+		
+		@Override
+		protected void compute() {
+			List<ListClassesTask> subtasks = Lists.newArrayList();
+			try (DirectoryStream<Path> paths = Files.newDirectoryStream(m_dir)) {
+				for (Path path : paths) {
+					String name = m_prefix + path.getFileName().toString();
+					if (Files.isDirectory(path)) {
+						subtasks.add(new ListClassesTask(path, name + "/", m_classNames));
+					} else if (name.endsWith(".class")) {
+						m_classNames.add(name.substring(0, name.length() - ".class".length()));
+					}
+				}
+			} catch (IOException ex) {
+				throw new Error("Unable to list classes in " + m_dir, ex);
+			}
+			invokeAll(subtasks);
+		}
+	}
+}
@@ -10,6 +10,7 @@
  ******************************************************************************/
 package cuchaz.enigma.analysis;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 
@@ -18,8 +19,9 @@ import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.ConstructorEntry;
 import cuchaz.enigma.mapping.Entry;
 
-public class EntryReference<E extends Entry,C extends Entry> {
+public class EntryReference<E extends Entry,C extends Entry> implements Serializable {
 	
+	private static final long serialVersionUID = -3862584783431485226L;
 	private static final List<String> ConstructorNonNames = Arrays.asList("this", "super", "static");
 	public E entry;
 	public C context;
@@ -37,17 +39,24 @@ public class EntryReference<E extends Entry,C extends Entry> {
 		
 		this.entry = entry;
 		this.context = context;
-		
-		m_isNamed = sourceName != null && sourceName.length() > 0;
-		if (entry instanceof ConstructorEntry && ConstructorNonNames.contains(sourceName)) {
-			m_isNamed = false;
-		}
+		m_isNamed = isNamed(entry, sourceName);
 	}
 	
 	public EntryReference(E entry, C context, EntryReference<E,C> other) {
+		this(entry, context, other.m_isNamed);
+	}
+	
+	public EntryReference(E entry, C context, boolean isNamed) {
 		this.entry = entry;
 		this.context = context;
-		m_isNamed = other.m_isNamed;
+		m_isNamed = isNamed;
+	}
+	
+	public static boolean isNamed(Entry entry, String sourceName) {
+		if (entry instanceof ConstructorEntry && ConstructorNonNames.contains(sourceName)) {
+			return false;
+		}
+		return sourceName != null && sourceName.length() > 0;
 	}
 	
 	public ClassEntry getLocationClassEntry() {
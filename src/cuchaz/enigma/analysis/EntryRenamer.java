@@ -11,11 +11,14 @@
 package cuchaz.enigma.analysis;
 
 import java.util.AbstractMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 
@@ -24,6 +27,7 @@ import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.ClassNameReplacer;
 import cuchaz.enigma.mapping.ConstructorEntry;
 import cuchaz.enigma.mapping.Entry;
+import cuchaz.enigma.mapping.EntryFactory;
 import cuchaz.enigma.mapping.FieldEntry;
 import cuchaz.enigma.mapping.MethodEntry;
 import cuchaz.enigma.mapping.Signature;
@@ -70,6 +74,73 @@ public class EntryRenamer {
 		}
 	}
 	
+	// these take the entries that changed (old entry -> new entry) and only touch those
+	// everything else in the collection stays where it is
+	// the old entries all come out before the new ones go in, in case a new entry has the same name as an old one
+	
+	@SuppressWarnings("unchecked")
+	public static <T> void renameEntriesInSet(Map<? extends Entry,? extends Entry> renamedEntries, Set<T> set) {
+		List<T> entriesToAdd = Lists.newArrayList();
+		for (Map.Entry<? extends Entry,? extends Entry> rename : renamedEntries.entrySet()) {
+			if (set.remove(rename.getKey())) {
+				entriesToAdd.add((T)rename.getValue());
+			}
+		}
+		set.addAll(entriesToAdd);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <Key,Val> void renameKeysInMap(Map<? extends Entry,? extends Entry> renamedEntries, Map<Key,Val> map) {
+		Map<Key,Val> entriesToAdd = Maps.newHashMap();
+		for (Map.Entry<? extends Entry,? extends Entry> rename : renamedEntries.entrySet()) {
+			if (map.containsKey(rename.getKey())) {
+				entriesToAdd.put((Key)rename.getValue(), map.remove(rename.getKey()));
+			}
+		}
+		map.putAll(entriesToAdd);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <Key,Val> void renameKeysInMultimap(Map<? extends Entry,? extends Entry> renamedEntries, Multimap<Key,Val> map) {
+		Multimap<Key,Val> entriesToAdd = HashMultimap.create();
+		for (Map.Entry<? extends Entry,? extends Entry> rename : renamedEntries.entrySet()) {
+			if (map.containsKey(rename.getKey())) {
+				entriesToAdd.putAll((Key)rename.getValue(), map.removeAll(rename.getKey()));
+			}
+		}
+		map.putAll(entriesToAdd);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <Key,Val> void renameValuesInMap(Map<? extends Entry,? extends Entry> renamedEntries, Map<Key,Val> map, Collection<Key> keys) {
+		// only looks at the values for these keys
+		for (Key key : keys) {
+			Entry newEntry = renamedEntries.get(map.get(key));
+			if (newEntry != null) {
+				map.put(key, (Val)newEntry);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <Key,Val> void renameValuesInMultimap(Map<? extends Entry,? extends Entry> renamedEntries, Multimap<Key,Val> map, Collection<Key> keys) {
+		// only looks at the values for these keys
+		for (Key key : keys) {
+			List<Val> oldValues = Lists.newArrayList();
+			for (Val value : map.get(key)) {
+				if (renamedEntries.containsKey(value)) {
+					oldValues.add(value);
+				}
+			}
+			for (Val value : oldValues) {
+				map.remove(key, value);
+			}
+			for (Val value : oldValues) {
+				map.put(key, (Val)renamedEntries.get(value));
+			}
+		}
+	}
+	
 	public static <Key,Val> void renameMethodsInMultimap(Map<MethodEntry,MethodEntry> renames, Multimap<Key,Val> map) {
 		// for each key/value pair...
 		Set<Map.Entry<Key,Val>> entriesToAdd = Sets.newHashSet();
@@ -106,7 +177,7 @@ public class EntryRenamer {
 			MethodEntry methodEntry = (MethodEntry)thing;
 			MethodEntry newMethodEntry = renames.get(methodEntry);
 			if (newMethodEntry != null) {
-				return (T)new MethodEntry(
+				return (T)EntryFactory.getMethodEntry(
 					methodEntry.getClassEntry(),
 					newMethodEntry.getName(),
 					methodEntry.getSignature()
@@ -138,23 +209,23 @@ public class EntryRenamer {
 			}
 		} else if (thing instanceof ClassEntry) {
 			ClassEntry classEntry = (ClassEntry)thing;
-			return (T)new ClassEntry(renameClassesInThing(renames, classEntry.getClassName()));
+			return (T)EntryFactory.getClassEntry(renameClassesInThing(renames, classEntry.getClassName()));
 		} else if (thing instanceof FieldEntry) {
 			FieldEntry fieldEntry = (FieldEntry)thing;
-			return (T)new FieldEntry(
+			return (T)EntryFactory.intern(new FieldEntry(
 				renameClassesInThing(renames, fieldEntry.getClassEntry()),
 				fieldEntry.getName(),
 				renameClassesInThing(renames, fieldEntry.getType())
-			);
+			));
 		} else if (thing instanceof ConstructorEntry) {
 			ConstructorEntry constructorEntry = (ConstructorEntry)thing;
-			return (T)new ConstructorEntry(
+			return (T)EntryFactory.intern(new ConstructorEntry(
 				renameClassesInThing(renames, constructorEntry.getClassEntry()),
 				renameClassesInThing(renames, constructorEntry.getSignature())
-			);
+			));
 		} else if (thing instanceof MethodEntry) {
 			MethodEntry methodEntry = (MethodEntry)thing;
-			return (T)new MethodEntry(
+			return (T)EntryFactory.getMethodEntry(
 				renameClassesInThing(renames, methodEntry.getClassEntry()),
 				methodEntry.getName(),
 				renameClassesInThing(renames, methodEntry.getSignature())
@@ -172,19 +243,19 @@ public class EntryRenamer {
 			reference.context = renameClassesInThing(renames, reference.context);
 			return thing;
 		} else if (thing instanceof Signature) {
-			return (T)new Signature((Signature)thing, new ClassNameReplacer() {
+			return (T)EntryFactory.intern(new Signature((Signature)thing, new ClassNameReplacer() {
 				@Override
 				public String replace(String className) {
 					return renameClassesInThing(renames, className);
 				}
-			});
+			}));
 		} else if (thing instanceof Type) {
-			return (T)new Type((Type)thing, new ClassNameReplacer() {
+			return (T)EntryFactory.intern(new Type((Type)thing, new ClassNameReplacer() {
 				@Override
 				public String replace(String className) {
 					return renameClassesInThing(renames, className);
 				}
-			});
+			}));
 		}
 		
 		return thing;
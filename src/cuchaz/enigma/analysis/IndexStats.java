@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.collect.Lists;
+
+import cuchaz.enigma.Deobfuscator.ProgressListener;
+
+// where the time went the last time a jar index was built (or read from the cache), how much heap it took, and how big the index got
+public class IndexStats {
+	
+	public static class Phase {
+		
+		private String m_name;
+		private long m_nanos;
+		private long m_heapBytes;
+		
+		private Phase(String name, long nanos, long heapBytes) {
+			m_name = name;
+			m_nanos = nanos;
+			m_heapBytes = heapBytes;
+		}
+		
+		public String getName() {
+			return m_name;
+		}
+		
+		public long getNanos() {
+			return m_nanos;
+		}
+		
+		public double getSeconds() {
+			return m_nanos/1e9;
+		}
+		
+		public long getHeapBytes() {
+			// heap in use when the phase finished, garbage and all
+			return m_heapBytes;
+		}
+	}
+	
+	private List<Phase> m_phases;
+	private ProgressListener m_progress;
+	private int m_numPlannedPhases;
+	private String m_phaseName;
+	private long m_phaseStartTime;
+	private long m_peakHeapBytes;
+	private int m_numThreads;
+	private int m_numBatches;
+	private int m_numClasses;
+	private int m_numSymbols;
+	private int m_numMemberEdges;
+	private int m_numBehaviorReferences;
+	private int m_numFieldReferences;
+	
+	public IndexStats() {
+		this(null, 0);
+	}
+	
+	public IndexStats(ProgressListener progress, int numPlannedPhases) {
+		m_phases = Lists.newArrayList();
+		m_progress = progress;
+		m_numPlannedPhases = numPlannedPhases;
+		m_phaseName = null;
+		m_phaseStartTime = 0;
+		m_peakHeapBytes = 0;
+		m_numThreads = 1;
+		m_numBatches = 1;
+		m_numClasses = 0;
+		m_numSymbols = 0;
+		m_numMemberEdges = 0;
+		m_numBehaviorReferences = 0;
+		m_numFieldReferences = 0;
+		resetHeapPeaks();
+		if (m_progress != null) {
+			m_progress.init(m_numPlannedPhases, "Indexing jar...");
+		}
+	}
+	
+	public void startPhase(String name) {
+		if (m_phaseName != null) {
+			stopPhase();
+		}
+		if (m_progress != null) {
+			m_progress.onProgress(Math.min(m_phases.size(), m_numPlannedPhases - 1), name);
+		}
+		m_phaseName = name;
+		m_phaseStartTime = System.nanoTime();
+	}
+	
+	public void stopPhase() {
+		if (m_phaseName == null) {
+			throw new IllegalStateException("No phase was started!");
+		}
+		long nanos = System.nanoTime() - m_phaseStartTime;
+		long heapBytes = getUsedHeapBytes();
+		m_phases.add(new Phase(m_phaseName, nanos, heapBytes));
+		m_peakHeapBytes = Math.max(m_peakHeapBytes, Math.max(heapBytes, getPeakHeapBytesSinceReset()));
+		m_phaseName = null;
+	}
+	
+	public void finish(JarIndex index) {
+		if (m_phaseName != null) {
+			stopPhase();
+		}
+		m_numClasses = index.getObfClassEntries().size();
+		m_numSymbols = index.getNumSymbols();
+		m_numMemberEdges = index.getNumMemberEdges();
+		m_numBehaviorReferences = index.getNumBehaviorReferences();
+		m_numFieldReferences = index.getNumFieldReferences();
+		if (m_progress != null) {
+			m_progress.onProgress(m_numPlannedPhases, "Done");
+		}
+	}
+	
+	public List<Phase> getPhases() {
+		return Collections.unmodifiableList(m_phases);
+	}
+	
+	public long getTotalNanos() {
+		long nanos = 0;
+		for (Phase phase : m_phases) {
+			nanos += phase.getNanos();
+		}
+		return nanos;
+	}
+	
+	public double getTotalSeconds() {
+		return getTotalNanos()/1e9;
+	}
+	
+	public double getClassesPerSecond() {
+		long nanos = getTotalNanos();
+		if (nanos <= 0) {
+			return 0;
+		}
+		return m_numClasses*1e9/nanos;
+	}
+	
+	public long getPeakHeapBytes() {
+		// the most heap the JVM had in use at any point while indexing, garbage and all
+		// this is the whole JVM, not just the index, the counts below are the size of the index itself
+		return m_peakHeapBytes;
+	}
+	
+	public int getNumThreads() {
+		return m_numThreads;
+	}
+	
+	public void setNumThreads(int val) {
+		m_numThreads = val;
+	}
+	
+	public int getNumBatches() {
+		return m_numBatches;
+	}
+	
+	public void setNumBatches(int val) {
+		m_numBatches = val;
+	}
+	
+	public int getNumClasses() {
+		return m_numClasses;
+	}
+	
+	public int getNumSymbols() {
+		return m_numSymbols;
+	}
+	
+	public int getNumMemberEdges() {
+		return m_numMemberEdges;
+	}
+	
+	public int getNumBehaviorReferences() {
+		return m_numBehaviorReferences;
+	}
+	
+	public int getNumFieldReferences() {
+		return m_numFieldReferences;
+	}
+	
+	public String toJson() {
+		// numbers always use the root locale, JSON doesn't like decimal commas
+		StringBuilder buf = new StringBuilder();
+		buf.append("{\n");
+		buf.append(String.format(Locale.ROOT, "\t\"totalSeconds\": %.3f,\n", getTotalSeconds()));
+		buf.append(String.format(Locale.ROOT, "\t\"classesPerSecond\": %.1f,\n", getClassesPerSecond()));
+		buf.append(String.format(Locale.ROOT, "\t\"peakHeapBytes\": %d,\n", m_peakHeapBytes));
+		buf.append(String.format(Locale.ROOT, "\t\"threads\": %d,\n", m_numThreads));
+		buf.append(String.format(Locale.ROOT, "\t\"batches\": %d,\n", m_numBatches));
+		buf.append(String.format(Locale.ROOT, "\t\"classes\": %d,\n", m_numClasses));
+		buf.append(String.format(Locale.ROOT, "\t\"symbols\": %d,\n", m_numSymbols));
+		buf.append(String.format(Locale.ROOT, "\t\"memberEdges\": %d,\n", m_numMemberEdges));
+		buf.append(String.format(Locale.ROOT, "\t\"behaviorReferences\": %d,\n", m_numBehaviorReferences));
+		buf.append(String.format(Locale.ROOT, "\t\"fieldReferences\": %d,\n", m_numFieldReferences));
+		buf.append("\t\"phases\": [");
+		for (int i=0; i<m_phases.size(); i++) {
+			Phase phase = m_phases.get(i);
+			buf.append(i == 0 ? "\n" : ",\n");
+			buf.append(String.format(Locale.ROOT, "\t\t{ \"name\": \"%s\", \"seconds\": %.3f, \"heapBytes\": %d }",
+				escapeJson(phase.getName()), phase.getSeconds(), phase.getHeapBytes()
+			));
+		}
+		buf.append(m_phases.isEmpty() ? "]\n" : "\n\t]\n");
+		buf.append("}\n");
+		return buf.toString();
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		for (Phase phase : m_phases) {
+			buf.append(String.format("%-28s %8.3fs %8d MiB\n", phase.getName(), phase.getSeconds(), phase.getHeapBytes() >> 20));
+		}
+		buf.append(String.format("%-28s %8.3fs %8d MiB peak heap\n", "Total", getTotalSeconds(), m_peakHeapBytes >> 20));
+		buf.append(String.format("%d classes (%.1f/s), %d threads, %d batches\n", m_numClasses, getClassesPerSecond(), m_numThreads, m_numBatches));
+		buf.append(String.format("%d symbols, %d member edges, %d behavior references, %d field references\n",
+			m_numSymbols, m_numMemberEdges, m_numBehaviorReferences, m_numFieldReferences
+		));
+		return buf.toString();
+	}
+	
+	private static long getUsedHeapBytes() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private static void resetHeapPeaks() {
+		// NOTE: the peaks belong to the whole JVM, so indexing two jars at once mixes up their peaks
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+	
+	private static long getPeakHeapBytesSinceReset() {
+		// each pool peaks at its own time, so the sum can be a bit more than the heap ever held at once
+		long numBytes = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				numBytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return numBytes;
+	}
+	
+	private static String escapeJson(String val) {
+		return val.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
@@ -10,61 +10,55 @@
  ******************************************************************************/
 package cuchaz.enigma.analysis;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
-import javassist.ByteArrayClassPath;
-import javassist.ClassPool;
 import javassist.CtClass;
-import javassist.NotFoundException;
-import javassist.bytecode.Descriptor;
 
 import com.google.common.collect.Lists;
 
 import cuchaz.enigma.Constants;
+import cuchaz.enigma.bytecode.BoundedClassPool;
 import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.EntryFactory;
 
 public class JarClassIterator implements Iterator<CtClass> {
 	
-	private JarFile m_jar;
-	private Iterator<JarEntry> m_iter;
+	// every class gets parsed from its own bytes, the cache only needs to hold the classes being worked on right now
+	private static final BoundedClassPool ClassPool = new BoundedClassPool(256);
+	
+	private ClassSource m_source;
+	private Iterator<String> m_iter;
+	private boolean m_closeWhenDone;
 	
 	public JarClassIterator(JarFile jar) {
-		m_jar = jar;
-		
-		// get the jar entries that correspond to classes
-		List<JarEntry> classEntries = Lists.newArrayList();
-		Enumeration<JarEntry> entries = m_jar.entries();
-		while (entries.hasMoreElements()) {
-			JarEntry entry = entries.nextElement();
-			
-			// is this a class file?
-			if (entry.getName().endsWith(".class")) {
-				classEntries.add(entry);
-			}
-		}
-		m_iter = classEntries.iterator();
+		// the iterator owns this source, so let go of the jar once all the classes have been read
+		this(openSource(jar));
+		m_closeWhenDone = true;
+	}
+	
+	public JarClassIterator(ClassSource source) {
+		m_source = source;
+		m_iter = source.getClassNames().iterator();
+		m_closeWhenDone = false;
 	}
 	
 	@Override
 	public boolean hasNext() {
-		return m_iter.hasNext();
+		boolean hasNext = m_iter.hasNext();
+		if (!hasNext && m_closeWhenDone) {
+			m_source.close();
+		}
+		return hasNext;
 	}
 	
 	@Override
 	public CtClass next() {
-		JarEntry entry = m_iter.next();
-		try {
-			return getClass(m_jar, entry);
-		} catch (IOException | NotFoundException ex) {
-			throw new Error("Unable to load class: " + entry.getName());
-		}
+		ClassEntry classEntry = EntryFactory.getClassEntry(m_iter.next());
+		return getClass(classEntry, getBytes(m_source, classEntry));
 	}
 	
 	@Override
@@ -72,16 +66,26 @@ public class JarClassIterator implements Iterator<CtClass> {
 		throw new UnsupportedOperationException();
 	}
 	
+	public static ClassSource openSource(JarFile jar) {
+		// NOTE: the source maps the jar file on its own, the JarFile is just how the rest of enigma names the jar
+		// the caller owns the source, and has to close it to let go of the jar
+		try {
+			return new JarClassSource(new File(jar.getName()));
+		} catch (IOException ex) {
+			throw new Error("Unable to read jar: " + jar.getName(), ex);
+		}
+	}
+	
 	public static List<ClassEntry> getClassEntries(JarFile jar) {
+		try (ClassSource source = openSource(jar)) {
+			return getClassEntries(source);
+		}
+	}
+	
+	public static List<ClassEntry> getClassEntries(ClassSource source) {
 		List<ClassEntry> classEntries = Lists.newArrayList();
-		Enumeration<JarEntry> entries = jar.entries();
-		while (entries.hasMoreElements()) {
-			JarEntry entry = entries.nextElement();
-			
-			// is this a class file?
-			if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
-				classEntries.add(getClassEntry(entry));
-			}
+		for (String className : source.getClassNames()) {
+			classEntries.add(EntryFactory.getClassEntry(className));
 		}
 		return classEntries;
 	}
@@ -95,43 +99,49 @@ public class JarClassIterator implements Iterator<CtClass> {
 		};
 	}
 	
+	public static Iterable<CtClass> classes(final ClassSource source) {
+		return new Iterable<CtClass>() {
+			@Override
+			public Iterator<CtClass> iterator() {
+				return new JarClassIterator(source);
+			}
+		};
+	}
+	
 	public static CtClass getClass(JarFile jar, ClassEntry classEntry) {
-		try {
-			return getClass(jar, new JarEntry(classEntry.getName() + ".class"));
-		} catch (IOException | NotFoundException ex) {
-			throw new Error("Unable to load class: " + classEntry.getName());
+		try (ClassSource source = openSource(jar)) {
+			return getClass(source, classEntry);
 		}
 	}
 	
-	private static CtClass getClass(JarFile jar, JarEntry entry) throws IOException, NotFoundException {
-		// read the class into a buffer
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		byte[] buf = new byte[Constants.KiB];
-		int totalNumBytesRead = 0;
-		InputStream in = jar.getInputStream(entry);
-		while (in.available() > 0) {
-			int numBytesRead = in.read(buf);
-			if (numBytesRead < 0) {
-				break;
-			}
-			bos.write(buf, 0, numBytesRead);
-			
+	public static CtClass getClass(ClassSource source, ClassEntry classEntry) {
+		return getClass(classEntry, getBytes(source, classEntry));
+	}
+	
+	public static byte[] getBytes(JarFile jar, ClassEntry classEntry) {
+		try (ClassSource source = openSource(jar)) {
+			return getBytes(source, classEntry);
+		}
+	}
+	
+	public static byte[] getBytes(ClassSource source, ClassEntry classEntry) {
+		try {
 			// sanity checking
-			totalNumBytesRead += numBytesRead;
-			if (totalNumBytesRead > Constants.MiB) {
-				throw new Error("Class file " + entry.getName() + " larger than 1 MiB! Something is wrong!");
+			if (source.getClassSize(classEntry.getName()) > Constants.MiB) {
+				throw new Error("Class file " + classEntry.getName() + " larger than 1 MiB! Something is wrong!");
 			}
+			return source.getClassBytes(classEntry.getName());
+		} catch (IOException ex) {
+			throw new Error("Unable to load class: " + classEntry.getName(), ex);
 		}
-		
-		// get a javassist handle for the class
-		String className = Descriptor.toJavaName(getClassEntry(entry).getName());
-		ClassPool classPool = new ClassPool();
-		classPool.appendSystemPath();
-		classPool.insertClassPath(new ByteArrayClassPath(className, bos.toByteArray()));
-		return classPool.get(className);
 	}
 	
-	private static ClassEntry getClassEntry(JarEntry entry) {
-		return new ClassEntry(entry.getName().substring(0, entry.getName().length() - ".class".length()));
+	public static CtClass getClass(ClassEntry classEntry, byte[] bytes) {
+		// get a javassist handle for the class
+		try {
+			return ClassPool.makeClass(bytes);
+		} catch (IOException ex) {
+			throw new Error("Unable to load class: " + classEntry.getName(), ex);
+		}
 	}
 }
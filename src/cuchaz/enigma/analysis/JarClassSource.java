@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+// reads classes straight out of a memory-mapped jar
+// the zip central directory is read once up front, then each class is inflated right into the caller's buffer
+// the mapping keeps the jar file open (and locked on Windows) until the source is closed
+public class JarClassSource implements ClassSource {
+	
+	private static final int LocalHeaderSignature = 0x04034b50;
+	private static final int CentralHeaderSignature = 0x02014b50;
+	private static final int EndSignature = 0x06054b50;
+	private static final int Zip64EndSignature = 0x06064b50;
+	private static final int Zip64LocatorSignature = 0x07064b50;
+	private static final int Zip64ExtraId = 0x0001;
+	private static final long Zip64Marker = 0xffffffffL;
+	private static final int EndSize = 22;
+	private static final int MaxCommentSize = 0xffff;
+	private static final int Stored = 0;
+	private static final int Deflated = 8;
+	
+	// inflaters hold on to native memory, so keep one (and its input buffer) per thread instead of making one per class
+	private static final ThreadLocal<InflaterBuffers> Buffers = new ThreadLocal<InflaterBuffers>() {
+		@Override
+		protected InflaterBuffers initialValue() {
+			return new InflaterBuffers();
+		}
+	};
+	
+	private File m_file;
+	private ByteBuffer m_buf;
+	private Map<String,ClassFile> m_classFiles;
+	private List<String> m_classNames;
+	private ReadWriteLock m_lock;
+	
+	public JarClassSource(File file)
+	throws IOException {
+		m_file = file;
+		
+		// NOTE: the mapping stays valid after the channel is closed
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Jar file is too big to map: " + file);
+			}
+			m_buf = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		m_buf.order(ByteOrder.LITTLE_ENDIAN);
+		
+		m_classFiles = Maps.newHashMap();
+		m_classNames = Lists.newArrayList();
+		m_lock = new ReentrantReadWriteLock();
+		readCentralDirectory();
+	}
+	
+	public File getFile() {
+		return m_file;
+	}
+	
+	@Override
+	public List<String> getClassNames() {
+		return m_classNames;
+	}
+	
+	@Override
+	public boolean containsClass(String className) {
+		return m_classFiles.containsKey(className);
+	}
+	
+	@Override
+	public int getClassSize(String className) {
+		ClassFile classFile = m_classFiles.get(className);
+		if (classFile == null) {
+			return -1;
+		}
+		return classFile.size;
+	}
+	
+	@Override
+	public byte[] getClassBytes(String className)
+	throws IOException {
+		byte[] bytes = new byte[getClassFile(className).size];
+		readClassBytes(className, bytes, 0);
+		return bytes;
+	}
+	
+	@Override
+	public void readClassBytes(String className, byte[] buf, int offset)
+	throws IOException {
+		ClassFile classFile = getClassFile(className);
+		
+		// touching an unmapped buffer crashes the whole JVM, so close() has to wait for reads to finish
+		m_lock.readLock().lock();
+		try {
+			if (m_buf == null) {
+				throw new IOException("Jar file is closed: " + m_file);
+			}
+			
+			// NOTE: reads need their own position, but the mapping itself can be shared between threads
+			ByteBuffer in = m_buf.duplicate();
+			in.position(getDataOffset(classFile, className));
+			switch (classFile.method) {
+				case Stored:
+					in.get(buf, offset, classFile.size);
+				break;
+				
+				case Deflated:
+					inflate(in, classFile, className, buf, offset);
+				break;
+				
+				default:
+					throw new IOException("Unsupported compression method " + classFile.method + " for class " + className + " in " + m_file);
+			}
+		} finally {
+			m_lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void close() {
+		m_lock.writeLock().lock();
+		try {
+			if (m_buf != null) {
+				unmap(m_buf);
+				m_buf = null;
+			}
+		} finally {
+			m_lock.writeLock().unlock();
+		}
+	}
+	
+	private ClassFile getClassFile(String className)
+	throws FileNotFoundException {
+		ClassFile classFile = m_classFiles.get(className);
+		if (classFile == null) {
+			throw new FileNotFoundException("No class " + className + " in " + m_file);
+		}
+		return classFile;
+	}
+	
+	private void readCentralDirectory()
+	throws IOException {
+		
+		// step 1: find the end of the central directory, it's at the end of the file, before a comment of up to 64 KiB
+		int endOffset = -1;
+		for (int i=m_buf.limit() - EndSize; i>=Math.max(0, m_buf.limit() - EndSize - MaxCommentSize); i--) {
+			if (m_buf.getInt(i) == EndSignature) {
+				endOffset = i;
+				break;
+			}
+		}
+		if (endOffset < 0) {
+			throw new IOException("Not a jar file: " + m_file);
+		}
+		long numEntries = getUnsignedShort(endOffset + 10);
+		long offset = getUnsignedInt(endOffset + 16);
+		
+		// step 2: really big jars keep the real numbers in the zip64 end record instead
+		if (endOffset >= 20 && m_buf.getInt(endOffset - 20) == Zip64LocatorSignature) {
+			int zip64EndOffset = checkOffset(m_buf.getLong(endOffset - 12));
+			if (m_buf.getInt(zip64EndOffset) == Zip64EndSignature) {
+				numEntries = m_buf.getLong(zip64EndOffset + 32);
+				offset = m_buf.getLong(zip64EndOffset + 48);
+			}
+		}
+		
+		// step 3: read the entries for the class files
+		int pos = checkOffset(offset);
+		for (long i=0; i<numEntries; i++) {
+			if (pos + 46 > m_buf.limit() || m_buf.getInt(pos) != CentralHeaderSignature) {
+				throw new IOException("Corrupt central directory in jar file: " + m_file);
+			}
+			int method = getUnsignedShort(pos + 10);
+			long compressedSize = getUnsignedInt(pos + 20);
+			long size = getUnsignedInt(pos + 24);
+			int nameLength = getUnsignedShort(pos + 28);
+			int extraLength = getUnsignedShort(pos + 30);
+			int commentLength = getUnsignedShort(pos + 32);
+			long localHeaderOffset = getUnsignedInt(pos + 42);
+			String name = getString(pos + 46, nameLength);
+			
+			// zip64 extra fields only have the values that didn't fit in the header, in this order
+			if (size == Zip64Marker || compressedSize == Zip64Marker || localHeaderOffset == Zip64Marker) {
+				int extraOffset = pos + 46 + nameLength;
+				int extraStop = extraOffset + extraLength;
+				while (extraOffset + 4 <= extraStop) {
+					int id = getUnsignedShort(extraOffset);
+					int length = getUnsignedShort(extraOffset + 2);
+					if (id == Zip64ExtraId) {
+						int fieldOffset = extraOffset + 4;
+						if (size == Zip64Marker) {
+							size = m_buf.getLong(fieldOffset);
+							fieldOffset += 8;
+						}
+						if (compressedSize == Zip64Marker) {
+							compressedSize = m_buf.getLong(fieldOffset);
+							fieldOffset += 8;
+						}
+						if (localHeaderOffset == Zip64Marker) {
+							localHeaderOffset = m_buf.getLong(fieldOffset);
+						}
+						break;
+					}
+					extraOffset += 4 + length;
+				}
+			}
+			
+			if (name.endsWith(".class")) {
+				String className = name.substring(0, name.length() - ".class".length());
+				ClassFile classFile = new ClassFile(method, checkOffset(localHeaderOffset), checkOffset(compressedSize), checkSize(size, className));
+				if (m_classFiles.put(className, classFile) == null) {
+					m_classNames.add(className);
+				}
+			}
+			
+			pos += 46 + nameLength + extraLength + commentLength;
+		}
+	}
+	
+	private int getDataOffset(ClassFile classFile, String className)
+	throws IOException {
+		// the local header can have a different extra field than the central directory, so look it up
+		int pos = classFile.localHeaderOffset;
+		if (pos + 30 > m_buf.limit() || m_buf.getInt(pos) != LocalHeaderSignature) {
+			throw new IOException("Corrupt local header for class " + className + " in " + m_file);
+		}
+		int dataOffset = pos + 30 + getUnsignedShort(pos + 26) + getUnsignedShort(pos + 28);
+		if (dataOffset + classFile.compressedSize > m_buf.limit()) {
+			throw new IOException("Truncated class " + className + " in " + m_file);
+		}
+		return dataOffset;
+	}
+	
+	private void inflate(ByteBuffer in, ClassFile classFile, String className, byte[] buf, int offset)
+	throws IOException {
+		
+		// NOTE: Inflater can't read from a ByteBuffer, so the compressed bytes still have to be copied once
+		// raw deflate streams sometimes need an extra dummy byte at the end of the input
+		InflaterBuffers buffers = Buffers.get();
+		byte[] input = buffers.getInput(classFile.compressedSize + 1);
+		in.get(input, 0, classFile.compressedSize);
+		input[classFile.compressedSize] = 0;
+		
+		Inflater inflater = buffers.inflater;
+		inflater.reset();
+		inflater.setInput(input, 0, classFile.compressedSize + 1);
+		try {
+			int numBytes = 0;
+			while (numBytes < classFile.size) {
+				int numBytesInflated = inflater.inflate(buf, offset + numBytes, classFile.size - numBytes);
+				if (numBytesInflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				numBytes += numBytesInflated;
+			}
+			if (numBytes != classFile.size) {
+				throw new IOException("Corrupt class " + className + " in " + m_file);
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException("Corrupt class " + className + " in " + m_file, ex);
+		}
+	}
+	
+	private int getUnsignedShort(int pos) {
+		return m_buf.getShort(pos) & 0xffff;
+	}
+	
+	private long getUnsignedInt(int pos) {
+		return m_buf.getInt(pos) & 0xffffffffL;
+	}
+	
+	private String getString(int pos, int length) {
+		ByteBuffer in = m_buf.duplicate();
+		in.position(pos);
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private int checkOffset(long offset)
+	throws IOException {
+		if (offset < 0 || offset > m_buf.limit()) {
+			throw new IOException("Corrupt central directory in jar file: " + m_file);
+		}
+		return (int)offset;
+	}
+	
+	private int checkSize(long size, String className)
+	throws IOException {
+		// classes get compressed, so the uncompressed size can be bigger than the whole jar, just not bigger than an array
+		if (size < 0 || size > Integer.MAX_VALUE) {
+			throw new IOException("Class " + className + " is too big in jar file: " + m_file);
+		}
+		return (int)size;
+	}
+	
+	private static void unmap(ByteBuffer buf) {
+		// there's no public API to unmap a file, so ask the JDK nicely
+		// if it won't let us, the mapping goes away whenever the buffer gets garbage collected
+		try {
+			// java 9 and newer
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buf);
+			return;
+		} catch (Exception ex) {
+			// not there, try the old way
+		}
+		try {
+			// java 8 and older
+			Method getCleaner = buf.getClass().getMethod("cleaner");
+			getCleaner.setAccessible(true);
+			Object cleaner = getCleaner.invoke(buf);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Exception ex) {
+			// oh well, leave it to the GC
+		}
+	}
+	
+	private static class ClassFile {
+		
+		public int method;
+		public int localHeaderOffset;
+		public int compressedSize;
+		public int size;
+		
+		public ClassFile(int method, int localHeaderOffset, int compressedSize, int size) {
+			this.method = method;
+			this.localHeaderOffset = localHeaderOffset;
+			this.compressedSize = compressedSize;
+			this.size = size;
+		}
+	}
+	
+	private static class InflaterBuffers {
+		
+		public Inflater inflater;
+		private byte[] m_input;
+		
+		public InflaterBuffers() {
+			inflater = new Inflater(true);
+			m_input = new byte[0];
+		}
+		
+		public byte[] getInput(int size) {
+			if (m_input.length < size) {
+				m_input = new byte[Math.max(size, m_input.length*2)];
+			}
+			return m_input;
+		}
+	}
+}
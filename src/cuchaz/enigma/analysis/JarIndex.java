@@ -10,16 +10,30 @@
  ******************************************************************************/
 package cuchaz.enigma.analysis;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.jar.JarFile;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import javassist.CannotCompileException;
+import javassist.ClassPool;
 import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.CtConstructor;
@@ -31,23 +45,22 @@ import javassist.bytecode.Descriptor;
 import javassist.bytecode.EnclosingMethodAttribute;
 import javassist.bytecode.FieldInfo;
 import javassist.bytecode.InnerClassesAttribute;
-import javassist.expr.ConstructorCall;
-import javassist.expr.ExprEditor;
-import javassist.expr.FieldAccess;
-import javassist.expr.MethodCall;
-import javassist.expr.NewExpr;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 
 import cuchaz.enigma.Constants;
+import cuchaz.enigma.Deobfuscator.ProgressListener;
 import cuchaz.enigma.bytecode.ClassRenamer;
+import cuchaz.enigma.bytecode.ReferenceScanner;
 import cuchaz.enigma.mapping.ArgumentEntry;
 import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.ClassNameReplacer;
 import cuchaz.enigma.mapping.ConstructorEntry;
 import cuchaz.enigma.mapping.Entry;
 import cuchaz.enigma.mapping.EntryFactory;
@@ -57,126 +70,1021 @@ import cuchaz.enigma.mapping.Translator;
 
 public class JarIndex {
 	
+	private static final int MinClassesPerTask = 4;
+	
+	// rough heap cost of a parsed class model, per byte of class file
+	private static final int ClassModelBytesPerClassByte = 12;
+	
+	// a new edge waiting to be frozen costs a source int and a target int
+	private static final int BytesPerNewEdge = 8;
+	
+	private interface ClassIndexer {
+		void index(JarIndex index, CtClass c);
+	}
+	
 	private Set<ClassEntry> m_obfClassEntries;
 	private TranslationIndex m_translationIndex;
-	private Map<Entry,Access> m_access;
-	private Multimap<ClassEntry,FieldEntry> m_fields;
-	private Multimap<ClassEntry,BehaviorEntry> m_behaviors;
-	private Multimap<String,MethodEntry> m_methodImplementations;
-	private Multimap<BehaviorEntry,EntryReference<BehaviorEntry,BehaviorEntry>> m_behaviorReferences;
-	private Multimap<FieldEntry,EntryReference<FieldEntry,BehaviorEntry>> m_fieldReferences;
+	private MemberFlags m_memberFlags;
+	private SymbolTable m_symbols;
+	private ReferenceGraph m_members;
+	private ReferenceGraph m_behaviorReferences;
+	private ReferenceGraph m_fieldReferences;
+	private ReferenceGraph m_classConstants;
+	private ConstantIndex m_constants;
 	private Multimap<ClassEntry,ClassEntry> m_innerClassesByOuter;
 	private Map<ClassEntry,ClassEntry> m_outerClassesByInner;
 	private Map<ClassEntry,BehaviorEntry> m_anonymousClasses;
 	private Map<MethodEntry,MethodEntry> m_bridgedMethods;
+	private Map<MethodEntry,Set<MethodEntry>> m_methodFamilies;
+	private Map<ClassEntry,String> m_classHashes;
+	private Map<String,String> m_innerClassRenames;
+	private boolean m_buildInnerClasses;
+	private long m_memoryBudget;
+	private File m_spillDir;
+	private IndexStats m_stats;
 	
 	public JarIndex() {
 		m_obfClassEntries = Sets.newHashSet();
 		m_translationIndex = new TranslationIndex();
-		m_access = Maps.newHashMap();
-		m_fields = HashMultimap.create();
-		m_behaviors = HashMultimap.create();
-		m_methodImplementations = HashMultimap.create();
-		m_behaviorReferences = HashMultimap.create();
-		m_fieldReferences = HashMultimap.create();
+		m_memberFlags = new MemberFlags();
+		m_symbols = new SymbolTable();
+		m_members = new ReferenceGraph();
+		m_behaviorReferences = new ReferenceGraph();
+		m_fieldReferences = new ReferenceGraph();
+		m_classConstants = new ReferenceGraph();
+		m_constants = new ConstantIndex();
 		m_innerClassesByOuter = HashMultimap.create();
 		m_outerClassesByInner = Maps.newHashMap();
 		m_anonymousClasses = Maps.newHashMap();
 		m_bridgedMethods = Maps.newHashMap();
+		m_methodFamilies = Maps.newHashMap();
+		m_classHashes = Maps.newHashMap();
+		m_innerClassRenames = Maps.newHashMap();
+		m_buildInnerClasses = false;
+		m_memoryBudget = 0;
+		m_spillDir = null;
+		m_stats = new IndexStats();
+	}
+	
+	private JarIndex(TranslationIndex translationIndex) {
+		this();
+		m_translationIndex = translationIndex;
 	}
 	
 	public void indexJar(JarFile jar, boolean buildInnerClasses) {
+		indexJar(jar, buildInnerClasses, 1);
+	}
+	
+	public void indexJar(JarFile jar, boolean buildInnerClasses, int numThreads) {
+		indexJar(jar, buildInnerClasses, numThreads, null);
+	}
+	
+	public void indexJar(JarFile jar, boolean buildInnerClasses, int numThreads, ProgressListener progress) {
+		try (ClassSource source = JarClassIterator.openSource(jar)) {
+			indexJar(source, buildInnerClasses, numThreads, progress);
+		}
+	}
+	
+	public static long getDefaultMemoryBudget() {
+		// eg -Denigma.index.memory=512m, no budget means index everything on the heap
+		String budget = System.getProperty("enigma.index.memory");
+		if (budget == null || budget.isEmpty()) {
+			return 0;
+		}
+		budget = budget.trim().toLowerCase();
+		long scale = 1;
+		switch (budget.charAt(budget.length() - 1)) {
+			case 'k': scale = 1L << 10; break;
+			case 'm': scale = 1L << 20; break;
+			case 'g': scale = 1L << 30; break;
+		}
+		if (scale > 1) {
+			budget = budget.substring(0, budget.length() - 1);
+		}
+		try {
+			return Long.parseLong(budget)*scale;
+		} catch (NumberFormatException ex) {
+			System.err.println("WARNING: ignoring bad index memory budget: " + System.getProperty("enigma.index.memory"));
+			return 0;
+		}
+	}
+	
+	public long getMemoryBudget() {
+		return m_memoryBudget;
+	}
+	
+	public void setMemoryBudget(long numBytes) {
+		setMemoryBudget(numBytes, new File(System.getProperty("java.io.tmpdir")));
+	}
+	
+	public void setMemoryBudget(long numBytes, File spillDir) {
+		
+		// NOTE: the budget covers the parsed classes and the reference edges, which are most of the cost of indexing
+		// the class and member tables (and everything else) always stay on the heap
+		m_memoryBudget = numBytes;
+		m_spillDir = spillDir;
+		if (numBytes > 0) {
+			spillReferences();
+		}
+	}
+	
+	private void spillReferences() {
+		// give each reference graph a quarter of the budget for buffering new edges, the rest goes to the parsed classes
+		int maxNewEdges = (int)Math.min(Integer.MAX_VALUE/BytesPerNewEdge, m_memoryBudget/4/BytesPerNewEdge);
+		m_behaviorReferences.spill(m_spillDir, maxNewEdges);
+		m_fieldReferences.spill(m_spillDir, maxNewEdges);
+		m_classConstants.spill(m_spillDir, maxNewEdges);
+	}
+	
+	public void indexJar(ClassSource source, boolean buildInnerClasses, int numThreads) {
+		indexJar(source, buildInnerClasses, numThreads, null);
+	}
+	
+	public void indexJar(ClassSource source, boolean buildInnerClasses, int numThreads, ProgressListener progress) {
+		
+		m_buildInnerClasses = buildInnerClasses;
+		m_stats = new IndexStats(progress, buildInnerClasses ? 8 : 6);
+		m_stats.setNumThreads(numThreads);
 		
 		// step 1: read the class names
-		for (ClassEntry classEntry : JarClassIterator.getClassEntries(jar)) {
-			if (classEntry.isInDefaultPackage()) {
-				// move out of default package
-				classEntry = new ClassEntry(Constants.NonePackage + "/" + classEntry.getName());
-			}
-			m_obfClassEntries.add(classEntry);
+		m_stats.startPhase("Read class names");
+		for (ClassEntry classEntry : JarClassIterator.getClassEntries(source)) {
+			m_obfClassEntries.add(getObfClassEntry(classEntry));
 		}
 		
-		// step 2: index field/method/constructor access
-		for (CtClass c : JarClassIterator.classes(jar)) {
-			ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
-			for (CtField field : c.getDeclaredFields()) {
-				FieldEntry fieldEntry = EntryFactory.getFieldEntry(field);
-				m_access.put(fieldEntry, Access.get(field));
-				m_fields.put(fieldEntry.getClassEntry(), fieldEntry);
+		ForkJoinPool pool = null;
+		if (numThreads > 1) {
+			pool = new ForkJoinPool(numThreads);
+		}
+		try {
+			
+			// if all the classes fit in the budget, read and parse each class only once and share the class models between the passes
+			// otherwise, each pass reads the classes again one batch at a time
+			List<List<ClassEntry>> batches = getClassBatches(source);
+			m_stats.setNumBatches(batches.size());
+			List<CtClass> classes = null;
+			if (batches.size() == 1) {
+				m_stats.startPhase("Read classes");
+				classes = readClasses(source, batches.get(0), pool);
 			}
-			for (CtBehavior behavior : c.getDeclaredBehaviors()) {
-				BehaviorEntry behaviorEntry = EntryFactory.getBehaviorEntry(behavior);
-				m_access.put(behaviorEntry, Access.get(behavior));
-				m_behaviors.put(behaviorEntry.getClassEntry(), behaviorEntry);
+			
+			// NOTE: when there's more than one batch, each pass reads its classes again, so the reading time is part of every pass
+			
+			// steps 2 and 3: index field/method/constructor access, extends, implements, fields, and methods
+			m_stats.startPhase("Index members");
+			for (List<ClassEntry> batch : batches) {
+				indexClasses(pool, classes != null ? classes : readClasses(source, batch, pool), null, new ClassIndexer() {
+					@Override
+					public void index(JarIndex index, CtClass c) {
+						index.indexClassMembers(c);
+					}
+				});
 			}
-		}
-		
-		// step 3: index extends, implements, fields, and methods
-		for (CtClass c : JarClassIterator.classes(jar)) {
-			ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
-			m_translationIndex.indexClass(c);
-			String className = Descriptor.toJvmName(c.getName());
-			for (String interfaceName : c.getClassFile().getInterfaces()) {
-				className = Descriptor.toJvmName(className);
-				interfaceName = Descriptor.toJvmName(interfaceName);
-				if (className.equals(interfaceName)) {
-					throw new IllegalArgumentException("Class cannot be its own interface! " + className);
+			
+			// step 4: index field, method, constructor references
+			// NOTE: this needs the complete translation index to resolve the referenced entries
+			m_stats.startPhase("Index references");
+			for (List<ClassEntry> batch : batches) {
+				indexClasses(pool, classes != null ? classes : readClasses(source, batch, pool), m_translationIndex, new ClassIndexer() {
+					@Override
+					public void index(JarIndex index, CtClass c) {
+						index.indexClassReferences(c);
+					}
+				});
+			}
+			
+			// pack the member and reference edges, nothing adds any more of them after this
+			m_stats.startPhase("Freeze references");
+			freezeGraphs();
+			
+			if (buildInnerClasses) {
+				
+				// step 5: index inner classes and anonymous classes
+				m_stats.startPhase("Find outer classes");
+				for (List<ClassEntry> batch : batches) {
+					indexOuterClasses(pool, classes != null ? classes : readClasses(source, batch, pool));
 				}
+				
+				// step 6: update other indices with inner class info
+				m_stats.startPhase("Rename inner classes");
+				m_innerClassRenames = getInnerClassRenames();
+				renameClasses(m_innerClassRenames);
 			}
-			for (CtBehavior behavior : c.getDeclaredBehaviors()) {
-				indexBehavior(behavior);
+			
+			// step 7: group related methods, now that the class names won't change anymore
+			m_stats.startPhase("Group method families");
+			indexMethodFamilies();
+			
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
 			}
 		}
 		
-		// step 4: index field, method, constructor references
-		for (CtClass c : JarClassIterator.classes(jar)) {
-			ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
-			for (CtBehavior behavior : c.getDeclaredBehaviors()) {
-				indexBehaviorReferences(behavior);
+		m_stats.finish(this);
+	}
+	
+	public int updateJar(JarFile jar) {
+		try (ClassSource source = JarClassIterator.openSource(jar)) {
+			return updateJar(source);
+		}
+	}
+	
+	public int updateJar(ClassSource source) {
+		
+		// NOTE: this index should have been built by indexJar() from an older version of the same jar
+		// only the classes that changed (and the classes they affect) get read again
+		// returns the number of classes that were indexed again
+		
+		// step 1: find the changed classes by their contents
+		Map<ClassEntry,String> classHashes = Maps.newHashMap();
+		Map<ClassEntry,CtClass> changedClasses = Maps.newLinkedHashMap();
+		for (ClassEntry jarClassEntry : JarClassIterator.getClassEntries(source)) {
+			byte[] bytes = JarClassIterator.getBytes(source, jarClassEntry);
+			String hash = hashClass(bytes);
+			classHashes.put(jarClassEntry, hash);
+			if (!hash.equals(m_classHashes.get(jarClassEntry))) {
+				changedClasses.put(jarClassEntry, readClass(jarClassEntry, bytes));
+			}
+		}
+		Set<ClassEntry> removedClassEntries = Sets.difference(m_classHashes.keySet(), classHashes.keySet());
+		if (changedClasses.isEmpty() && removedClassEntries.isEmpty()) {
+			return 0;
+		}
+		
+		// the index uses class names after the inner class renames, the jar doesn't
+		Map<ClassEntry,ClassEntry> jarClassEntries = Maps.newHashMap();
+		for (ClassEntry jarClassEntry : classHashes.keySet()) {
+			jarClassEntries.put(getIndexedClassEntry(jarClassEntry), jarClassEntry);
+		}
+		Map<String,String> unrenames = Maps.newHashMap();
+		for (Map.Entry<String,String> rename : m_innerClassRenames.entrySet()) {
+			unrenames.put(rename.getValue(), rename.getKey());
+		}
+		Set<ClassEntry> changedClassEntries = Sets.newHashSet();
+		for (ClassEntry jarClassEntry : changedClasses.keySet()) {
+			changedClassEntries.add(getIndexedClassEntry(jarClassEntry));
+		}
+		for (ClassEntry jarClassEntry : removedClassEntries) {
+			changedClassEntries.add(getIndexedClassEntry(jarClassEntry));
+		}
+		
+		// step 2: remember how the old versions of the classes were connected to everything else
+		Map<ClassEntry,Set<ClassEntry>> oldRelatedClassEntries = Maps.newHashMap();
+		Map<ClassEntry,List<Object>> oldHierarchies = Maps.newHashMap();
+		Set<String> changedMemberKeys = Sets.newHashSet();
+		Set<ClassEntry> outerClassCandidates = Sets.newHashSet(changedClassEntries);
+		for (ClassEntry classEntry : changedClassEntries) {
+			oldRelatedClassEntries.put(classEntry, getRelatedClasses(classEntry));
+			oldHierarchies.put(classEntry, getHierarchy(classEntry));
+			addMemberKeys(changedMemberKeys, classEntry);
+			addConstructedClasses(outerClassCandidates, classEntry);
+		}
+		
+		// step 3: remove the old versions
+		removeClasses(changedClassEntries);
+		
+		// step 4: index the new versions in the same namespace as the rest of the index
+		for (CtClass c : changedClasses.values()) {
+			renameInnerClasses(c);
+			m_obfClassEntries.add(EntryFactory.getClassEntry(c));
+			indexClassMembers(c);
+		}
+		m_members.freeze(m_symbols.size());
+		Set<ClassEntry> relatedClassEntries = Sets.newHashSet();
+		Set<ClassEntry> hierarchyRelatedClassEntries = Sets.newHashSet();
+		for (ClassEntry classEntry : changedClassEntries) {
+			Set<ClassEntry> classEntries = getRelatedClasses(classEntry);
+			classEntries.addAll(oldRelatedClassEntries.get(classEntry));
+			relatedClassEntries.addAll(classEntries);
+			if (!getHierarchy(classEntry).equals(oldHierarchies.get(classEntry))) {
+				hierarchyRelatedClassEntries.addAll(classEntries);
 			}
+			addMemberKeys(changedMemberKeys, classEntry);
+		}
+		
+		// step 5: references in other classes might resolve to different classes now, so scan those again too
+		Set<ClassEntry> callerClassEntries = getCallerClasses(relatedClassEntries, hierarchyRelatedClassEntries, changedMemberKeys);
+		callerClassEntries.removeAll(changedClassEntries);
+		callerClassEntries.retainAll(jarClassEntries.keySet());
+		removeReferences(callerClassEntries);
+		Map<ClassEntry,CtClass> classes = Maps.newLinkedHashMap();
+		for (CtClass c : changedClasses.values()) {
+			classes.put(EntryFactory.getClassEntry(c), c);
+		}
+		for (ClassEntry callerClassEntry : callerClassEntries) {
+			classes.put(callerClassEntry, readIndexedClass(source, jarClassEntries.get(callerClassEntry)));
+		}
+		for (CtClass c : classes.values()) {
+			indexClassReferences(c);
 		}
+		freezeGraphs();
 		
-		if (buildInnerClasses) {
+		if (m_buildInnerClasses) {
 			
-			// step 5: index inner classes and anonymous classes
-			for (CtClass c : JarClassIterator.classes(jar)) {
-				ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
-				ClassEntry innerClassEntry = EntryFactory.getClassEntry(c);
-				ClassEntry outerClassEntry = findOuterClass(c);
+			// step 6: find the outer classes again for any class whose constructor callers might have changed
+			for (ClassEntry classEntry : changedClassEntries) {
+				addConstructedClasses(outerClassCandidates, classEntry);
+			}
+			for (FieldEntry fieldEntry : getObfFieldEntries()) {
+				// synthetic fields can point to outer classes too
+				if (fieldEntry.getType().hasClass() && changedClassEntries.contains(fieldEntry.getType().getClassEntry())) {
+					outerClassCandidates.add(fieldEntry.getClassEntry());
+				}
+			}
+			for (ClassEntry classEntry : outerClassCandidates) {
+				ClassEntry innerClassEntry = EntryRenamer.renameClassesInThing(unrenames, classEntry);
+				ClassEntry outerClassEntry = m_outerClassesByInner.remove(innerClassEntry);
 				if (outerClassEntry != null) {
-					m_innerClassesByOuter.put(outerClassEntry, innerClassEntry);
-					boolean innerWasAdded = m_outerClassesByInner.put(innerClassEntry, outerClassEntry) == null;
-					assert (innerWasAdded);
-					
-					BehaviorEntry enclosingBehavior = isAnonymousClass(c, outerClassEntry);
-					if (enclosingBehavior != null) {
-						m_anonymousClasses.put(innerClassEntry, enclosingBehavior);
-						
-						// DEBUG
-						//System.out.println("ANONYMOUS: " + outerClassEntry.getName() + "$" + innerClassEntry.getSimpleName());
-					} else {
-						// DEBUG
-						//System.out.println("INNER: " + outerClassEntry.getName() + "$" + innerClassEntry.getSimpleName());
+					m_innerClassesByOuter.remove(outerClassEntry, innerClassEntry);
+				}
+				m_anonymousClasses.remove(innerClassEntry);
+				
+				if (jarClassEntries.containsKey(classEntry)) {
+					CtClass c = classes.get(classEntry);
+					if (c == null) {
+						c = readIndexedClass(source, jarClassEntries.get(classEntry));
 					}
+					indexOuterClass(c, innerClassEntry, unrenames);
 				}
 			}
 			
-			// step 6: update other indices with inner class info
+			// step 7: rename the classes whose inner class names changed
+			Map<String,String> innerClassRenames = getInnerClassRenames();
 			Map<String,String> renames = Maps.newHashMap();
-			for (ClassEntry innerClassEntry : m_innerClassesByOuter.values()) {
-				String newName = innerClassEntry.buildClassEntry(getObfClassChain(innerClassEntry)).getName();
-				if (!innerClassEntry.getName().equals(newName)) {
-					// DEBUG
-					//System.out.println("REPLACE: " + innerClassEntry.getName() + " WITH " + newName);
-					renames.put(innerClassEntry.getName(), newName);
+			for (String className : Sets.union(m_innerClassRenames.keySet(), innerClassRenames.keySet())) {
+				String oldName = EntryRenamer.renameClassesInThing(m_innerClassRenames, className);
+				String newName = EntryRenamer.renameClassesInThing(innerClassRenames, className);
+				if (!oldName.equals(newName)) {
+					renames.put(oldName, newName);
+				}
+			}
+			m_innerClassRenames = innerClassRenames;
+			if (!renames.isEmpty()) {
+				renameClasses(renames);
+			}
+		}
+		
+		// step 8: group related methods again
+		indexMethodFamilies();
+		
+		m_classHashes = classHashes;
+		return classes.size();
+	}
+	
+	private ClassEntry getIndexedClassEntry(ClassEntry jarClassEntry) {
+		return EntryRenamer.renameClassesInThing(m_innerClassRenames, getObfClassEntry(jarClassEntry));
+	}
+	
+	private CtClass readIndexedClass(ClassSource source, ClassEntry jarClassEntry) {
+		CtClass c = readClass(jarClassEntry, JarClassIterator.getBytes(source, jarClassEntry));
+		renameInnerClasses(c);
+		return c;
+	}
+	
+	private Set<ClassEntry> getRelatedClasses(ClassEntry classEntry) {
+		
+		// get all the classes whose member references could resolve through this class
+		Set<ClassEntry> classEntries = Sets.newHashSet(classEntry);
+		classEntries.addAll(m_translationIndex.getImplementations(classEntry));
+		addResolvableClasses(classEntries, m_translationIndex.getResolutionAncestry(classEntry));
+		Set<ClassEntry> subclassEntries = Sets.newHashSet(classEntry);
+		m_translationIndex.getSubclassesRecursively(subclassEntries, classEntry);
+		for (ClassEntry subclassEntry : subclassEntries) {
+			classEntries.add(subclassEntry);
+			for (ClassEntry interfaceEntry : m_translationIndex.getResolutionInterfaces(subclassEntry)) {
+				addResolvableClasses(classEntries, Arrays.asList(interfaceEntry));
+				addResolvableClasses(classEntries, m_translationIndex.getResolutionAncestry(interfaceEntry));
+			}
+		}
+		return classEntries;
+	}
+	
+	private void addResolvableClasses(Set<ClassEntry> out, Collection<ClassEntry> classEntries) {
+		// NOTE: references only ever resolve up to classes in the jar (or the library index), so skip the rest
+		for (ClassEntry classEntry : classEntries) {
+			if (containsObfClass(classEntry) || m_translationIndex.isLibraryClass(classEntry)) {
+				out.add(classEntry);
+			}
+		}
+	}
+	
+	private List<Object> getHierarchy(ClassEntry classEntry) {
+		return Arrays.<Object>asList(
+			m_translationIndex.getSuperclass(classEntry),
+			Sets.newHashSet(m_translationIndex.getInterfaces(classEntry))
+		);
+	}
+	
+	private void addMemberKeys(Set<String> memberKeys, ClassEntry classEntry) {
+		int classId = m_symbols.getId(classEntry);
+		for (int i=m_members.getTargetsStart(classId); i<m_members.getTargetsStop(classId); i++) {
+			String memberKey = getMemberKey(m_symbols.getEntry(m_members.getTarget(i)));
+			if (memberKey != null) {
+				memberKeys.add(memberKey);
+			}
+		}
+	}
+	
+	private static String getMemberKey(Entry entry) {
+		// constructors don't resolve to other classes, so they don't get keys
+		if (entry instanceof FieldEntry) {
+			return entry.getName() + ((FieldEntry)entry).getType();
+		} else if (entry instanceof MethodEntry) {
+			return entry.getName() + ((MethodEntry)entry).getSignature();
+		}
+		return null;
+	}
+	
+	private void addConstructedClasses(Set<ClassEntry> classEntries, ClassEntry classEntry) {
+		int classId = m_symbols.getId(classEntry);
+		for (int i=m_members.getTargetsStart(classId); i<m_members.getTargetsStop(classId); i++) {
+			int behaviorId = m_members.getTarget(i);
+			for (int j=m_behaviorReferences.getTargetsStart(behaviorId); j<m_behaviorReferences.getTargetsStop(behaviorId); j++) {
+				Entry calledEntry = m_symbols.getEntry(m_behaviorReferences.getTarget(j));
+				if (calledEntry instanceof ConstructorEntry) {
+					classEntries.add(calledEntry.getClassEntry());
+				}
+			}
+		}
+	}
+	
+	private Set<ClassEntry> getCallerClasses(Set<ClassEntry> relatedClassEntries, Set<ClassEntry> hierarchyRelatedClassEntries, Set<String> memberKeys) {
+		Set<ClassEntry> callerClassEntries = Sets.newHashSet();
+		for (int id=0; id<m_symbols.size(); id++) {
+			
+			// could a reference to this entry resolve differently now?
+			Entry entry = m_symbols.getEntry(id);
+			String memberKey = getMemberKey(entry);
+			if (memberKey == null) {
+				continue;
+			}
+			boolean isAffected = hierarchyRelatedClassEntries.contains(entry.getClassEntry())
+				|| (relatedClassEntries.contains(entry.getClassEntry()) && memberKeys.contains(memberKey));
+			if (!isAffected) {
+				continue;
+			}
+			
+			ReferenceGraph references = entry instanceof FieldEntry ? m_fieldReferences : m_behaviorReferences;
+			for (int i=references.getSourcesStart(id); i<references.getSourcesStop(id); i++) {
+				callerClassEntries.add(m_symbols.getEntry(references.getSource(i)).getClassEntry());
+			}
+		}
+		return callerClassEntries;
+	}
+	
+	private void removeClasses(Set<ClassEntry> classEntries) {
+		BitSet ids = new BitSet();
+		for (ClassEntry classEntry : classEntries) {
+			m_obfClassEntries.remove(classEntry);
+			m_translationIndex.removeClass(classEntry);
+			int classId = m_symbols.getId(classEntry);
+			if (classId != SymbolTable.NoId) {
+				ids.set(classId);
+			}
+			for (int i=m_members.getTargetsStart(classId); i<m_members.getTargetsStop(classId); i++) {
+				Entry memberEntry = m_symbols.getEntry(m_members.getTarget(i));
+				m_memberFlags.remove(m_members.getTarget(i));
+				m_bridgedMethods.remove(memberEntry);
+				ids.set(m_members.getTarget(i));
+			}
+		}
+		m_members.freeze(m_symbols.size(), ids);
+		m_behaviorReferences.freeze(m_symbols.size(), ids);
+		m_fieldReferences.freeze(m_symbols.size(), ids);
+		m_classConstants.freeze(m_symbols.size(), ids);
+		m_constants.freeze(ids);
+	}
+	
+	private void removeReferences(Set<ClassEntry> classEntries) {
+		BitSet ids = new BitSet();
+		for (ClassEntry classEntry : classEntries) {
+			int classId = m_symbols.getId(classEntry);
+			for (int i=m_members.getTargetsStart(classId); i<m_members.getTargetsStop(classId); i++) {
+				ids.set(m_members.getTarget(i));
+			}
+		}
+		m_behaviorReferences.freeze(m_symbols.size(), ids);
+		m_fieldReferences.freeze(m_symbols.size(), ids);
+		m_classConstants.freeze(m_symbols.size(), ids);
+		m_constants.freeze(ids);
+	}
+	
+	private List<List<ClassEntry>> getClassBatches(ClassSource source) {
+		
+		List<ClassEntry> classEntries = JarClassIterator.getClassEntries(source);
+		if (m_memoryBudget <= 0) {
+			return Arrays.asList(classEntries);
+		}
+		
+		// the other half of the budget goes to the parsed classes
+		List<List<ClassEntry>> batches = Lists.newArrayList();
+		List<ClassEntry> batch = Lists.newArrayList();
+		long batchBytes = 0;
+		for (ClassEntry classEntry : classEntries) {
+			long classBytes;
+			try {
+				classBytes = (long)source.getClassSize(classEntry.getName())*ClassModelBytesPerClassByte;
+			} catch (IOException ex) {
+				throw new Error("Unable to read class: " + classEntry.getName(), ex);
+			}
+			if (!batch.isEmpty() && batchBytes + classBytes > m_memoryBudget/2) {
+				batches.add(batch);
+				batch = Lists.newArrayList();
+				batchBytes = 0;
+			}
+			batch.add(classEntry);
+			batchBytes += classBytes;
+		}
+		batches.add(batch);
+		return batches;
+	}
+	
+	private List<CtClass> readClasses(ClassSource source, List<ClassEntry> classEntries, ForkJoinPool pool) {
+		
+		CtClass[] classes = new CtClass[classEntries.size()];
+		String[] hashes = new String[classEntries.size()];
+		if (pool == null) {
+			readClasses(source, classEntries, classes, hashes, 0, classes.length);
+		} else {
+			// each worker writes to its own slots, so the class order matches the serial read
+			pool.invoke(new ReadClassesTask(source, classEntries, classes, hashes, 0, classes.length, getTaskSize(classes.length, pool)));
+		}
+		
+		// remember the class contents, so updateJar() can tell which classes changed
+		for (int i=0; i<hashes.length; i++) {
+			m_classHashes.put(classEntries.get(i), hashes[i]);
+		}
+		return Lists.newArrayList(classes);
+	}
+	
+	private static void readClasses(ClassSource source, List<ClassEntry> classEntries, CtClass[] classes, String[] hashes, int start, int stop) {
+		for (int i=start; i<stop; i++) {
+			byte[] bytes = JarClassIterator.getBytes(source, classEntries.get(i));
+			hashes[i] = hashClass(bytes);
+			classes[i] = readClass(classEntries.get(i), bytes);
+		}
+	}
+	
+	private static CtClass readClass(ClassEntry jarClassEntry, byte[] bytes) {
+		CtClass c = JarClassIterator.getClass(jarClassEntry, bytes);
+		ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
+		return c;
+	}
+	
+	private static String hashClass(byte[] bytes) {
+		return Hashing.sha1().hashBytes(bytes).toString();
+	}
+	
+	private static ClassEntry getObfClassEntry(ClassEntry jarClassEntry) {
+		if (jarClassEntry.isInDefaultPackage()) {
+			// move out of default package
+			return EntryFactory.getClassEntry(Constants.NonePackage + "/" + jarClassEntry.getName());
+		}
+		return jarClassEntry;
+	}
+	
+	private void indexClasses(ForkJoinPool pool, List<CtClass> classes, TranslationIndex sharedTranslationIndex, ClassIndexer indexer) {
+		
+		if (pool == null) {
+			for (CtClass c : classes) {
+				indexer.index(this, c);
+			}
+			return;
+		}
+		
+		// build partial indices on the workers, then merge them back in class order
+		merge(pool.invoke(new IndexClassesTask(classes, 0, classes.size(), getTaskSize(classes.size(), pool), sharedTranslationIndex, indexer)));
+	}
+	
+	private static int getTaskSize(int numClasses, ForkJoinPool pool) {
+		// make a few more tasks than workers so work stealing can balance the load
+		return Math.max(MinClassesPerTask, numClasses/(pool.getParallelism()*4));
+	}
+	
+	private static class ReadClassesTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = -6003212436416098651L;
+		
+		private ClassSource m_source;
+		private List<ClassEntry> m_classEntries;
+		private CtClass[] m_classes;
+		private String[] m_hashes;
+		private int m_start;
+		private int m_stop;
+		private int m_taskSize;
+		
+		public ReadClassesTask(ClassSource source, List<ClassEntry> classEntries, CtClass[] classes, String[] hashes, int start, int stop, int taskSize) {
+			m_source = source;
+			m_classEntries = classEntries;
+			m_classes = classes;
+			m_hashes = hashes;
+			m_start = start;
+			m_stop = stop;
+			m_taskSize = taskSize;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (m_stop - m_start <= m_taskSize) {
+				readClasses(m_source, m_classEntries, m_classes, m_hashes, m_start, m_stop);
+				return;
+			}
+			
+			int mid = (m_start + m_stop)/2;
+			invokeAll(
+				new ReadClassesTask(m_source, m_classEntries, m_classes, m_hashes, m_start, mid, m_taskSize),
+				new ReadClassesTask(m_source, m_classEntries, m_classes, m_hashes, mid, m_stop, m_taskSize)
+			);
+		}
+	}
+	
+	private static class IndexClassesTask extends RecursiveTask<JarIndex> {
+		
+		private static final long serialVersionUID = 2540839454322473085L;
+		
+		private List<CtClass> m_classes;
+		private int m_start;
+		private int m_stop;
+		private int m_taskSize;
+		private TranslationIndex m_sharedTranslationIndex;
+		private ClassIndexer m_indexer;
+		
+		public IndexClassesTask(List<CtClass> classes, int start, int stop, int taskSize, TranslationIndex sharedTranslationIndex, ClassIndexer indexer) {
+			m_classes = classes;
+			m_start = start;
+			m_stop = stop;
+			m_taskSize = taskSize;
+			m_sharedTranslationIndex = sharedTranslationIndex;
+			m_indexer = indexer;
+		}
+		
+		@Override
+		protected JarIndex compute() {
+			
+			if (m_stop - m_start <= m_taskSize) {
+				// index this range into a private partial index
+				JarIndex partialIndex;
+				if (m_sharedTranslationIndex != null) {
+					partialIndex = new JarIndex(m_sharedTranslationIndex);
+				} else {
+					partialIndex = new JarIndex();
+				}
+				for (int i=m_start; i<m_stop; i++) {
+					m_indexer.index(partialIndex, m_classes.get(i));
+				}
+				return partialIndex;
+			}
+			
+			// split the range, and merge the halves in order so the result is deterministic
+			int mid = (m_start + m_stop)/2;
+			IndexClassesTask left = new IndexClassesTask(m_classes, m_start, mid, m_taskSize, m_sharedTranslationIndex, m_indexer);
+			IndexClassesTask right = new IndexClassesTask(m_classes, mid, m_stop, m_taskSize, m_sharedTranslationIndex, m_indexer);
+			left.fork();
+			JarIndex rightIndex = right.compute();
+			JarIndex leftIndex = left.join();
+			leftIndex.merge(rightIndex);
+			return leftIndex;
+		}
+	}
+	
+	private void merge(JarIndex other) {
+		m_obfClassEntries.addAll(other.m_obfClassEntries);
+		if (other.m_translationIndex != m_translationIndex) {
+			m_translationIndex.merge(other.m_translationIndex);
+		}
+		int[] ids = m_symbols.addAll(other.m_symbols);
+		m_memberFlags.addAll(other.m_memberFlags, ids);
+		m_members.addEdges(other.m_members, ids);
+		m_behaviorReferences.addEdges(other.m_behaviorReferences, ids);
+		m_fieldReferences.addEdges(other.m_fieldReferences, ids);
+		m_classConstants.addEdges(other.m_classConstants, ids);
+		m_constants.addUses(other.m_constants, ids);
+		m_innerClassesByOuter.putAll(other.m_innerClassesByOuter);
+		m_outerClassesByInner.putAll(other.m_outerClassesByInner);
+		m_anonymousClasses.putAll(other.m_anonymousClasses);
+		m_bridgedMethods.putAll(other.m_bridgedMethods);
+	}
+	
+	private void freezeGraphs() {
+		m_members.freeze(m_symbols.size());
+		m_behaviorReferences.freeze(m_symbols.size());
+		m_fieldReferences.freeze(m_symbols.size());
+		m_classConstants.freeze(m_symbols.size());
+		m_constants.freeze();
+	}
+	
+	private static class OuterClassInfo {
+		
+		public ClassEntry outerClassEntry;
+		public BehaviorEntry enclosingBehavior;
+		
+		// hang on to the warnings, so they come out in class order even when the classes are checked in parallel
+		private List<PrintStream> m_warningStreams;
+		private List<String> m_warnings;
+		
+		public OuterClassInfo() {
+			outerClassEntry = null;
+			enclosingBehavior = null;
+			m_warningStreams = null;
+			m_warnings = null;
+		}
+		
+		public void warn(PrintStream stream, String warning) {
+			if (m_warnings == null) {
+				m_warningStreams = Lists.newArrayList();
+				m_warnings = Lists.newArrayList();
+			}
+			m_warningStreams.add(stream);
+			m_warnings.add(warning);
+		}
+		
+		public void printWarnings() {
+			if (m_warnings != null) {
+				for (int i=0; i<m_warnings.size(); i++) {
+					m_warningStreams.get(i).println(m_warnings.get(i));
+				}
+			}
+		}
+	}
+	
+	private static class FindOuterClassesTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 3148402357207541530L;
+		
+		private JarIndex m_index;
+		private List<CtClass> m_classes;
+		private OuterClassInfo[] m_infos;
+		private int m_start;
+		private int m_stop;
+		private int m_taskSize;
+		
+		public FindOuterClassesTask(JarIndex index, List<CtClass> classes, OuterClassInfo[] infos, int start, int stop, int taskSize) {
+			m_index = index;
+			m_classes = classes;
+			m_infos = infos;
+			m_start = start;
+			m_stop = stop;
+			m_taskSize = taskSize;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (m_stop - m_start <= m_taskSize) {
+				// each worker writes to its own slots, and only reads the index
+				for (int i=m_start; i<m_stop; i++) {
+					CtClass c = m_classes.get(i);
+					m_infos[i] = m_index.findOuterClass(c, EntryFactory.getClassEntry(c));
+				}
+				return;
+			}
+			
+			int mid = (m_start + m_stop)/2;
+			invokeAll(
+				new FindOuterClassesTask(m_index, m_classes, m_infos, m_start, mid, m_taskSize),
+				new FindOuterClassesTask(m_index, m_classes, m_infos, mid, m_stop, m_taskSize)
+			);
+		}
+	}
+	
+	private void indexOuterClasses(ForkJoinPool pool, List<CtClass> classes) {
+		
+		// finding the outer classes only reads the references, so the classes can be checked in any order
+		OuterClassInfo[] infos = new OuterClassInfo[classes.size()];
+		if (pool == null) {
+			for (int i=0; i<infos.length; i++) {
+				infos[i] = findOuterClass(classes.get(i), EntryFactory.getClassEntry(classes.get(i)));
+			}
+		} else {
+			pool.invoke(new FindOuterClassesTask(this, classes, infos, 0, infos.length, getTaskSize(infos.length, pool)));
+		}
+		
+		// but the results go into the index in class order, so the results (and warnings) are the same either way
+		for (int i=0; i<infos.length; i++) {
+			addOuterClass(infos[i], EntryFactory.getClassEntry(classes.get(i)), Collections.<String,String>emptyMap());
+		}
+	}
+	
+	private void indexOuterClass(CtClass c, ClassEntry innerClassEntry, Map<String,String> unrenames) {
+		addOuterClass(findOuterClass(c, innerClassEntry), innerClassEntry, unrenames);
+	}
+	
+	private OuterClassInfo findOuterClass(CtClass c, ClassEntry innerClassEntry) {
+		OuterClassInfo info = new OuterClassInfo();
+		info.outerClassEntry = findOuterClass(c, innerClassEntry, info);
+		if (info.outerClassEntry != null) {
+			info.enclosingBehavior = isAnonymousClass(c, info.outerClassEntry);
+		}
+		return info;
+	}
+	
+	private void addOuterClass(OuterClassInfo info, ClassEntry innerClassEntry, Map<String,String> unrenames) {
+		
+		info.printWarnings();
+		
+		// NOTE: the inner class maps use class names from before the inner class renames
+		// c might have been renamed already though, so unrenames maps what we find about c back to the old names
+		ClassEntry outerClassEntry = info.outerClassEntry;
+		if (outerClassEntry != null) {
+			BehaviorEntry enclosingBehavior = info.enclosingBehavior;
+			outerClassEntry = EntryRenamer.renameClassesInThing(unrenames, outerClassEntry);
+			m_innerClassesByOuter.put(outerClassEntry, innerClassEntry);
+			boolean innerWasAdded = m_outerClassesByInner.put(innerClassEntry, outerClassEntry) == null;
+			assert (innerWasAdded);
+			
+			if (enclosingBehavior != null) {
+				m_anonymousClasses.put(innerClassEntry, EntryRenamer.renameClassesInThing(unrenames, enclosingBehavior));
+				
+				// DEBUG
+				//System.out.println("ANONYMOUS: " + outerClassEntry.getName() + "$" + innerClassEntry.getSimpleName());
+			} else {
+				// DEBUG
+				//System.out.println("INNER: " + outerClassEntry.getName() + "$" + innerClassEntry.getSimpleName());
+			}
+		}
+	}
+	
+	private Map<String,String> getInnerClassRenames() {
+		Map<String,String> renames = Maps.newHashMap();
+		for (ClassEntry innerClassEntry : m_innerClassesByOuter.values()) {
+			String newName = innerClassEntry.buildClassEntry(getObfClassChain(innerClassEntry)).getName();
+			if (!innerClassEntry.getName().equals(newName)) {
+				// DEBUG
+				//System.out.println("REPLACE: " + innerClassEntry.getName() + " WITH " + newName);
+				renames.put(innerClassEntry.getName(), newName);
+			}
+		}
+		return renames;
+	}
+	
+	private void renameClasses(Map<String,String> renames) {
+		
+		// the symbol table knows which entries mention the renamed classes, so only those get touched
+		Map<Entry,Entry> renamedEntries = m_symbols.renameClasses(renames);
+		for (Map.Entry<String,String> rename : renames.entrySet()) {
+			// not every class has any members, so not every class is in the symbol table
+			renamedEntries.put(EntryFactory.getClassEntry(rename.getKey()), EntryFactory.getClassEntry(rename.getValue()));
+		}
+		
+		EntryRenamer.renameEntriesInSet(renamedEntries, m_obfClassEntries);
+		m_translationIndex.renameEntries(renamedEntries);
+		// NOTE: the member flags are indexed by symbol id, so they don't need renaming
+		
+		// a bridge method can mention a renamed class in just its bridged method, so check all of those
+		// NOTE: there aren't many bridge methods, compared to everything else in the index
+		EntryRenamer.renameValuesInMap(renamedEntries, m_bridgedMethods, m_bridgedMethods.keySet());
+		EntryRenamer.renameKeysInMap(renamedEntries, m_bridgedMethods);
+	}
+	
+	private void renameInnerClasses(CtClass c) {
+		// move a class read from the jar into the same namespace as the rest of the index
+		ClassRenamer.renameClasses(c, new ClassNameReplacer() {
+			@Override
+			public String replace(String className) {
+				return m_innerClassRenames.get(className);
+			}
+		});
+	}
+	
+	private void indexMethodFamilies() {
+		
+		Multimap<ClassEntry,MethodEntry> methodsByClass = HashMultimap.create();
+		for (int id=0; id<m_symbols.size(); id++) {
+			Entry entry = m_symbols.getEntry(id);
+			if (entry instanceof MethodEntry && m_memberFlags.isMember(id)) {
+				methodsByClass.put(entry.getClassEntry(), (MethodEntry)entry);
+			}
+		}
+		
+		// union each method with the methods it overrides or implements
+		Map<MethodEntry,MethodEntry> parents = Maps.newHashMap();
+		for (ClassEntry classEntry : m_obfClassEntries) {
+			List<ClassEntry> lineage = Lists.newArrayList(classEntry);
+			lineage.addAll(m_translationIndex.getAncestry(classEntry));
+			
+			// overrides
+			for (MethodEntry methodEntry : methodsByClass.get(classEntry)) {
+				MethodEntry overriddenEntry = findMethodImplementation(lineage.subList(1, lineage.size()), methodEntry);
+				if (overriddenEntry != null) {
+					unionMethodFamilies(parents, methodEntry, overriddenEntry);
+				}
+			}
+			
+			// interface implementations, possibly inherited from a superclass
+			for (ClassEntry interfaceEntry : getInterfacesRecursively(lineage)) {
+				for (MethodEntry interfaceMethodEntry : methodsByClass.get(interfaceEntry)) {
+					MethodEntry implementationEntry = findMethodImplementation(lineage, interfaceMethodEntry);
+					if (implementationEntry != null) {
+						unionMethodFamilies(parents, implementationEntry, interfaceMethodEntry);
+					}
 				}
 			}
-			EntryRenamer.renameClassesInSet(renames, m_obfClassEntries);
-			m_translationIndex.renameClasses(renames);
-			EntryRenamer.renameClassesInMultimap(renames, m_methodImplementations);
-			EntryRenamer.renameClassesInMultimap(renames, m_behaviorReferences);
-			EntryRenamer.renameClassesInMultimap(renames, m_fieldReferences);
-			EntryRenamer.renameClassesInMap(renames, m_access);
+		}
+		
+		// collect the families, methods that aren't related to anything don't need one
+		Map<MethodEntry,Set<MethodEntry>> families = Maps.newHashMap();
+		for (MethodEntry methodEntry : Lists.newArrayList(parents.keySet())) {
+			MethodEntry rootEntry = findMethodFamilyRoot(parents, methodEntry);
+			Set<MethodEntry> family = families.get(rootEntry);
+			if (family == null) {
+				family = Sets.newHashSet(rootEntry);
+				families.put(rootEntry, family);
+			}
+			family.add(methodEntry);
+		}
+		m_methodFamilies.clear();
+		for (Set<MethodEntry> family : families.values()) {
+			Set<MethodEntry> readOnlyFamily = Collections.unmodifiableSet(family);
+			for (MethodEntry methodEntry : family) {
+				m_methodFamilies.put(methodEntry, readOnlyFamily);
+			}
+		}
+	}
+	
+	private Set<ClassEntry> getInterfacesRecursively(List<ClassEntry> lineage) {
+		Set<ClassEntry> interfaces = Sets.newHashSet();
+		List<ClassEntry> queue = Lists.newArrayList(lineage);
+		while (!queue.isEmpty()) {
+			for (ClassEntry interfaceEntry : m_translationIndex.getInterfaces(queue.remove(queue.size() - 1))) {
+				if (interfaces.add(interfaceEntry)) {
+					queue.add(interfaceEntry);
+				}
+			}
+		}
+		return interfaces;
+	}
+	
+	private MethodEntry findMethodImplementation(List<ClassEntry> lineage, MethodEntry methodEntry) {
+		for (ClassEntry classEntry : lineage) {
+			MethodEntry implementationEntry = new MethodEntry(classEntry, methodEntry.getName(), methodEntry.getSignature());
+			if (containsObfBehavior(implementationEntry)) {
+				return EntryFactory.intern(implementationEntry);
+			}
+		}
+		return null;
+	}
+	
+	private static void unionMethodFamilies(Map<MethodEntry,MethodEntry> parents, MethodEntry a, MethodEntry b) {
+		MethodEntry rootA = findMethodFamilyRoot(parents, a);
+		MethodEntry rootB = findMethodFamilyRoot(parents, b);
+		if (!rootA.equals(rootB)) {
+			parents.put(rootA, rootB);
+		}
+	}
+	
+	private static MethodEntry findMethodFamilyRoot(Map<MethodEntry,MethodEntry> parents, MethodEntry methodEntry) {
+		
+		// roots don't have parents
+		MethodEntry rootEntry = methodEntry;
+		MethodEntry parentEntry;
+		while ((parentEntry = parents.get(rootEntry)) != null) {
+			rootEntry = parentEntry;
+		}
+		
+		// point the whole path straight at the root so the next lookup is faster
+		while (!methodEntry.equals(rootEntry)) {
+			MethodEntry nextEntry = parents.put(methodEntry, rootEntry);
+			methodEntry = nextEntry;
+		}
+		return rootEntry;
+	}
+	
+	private void indexClassMembers(CtClass c) {
+		
+		// step 2: index field/method/constructor access
+		for (CtField field : c.getDeclaredFields()) {
+			FieldEntry fieldEntry = EntryFactory.getFieldEntry(field);
+			int fieldId = m_symbols.add(fieldEntry);
+			m_memberFlags.set(fieldId, MemberFlags.get(field));
+			m_members.addEdge(m_symbols.add(fieldEntry.getClassEntry()), fieldId, false);
+		}
+		for (CtBehavior behavior : c.getDeclaredBehaviors()) {
+			BehaviorEntry behaviorEntry = EntryFactory.getBehaviorEntry(behavior);
+			int behaviorId = m_symbols.add(behaviorEntry);
+			m_memberFlags.set(behaviorId, MemberFlags.get(behavior));
+			m_members.addEdge(m_symbols.add(behaviorEntry.getClassEntry()), behaviorId, false);
+		}
+		
+		// step 3: index extends, implements, fields, and methods
+		m_translationIndex.indexClass(c);
+		String className = Descriptor.toJvmName(c.getName());
+		for (String interfaceName : c.getClassFile().getInterfaces()) {
+			className = Descriptor.toJvmName(className);
+			interfaceName = Descriptor.toJvmName(interfaceName);
+			if (className.equals(interfaceName)) {
+				throw new IllegalArgumentException("Class cannot be its own interface! " + className);
+			}
+		}
+		for (CtBehavior behavior : c.getDeclaredBehaviors()) {
+			indexBehavior(behavior);
+		}
+	}
+	
+	private void indexClassReferences(CtClass c) {
+		for (CtBehavior behavior : c.getDeclaredBehaviors()) {
+			indexBehaviorReferences(behavior);
 		}
 	}
 	
@@ -186,13 +1094,13 @@ public class JarIndex {
 		if (behaviorEntry instanceof MethodEntry) {
 			MethodEntry methodEntry = (MethodEntry)behaviorEntry;
 			
-			// index implementation
-			m_methodImplementations.put(behaviorEntry.getClassName(), methodEntry);
-			
 			// look for bridge and bridged methods
-			CtMethod bridgedMethod = getBridgedMethod((CtMethod)behavior);
-			if (bridgedMethod != null) {
-				m_bridgedMethods.put(methodEntry, EntryFactory.getMethodEntry(bridgedMethod));
+			MethodEntry bridgedMethodEntry = getBridgedMethod((CtMethod)behavior);
+			if (bridgedMethodEntry != null) {
+				m_bridgedMethods.put(methodEntry, bridgedMethodEntry);
+				
+				// obfuscators like to drop the bridge flag, so mark the bridges we found too
+				m_memberFlags.add(m_symbols.add(methodEntry), MemberFlags.Bridge);
 			}
 		}
 		// looks like we don't care about constructors here
@@ -200,71 +1108,62 @@ public class JarIndex {
 	
 	private void indexBehaviorReferences(CtBehavior behavior) {
 		// index method calls
-		final BehaviorEntry behaviorEntry = EntryFactory.getBehaviorEntry(behavior);
-		try {
-			behavior.instrument(new ExprEditor() {
-				@Override
-				public void edit(MethodCall call) {
-					MethodEntry calledMethodEntry = EntryFactory.getMethodEntry(call);
-					ClassEntry resolvedClassEntry = m_translationIndex.resolveEntryClass(calledMethodEntry);
-					if (resolvedClassEntry != null && !resolvedClassEntry.equals(calledMethodEntry.getClassEntry())) {
-						calledMethodEntry = new MethodEntry(
-							resolvedClassEntry,
-							calledMethodEntry.getName(),
-							calledMethodEntry.getSignature()
-						);
-					}
-					EntryReference<BehaviorEntry,BehaviorEntry> reference = new EntryReference<BehaviorEntry,BehaviorEntry>(
-						calledMethodEntry,
-						call.getMethodName(),
-						behaviorEntry
+		final int behaviorId = m_symbols.add(EntryFactory.getBehaviorEntry(behavior));
+		new ReferenceScanner() {
+			@Override
+			protected void visitMethodCall(String className, String name, String signature) {
+				MethodEntry calledMethodEntry = EntryFactory.getMethodEntry(className, name, signature);
+				ClassEntry resolvedClassEntry = m_translationIndex.resolveEntryClass(calledMethodEntry);
+				if (resolvedClassEntry != null && !resolvedClassEntry.equals(calledMethodEntry.getClassEntry())) {
+					calledMethodEntry = EntryFactory.getMethodEntry(
+						resolvedClassEntry,
+						calledMethodEntry.getName(),
+						calledMethodEntry.getSignature()
 					);
-					m_behaviorReferences.put(calledMethodEntry, reference);
 				}
-				
-				@Override
-				public void edit(FieldAccess call) {
-					FieldEntry calledFieldEntry = EntryFactory.getFieldEntry(call);
-					ClassEntry resolvedClassEntry = m_translationIndex.resolveEntryClass(calledFieldEntry);
-					if (resolvedClassEntry != null && !resolvedClassEntry.equals(calledFieldEntry.getClassEntry())) {
-						calledFieldEntry = new FieldEntry(calledFieldEntry, resolvedClassEntry);
-					}
-					EntryReference<FieldEntry,BehaviorEntry> reference = new EntryReference<FieldEntry,BehaviorEntry>(
-						calledFieldEntry,
-						call.getFieldName(),
-						behaviorEntry
-					);
-					m_fieldReferences.put(calledFieldEntry, reference);
+				m_behaviorReferences.addEdge(behaviorId, m_symbols.add(calledMethodEntry), EntryReference.isNamed(calledMethodEntry, name));
+			}
+			
+			@Override
+			protected void visitFieldAccess(String className, String name, String type, boolean isWrite) {
+				FieldEntry calledFieldEntry = EntryFactory.getFieldEntry(className, name, type);
+				ClassEntry resolvedClassEntry = m_translationIndex.resolveEntryClass(calledFieldEntry);
+				if (resolvedClassEntry != null && !resolvedClassEntry.equals(calledFieldEntry.getClassEntry())) {
+					calledFieldEntry = EntryFactory.intern(new FieldEntry(calledFieldEntry, resolvedClassEntry));
 				}
-				
-				@Override
-				public void edit(ConstructorCall call) {
-					ConstructorEntry calledConstructorEntry = EntryFactory.getConstructorEntry(call);
-					EntryReference<BehaviorEntry,BehaviorEntry> reference = new EntryReference<BehaviorEntry,BehaviorEntry>(
-						calledConstructorEntry,
-						call.getMethodName(),
-						behaviorEntry
-					);
-					m_behaviorReferences.put(calledConstructorEntry, reference);
+				m_fieldReferences.addEdge(behaviorId, m_symbols.add(calledFieldEntry), EntryReference.isNamed(calledFieldEntry, name));
+			}
+			
+			@Override
+			protected void visitConstructorCall(String className, String signature, boolean isSuper) {
+				ConstructorEntry calledConstructorEntry = EntryFactory.getConstructorEntry(className, signature);
+				m_behaviorReferences.addEdge(behaviorId, m_symbols.add(calledConstructorEntry), EntryReference.isNamed(calledConstructorEntry, isSuper ? "super" : "this"));
+			}
+			
+			@Override
+			protected void visitNew(String className, String signature) {
+				ConstructorEntry calledConstructorEntry = EntryFactory.getConstructorEntry(className, signature);
+				m_behaviorReferences.addEdge(behaviorId, m_symbols.add(calledConstructorEntry), EntryReference.isNamed(calledConstructorEntry, className));
+			}
+			
+			@Override
+			protected void visitConstant(Object value) {
+				// floats and doubles are almost never what someone is searching for
+				if (ConstantIndex.isIndexed(value)) {
+					m_constants.addUse(value, behaviorId);
 				}
-				
-				@Override
-				public void edit(NewExpr call) {
-					ConstructorEntry calledConstructorEntry = EntryFactory.getConstructorEntry(call);
-					EntryReference<BehaviorEntry,BehaviorEntry> reference = new EntryReference<BehaviorEntry,BehaviorEntry>(
-						calledConstructorEntry,
-						call.getClassName(),
-						behaviorEntry
-					);
-					m_behaviorReferences.put(calledConstructorEntry, reference);
+			}
+			
+			@Override
+			protected void visitClassConstant(String className) {
+				if (!className.endsWith("[]")) {
+					m_classConstants.addEdge(behaviorId, m_symbols.add(EntryFactory.getClassEntry(className)), false);
 				}
-			});
-		} catch (CannotCompileException ex) {
-			throw new Error(ex);
-		}
+			}
+		}.scan(behavior);
 	}
 	
-	private CtMethod getBridgedMethod(CtMethod method) {
+	private MethodEntry getBridgedMethod(CtMethod method) {
 		
 		// bridge methods just call another method, cast it to the return type, and return the result
 		// let's see if we can detect this scenario
@@ -275,40 +1174,56 @@ public class JarIndex {
 		}
 		
 		// get all the called methods
-		final List<MethodCall> methodCalls = Lists.newArrayList();
-		try {
-			method.instrument(new ExprEditor() {
-				@Override
-				public void edit(MethodCall call) {
-					methodCalls.add(call);
-				}
-			});
-		} catch (CannotCompileException ex) {
-			// this is stupid... we're not even compiling anything
-			throw new Error(ex);
-		}
+		final List<MethodEntry> calledMethodEntries = Lists.newArrayList();
+		new ReferenceScanner() {
+			@Override
+			protected void visitMethodCall(String className, String name, String signature) {
+				calledMethodEntries.add(EntryFactory.getMethodEntry(className, name, signature));
+			}
+		}.scan(method);
 		
 		// is there just one?
-		if (methodCalls.size() != 1) {
+		if (calledMethodEntries.size() != 1) {
 			return null;
 		}
-		MethodCall call = methodCalls.get(0);
+		MethodEntry calledMethodEntry = calledMethodEntries.get(0);
 		
+		// we have a bridge method!
+		// NOTE: don't look up other jar classes by name, the shared class pool only has whatever classes were parsed lately
+		// so the answer can't depend on which classes happen to be cached right now
+		CtClass declaringClass = method.getDeclaringClass();
+		String calledClassName;
+		if (calledMethodEntry.getClassName().equals(Descriptor.toJvmName(declaringClass.getName()))) {
+			// usually the bridged method is right next to the bridge
+			for (CtMethod declaredMethod : declaringClass.getDeclaredMethods()) {
+				if (declaredMethod.getName().equals(calledMethodEntry.getName())
+						&& declaredMethod.getSignature().equals(calledMethodEntry.getSignature().toString())) {
+					return EntryFactory.getMethodEntry(declaredMethod);
+				}
+			}
+			// otherwise it's inherited
+			calledClassName = declaringClass.getClassFile().getSuperclass();
+		} else {
+			calledClassName = Descriptor.toJavaName(calledMethodEntry.getClassName());
+		}
 		try {
-			// we have a bridge method!
-			return call.getMethod();
+			// only library classes (eg the JDK) can be found on the class path, and they can tell which class really has the method
+			CtClass calledClass = ClassPool.getDefault().get(calledClassName);
+			return EntryFactory.getMethodEntry(calledClass.getMethod(calledMethodEntry.getName(), calledMethodEntry.getSignature().toString()));
 		} catch (NotFoundException ex) {
-			// can't find the type? not a bridge method
+			// can't find the type or the method? not a bridge method
+			// eg. accessors that call into other classes in the jar
 			return null;
 		}
 	}
 	
-	private ClassEntry findOuterClass(CtClass c) {
+	private ClassEntry findOuterClass(CtClass c, ClassEntry unrenamedClassEntry, OuterClassInfo info) {
 		
 		ClassEntry classEntry = EntryFactory.getClassEntry(c);
 		
 		// does this class already have an outer class?
-		if (classEntry.isInnerClass()) {
+		// NOTE: check the name from the jar, c might have been renamed into an inner class by the index
+		if (unrenamedClassEntry.isInnerClass()) {
 			return classEntry.getOuterClassEntry();
 		}
 		
@@ -319,7 +1234,7 @@ public class JarIndex {
 		// use the synthetic fields to find the synthetic constructors
 		for (CtConstructor constructor : c.getDeclaredConstructors()) {
 			Set<String> syntheticFieldTypes = Sets.newHashSet();
-			if (!isIllegalConstructor(syntheticFieldTypes, constructor)) {
+			if (!isIllegalConstructor(syntheticFieldTypes, constructor, info)) {
 				continue;
 			}
 			
@@ -329,7 +1244,7 @@ public class JarIndex {
 			Set<ClassEntry> illegallySetClasses = Sets.newHashSet();
 			for (String type : syntheticFieldTypes) {
 				if (type.startsWith("L")) {
-					ClassEntry outerClassEntry = new ClassEntry(type.substring(1, type.length() - 1));
+					ClassEntry outerClassEntry = EntryFactory.getClassEntry(type.substring(1, type.length() - 1));
 					if (isSaneOuterClass(outerClassEntry, classEntry)) {
 						illegallySetClasses.add(outerClassEntry);
 					}
@@ -362,7 +1277,7 @@ public class JarIndex {
 				if (illegallySetClasses.size() == 1) {
 					return illegallySetClasses.iterator().next();
 				} else {
-					System.out.println(String.format("WARNING: Unable to find outer class for %s. No caller and no illegally set field classes.", classEntry));
+					info.warn(System.out, String.format("WARNING: Unable to find outer class for %s. No caller and no illegally set field classes.", classEntry));
 				}
 			} else {
 				if (callerClasses.size() == 1) {
@@ -374,7 +1289,7 @@ public class JarIndex {
 					if (intersection.size() == 1) {
 						return intersection.iterator().next();
 					} else {
-						System.out.println(String.format("WARNING: Unable to choose outer class for %s among options: %s", classEntry, callerClasses));
+						info.warn(System.out, String.format("WARNING: Unable to choose outer class for %s among options: %s", classEntry, callerClasses));
 					}
 				}
 			}
@@ -399,32 +1314,29 @@ public class JarIndex {
 	}
 	
 	@SuppressWarnings("unchecked")
-	private boolean isIllegalConstructor(Set<String> syntheticFieldTypes, CtConstructor constructor) {
+	private boolean isIllegalConstructor(Set<String> syntheticFieldTypes, CtConstructor constructor, OuterClassInfo outerClassInfo) {
 		
 		// illegal constructors only set synthetic member fields, then call super()
-		String className = constructor.getDeclaringClass().getName();
+		ClassEntry classEntry = EntryFactory.getClassEntry(constructor.getDeclaringClass());
 		
-		// collect all the field accesses, constructor calls, and method calls
-		final List<FieldAccess> illegalFieldWrites = Lists.newArrayList();
-		final List<ConstructorCall> constructorCalls = Lists.newArrayList();
-		try {
-			constructor.instrument(new ExprEditor() {
-				@Override
-				public void edit(FieldAccess fieldAccess) {
-					if (fieldAccess.isWriter() && constructorCalls.isEmpty()) {
-						illegalFieldWrites.add(fieldAccess);
-					}
-				}
-				
-				@Override
-				public void edit(ConstructorCall constructorCall) {
-					constructorCalls.add(constructorCall);
+		// collect all the field writes before the constructor call
+		final List<FieldEntry> illegalFieldWrites = Lists.newArrayList();
+		new ReferenceScanner() {
+			
+			private boolean m_calledConstructor = false;
+			
+			@Override
+			protected void visitFieldAccess(String className, String name, String type, boolean isWrite) {
+				if (isWrite && !m_calledConstructor) {
+					illegalFieldWrites.add(EntryFactory.getFieldEntry(className, name, type));
 				}
-			});
-		} catch (CannotCompileException ex) {
-			// we're not compiling anything... this is stupid
-			throw new Error(ex);
-		}
+			}
+			
+			@Override
+			protected void visitConstructorCall(String className, String signature, boolean isSuper) {
+				m_calledConstructor = true;
+			}
+		}.scan(constructor);
 		
 		// are there any illegal field writes?
 		if (illegalFieldWrites.isEmpty()) {
@@ -432,18 +1344,18 @@ public class JarIndex {
 		}
 		
 		// are all the writes to synthetic fields?
-		for (FieldAccess fieldWrite : illegalFieldWrites) {
+		for (FieldEntry fieldWrite : illegalFieldWrites) {
 			
 			// all illegal writes have to be to the local class
-			if (!fieldWrite.getClassName().equals(className)) {
-				System.err.println(String.format("WARNING: illegal write to non-member field %s.%s", fieldWrite.getClassName(), fieldWrite.getFieldName()));
+			if (!fieldWrite.getClassEntry().equals(classEntry)) {
+				outerClassInfo.warn(System.err, String.format("WARNING: illegal write to non-member field %s.%s", fieldWrite.getClassName(), fieldWrite.getName()));
 				return false;
 			}
 			
 			// find the field
 			FieldInfo fieldInfo = null;
 			for (FieldInfo info : (List<FieldInfo>)constructor.getDeclaringClass().getClassFile().getFields()) {
-				if (info.getName().equals(fieldWrite.getFieldName()) && info.getDescriptor().equals(fieldWrite.getSignature())) {
+				if (info.getName().equals(fieldWrite.getName()) && info.getDescriptor().equals(fieldWrite.getType().toString())) {
 					fieldInfo = info;
 					break;
 				}
@@ -458,7 +1370,7 @@ public class JarIndex {
 			if (isSynthetic) {
 				syntheticFieldTypes.add(fieldInfo.getDescriptor());
 			} else {
-				System.err.println(String.format("WARNING: illegal write to non synthetic field %s %s.%s", fieldInfo.getDescriptor(), className, fieldInfo.getName()));
+				outerClassInfo.warn(System.err, String.format("WARNING: illegal write to non synthetic field %s %s.%s", fieldInfo.getDescriptor(), classEntry.getName(), fieldInfo.getName()));
 				return false;
 			}
 		}
@@ -490,7 +1402,7 @@ public class JarIndex {
 			return null;
 		}
 		
-		ClassEntry innerClassEntry = new ClassEntry(Descriptor.toJvmName(c.getName()));
+		ClassEntry innerClassEntry = EntryFactory.getClassEntry(c);
 		
 		// anonymous classes:
 		// can't be abstract
@@ -538,27 +1450,68 @@ public class JarIndex {
 	}
 	
 	public Collection<FieldEntry> getObfFieldEntries() {
-		return m_fields.values();
+		return getMembers(FieldEntry.class);
 	}
 	
 	public Collection<FieldEntry> getObfFieldEntries(ClassEntry classEntry) {
-		return m_fields.get(classEntry);
+		return getMembers(FieldEntry.class, classEntry);
 	}
 	
 	public Collection<BehaviorEntry> getObfBehaviorEntries() {
-		return m_behaviors.values();
+		return getMembers(BehaviorEntry.class);
 	}
 	
 	public Collection<BehaviorEntry> getObfBehaviorEntries(ClassEntry classEntry) {
-		return m_behaviors.get(classEntry);
+		return getMembers(BehaviorEntry.class, classEntry);
+	}
+	
+	private <T extends Entry> List<T> getMembers(Class<T> type) {
+		List<T> entries = Lists.newArrayList();
+		for (int i=0; i<m_members.getNumEdges(); i++) {
+			Entry entry = m_symbols.getEntry(m_members.getTarget(i));
+			if (type.isInstance(entry)) {
+				entries.add(type.cast(entry));
+			}
+		}
+		return entries;
+	}
+	
+	private <T extends Entry> List<T> getMembers(Class<T> type, ClassEntry classEntry) {
+		List<T> entries = Lists.newArrayList();
+		int classId = m_symbols.getId(classEntry);
+		for (int i=m_members.getTargetsStart(classId); i<m_members.getTargetsStop(classId); i++) {
+			Entry entry = m_symbols.getEntry(m_members.getTarget(i));
+			if (type.isInstance(entry)) {
+				entries.add(type.cast(entry));
+			}
+		}
+		return entries;
 	}
 	
 	public TranslationIndex getTranslationIndex() {
 		return m_translationIndex;
 	}
 	
+	public void setLibraryIndex(LibraryIndex libraryIndex) {
+		// NOTE: set this before indexing, it changes how the references resolve
+		m_translationIndex.setLibraryIndex(libraryIndex);
+	}
+	
 	public Access getAccess(Entry entry) {
-		return m_access.get(entry);
+		return m_memberFlags.getAccess(m_symbols.getId(entry));
+	}
+	
+	public boolean isStatic(Entry entry) {
+		return m_memberFlags.isStatic(m_symbols.getId(entry));
+	}
+	
+	public boolean isSynthetic(Entry entry) {
+		return m_memberFlags.isSynthetic(m_symbols.getId(entry));
+	}
+	
+	public boolean isBridge(Entry entry) {
+		// either flagged in the class file, or it looks like a bridge to us, see getBridgedMethod()
+		return m_memberFlags.isBridge(m_symbols.getId(entry));
 	}
 	
 	public ClassInheritanceTreeNode getClassInheritance(Translator deobfuscatingTranslator, ClassEntry obfClassEntry) {
@@ -661,6 +1614,17 @@ public class JarIndex {
 	}
 	
 	public Set<MethodEntry> getRelatedMethodImplementations(MethodEntry obfMethodEntry) {
+		
+		// use the precomputed method families if we can
+		if (containsObfBehavior(obfMethodEntry)) {
+			Set<MethodEntry> family = m_methodFamilies.get(obfMethodEntry);
+			if (family != null) {
+				return family;
+			}
+			return Collections.singleton(obfMethodEntry);
+		}
+		
+		// otherwise, search the inheritance tree
 		Set<MethodEntry> methodEntries = Sets.newHashSet();
 		getRelatedMethodImplementations(methodEntries, getMethodInheritance(null, obfMethodEntry));
 		return methodEntries;
@@ -698,35 +1662,67 @@ public class JarIndex {
 	}
 	
 	public Collection<EntryReference<FieldEntry,BehaviorEntry>> getFieldReferences(FieldEntry fieldEntry) {
-		return m_fieldReferences.get(fieldEntry);
+		return getReferences(m_fieldReferences, fieldEntry);
 	}
 	
 	public Collection<FieldEntry> getReferencedFields(BehaviorEntry behaviorEntry) {
-		// linear search is fast enough for now
-		Set<FieldEntry> fieldEntries = Sets.newHashSet();
-		for (EntryReference<FieldEntry,BehaviorEntry> reference : m_fieldReferences.values()) {
-			if (reference.context == behaviorEntry) {
-				fieldEntries.add(reference.entry);
-			}
-		}
-		return fieldEntries;
+		return getReferenced(m_fieldReferences, FieldEntry.class, behaviorEntry);
 	}
 	
 	public Collection<EntryReference<BehaviorEntry,BehaviorEntry>> getBehaviorReferences(BehaviorEntry behaviorEntry) {
-		return m_behaviorReferences.get(behaviorEntry);
+		return getReferences(m_behaviorReferences, behaviorEntry);
 	}
 	
 	public Collection<BehaviorEntry> getReferencedBehaviors(BehaviorEntry behaviorEntry) {
-		// linear search is fast enough for now
-		Set<BehaviorEntry> behaviorEntries = Sets.newHashSet();
-		for (EntryReference<BehaviorEntry,BehaviorEntry> reference : m_behaviorReferences.values()) {
-			if (reference.context == behaviorEntry) {
-				behaviorEntries.add(reference.entry);
-			}
+		return getReferenced(m_behaviorReferences, BehaviorEntry.class, behaviorEntry);
+	}
+	
+	public Collection<BehaviorEntry> getClassConstantUsers(ClassEntry classEntry) {
+		// the behaviors that load the class as a constant, like Foo.class
+		List<BehaviorEntry> behaviorEntries = Lists.newArrayList();
+		int id = m_symbols.getId(classEntry);
+		for (int i=m_classConstants.getSourcesStart(id); i<m_classConstants.getSourcesStop(id); i++) {
+			behaviorEntries.add((BehaviorEntry)m_symbols.getEntry(m_classConstants.getSource(i)));
 		}
 		return behaviorEntries;
 	}
 	
+	public Collection<BehaviorEntry> getConstantUsers(Object constant) {
+		// the behaviors that load the string, int, or long constant
+		List<BehaviorEntry> behaviorEntries = Lists.newArrayList();
+		for (int id : m_constants.getUsers(constant)) {
+			behaviorEntries.add((BehaviorEntry)m_symbols.getEntry(id));
+		}
+		return behaviorEntries;
+	}
+	
+	public List<String> findStringConstantsWithPrefix(String prefix) {
+		return m_constants.findStringsWithPrefix(prefix);
+	}
+	
+	public List<String> findStringConstantsContaining(String text) {
+		return m_constants.findStringsContaining(text);
+	}
+	
+	private <E extends Entry> List<EntryReference<E,BehaviorEntry>> getReferences(ReferenceGraph graph, E entry) {
+		List<EntryReference<E,BehaviorEntry>> references = Lists.newArrayList();
+		int id = m_symbols.getId(entry);
+		for (int i=graph.getSourcesStart(id); i<graph.getSourcesStop(id); i++) {
+			BehaviorEntry context = (BehaviorEntry)m_symbols.getEntry(graph.getSource(i));
+			references.add(new EntryReference<E,BehaviorEntry>(entry, context, graph.getSourceFlag(i)));
+		}
+		return references;
+	}
+	
+	private <E extends Entry> List<E> getReferenced(ReferenceGraph graph, Class<E> type, BehaviorEntry behaviorEntry) {
+		List<E> entries = Lists.newArrayList();
+		int id = m_symbols.getId(behaviorEntry);
+		for (int i=graph.getTargetsStart(id); i<graph.getTargetsStop(id); i++) {
+			entries.add(type.cast(m_symbols.getEntry(graph.getTarget(i))));
+		}
+		return entries;
+	}
+	
 	public Collection<ClassEntry> getInnerClasses(ClassEntry obfOuterClassEntry) {
 		return m_innerClassesByOuter.get(obfOuterClassEntry);
 	}
@@ -755,15 +1751,10 @@ public class JarIndex {
 	
 	public Set<String> getImplementingClasses(String targetInterfaceName) {
 		
-		// linear search is fast enough for now
 		Set<String> classNames = Sets.newHashSet();
-		for (Map.Entry<ClassEntry,ClassEntry> entry : m_translationIndex.getClassInterfaces()) {
-			ClassEntry classEntry = entry.getKey();
-			ClassEntry interfaceEntry = entry.getValue();
-			if (interfaceEntry.getName().equals(targetInterfaceName)) {
-				classNames.add(classEntry.getClassName());
-				m_translationIndex.getSubclassNamesRecursively(classNames, classEntry);
-			}
+		for (ClassEntry classEntry : m_translationIndex.getImplementations(new ClassEntry(targetInterfaceName))) {
+			classNames.add(classEntry.getClassName());
+			m_translationIndex.getSubclassNamesRecursively(classNames, classEntry);
 		}
 		return classNames;
 	}
@@ -777,11 +1768,11 @@ public class JarIndex {
 	}
 	
 	public boolean containsObfField(FieldEntry obfFieldEntry) {
-		return m_access.containsKey(obfFieldEntry);
+		return m_memberFlags.isMember(m_symbols.getId(obfFieldEntry));
 	}
 	
 	public boolean containsObfBehavior(BehaviorEntry obfBehaviorEntry) {
-		return m_access.containsKey(obfBehaviorEntry);
+		return m_memberFlags.isMember(m_symbols.getId(obfBehaviorEntry));
 	}
 	
 	public boolean containsObfArgument(ArgumentEntry obfArgumentEntry) {
@@ -815,7 +1806,86 @@ public class JarIndex {
 	public MethodEntry getBridgedMethod(MethodEntry bridgeMethodEntry) {
 		return m_bridgedMethods.get(bridgeMethodEntry);
 	}
-
+	
+	public IndexStats getStats() {
+		return m_stats;
+	}
+	
+	public int getNumSymbols() {
+		return m_symbols.size();
+	}
+	
+	public int getNumMemberEdges() {
+		return m_members.getNumEdges();
+	}
+	
+	public int getNumBehaviorReferences() {
+		return m_behaviorReferences.getNumEdges();
+	}
+	
+	public int getNumFieldReferences() {
+		return m_fieldReferences.getNumEdges();
+	}
+	
+	public void write(OutputStream out)
+	throws IOException {
+		GZIPOutputStream gzipout = new GZIPOutputStream(out);
+		ObjectOutputStream oout = new ObjectOutputStream(gzipout);
+		oout.writeObject(m_obfClassEntries);
+		oout.writeObject(m_translationIndex);
+		oout.writeObject(m_symbols);
+		oout.writeObject(m_memberFlags);
+		oout.writeObject(m_members);
+		oout.writeObject(m_behaviorReferences);
+		oout.writeObject(m_fieldReferences);
+		oout.writeObject(m_classConstants);
+		oout.writeObject(m_constants);
+		oout.writeObject(m_innerClassesByOuter);
+		oout.writeObject(m_outerClassesByInner);
+		oout.writeObject(m_anonymousClasses);
+		oout.writeObject(m_bridgedMethods);
+		oout.writeObject(m_methodFamilies);
+		oout.writeObject(m_classHashes);
+		oout.writeObject(m_innerClassRenames);
+		oout.writeBoolean(m_buildInnerClasses);
+		oout.flush();
+		gzipout.finish();
+	}
+	
+	@SuppressWarnings("unchecked")
+	public void read(InputStream in)
+	throws IOException {
+		m_stats = new IndexStats();
+		m_stats.startPhase("Read cached index");
+		try {
+			ObjectInputStream oin = new ObjectInputStream(new GZIPInputStream(in));
+			m_obfClassEntries = (Set<ClassEntry>)oin.readObject();
+			m_translationIndex = (TranslationIndex)oin.readObject();
+			m_symbols = (SymbolTable)oin.readObject();
+			m_memberFlags = (MemberFlags)oin.readObject();
+			m_members = (ReferenceGraph)oin.readObject();
+			m_behaviorReferences = (ReferenceGraph)oin.readObject();
+			m_fieldReferences = (ReferenceGraph)oin.readObject();
+			m_classConstants = (ReferenceGraph)oin.readObject();
+			m_constants = (ConstantIndex)oin.readObject();
+			m_innerClassesByOuter = (Multimap<ClassEntry,ClassEntry>)oin.readObject();
+			m_outerClassesByInner = (Map<ClassEntry,ClassEntry>)oin.readObject();
+			m_anonymousClasses = (Map<ClassEntry,BehaviorEntry>)oin.readObject();
+			m_bridgedMethods = (Map<MethodEntry,MethodEntry>)oin.readObject();
+			m_methodFamilies = (Map<MethodEntry,Set<MethodEntry>>)oin.readObject();
+			m_classHashes = (Map<ClassEntry,String>)oin.readObject();
+			m_innerClassRenames = (Map<String,String>)oin.readObject();
+			m_buildInnerClasses = oin.readBoolean();
+			if (m_memoryBudget > 0) {
+				spillReferences();
+			}
+		} catch (ClassNotFoundException ex) {
+			// written by a build of enigma that had classes this one doesn't
+			throw new IOException("Unable to read jar index", ex);
+		}
+		m_stats.finish(this);
+	}
+	
 	public List<ClassEntry> getObfClassChain(ClassEntry obfClassEntry) {
 		
 		// build class chain in inner-to-outer order
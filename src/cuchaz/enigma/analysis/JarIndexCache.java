@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+import com.google.common.hash.Hashing;
+
+import cuchaz.enigma.Deobfuscator.ProgressListener;
+import cuchaz.enigma.Util;
+
+public class JarIndexCache {
+	
+	// NOTE: bump this whenever the JarIndex storage changes, old cache files will just be rebuilt
+	private static final int FormatVersion = 10;
+	private static final int Magic = 0x454e4958; // "ENIX"
+	
+	// cache files past these limits get deleted, oldest first, whenever a new one is written
+	public static final long DefaultMaxBytes = 512L*1024*1024;
+	public static final long DefaultMaxAgeMillis = TimeUnit.DAYS.toMillis(30);
+	
+	// temp files this old were left behind by a crash, nobody is still writing them
+	private static final long StaleTempFileMillis = TimeUnit.DAYS.toMillis(1);
+	
+	private File m_dir;
+	private long m_memoryBudget;
+	private long m_maxBytes;
+	private long m_maxAgeMillis;
+	
+	public JarIndexCache(File dir) {
+		m_dir = dir;
+		m_memoryBudget = 0;
+		m_maxBytes = Long.getLong("enigma.cache.maxBytes", DefaultMaxBytes);
+		m_maxAgeMillis = TimeUnit.DAYS.toMillis(Long.getLong("enigma.cache.maxDays", TimeUnit.MILLISECONDS.toDays(DefaultMaxAgeMillis)));
+	}
+	
+	public static File getDefaultDir() {
+		// -Denigma.cache.dir=none (or empty) turns the cache off
+		String path = System.getProperty("enigma.cache.dir");
+		if (path == null) {
+			return new File(new File(System.getProperty("user.home"), ".enigma"), "cache");
+		} else if (path.isEmpty() || path.equalsIgnoreCase("none")) {
+			return null;
+		}
+		return new File(path);
+	}
+	
+	public static JarIndexCache getDefault() {
+		// returns null if the cache is turned off
+		File dir = getDefaultDir();
+		if (dir == null) {
+			return null;
+		}
+		JarIndexCache cache = new JarIndexCache(dir);
+		cache.setMemoryBudget(JarIndex.getDefaultMemoryBudget());
+		return cache;
+	}
+	
+	public File getDir() {
+		return m_dir;
+	}
+	
+	public long getMaxBytes() {
+		return m_maxBytes;
+	}
+	
+	public void setMaxBytes(long val) {
+		m_maxBytes = val;
+	}
+	
+	public long getMaxAgeMillis() {
+		return m_maxAgeMillis;
+	}
+	
+	public void setMaxAgeMillis(long val) {
+		m_maxAgeMillis = val;
+	}
+	
+	public void trim() {
+		
+		File[] files = m_dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		
+		// newest first, so the files that survive are the most recently written ones
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(b.lastModified(), a.lastModified());
+			}
+		});
+		
+		long now = System.currentTimeMillis();
+		long numBytes = 0;
+		for (File file : files) {
+			long age = now - file.lastModified();
+			if (file.getName().endsWith(".tmp")) {
+				if (age > StaleTempFileMillis) {
+					file.delete();
+				}
+			} else if (file.getName().endsWith(".index")) {
+				long fileBytes = file.length();
+				if (age > m_maxAgeMillis || numBytes + fileBytes > m_maxBytes) {
+					file.delete();
+				} else {
+					numBytes += fileBytes;
+				}
+			}
+		}
+	}
+	
+	public long getMemoryBudget() {
+		return m_memoryBudget;
+	}
+	
+	public void setMemoryBudget(long numBytes) {
+		// applies to the indices this cache builds or reads, see JarIndex.setMemoryBudget()
+		m_memoryBudget = numBytes;
+	}
+	
+	public JarIndex getIndex(JarFile jar, boolean buildInnerClasses, int numThreads)
+	throws IOException {
+		return getIndex(jar, buildInnerClasses, numThreads, null);
+	}
+	
+	public JarIndex getIndex(JarFile jar, boolean buildInnerClasses, int numThreads, LibraryIndex libraryIndex)
+	throws IOException {
+		return getIndex(jar, buildInnerClasses, numThreads, libraryIndex, null);
+	}
+	
+	public JarIndex getIndex(JarFile jar, boolean buildInnerClasses, int numThreads, LibraryIndex libraryIndex, ProgressListener progress)
+	throws IOException {
+		try (ClassSource source = JarClassIterator.openSource(jar)) {
+			return getIndex(source, new File(jar.getName()), buildInnerClasses, numThreads, libraryIndex, progress);
+		}
+	}
+	
+	public JarIndex getIndex(ClassSource source, File jarFile, boolean buildInnerClasses, int numThreads, LibraryIndex libraryIndex, ProgressListener progress)
+	throws IOException {
+		
+		// the source is only read if the index has to be built, the key comes from the jar file itself
+		String key = getKey(jarFile, buildInnerClasses, libraryIndex);
+		File file = new File(m_dir, key + ".index");
+		
+		// do we already have an index for this jar?
+		if (file.exists()) {
+			try {
+				JarIndex index = read(file, key);
+				if (index != null) {
+					index.setLibraryIndex(libraryIndex);
+					return index;
+				}
+			} catch (IOException | RuntimeException ex) {
+				// the cache file is broken somehow, just rebuild it
+				System.err.println("WARNING: unable to read cached jar index " + file + ", re-indexing: " + ex);
+			}
+		}
+		
+		// nope, index the jar and save it for next time
+		JarIndex index = new JarIndex();
+		index.setMemoryBudget(m_memoryBudget);
+		index.setLibraryIndex(libraryIndex);
+		index.indexJar(source, buildInnerClasses, numThreads, progress);
+		try {
+			write(file, key, index);
+		} catch (IOException ex) {
+			// not being able to save the cache shouldn't stop anyone from using the index
+			System.err.println("WARNING: unable to write cached jar index " + file + ": " + ex);
+		}
+		return index;
+	}
+	
+	public static String getKey(JarFile jar, boolean buildInnerClasses)
+	throws IOException {
+		return getKey(jar, buildInnerClasses, null);
+	}
+	
+	public static String getKey(JarFile jar, boolean buildInnerClasses, LibraryIndex libraryIndex)
+	throws IOException {
+		return getKey(new File(jar.getName()), buildInnerClasses, libraryIndex);
+	}
+	
+	public static String getKey(File jarFile, boolean buildInnerClasses, LibraryIndex libraryIndex)
+	throws IOException {
+		String key = com.google.common.io.Files.hash(jarFile, Hashing.sha1()).toString();
+		if (!buildInnerClasses) {
+			key += "-noinner";
+		}
+		if (libraryIndex != null) {
+			// the libraries change how references resolve, so they get their own index
+			key += "-" + libraryIndex.getKey();
+		}
+		return key;
+	}
+	
+	private JarIndex read(File file, String key)
+	throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			DataInputStream din = new DataInputStream(in);
+			if (din.readInt() != Magic || din.readInt() != FormatVersion || !din.readUTF().equals(key)) {
+				// written by a different version of enigma, or for a different jar
+				return null;
+			}
+			JarIndex index = new JarIndex();
+			index.setMemoryBudget(m_memoryBudget);
+			index.read(din);
+			return index;
+		} finally {
+			Util.closeQuietly(in);
+		}
+	}
+	
+	private void write(File file, String key, JarIndex index)
+	throws IOException {
+		
+		if (!m_dir.isDirectory() && !m_dir.mkdirs()) {
+			throw new IOException("Unable to create cache folder: " + m_dir);
+		}
+		
+		// write to a temp file first so readers never see a half-written cache
+		File tempFile = File.createTempFile(key, ".tmp", m_dir);
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+			try {
+				DataOutputStream dout = new DataOutputStream(out);
+				dout.writeInt(Magic);
+				dout.writeInt(FormatVersion);
+				dout.writeUTF(key);
+				index.write(dout);
+				dout.flush();
+			} finally {
+				Util.closeQuietly(out);
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			tempFile.delete();
+		}
+		trim();
+	}
+}
@@ -0,0 +1,555 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javassist.bytecode.AccessFlag;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import cuchaz.enigma.Util;
+import cuchaz.enigma.mapping.ArgumentEntry;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.Entry;
+import cuchaz.enigma.mapping.EntryFactory;
+import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.MethodEntry;
+
+// the class hierarchy and inheritable members of library classes (the JDK, or other jars the jar depends on)
+// so entries can be resolved through classes that aren't in the jar itself
+// the index is only built (or read from the disk cache) the first time someone asks it something
+public class LibraryIndex {
+	
+	private static final int FormatVersion = 1;
+	private static final int Magic = 0x454e4c49; // "ENLI"
+	private static final int NoString = -1;
+	private static final int ModuleAccessFlag = 0x8000; // javassist doesn't know about modules
+	
+	private List<File> m_jars;
+	private boolean m_includeJdk;
+	private File m_cacheDir;
+	private String m_key;
+	private volatile boolean m_isLoaded;
+	
+	// classes are sorted by name, members and interfaces are packed in one array each, indexed by offsets per class
+	private String[] m_classNames;
+	private String[] m_superclassNames;
+	private int[] m_interfaceOffsets;
+	private String[] m_interfaceNames;
+	private int[] m_memberOffsets;
+	private String[] m_memberNames;
+	private String[] m_memberDescriptors;
+	
+	public LibraryIndex(List<File> jars, boolean includeJdk, File cacheDir) {
+		m_jars = jars;
+		m_includeJdk = includeJdk;
+		m_cacheDir = cacheDir;
+		m_key = null;
+		m_isLoaded = false;
+	}
+	
+	public static LibraryIndex getDefault() {
+		
+		// libraries are opt-in, since they change how entries resolve
+		List<File> jars = Lists.newArrayList();
+		String paths = System.getProperty("enigma.libraries");
+		if (paths != null) {
+			for (String path : paths.split(File.pathSeparator)) {
+				if (!path.isEmpty()) {
+					jars.add(new File(path));
+				}
+			}
+		}
+		boolean includeJdk = Boolean.getBoolean("enigma.libraries.jdk");
+		if (jars.isEmpty() && !includeJdk) {
+			return null;
+		}
+		return new LibraryIndex(jars, includeJdk, JarIndexCache.getDefaultDir());
+	}
+	
+	public String getKey() {
+		// NOTE: library files are big, so go by their names and time stamps instead of hashing their contents
+		if (m_key == null) {
+			Hasher hasher = Hashing.sha1().newHasher();
+			hasher.putInt(FormatVersion);
+			if (m_includeJdk) {
+				hasher.putString("jdk:" + System.getProperty("java.home") + ":" + System.getProperty("java.vm.version"), StandardCharsets.UTF_8);
+			}
+			for (File jar : m_jars) {
+				hasher.putString(jar.getAbsolutePath(), StandardCharsets.UTF_8);
+				hasher.putLong(jar.length());
+				hasher.putLong(jar.lastModified());
+			}
+			m_key = hasher.hash().toString();
+		}
+		return m_key;
+	}
+	
+	public int getNumClasses() {
+		load();
+		return m_classNames.length;
+	}
+	
+	public boolean containsClass(ClassEntry classEntry) {
+		return getClassIndex(classEntry) >= 0;
+	}
+	
+	public ClassEntry getSuperclass(ClassEntry classEntry) {
+		int index = getClassIndex(classEntry);
+		if (index < 0 || m_superclassNames[index] == null) {
+			return null;
+		}
+		return EntryFactory.getClassEntry(m_superclassNames[index]);
+	}
+	
+	public List<ClassEntry> getInterfaces(ClassEntry classEntry) {
+		int index = getClassIndex(classEntry);
+		if (index < 0) {
+			return Collections.emptyList();
+		}
+		List<ClassEntry> interfaceEntries = Lists.newArrayList();
+		for (int i=m_interfaceOffsets[index]; i<m_interfaceOffsets[index + 1]; i++) {
+			interfaceEntries.add(EntryFactory.getClassEntry(m_interfaceNames[i]));
+		}
+		return interfaceEntries;
+	}
+	
+	public boolean entryExists(Entry entry) {
+		if (entry instanceof FieldEntry) {
+			FieldEntry fieldEntry = (FieldEntry)entry;
+			return memberExists(fieldEntry.getClassEntry(), fieldEntry.getName(), fieldEntry.getType().toString());
+		} else if (entry instanceof MethodEntry) {
+			MethodEntry methodEntry = (MethodEntry)entry;
+			return memberExists(methodEntry.getClassEntry(), methodEntry.getName(), methodEntry.getSignature().toString());
+		} else if (entry instanceof ArgumentEntry) {
+			return entryExists(((ArgumentEntry)entry).getBehaviorEntry());
+		}
+		// constructors aren't inherited, so the library doesn't keep them
+		return false;
+	}
+	
+	private boolean memberExists(ClassEntry classEntry, String name, String descriptor) {
+		int index = getClassIndex(classEntry);
+		if (index < 0) {
+			return false;
+		}
+		for (int i=m_memberOffsets[index]; i<m_memberOffsets[index + 1]; i++) {
+			if (m_memberNames[i].equals(name) && m_memberDescriptors[i].equals(descriptor)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private int getClassIndex(ClassEntry classEntry) {
+		load();
+		return Arrays.binarySearch(m_classNames, classEntry.getName());
+	}
+	
+	private void load() {
+		
+		if (m_isLoaded) {
+			return;
+		}
+		
+		synchronized (this) {
+			if (m_isLoaded) {
+				return;
+			}
+			
+			// do we already have an index for these libraries?
+			// a null cache folder means the cache is turned off
+			File file = m_cacheDir == null ? null : new File(m_cacheDir, "library-" + getKey() + ".index");
+			boolean isRead = false;
+			if (file != null && file.exists()) {
+				try {
+					isRead = read(file);
+				} catch (IOException | RuntimeException ex) {
+					// the cache file is broken somehow, just rebuild it
+					System.err.println("WARNING: unable to read cached library index " + file + ", re-indexing: " + ex);
+				}
+			}
+			
+			// nope, index the libraries and save it for next time
+			if (!isRead) {
+				try {
+					index();
+				} catch (IOException ex) {
+					throw new Error("Unable to index libraries", ex);
+				}
+				if (file != null) {
+					try {
+						write(file);
+					} catch (IOException ex) {
+						// not being able to save the cache shouldn't stop anyone from using the index
+						System.err.println("WARNING: unable to write cached library index " + file + ": " + ex);
+					}
+				}
+			}
+			
+			m_isLoaded = true;
+		}
+	}
+	
+	private void index()
+	throws IOException {
+		
+		// the JDK goes first, so a library can't replace its classes
+		List<ClassSource> sources = Lists.newArrayList();
+		if (m_includeJdk) {
+			sources.addAll(getJdkSources());
+		}
+		for (File jar : m_jars) {
+			if (jar.isDirectory()) {
+				sources.add(new DirectoryClassSource(jar));
+			} else {
+				sources.add(new JarClassSource(jar));
+			}
+		}
+		
+		// read the classes, the first class with a name wins
+		Map<String,LibraryClass> classes = Maps.newHashMap();
+		Map<String,String> strings = Maps.newHashMap();
+		try {
+			for (ClassSource source : sources) {
+				for (String className : source.getClassNames()) {
+					if (!classes.containsKey(className)) {
+						LibraryClass c = LibraryClass.read(source.getClassBytes(className), strings);
+						if (c != null && c.name.equals(className)) {
+							classes.put(className, c);
+						}
+					}
+				}
+			}
+		} finally {
+			// everything we need is copied out now, so don't keep the library jars open
+			for (ClassSource source : sources) {
+				source.close();
+			}
+		}
+		
+		pack(Lists.newArrayList(classes.values()));
+	}
+	
+	private static List<ClassSource> getJdkSources()
+	throws IOException {
+		List<ClassSource> sources = Lists.newArrayList();
+		
+		// java 8 and older keep the JDK classes in jars on the boot class path
+		String bootClassPath = System.getProperty("sun.boot.class.path");
+		if (bootClassPath != null) {
+			for (String path : bootClassPath.split(File.pathSeparator)) {
+				File file = new File(path);
+				if (file.isFile()) {
+					sources.add(new JarClassSource(file));
+				}
+			}
+			return sources;
+		}
+		
+		// newer JDKs have the jrt file system with one folder per module
+		FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+		try (DirectoryStream<Path> modules = Files.newDirectoryStream(jrt.getPath("/modules"))) {
+			for (Path module : modules) {
+				sources.add(new DirectoryClassSource(module, 1));
+			}
+		}
+		return sources;
+	}
+	
+	private void pack(List<LibraryClass> classes) {
+		
+		Collections.sort(classes);
+		
+		int numInterfaces = 0;
+		int numMembers = 0;
+		for (LibraryClass c : classes) {
+			numInterfaces += c.interfaceNames.length;
+			numMembers += c.memberNames.length;
+		}
+		
+		m_classNames = new String[classes.size()];
+		m_superclassNames = new String[classes.size()];
+		m_interfaceOffsets = new int[classes.size() + 1];
+		m_interfaceNames = new String[numInterfaces];
+		m_memberOffsets = new int[classes.size() + 1];
+		m_memberNames = new String[numMembers];
+		m_memberDescriptors = new String[numMembers];
+		int interfaceOffset = 0;
+		int memberOffset = 0;
+		for (int i=0; i<classes.size(); i++) {
+			LibraryClass c = classes.get(i);
+			m_classNames[i] = c.name;
+			m_superclassNames[i] = c.superclassName;
+			m_interfaceOffsets[i] = interfaceOffset;
+			System.arraycopy(c.interfaceNames, 0, m_interfaceNames, interfaceOffset, c.interfaceNames.length);
+			interfaceOffset += c.interfaceNames.length;
+			m_memberOffsets[i] = memberOffset;
+			System.arraycopy(c.memberNames, 0, m_memberNames, memberOffset, c.memberNames.length);
+			System.arraycopy(c.memberDescriptors, 0, m_memberDescriptors, memberOffset, c.memberDescriptors.length);
+			memberOffset += c.memberNames.length;
+		}
+		m_interfaceOffsets[classes.size()] = interfaceOffset;
+		m_memberOffsets[classes.size()] = memberOffset;
+	}
+	
+	private boolean read(File file)
+	throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			DataInputStream din = new DataInputStream(new GZIPInputStream(in));
+			if (din.readInt() != Magic || din.readInt() != FormatVersion || !din.readUTF().equals(getKey())) {
+				// written by a different version of enigma, or for different libraries
+				return false;
+			}
+			
+			String[] strings = new String[din.readInt()];
+			for (int i=0; i<strings.length; i++) {
+				strings[i] = din.readUTF();
+			}
+			
+			int numClasses = din.readInt();
+			m_classNames = new String[numClasses];
+			m_superclassNames = new String[numClasses];
+			m_interfaceOffsets = new int[numClasses + 1];
+			m_memberOffsets = new int[numClasses + 1];
+			for (int i=0; i<numClasses; i++) {
+				m_classNames[i] = strings[din.readInt()];
+				m_superclassNames[i] = getString(strings, din.readInt());
+				m_interfaceOffsets[i + 1] = m_interfaceOffsets[i] + din.readInt();
+				m_memberOffsets[i + 1] = m_memberOffsets[i] + din.readInt();
+			}
+			m_interfaceNames = new String[m_interfaceOffsets[numClasses]];
+			for (int i=0; i<m_interfaceNames.length; i++) {
+				m_interfaceNames[i] = strings[din.readInt()];
+			}
+			m_memberNames = new String[m_memberOffsets[numClasses]];
+			m_memberDescriptors = new String[m_memberOffsets[numClasses]];
+			for (int i=0; i<m_memberNames.length; i++) {
+				m_memberNames[i] = strings[din.readInt()];
+				m_memberDescriptors[i] = strings[din.readInt()];
+			}
+			return true;
+		} finally {
+			Util.closeQuietly(in);
+		}
+	}
+	
+	private void write(File file)
+	throws IOException {
+		
+		if (!m_cacheDir.isDirectory() && !m_cacheDir.mkdirs()) {
+			throw new IOException("Unable to create cache folder: " + m_cacheDir);
+		}
+		
+		// number the strings
+		Map<String,Integer> stringIds = Maps.newLinkedHashMap();
+		for (String[] strings : Arrays.asList(m_classNames, m_superclassNames, m_interfaceNames, m_memberNames, m_memberDescriptors)) {
+			for (String string : strings) {
+				if (string != null && !stringIds.containsKey(string)) {
+					stringIds.put(string, stringIds.size());
+				}
+			}
+		}
+		
+		// write to a temp file first so readers never see a half-written cache
+		File tempFile = File.createTempFile("library", ".tmp", m_cacheDir);
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+			try {
+				GZIPOutputStream gzipout = new GZIPOutputStream(out);
+				DataOutputStream dout = new DataOutputStream(gzipout);
+				dout.writeInt(Magic);
+				dout.writeInt(FormatVersion);
+				dout.writeUTF(getKey());
+				dout.writeInt(stringIds.size());
+				for (String string : stringIds.keySet()) {
+					dout.writeUTF(string);
+				}
+				dout.writeInt(m_classNames.length);
+				for (int i=0; i<m_classNames.length; i++) {
+					dout.writeInt(stringIds.get(m_classNames[i]));
+					dout.writeInt(m_superclassNames[i] == null ? NoString : stringIds.get(m_superclassNames[i]));
+					dout.writeInt(m_interfaceOffsets[i + 1] - m_interfaceOffsets[i]);
+					dout.writeInt(m_memberOffsets[i + 1] - m_memberOffsets[i]);
+				}
+				for (String interfaceName : m_interfaceNames) {
+					dout.writeInt(stringIds.get(interfaceName));
+				}
+				for (int i=0; i<m_memberNames.length; i++) {
+					dout.writeInt(stringIds.get(m_memberNames[i]));
+					dout.writeInt(stringIds.get(m_memberDescriptors[i]));
+				}
+				dout.flush();
+				gzipout.finish();
+			} finally {
+				Util.closeQuietly(out);
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			tempFile.delete();
+		}
+		
+		// library indices share the cache folder with jar indices, so they share its size limits too
+		new JarIndexCache(m_cacheDir).trim();
+	}
+	
+	private static String getString(String[] strings, int id) {
+		if (id == NoString) {
+			return null;
+		}
+		return strings[id];
+	}
+	
+	private static class LibraryClass implements Comparable<LibraryClass> {
+		
+		public String name;
+		public String superclassName;
+		public String[] interfaceNames;
+		public String[] memberNames;
+		public String[] memberDescriptors;
+		
+		@Override
+		public int compareTo(LibraryClass other) {
+			return name.compareTo(other.name);
+		}
+		
+		public static LibraryClass read(byte[] bytes, Map<String,String> strings)
+		throws IOException {
+			
+			// NOTE: there are lots of library classes, so just skim the parts of the class file we need instead of parsing all of it
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+			if (in.readInt() != 0xcafebabe) {
+				return null;
+			}
+			in.readUnsignedShort(); // minor version
+			in.readUnsignedShort(); // major version
+			
+			// step 1: read the constant pool, but only keep the strings
+			int numConstants = in.readUnsignedShort();
+			String[] utf8s = new String[numConstants];
+			int[] classNameIndices = new int[numConstants];
+			for (int i=1; i<numConstants; i++) {
+				int tag = in.readUnsignedByte();
+				switch (tag) {
+					case 1: // utf8
+						utf8s[i] = in.readUTF();
+					break;
+					case 7: // class
+						classNameIndices[i] = in.readUnsignedShort();
+					break;
+					case 8: // string
+					case 16: // method type
+					case 19: // module
+					case 20: // package
+						in.skipBytes(2);
+					break;
+					case 15: // method handle
+						in.skipBytes(3);
+					break;
+					case 3: // integer
+					case 4: // float
+					case 9: // field ref
+					case 10: // method ref
+					case 11: // interface method ref
+					case 12: // name and type
+					case 17: // dynamic
+					case 18: // invoke dynamic
+						in.skipBytes(4);
+					break;
+					case 5: // long
+					case 6: // double
+						in.skipBytes(8);
+						i++;
+					break;
+					default:
+						throw new IOException("Unknown constant pool tag: " + tag);
+				}
+			}
+			
+			// step 2: read the class names
+			int access = in.readUnsignedShort();
+			if ((access & ModuleAccessFlag) != 0) {
+				return null;
+			}
+			LibraryClass c = new LibraryClass();
+			c.name = intern(strings, utf8s[classNameIndices[in.readUnsignedShort()]]);
+			int superclassIndex = in.readUnsignedShort();
+			c.superclassName = superclassIndex == 0 ? null : intern(strings, utf8s[classNameIndices[superclassIndex]]);
+			c.interfaceNames = new String[in.readUnsignedShort()];
+			for (int i=0; i<c.interfaceNames.length; i++) {
+				c.interfaceNames[i] = intern(strings, utf8s[classNameIndices[in.readUnsignedShort()]]);
+			}
+			
+			// step 3: read the fields and methods
+			// only keep the ones subclasses can inherit, nothing can resolve to the others from outside the class
+			List<String> memberNames = Lists.newArrayList();
+			List<String> memberDescriptors = Lists.newArrayList();
+			for (int pass=0; pass<2; pass++) {
+				int numMembers = in.readUnsignedShort();
+				for (int i=0; i<numMembers; i++) {
+					int memberAccess = in.readUnsignedShort();
+					String name = utf8s[in.readUnsignedShort()];
+					String descriptor = utf8s[in.readUnsignedShort()];
+					int numAttributes = in.readUnsignedShort();
+					for (int j=0; j<numAttributes; j++) {
+						in.readUnsignedShort();
+						in.skipBytes(in.readInt());
+					}
+					if ((memberAccess & AccessFlag.PRIVATE) == 0 && !name.equals("<init>") && !name.equals("<clinit>")) {
+						memberNames.add(intern(strings, name));
+						memberDescriptors.add(intern(strings, descriptor));
+					}
+				}
+			}
+			c.memberNames = memberNames.toArray(new String[memberNames.size()]);
+			c.memberDescriptors = memberDescriptors.toArray(new String[memberDescriptors.size()]);
+			return c;
+		}
+		
+		private static String intern(Map<String,String> strings, String string) {
+			String interned = strings.get(string);
+			if (interned == null) {
+				strings.put(string, string);
+				interned = string;
+			}
+			return interned;
+		}
+	}
+}
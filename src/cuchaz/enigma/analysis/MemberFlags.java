@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import javassist.CtBehavior;
+import javassist.CtField;
+import javassist.bytecode.AccessFlag;
+
+// flags for the fields and behaviors declared in the jar, indexed by symbol id
+// ids that aren't members of the jar (eg, referenced library members) just have no flags
+public class MemberFlags implements Serializable {
+	
+	private static final long serialVersionUID = -3954085116497383047L;
+	
+	public static final int Member = 1 << 0;
+	public static final int Static = 1 << 1;
+	public static final int Synthetic = 1 << 2;
+	public static final int Bridge = 1 << 3;
+	
+	// the access gets packed into two bits, in Access ordinal order
+	private static final int AccessShift = 4;
+	private static final int AccessMask = 3 << AccessShift;
+	private static final Access[] Accesses = Access.values();
+	
+	private int[] m_flags;
+	
+	public MemberFlags() {
+		m_flags = new int[0];
+	}
+	
+	public static int get(CtField field) {
+		return get(field.getFieldInfo2().getAccessFlags(), false);
+	}
+	
+	public static int get(CtBehavior behavior) {
+		return get(behavior.getMethodInfo2().getAccessFlags(), true);
+	}
+	
+	public static int get(int accessFlags, boolean isBehavior) {
+		int flags = Member | (Access.get(accessFlags).ordinal() << AccessShift);
+		if ((accessFlags & AccessFlag.STATIC) != 0) {
+			flags |= Static;
+		}
+		if ((accessFlags & AccessFlag.SYNTHETIC) != 0) {
+			flags |= Synthetic;
+		}
+		// fields use the same bit for volatile
+		if (isBehavior && (accessFlags & AccessFlag.BRIDGE) != 0) {
+			flags |= Bridge;
+		}
+		return flags;
+	}
+	
+	public int get(int id) {
+		return id >= 0 && id < m_flags.length ? m_flags[id] : 0;
+	}
+	
+	public void set(int id, int flags) {
+		if (id >= m_flags.length) {
+			m_flags = Arrays.copyOf(m_flags, Math.max(id + 1, m_flags.length*2));
+		}
+		m_flags[id] = flags;
+	}
+	
+	public void add(int id, int flags) {
+		set(id, get(id) | flags);
+	}
+	
+	public void remove(int id) {
+		if (id >= 0 && id < m_flags.length) {
+			m_flags[id] = 0;
+		}
+	}
+	
+	public void addAll(MemberFlags other, int[] ids) {
+		// ids maps the other table's symbol ids to symbol ids for this table
+		for (int i=0; i<other.m_flags.length; i++) {
+			if (other.m_flags[i] != 0) {
+				add(ids[i], other.m_flags[i]);
+			}
+		}
+	}
+	
+	public boolean isMember(int id) {
+		return (get(id) & Member) != 0;
+	}
+	
+	public Access getAccess(int id) {
+		int flags = get(id);
+		if ((flags & Member) == 0) {
+			return null;
+		}
+		return Accesses[(flags & AccessMask) >> AccessShift];
+	}
+	
+	public boolean isStatic(int id) {
+		return (get(id) & Static) != 0;
+	}
+	
+	public boolean isSynthetic(int id) {
+		return (get(id) & Synthetic) != 0;
+	}
+	
+	public boolean isBridge(int id) {
+		return (get(id) & Bridge) != 0;
+	}
+}
@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// directed edges between symbol ids, with one flag bit per edge
+// edges are collected with addEdge(), then freeze() packs them into CSR (compressed sparse row) arrays
+// indexed both by source and by target, so lookups in either direction are just array reads
+// after spill(), the edges live in memory-mapped temp files instead of on the heap, only the offsets stay resident
+public class ReferenceGraph implements Serializable {
+	
+	private static final long serialVersionUID = 5024361178832170439L;
+	
+	private static final int[] NoEdges = {};
+	
+	// frozen edges, the ids are packed with the flag bit like this: (id << 1) | flag
+	private int m_numNodes;
+	private int[] m_targetOffsets;
+	private transient IntBuffer m_targets;
+	private int[] m_sourceOffsets;
+	private transient IntBuffer m_sources;
+	
+	// edges added since the last freeze
+	private int[] m_newSources;
+	private int[] m_newTargets;
+	private int m_numNewEdges;
+	
+	// when spilling, new edges that don't fit in the buffer go to a run file as (source, target) pairs
+	private transient File m_spillDir;
+	private transient int m_maxNewEdges;
+	private transient FileChannel m_runChannel;
+	private transient int m_numRunEdges;
+	
+	public ReferenceGraph() {
+		m_numNodes = 0;
+		m_targetOffsets = new int[] { 0 };
+		m_targets = IntBuffer.wrap(NoEdges);
+		m_sourceOffsets = new int[] { 0 };
+		m_sources = IntBuffer.wrap(NoEdges);
+		m_newSources = NoEdges;
+		m_newTargets = NoEdges;
+		m_numNewEdges = 0;
+		m_spillDir = null;
+		m_maxNewEdges = Integer.MAX_VALUE;
+		m_runChannel = null;
+		m_numRunEdges = 0;
+	}
+	
+	public boolean isSpilled() {
+		return m_spillDir != null;
+	}
+	
+	public void spill(File dir, int maxNewEdges) {
+		
+		// from now on, keep the edges in temp files in this folder
+		// and never buffer more than this many new edges on the heap
+		m_spillDir = dir;
+		m_maxNewEdges = Math.max(1, maxNewEdges);
+		
+		// move the frozen edges we already have
+		m_targets = copy(m_targets, m_targetOffsets[m_numNodes]);
+		m_sources = copy(m_sources, m_sourceOffsets[m_numNodes]);
+		if (m_numNewEdges > m_maxNewEdges) {
+			flushNewEdges();
+		}
+	}
+	
+	public void addEdge(int source, int target, boolean flag) {
+		if (m_numNewEdges == m_newSources.length) {
+			if (m_numNewEdges >= m_maxNewEdges) {
+				flushNewEdges();
+			} else {
+				int size = (int)Math.min(m_maxNewEdges, Math.max(16, m_newSources.length*2L));
+				m_newSources = Arrays.copyOf(m_newSources, size);
+				m_newTargets = Arrays.copyOf(m_newTargets, size);
+			}
+		}
+		m_newSources[m_numNewEdges] = source;
+		m_newTargets[m_numNewEdges] = pack(target, flag);
+		m_numNewEdges++;
+	}
+	
+	public void addEdges(ReferenceGraph other, final int[] ids) {
+		// ids maps the other graph's node ids to node ids for this graph
+		other.visitEdges(new BitSet(), new EdgeVisitor() {
+			@Override
+			public void visit(int source, int packedTarget) {
+				addEdge(ids[source], ids[unpackId(packedTarget)], unpackFlag(packedTarget));
+			}
+		});
+	}
+	
+	public void freeze(int numNodes) {
+		freeze(numNodes, new BitSet());
+	}
+	
+	public void freeze(int numNodes, BitSet removedSources) {
+		
+		// count the edges for each source
+		// and drop any edges from the removed sources while we're at it
+		final int[] offsets = new int[numNodes + 1];
+		visitEdges(removedSources, new EdgeVisitor() {
+			@Override
+			public void visit(int source, int packedTarget) {
+				offsets[source + 1]++;
+			}
+		});
+		for (int i=0; i<numNodes; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		
+		// bucket the edges by source, the frozen ones come first
+		// the counting sort is stable so the first duplicate edge wins
+		final IntBuffer buckets = allocate(offsets[numNodes]);
+		final int[] next = Arrays.copyOf(offsets, numNodes);
+		visitEdges(removedSources, new EdgeVisitor() {
+			@Override
+			public void visit(int source, int packedTarget) {
+				buckets.put(next[source]++, packedTarget);
+			}
+		});
+		
+		// remove duplicate edges, compacting the buckets in place
+		int[] lastSources = next;
+		Arrays.fill(lastSources, -1);
+		m_targetOffsets = new int[numNodes + 1];
+		int n = 0;
+		for (int source=0; source<numNodes; source++) {
+			m_targetOffsets[source] = n;
+			for (int i=offsets[source]; i<offsets[source + 1]; i++) {
+				int packed = buckets.get(i);
+				int target = unpackId(packed);
+				if (lastSources[target] != source) {
+					lastSources[target] = source;
+					buckets.put(n++, packed);
+				}
+			}
+		}
+		m_targetOffsets[numNodes] = n;
+		m_targets = trim(buckets, n);
+		
+		// index the same edges by target
+		m_sourceOffsets = offsets;
+		Arrays.fill(m_sourceOffsets, 0);
+		for (int i=0; i<n; i++) {
+			m_sourceOffsets[unpackId(m_targets.get(i)) + 1]++;
+		}
+		for (int i=0; i<numNodes; i++) {
+			m_sourceOffsets[i + 1] += m_sourceOffsets[i];
+		}
+		m_sources = allocate(n);
+		System.arraycopy(m_sourceOffsets, 0, next, 0, numNodes);
+		for (int source=0; source<numNodes; source++) {
+			for (int i=m_targetOffsets[source]; i<m_targetOffsets[source + 1]; i++) {
+				int packed = m_targets.get(i);
+				m_sources.put(next[unpackId(packed)]++, pack(source, unpackFlag(packed)));
+			}
+		}
+		
+		m_numNodes = numNodes;
+		m_newSources = NoEdges;
+		m_newTargets = NoEdges;
+		m_numNewEdges = 0;
+		closeRuns();
+	}
+	
+	public int getNumEdges() {
+		return m_targetOffsets[m_numNodes];
+	}
+	
+	public int getTargetsStart(int source) {
+		return source >= 0 && source < m_numNodes ? m_targetOffsets[source] : 0;
+	}
+	
+	public int getTargetsStop(int source) {
+		return source >= 0 && source < m_numNodes ? m_targetOffsets[source + 1] : 0;
+	}
+	
+	public int getTarget(int i) {
+		return unpackId(m_targets.get(i));
+	}
+	
+	public boolean getTargetFlag(int i) {
+		return unpackFlag(m_targets.get(i));
+	}
+	
+	public int getSourcesStart(int target) {
+		return target >= 0 && target < m_numNodes ? m_sourceOffsets[target] : 0;
+	}
+	
+	public int getSourcesStop(int target) {
+		return target >= 0 && target < m_numNodes ? m_sourceOffsets[target + 1] : 0;
+	}
+	
+	public int getSource(int i) {
+		return unpackId(m_sources.get(i));
+	}
+	
+	public boolean getSourceFlag(int i) {
+		return unpackFlag(m_sources.get(i));
+	}
+	
+	private interface EdgeVisitor {
+		void visit(int source, int packedTarget);
+	}
+	
+	private void visitEdges(BitSet removedSources, EdgeVisitor visitor) {
+		
+		// frozen edges first, then the new ones in the order they were added
+		for (int source=0; source<m_numNodes; source++) {
+			if (removedSources.get(source)) {
+				continue;
+			}
+			for (int i=m_targetOffsets[source]; i<m_targetOffsets[source + 1]; i++) {
+				visitor.visit(source, m_targets.get(i));
+			}
+		}
+		if (m_runChannel != null) {
+			IntBuffer run = map(m_runChannel, FileChannel.MapMode.READ_ONLY, m_numRunEdges*2);
+			for (int i=0; i<m_numRunEdges; i++) {
+				int source = run.get(i*2);
+				if (!removedSources.get(source)) {
+					visitor.visit(source, run.get(i*2 + 1));
+				}
+			}
+		}
+		for (int i=0; i<m_numNewEdges; i++) {
+			if (!removedSources.get(m_newSources[i])) {
+				visitor.visit(m_newSources[i], m_newTargets[i]);
+			}
+		}
+	}
+	
+	private void flushNewEdges() {
+		try {
+			if (m_runChannel == null) {
+				m_runChannel = openTempFile();
+				m_numRunEdges = 0;
+			}
+			ByteBuffer buf = ByteBuffer.allocate(m_numNewEdges*8);
+			for (int i=0; i<m_numNewEdges; i++) {
+				buf.putInt(m_newSources[i]);
+				buf.putInt(m_newTargets[i]);
+			}
+			buf.flip();
+			while (buf.hasRemaining()) {
+				m_runChannel.write(buf, m_numRunEdges*8L + buf.position());
+			}
+			m_numRunEdges += m_numNewEdges;
+			m_numNewEdges = 0;
+		} catch (IOException ex) {
+			throw new Error("Unable to spill references to: " + m_spillDir, ex);
+		}
+	}
+	
+	private void closeRuns() {
+		if (m_runChannel != null) {
+			try {
+				m_runChannel.close();
+			} catch (IOException ex) {
+				// the file is already gone, nothing else to do
+			}
+			m_runChannel = null;
+			m_numRunEdges = 0;
+		}
+	}
+	
+	private IntBuffer allocate(int size) {
+		if (m_spillDir == null) {
+			return IntBuffer.wrap(new int[size]);
+		}
+		try (FileChannel channel = openTempFile()) {
+			// the mapping stays valid after the channel closes
+			return map(channel, FileChannel.MapMode.READ_WRITE, size);
+		} catch (IOException ex) {
+			throw new Error("Unable to spill references to: " + m_spillDir, ex);
+		}
+	}
+	
+	private IntBuffer trim(IntBuffer buf, int size) {
+		if (buf.hasArray()) {
+			return IntBuffer.wrap(Arrays.copyOf(buf.array(), size));
+		}
+		// mapped edges don't cost any heap, so don't bother copying them to a smaller file
+		return buf;
+	}
+	
+	private IntBuffer copy(IntBuffer buf, int size) {
+		IntBuffer out = allocate(size);
+		for (int i=0; i<size; i++) {
+			out.put(i, buf.get(i));
+		}
+		return out;
+	}
+	
+	private FileChannel openTempFile()
+	throws IOException {
+		File file = File.createTempFile("enigma-references", ".tmp", m_spillDir);
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		// we only ever need the open channel or the mapping, so get rid of the name right away
+		// if the OS won't delete files that are still open, clean up on exit instead
+		if (!file.delete()) {
+			file.deleteOnExit();
+		}
+		return channel;
+	}
+	
+	private static IntBuffer map(FileChannel channel, FileChannel.MapMode mode, int size) {
+		try {
+			return channel.map(mode, 0, size*4L).asIntBuffer();
+		} catch (IOException ex) {
+			throw new Error("Unable to map references", ex);
+		}
+	}
+	
+	private void writeObject(ObjectOutputStream out)
+	throws IOException {
+		if (m_numNewEdges > 0 || m_runChannel != null) {
+			throw new IllegalStateException("freeze the graph before writing it");
+		}
+		out.defaultWriteObject();
+		writeEdges(out, m_targets, getNumEdges());
+		writeEdges(out, m_sources, getNumEdges());
+	}
+	
+	private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		m_targets = readEdges(in, getNumEdges());
+		m_sources = readEdges(in, getNumEdges());
+		m_maxNewEdges = Integer.MAX_VALUE;
+	}
+	
+	private static void writeEdges(ObjectOutputStream out, IntBuffer edges, int size)
+	throws IOException {
+		for (int i=0; i<size; i++) {
+			out.writeInt(edges.get(i));
+		}
+	}
+	
+	private static IntBuffer readEdges(ObjectInputStream in, int size)
+	throws IOException {
+		int[] edges = new int[size];
+		for (int i=0; i<size; i++) {
+			edges[i] = in.readInt();
+		}
+		return IntBuffer.wrap(edges);
+	}
+	
+	private static int pack(int id, boolean flag) {
+		return (id << 1) | (flag ? 1 : 0);
+	}
+	
+	private static int unpackId(int packed) {
+		return packed >>> 1;
+	}
+	
+	private static boolean unpackFlag(int packed) {
+		return (packed & 1) != 0;
+	}
+}
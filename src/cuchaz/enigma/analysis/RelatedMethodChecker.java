@@ -40,9 +40,6 @@ public class RelatedMethodChecker {
 	
 	public void checkMethod(ClassEntry classEntry, MethodMapping methodMapping) {
 		
-		// TEMP: disable the expensive check for now, maybe we can optimize it later, or just use it for debugging
-		if (true) return;
-		
 		BehaviorEntry obfBehaviorEntry = EntryFactory.getObfBehaviorEntry(classEntry, methodMapping);
 		if (!(obfBehaviorEntry instanceof MethodEntry)) {
 			// only methods have related implementations
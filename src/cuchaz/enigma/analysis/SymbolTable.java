@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import cuchaz.enigma.mapping.BehaviorEntry;
+import cuchaz.enigma.mapping.Entry;
+import cuchaz.enigma.mapping.EntryFactory;
+import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.Type;
+
+public class SymbolTable implements Serializable {
+	
+	private static final long serialVersionUID = -2350781628409476521L;
+	
+	public static final int NoId = -1;
+	
+	private List<Entry> m_entries;
+	private transient Map<Entry,Integer> m_ids;
+	
+	// the ids of the entries that mention each class name, so renames only have to touch those entries
+	// each list is packed like this: { size, id, id, ... }
+	private transient Map<String,int[]> m_mentions;
+	
+	public SymbolTable() {
+		m_entries = Lists.newArrayList();
+		m_ids = Maps.newHashMap();
+		m_mentions = Maps.newHashMap();
+	}
+	
+	public int size() {
+		return m_entries.size();
+	}
+	
+	public int add(Entry entry) {
+		Integer id = m_ids.get(entry);
+		if (id == null) {
+			id = m_entries.size();
+			m_entries.add(entry);
+			m_ids.put(entry, id);
+			addMentions(entry, id);
+		}
+		return id;
+	}
+	
+	public int[] addAll(SymbolTable other) {
+		// returns the new id for each of the other table's ids
+		int[] ids = new int[other.size()];
+		for (int i=0; i<ids.length; i++) {
+			ids[i] = add(other.getEntry(i));
+		}
+		return ids;
+	}
+	
+	public int getId(Entry entry) {
+		Integer id = m_ids.get(entry);
+		if (id == null) {
+			return NoId;
+		}
+		return id;
+	}
+	
+	public Entry getEntry(int id) {
+		return m_entries.get(id);
+	}
+	
+	public Map<Entry,Entry> renameClasses(Map<String,String> renames) {
+		
+		// ids don't change, so nothing that refers to them has to change either
+		// returns the entries that changed, mapped from the old entry to the new one
+		
+		// only the entries that mention a renamed class can change
+		BitSet ids = new BitSet();
+		for (String className : renames.keySet()) {
+			int[] mentions = m_mentions.get(className);
+			if (mentions != null) {
+				for (int i=1; i<=mentions[0]; i++) {
+					ids.set(mentions[i]);
+				}
+			}
+		}
+		
+		// take out all the old entries before adding the new ones, in case a new entry has the same name as an old one
+		Map<Entry,Entry> renamedEntries = Maps.newHashMap();
+		for (int id=ids.nextSetBit(0); id>=0; id=ids.nextSetBit(id + 1)) {
+			Entry oldEntry = m_entries.get(id);
+			Entry newEntry = EntryRenamer.renameClassesInThing(renames, oldEntry);
+			if (newEntry.equals(oldEntry)) {
+				ids.clear(id);
+			} else {
+				renamedEntries.put(oldEntry, newEntry);
+				m_ids.remove(oldEntry);
+			}
+		}
+		for (int id=ids.nextSetBit(0); id>=0; id=ids.nextSetBit(id + 1)) {
+			Entry newEntry = renamedEntries.get(m_entries.get(id));
+			m_entries.set(id, newEntry);
+			m_ids.put(newEntry, id);
+		}
+		
+		// everything that mentioned an old class name mentions the new one now
+		Map<String,int[]> movedMentions = Maps.newHashMap();
+		for (Map.Entry<String,String> rename : renames.entrySet()) {
+			int[] mentions = m_mentions.remove(rename.getKey());
+			if (mentions != null) {
+				movedMentions.put(rename.getValue(), mentions);
+			}
+		}
+		for (Map.Entry<String,int[]> mapEntry : movedMentions.entrySet()) {
+			int[] mentions = mapEntry.getValue();
+			for (int i=1; i<=mentions[0]; i++) {
+				addMention(mapEntry.getKey(), mentions[i]);
+			}
+		}
+		
+		return renamedEntries;
+	}
+	
+	private void addMentions(Entry entry, int id) {
+		addMention(entry.getClassName(), id);
+		if (entry instanceof FieldEntry) {
+			addMention(((FieldEntry)entry).getType(), id);
+		} else if (entry instanceof BehaviorEntry && ((BehaviorEntry)entry).getSignature() != null) {
+			// class initializers don't have signatures
+			for (Type type : ((BehaviorEntry)entry).getSignature().types()) {
+				addMention(type, id);
+			}
+		}
+	}
+	
+	private void addMention(Type type, int id) {
+		if (type.hasClass()) {
+			addMention(type.getClassEntry().getClassName(), id);
+		}
+	}
+	
+	private void addMention(String className, int id) {
+		int[] mentions = m_mentions.get(className);
+		if (mentions == null) {
+			mentions = new int[4];
+		} else if (mentions[mentions[0]] == id) {
+			// already got this one
+			return;
+		} else if (mentions[0] + 1 == mentions.length) {
+			mentions = Arrays.copyOf(mentions, mentions.length*2);
+		}
+		mentions[++mentions[0]] = id;
+		m_mentions.put(className, mentions);
+	}
+	
+	private void indexIds() {
+		m_ids = Maps.newHashMap();
+		m_mentions = Maps.newHashMap();
+		for (int i=0; i<m_entries.size(); i++) {
+			m_ids.put(m_entries.get(i), i);
+			addMentions(m_entries.get(i), i);
+		}
+	}
+	
+	private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		for (int i=0; i<m_entries.size(); i++) {
+			m_entries.set(i, EntryFactory.intern(m_entries.get(i)));
+		}
+		indexIds();
+	}
+}
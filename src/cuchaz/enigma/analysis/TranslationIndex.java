@@ -21,6 +21,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -30,9 +32,11 @@ import javassist.CtField;
 import javassist.bytecode.Descriptor;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 
 import cuchaz.enigma.mapping.ArgumentEntry;
 import cuchaz.enigma.mapping.BehaviorEntry;
@@ -46,16 +50,31 @@ public class TranslationIndex implements Serializable {
 	
 	private static final long serialVersionUID = 738687982126844179L;
 	
+	// concurrent maps can't hold nulls, so remember failed resolutions with this instead
+	private static final ClassEntry Unresolved = new ClassEntry("");
+	
 	private Map<ClassEntry,ClassEntry> m_superclasses;
 	private Multimap<ClassEntry,FieldEntry> m_fieldEntries;
 	private Multimap<ClassEntry,BehaviorEntry> m_behaviorEntries;
 	private Multimap<ClassEntry,ClassEntry> m_interfaces;
+	private Multimap<ClassEntry,ClassEntry> m_subclasses;
+	private Multimap<ClassEntry,ClassEntry> m_implementations;
+	private Multimap<ClassEntry,ClassEntry> m_libraryInterfaces;
+	private transient LibraryIndex m_libraryIndex;
+	private transient Map<Entry,ClassEntry> m_resolvedEntryClasses;
+	private transient AtomicLong m_resolutionCacheHits;
+	private transient AtomicLong m_resolutionCacheMisses;
 	
 	public TranslationIndex() {
 		m_superclasses = Maps.newHashMap();
 		m_fieldEntries = HashMultimap.create();
 		m_behaviorEntries = HashMultimap.create();
 		m_interfaces = HashMultimap.create();
+		m_subclasses = HashMultimap.create();
+		m_implementations = HashMultimap.create();
+		m_libraryInterfaces = HashMultimap.create();
+		m_libraryIndex = null;
+		initResolutionCache();
 	}
 	
 	public TranslationIndex(TranslationIndex other, Translator translator) {
@@ -94,6 +113,31 @@ public class TranslationIndex implements Serializable {
 				translator.translateEntry(mapEntry.getValue())
 			);
 		}
+		
+		// translate the library interfaces
+		m_libraryInterfaces = HashMultimap.create();
+		for (Map.Entry<ClassEntry,ClassEntry> mapEntry : other.m_libraryInterfaces.entries()) {
+			m_libraryInterfaces.put(
+				translator.translateEntry(mapEntry.getKey()),
+				translator.translateEntry(mapEntry.getValue())
+			);
+		}
+		m_libraryIndex = other.m_libraryIndex;
+		
+		indexSubclassesAndImplementations();
+		initResolutionCache();
+	}
+	
+	private void initResolutionCache() {
+		m_resolvedEntryClasses = new ConcurrentHashMap<Entry,ClassEntry>();
+		m_resolutionCacheHits = new AtomicLong();
+		m_resolutionCacheMisses = new AtomicLong();
+	}
+	
+	private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		initResolutionCache();
 	}
 	
 	public void indexClass(CtClass c) {
@@ -107,17 +151,25 @@ public class TranslationIndex implements Serializable {
 			return;
 		}
 		
+		// new classes can change how entries resolve
+		m_resolvedEntryClasses.clear();
+		
 		// add the superclass
 		ClassEntry superclassEntry = EntryFactory.getSuperclassEntry(c);
 		if (superclassEntry != null) {
 			m_superclasses.put(classEntry, superclassEntry);
+			m_subclasses.put(superclassEntry, classEntry);
 		}
 		
 		// add the interfaces
 		for (String interfaceClassName : c.getClassFile().getInterfaces()) {
-			ClassEntry interfaceClassEntry = new ClassEntry(Descriptor.toJvmName(interfaceClassName));
+			ClassEntry interfaceClassEntry = EntryFactory.getClassEntry(Descriptor.toJvmName(interfaceClassName));
 			if (!isJre(interfaceClassEntry)) {
 				m_interfaces.put(classEntry, interfaceClassEntry);
+				m_implementations.put(interfaceClassEntry, classEntry);
+			} else {
+				// only a library index can resolve anything through these
+				m_libraryInterfaces.put(classEntry, interfaceClassEntry);
 			}
 		}
 		
@@ -136,10 +188,113 @@ public class TranslationIndex implements Serializable {
 		}
 	}
 	
+	public void merge(TranslationIndex other) {
+		m_resolvedEntryClasses.clear();
+		m_superclasses.putAll(other.m_superclasses);
+		m_fieldEntries.putAll(other.m_fieldEntries);
+		m_behaviorEntries.putAll(other.m_behaviorEntries);
+		m_interfaces.putAll(other.m_interfaces);
+		m_subclasses.putAll(other.m_subclasses);
+		m_implementations.putAll(other.m_implementations);
+		m_libraryInterfaces.putAll(other.m_libraryInterfaces);
+	}
+	
+	public void removeClass(ClassEntry classEntry) {
+		
+		// removed classes can change how entries resolve too
+		m_resolvedEntryClasses.clear();
+		
+		ClassEntry superclassEntry = m_superclasses.remove(classEntry);
+		if (superclassEntry != null) {
+			m_subclasses.remove(superclassEntry, classEntry);
+		}
+		for (ClassEntry interfaceClassEntry : m_interfaces.removeAll(classEntry)) {
+			m_implementations.remove(interfaceClassEntry, classEntry);
+		}
+		m_fieldEntries.removeAll(classEntry);
+		m_behaviorEntries.removeAll(classEntry);
+		m_libraryInterfaces.removeAll(classEntry);
+	}
+	
 	public void renameClasses(Map<String,String> renames) {
-		EntryRenamer.renameClassesInMap(renames, m_superclasses);
-		EntryRenamer.renameClassesInMultimap(renames, m_fieldEntries);
-		EntryRenamer.renameClassesInMultimap(renames, m_behaviorEntries);
+		
+		// without a symbol table to say what changed, check all the members
+		Map<Entry,Entry> renamedEntries = Maps.newHashMap();
+		for (Map.Entry<String,String> rename : renames.entrySet()) {
+			renamedEntries.put(EntryFactory.getClassEntry(rename.getKey()), EntryFactory.getClassEntry(rename.getValue()));
+		}
+		for (Entry entry : Iterables.concat(m_fieldEntries.values(), m_behaviorEntries.values())) {
+			Entry newEntry = EntryRenamer.renameClassesInThing(renames, entry);
+			if (!newEntry.equals(entry)) {
+				renamedEntries.put(entry, newEntry);
+			}
+		}
+		renameEntries(renamedEntries);
+	}
+	
+	public void renameEntries(Map<? extends Entry,? extends Entry> renamedEntries) {
+		
+		// NOTE: renamedEntries has to have every class, field, and behavior entry that changed (old entry -> new entry)
+		// see SymbolTable.renameClasses(), then only the affected parts of the index get touched
+		m_resolvedEntryClasses.clear();
+		
+		// find the keys whose values have renamed entries, while the keys still have their old names
+		Set<ClassEntry> classEntries = Sets.newHashSet();
+		for (Entry entry : renamedEntries.keySet()) {
+			if (entry instanceof ClassEntry) {
+				ClassEntry classEntry = (ClassEntry)entry;
+				classEntries.addAll(m_subclasses.get(classEntry));
+				classEntries.addAll(m_implementations.get(classEntry));
+				classEntries.addAll(m_interfaces.get(classEntry));
+				ClassEntry superclassEntry = m_superclasses.get(classEntry);
+				if (superclassEntry != null) {
+					classEntries.add(superclassEntry);
+				}
+			} else {
+				classEntries.add(entry.getClassEntry());
+			}
+		}
+		
+		// rename the values first, then move the keys
+		// NOTE: library interfaces are never classes in the jar, so only their keys can change
+		EntryRenamer.renameValuesInMap(renamedEntries, m_superclasses, classEntries);
+		EntryRenamer.renameValuesInMultimap(renamedEntries, m_fieldEntries, classEntries);
+		EntryRenamer.renameValuesInMultimap(renamedEntries, m_behaviorEntries, classEntries);
+		EntryRenamer.renameValuesInMultimap(renamedEntries, m_interfaces, classEntries);
+		EntryRenamer.renameValuesInMultimap(renamedEntries, m_subclasses, classEntries);
+		EntryRenamer.renameValuesInMultimap(renamedEntries, m_implementations, classEntries);
+		EntryRenamer.renameKeysInMap(renamedEntries, m_superclasses);
+		EntryRenamer.renameKeysInMultimap(renamedEntries, m_fieldEntries);
+		EntryRenamer.renameKeysInMultimap(renamedEntries, m_behaviorEntries);
+		EntryRenamer.renameKeysInMultimap(renamedEntries, m_interfaces);
+		EntryRenamer.renameKeysInMultimap(renamedEntries, m_subclasses);
+		EntryRenamer.renameKeysInMultimap(renamedEntries, m_implementations);
+		EntryRenamer.renameKeysInMultimap(renamedEntries, m_libraryInterfaces);
+	}
+	
+	public LibraryIndex getLibraryIndex() {
+		return m_libraryIndex;
+	}
+	
+	public void setLibraryIndex(LibraryIndex libraryIndex) {
+		m_libraryIndex = libraryIndex;
+		m_resolvedEntryClasses.clear();
+	}
+	
+	public boolean isLibraryClass(ClassEntry classEntry) {
+		// classes in the jar hide library classes with the same name
+		return m_libraryIndex != null && !m_superclasses.containsKey(classEntry) && m_libraryIndex.containsClass(classEntry);
+	}
+	
+	private void indexSubclassesAndImplementations() {
+		m_subclasses = HashMultimap.create();
+		for (Map.Entry<ClassEntry,ClassEntry> mapEntry : m_superclasses.entrySet()) {
+			m_subclasses.put(mapEntry.getValue(), mapEntry.getKey());
+		}
+		m_implementations = HashMultimap.create();
+		for (Map.Entry<ClassEntry,ClassEntry> mapEntry : m_interfaces.entries()) {
+			m_implementations.put(mapEntry.getValue(), mapEntry.getKey());
+		}
 	}
 	
 	public ClassEntry getSuperclass(ClassEntry classEntry) {
@@ -158,17 +313,7 @@ public class TranslationIndex implements Serializable {
 	}
 	
 	public List<ClassEntry> getSubclass(ClassEntry classEntry) {
-		
-		// linear search is fast enough for now
-		List<ClassEntry> subclasses = Lists.newArrayList();
-		for (Map.Entry<ClassEntry,ClassEntry> entry : m_superclasses.entrySet()) {
-			ClassEntry subclass = entry.getKey();
-			ClassEntry superclass = entry.getValue();
-			if (classEntry.equals(superclass)) {
-				subclasses.add(subclass);
-			}
-		}
-		return subclasses;
+		return Lists.newArrayList(m_subclasses.get(classEntry));
 	}
 	
 	public void getSubclassesRecursively(Set<ClassEntry> out, ClassEntry classEntry) {
@@ -193,8 +338,12 @@ public class TranslationIndex implements Serializable {
 		return m_interfaces.get(classEntry);
 	}
 	
+	public Collection<ClassEntry> getImplementations(ClassEntry interfaceEntry) {
+		return m_implementations.get(interfaceEntry);
+	}
+	
 	public boolean isInterface(ClassEntry classEntry) {
-		return m_interfaces.containsValue(classEntry);
+		return m_implementations.containsKey(classEntry);
 	}
 	
 	public boolean entryExists(Entry entry) {
@@ -222,6 +371,41 @@ public class TranslationIndex implements Serializable {
 			return (ClassEntry)entry;
 		}
 		
+		// arguments resolve the same way as their behaviors
+		Entry key = entry;
+		if (entry instanceof ArgumentEntry) {
+			key = ((ArgumentEntry)entry).getBehaviorEntry();
+		}
+		
+		// have we resolved this entry before?
+		ClassEntry resolvedClassEntry = m_resolvedEntryClasses.get(key);
+		if (resolvedClassEntry != null) {
+			m_resolutionCacheHits.incrementAndGet();
+		} else {
+			m_resolutionCacheMisses.incrementAndGet();
+			resolvedClassEntry = resolveEntryClassUncached(key);
+			if (resolvedClassEntry == null) {
+				resolvedClassEntry = Unresolved;
+			}
+			m_resolvedEntryClasses.put(key, resolvedClassEntry);
+		}
+		
+		if (resolvedClassEntry == Unresolved) {
+			return null;
+		}
+		return resolvedClassEntry;
+	}
+	
+	public long getResolutionCacheHits() {
+		return m_resolutionCacheHits.get();
+	}
+	
+	public long getResolutionCacheMisses() {
+		return m_resolutionCacheMisses.get();
+	}
+	
+	private ClassEntry resolveEntryClassUncached(Entry entry) {
+		
 		ClassEntry superclassEntry = resolveSuperclass(entry);
 		if (superclassEntry != null) {
 			return superclassEntry;
@@ -239,10 +423,10 @@ public class TranslationIndex implements Serializable {
 		
 		// this entry could refer to a method on a class where the method is not actually implemented
 		// travel up the inheritance tree to find the closest implementation
-		while (!entryExists(entry)) {
+		while (!entryExists(entry) && !libraryEntryExists(entry)) {
 			
 			// is there a parent class?
-			ClassEntry superclassEntry = getSuperclass(entry.getClassEntry());
+			ClassEntry superclassEntry = getResolutionSuperclass(entry.getClassEntry());
 			if (superclassEntry == null) {
 				// this is probably a method from a class in a library
 				// we can't trace the implementation up any higher unless we index the library
@@ -259,7 +443,7 @@ public class TranslationIndex implements Serializable {
 		
 		// the interfaces for any class is a forest
 		// so let's look at all the trees
-		for (ClassEntry interfaceEntry : m_interfaces.get(entry.getClassEntry())) {
+		for (ClassEntry interfaceEntry : getResolutionInterfaces(entry.getClassEntry())) {
 			ClassEntry resolvedClassEntry = resolveSuperclass(entry.cloneToNewClass(interfaceEntry));
 			if (resolvedClassEntry != null) {
 				return resolvedClassEntry;
@@ -268,6 +452,43 @@ public class TranslationIndex implements Serializable {
 		return null;
 	}
 	
+	public List<ClassEntry> getResolutionAncestry(ClassEntry classEntry) {
+		// like getAncestry(), but keeps going up through the library classes, if there's a library index
+		List<ClassEntry> ancestors = Lists.newArrayList();
+		while (classEntry != null) {
+			classEntry = getResolutionSuperclass(classEntry);
+			if (classEntry != null) {
+				ancestors.add(classEntry);
+			}
+		}
+		return ancestors;
+	}
+	
+	public Collection<ClassEntry> getResolutionInterfaces(ClassEntry classEntry) {
+		// like getInterfaces(), but with the library interfaces too, if there's a library index
+		if (m_libraryIndex == null) {
+			return m_interfaces.get(classEntry);
+		}
+		if (isLibraryClass(classEntry)) {
+			return m_libraryIndex.getInterfaces(classEntry);
+		}
+		List<ClassEntry> interfaceEntries = Lists.newArrayList(m_interfaces.get(classEntry));
+		interfaceEntries.addAll(m_libraryInterfaces.get(classEntry));
+		return interfaceEntries;
+	}
+	
+	private ClassEntry getResolutionSuperclass(ClassEntry classEntry) {
+		ClassEntry superclassEntry = getSuperclass(classEntry);
+		if (superclassEntry == null && isLibraryClass(classEntry)) {
+			superclassEntry = m_libraryIndex.getSuperclass(classEntry);
+		}
+		return superclassEntry;
+	}
+	
+	private boolean libraryEntryExists(Entry entry) {
+		return isLibraryClass(entry.getClassEntry()) && m_libraryIndex.entryExists(entry);
+	}
+	
 	private boolean isJre(ClassEntry classEntry) {
 		String packageName = classEntry.getPackageName();
 		return packageName != null && (packageName.startsWith("java") || packageName.startsWith("javax"));
@@ -280,6 +501,9 @@ public class TranslationIndex implements Serializable {
 		oout.writeObject(m_superclasses);
 		oout.writeObject(m_fieldEntries);
 		oout.writeObject(m_behaviorEntries);
+		oout.writeObject(m_interfaces);
+		oout.writeObject(m_libraryInterfaces);
+		oout.flush();
 		gzipout.finish();
 	}
 	
@@ -291,6 +515,10 @@ public class TranslationIndex implements Serializable {
 			m_superclasses = (HashMap<ClassEntry,ClassEntry>)oin.readObject();
 			m_fieldEntries = (HashMultimap<ClassEntry,FieldEntry>)oin.readObject();
 			m_behaviorEntries = (HashMultimap<ClassEntry,BehaviorEntry>)oin.readObject();
+			m_interfaces = (HashMultimap<ClassEntry,ClassEntry>)oin.readObject();
+			m_libraryInterfaces = (HashMultimap<ClassEntry,ClassEntry>)oin.readObject();
+			indexSubclassesAndImplementations();
+			m_resolvedEntryClasses.clear();
 		} catch (ClassNotFoundException ex) {
 			throw new Error(ex);
 		}
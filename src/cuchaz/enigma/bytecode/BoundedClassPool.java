@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.bytecode;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+// one ClassPool to share between lots of classes, instead of making a new pool for every class
+// only the most recently used classes stay in the cache, the rest are just forgotten (ie detached)
+// NOTE: enigma doesn't look classes up by name, so the pool has no class path, it only knows the classes it made
+public class BoundedClassPool extends ClassPool {
+	
+	private Map<String,CtClass> m_cache;
+	
+	public BoundedClassPool(final int maxCachedClasses) {
+		super(false);
+		m_cache = new LinkedHashMap<String,CtClass>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = -2872617468340153904L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,CtClass> entry) {
+				return size() > maxCachedClasses;
+			}
+		};
+	}
+	
+	public synchronized int getNumCachedClasses() {
+		return m_cache.size();
+	}
+	
+	public CtClass makeClass(byte[] bytes)
+	throws IOException {
+		// always parse a new class, even if the cache already has one by that name
+		return makeClass(new ByteArrayInputStream(bytes), false);
+	}
+	
+	public static CtClass reload(CtClass c) {
+		// get a fresh handle to a class after lots of renaming, without writing it out and parsing it again
+		// the new handle shares the class file with the old one, so don't use the old one anymore
+		return c.getClassPool().makeClass(c.getClassFile(), false);
+	}
+	
+	@Override
+	protected synchronized CtClass getCached(String className) {
+		CtClass c = m_cache.get(className);
+		if (c == null) {
+			// the primitive types are always in the base pool
+			return super.getCached(className);
+		}
+		if (c.isFrozen()) {
+			// classes that were already written out are done, don't let them block renaming a new class to their name
+			m_cache.remove(className);
+			return null;
+		}
+		return c;
+	}
+	
+	@Override
+	protected synchronized void cacheCtClass(String className, CtClass c, boolean isDynamic) {
+		m_cache.put(className, c);
+	}
+	
+	@Override
+	protected synchronized CtClass removeCached(String className) {
+		return m_cache.remove(className);
+	}
+}
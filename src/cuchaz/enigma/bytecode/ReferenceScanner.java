@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.bytecode;
+
+import javassist.CtBehavior;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.Opcode;
+
+// finds the same references as javassist's ExprEditor, but just reads the bytecode instead of instrumenting it
+// NOTE: class names are in JVM format
+public abstract class ReferenceScanner {
+	
+	private static final String ConstructorName = "<init>";
+	
+	private ConstPool m_constants;
+	private String[] m_classNames;
+	private String m_thisClassName;
+	private int[] m_newClassIndices;
+	private int m_numNews;
+	
+	public ReferenceScanner() {
+		m_constants = null;
+		m_classNames = null;
+		m_thisClassName = null;
+		m_newClassIndices = new int[8];
+		m_numNews = 0;
+	}
+	
+	public void scan(CtBehavior behavior) {
+		CodeAttribute codeAttribute = behavior.getMethodInfo().getCodeAttribute();
+		if (codeAttribute != null) {
+			scan(codeAttribute);
+		}
+	}
+	
+	public void scan(CodeAttribute codeAttribute) {
+		
+		// class names get cached per constant pool, so scanning all the behaviors in a class only converts each name once
+		if (m_constants != codeAttribute.getConstPool()) {
+			m_constants = codeAttribute.getConstPool();
+			m_classNames = new String[m_constants.getSize()];
+			m_thisClassName = getClassName(m_constants.getThisClassInfo());
+		}
+		m_numNews = 0;
+		
+		try {
+			CodeIterator iter = codeAttribute.iterator();
+			while (iter.hasNext()) {
+				int pos = iter.next();
+				int opcode = iter.byteAt(pos);
+				switch (opcode) {
+					case Opcode.INVOKEVIRTUAL:
+					case Opcode.INVOKESTATIC: {
+						int index = iter.u16bitAt(pos + 1);
+						visitMethodCall(
+							getClassName(m_constants.getMemberClass(index)),
+							m_constants.getMethodrefName(index),
+							m_constants.getMethodrefType(index)
+						);
+					}
+					break;
+					
+					case Opcode.INVOKEINTERFACE: {
+						int index = iter.u16bitAt(pos + 1);
+						visitMethodCall(
+							getClassName(m_constants.getMemberClass(index)),
+							m_constants.getInterfaceMethodrefName(index),
+							m_constants.getInterfaceMethodrefType(index)
+						);
+					}
+					break;
+					
+					case Opcode.INVOKESPECIAL: {
+						int index = iter.u16bitAt(pos + 1);
+						String className = getClassName(m_constants.getMemberClass(index));
+						String name = m_constants.getMethodrefName(index);
+						String signature = m_constants.getMethodrefType(index);
+						if (!name.equals(ConstructorName)) {
+							// private and super methods
+							visitMethodCall(className, name, signature);
+						} else if (m_numNews > 0 && getClassName(m_newClassIndices[m_numNews - 1]).equals(className)) {
+							// this constructor initializes the most recent new instance
+							m_numNews--;
+							visitNew(className, signature);
+						} else {
+							visitConstructorCall(className, signature, !className.equals(m_thisClassName));
+						}
+					}
+					break;
+					
+					case Opcode.GETFIELD:
+					case Opcode.GETSTATIC:
+					case Opcode.PUTFIELD:
+					case Opcode.PUTSTATIC: {
+						int index = iter.u16bitAt(pos + 1);
+						visitFieldAccess(
+							getClassName(m_constants.getMemberClass(index)),
+							m_constants.getFieldrefName(index),
+							m_constants.getFieldrefType(index),
+							opcode == Opcode.PUTFIELD || opcode == Opcode.PUTSTATIC
+						);
+					}
+					break;
+					
+					case Opcode.NEW:
+						pushNew(iter.u16bitAt(pos + 1));
+					break;
+					
+					case Opcode.LDC:
+						visitConstantPoolConstant(iter.byteAt(pos + 1));
+					break;
+					
+					case Opcode.LDC_W:
+					case Opcode.LDC2_W:
+						visitConstantPoolConstant(iter.u16bitAt(pos + 1));
+					break;
+					
+					case Opcode.SIPUSH:
+						// bipush and iconst are too common to be worth reporting
+						visitConstant(iter.s16bitAt(pos + 1));
+					break;
+				}
+			}
+		} catch (BadBytecode ex) {
+			throw new Error(ex);
+		}
+	}
+	
+	protected void visitMethodCall(String className, String name, String signature) {
+		// override me
+	}
+	
+	protected void visitFieldAccess(String className, String name, String type, boolean isWrite) {
+		// override me
+	}
+	
+	protected void visitConstructorCall(String className, String signature, boolean isSuper) {
+		// override me
+	}
+	
+	protected void visitNew(String className, String signature) {
+		// override me
+	}
+	
+	protected void visitConstant(Object value) {
+		// override me
+		// value is a String, Integer, Long, Float, or Double
+	}
+	
+	protected void visitClassConstant(String className) {
+		// override me
+	}
+	
+	private void visitConstantPoolConstant(int index) {
+		switch (m_constants.getTag(index)) {
+			case ConstPool.CONST_String:
+				visitConstant(m_constants.getStringInfo(index));
+			break;
+			case ConstPool.CONST_Integer:
+				visitConstant(m_constants.getIntegerInfo(index));
+			break;
+			case ConstPool.CONST_Long:
+				visitConstant(m_constants.getLongInfo(index));
+			break;
+			case ConstPool.CONST_Float:
+				visitConstant(m_constants.getFloatInfo(index));
+			break;
+			case ConstPool.CONST_Double:
+				visitConstant(m_constants.getDoubleInfo(index));
+			break;
+			case ConstPool.CONST_Class:
+				visitClassConstant(getClassName(index));
+			break;
+			// method handles and method types aren't constants anyone searches for
+		}
+	}
+	
+	private void pushNew(int classIndex) {
+		if (m_numNews == m_newClassIndices.length) {
+			int[] newClassIndices = new int[m_newClassIndices.length*2];
+			System.arraycopy(m_newClassIndices, 0, newClassIndices, 0, m_numNews);
+			m_newClassIndices = newClassIndices;
+		}
+		m_newClassIndices[m_numNews++] = classIndex;
+	}
+	
+	private String getClassName(int classIndex) {
+		String className = m_classNames[classIndex];
+		if (className == null) {
+			className = m_constants.getClassInfo(classIndex);
+			if (className.charAt(0) == '[') {
+				// methods called on arrays, like clone()
+				className = Descriptor.toClassName(className);
+			}
+			className = Descriptor.toJvmName(className);
+			m_classNames[classIndex] = className;
+		}
+		return className;
+	}
+}
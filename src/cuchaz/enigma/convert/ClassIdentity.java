@@ -18,7 +18,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import javassist.CannotCompileException;
 import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.CtConstructor;
@@ -29,11 +28,6 @@ import javassist.bytecode.CodeIterator;
 import javassist.bytecode.ConstPool;
 import javassist.bytecode.Descriptor;
 import javassist.bytecode.Opcode;
-import javassist.expr.ConstructorCall;
-import javassist.expr.ExprEditor;
-import javassist.expr.FieldAccess;
-import javassist.expr.MethodCall;
-import javassist.expr.NewExpr;
 
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Lists;
@@ -48,6 +42,7 @@ import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.bytecode.ConstPoolEditor;
 import cuchaz.enigma.bytecode.InfoType;
+import cuchaz.enigma.bytecode.ReferenceScanner;
 import cuchaz.enigma.bytecode.accessors.ConstInfoAccessor;
 import cuchaz.enigma.convert.ClassNamer.SidedClassNamer;
 import cuchaz.enigma.mapping.BehaviorEntry;
@@ -320,40 +315,40 @@ public class ClassIdentity {
 			}
 			
 			// update hash with method and field accesses
-			behavior.instrument(new ExprEditor() {
+			new ReferenceScanner() {
 				@Override
-				public void edit(MethodCall call) {
-					updateHashWithString(digest, scrubClassName(Descriptor.toJvmName(call.getClassName())));
-					updateHashWithString(digest, scrubSignature(call.getSignature()));
-					if (isClassMatchedUniquely(call.getClassName())) {
-						updateHashWithString(digest, call.getMethodName());
+				protected void visitMethodCall(String className, String name, String signature) {
+					updateHashWithString(digest, scrubClassName(className));
+					updateHashWithString(digest, scrubSignature(signature));
+					if (isClassMatchedUniquely(className)) {
+						updateHashWithString(digest, name);
 					}
 				}
 				
 				@Override
-				public void edit(FieldAccess access) {
-					updateHashWithString(digest, scrubClassName(Descriptor.toJvmName(access.getClassName())));
-					updateHashWithString(digest, scrubType(access.getSignature()));
-					if (isClassMatchedUniquely(access.getClassName())) {
-						updateHashWithString(digest, access.getFieldName());
+				protected void visitFieldAccess(String className, String name, String type, boolean isWrite) {
+					updateHashWithString(digest, scrubClassName(className));
+					updateHashWithString(digest, scrubType(type));
+					if (isClassMatchedUniquely(className)) {
+						updateHashWithString(digest, name);
 					}
 				}
 				
 				@Override
-				public void edit(ConstructorCall call) {
-					updateHashWithString(digest, scrubClassName(Descriptor.toJvmName(call.getClassName())));
-					updateHashWithString(digest, scrubSignature(call.getSignature()));
+				protected void visitConstructorCall(String className, String signature, boolean isSuper) {
+					updateHashWithString(digest, scrubClassName(className));
+					updateHashWithString(digest, scrubSignature(signature));
 				}
 				
 				@Override
-				public void edit(NewExpr expr) {
-					updateHashWithString(digest, scrubClassName(Descriptor.toJvmName(expr.getClassName())));
+				protected void visitNew(String className, String signature) {
+					updateHashWithString(digest, scrubClassName(className));
 				}
-			});
+			}.scan(behavior);
 			
 			// convert the hash to a hex string
 			return toHex(digest.digest());
-		} catch (BadBytecode | NoSuchAlgorithmException | CannotCompileException ex) {
+		} catch (BadBytecode | NoSuchAlgorithmException ex) {
 			throw new Error(ex);
 		}
 	}
@@ -29,6 +29,8 @@ import com.google.common.collect.Sets;
 
 import cuchaz.enigma.Constants;
 import cuchaz.enigma.Deobfuscator;
+import cuchaz.enigma.analysis.ClassSource;
+import cuchaz.enigma.analysis.JarClassIterator;
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.convert.ClassNamer.SidedClassNamer;
 import cuchaz.enigma.mapping.BehaviorEntry;
@@ -51,20 +53,24 @@ public class MappingsConverter {
 	
 	public static ClassMatches computeClassMatches(JarFile sourceJar, JarFile destJar, Mappings mappings) {
 		
-		// index jars
-		System.out.println("Indexing source jar...");
-		JarIndex sourceIndex = new JarIndex();
-		sourceIndex.indexJar(sourceJar, false);
-		System.out.println("Indexing dest jar...");
-		JarIndex destIndex = new JarIndex();
-		destIndex.indexJar(destJar, false);
-		
-		// compute the matching
-		ClassMatching matching = computeMatching(sourceJar, sourceIndex, destJar, destIndex, null);
-		return new ClassMatches(matching.matches());
+		// map each jar once for the indexing and all the matching rounds
+		try (ClassSource sourceClasses = JarClassIterator.openSource(sourceJar); ClassSource destClasses = JarClassIterator.openSource(destJar)) {
+			
+			// index jars
+			System.out.println("Indexing source jar...");
+			JarIndex sourceIndex = new JarIndex();
+			sourceIndex.indexJar(sourceClasses, false, 1);
+			System.out.println("Indexing dest jar...");
+			JarIndex destIndex = new JarIndex();
+			destIndex.indexJar(destClasses, false, 1);
+			
+			// compute the matching
+			ClassMatching matching = computeMatching(sourceClasses, sourceIndex, destClasses, destIndex, null);
+			return new ClassMatches(matching.matches());
+		}
 	}
 	
-	public static ClassMatching computeMatching(JarFile sourceJar, JarIndex sourceIndex, JarFile destJar, JarIndex destIndex, BiMap<ClassEntry,ClassEntry> knownMatches) {
+	public static ClassMatching computeMatching(ClassSource sourceClasses, JarIndex sourceIndex, ClassSource destClasses, JarIndex destIndex, BiMap<ClassEntry,ClassEntry> knownMatches) {
 		
 		System.out.println("Iteratively matching classes");
 		
@@ -85,8 +91,8 @@ public class MappingsConverter {
 				
 				// init the matching with identity settings
 				ClassMatching matching = new ClassMatching(
-					new ClassIdentifier(sourceJar, sourceIndex, sourceNamer, useReferences),
-					new ClassIdentifier(destJar, destIndex, destNamer, useReferences)
+					new ClassIdentifier(sourceClasses, sourceIndex, sourceNamer, useReferences),
+					new ClassIdentifier(destClasses, destIndex, destNamer, useReferences)
 				);
 				
 				if (knownMatches != null) {
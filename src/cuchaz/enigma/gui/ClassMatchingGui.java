@@ -390,11 +390,11 @@ public class ClassMatchingGui {
 		// set up identifiers
 		ClassNamer namer = new ClassNamer(m_classMatches.getUniqueMatches());
 		ClassIdentifier sourceIdentifier = new ClassIdentifier(
-			m_sourceDeobfuscator.getJar(), m_sourceDeobfuscator.getJarIndex(),
+			m_sourceDeobfuscator.getClassSource(), m_sourceDeobfuscator.getJarIndex(),
 			namer.getSourceNamer(), true
 		);
 		ClassIdentifier destIdentifier = new ClassIdentifier(
-			m_destDeobfuscator.getJar(), m_destDeobfuscator.getJarIndex(),
+			m_destDeobfuscator.getClassSource(), m_destDeobfuscator.getJarIndex(),
 			namer.getDestNamer(), true
 		);
 		
@@ -540,8 +540,8 @@ public class ClassMatchingGui {
 		
 		// compute a new matching
 		ClassMatching matching = MappingsConverter.computeMatching(
-			m_sourceDeobfuscator.getJar(), m_sourceDeobfuscator.getJarIndex(),
-			m_destDeobfuscator.getJar(), m_destDeobfuscator.getJarIndex(),
+			m_sourceDeobfuscator.getClassSource(), m_sourceDeobfuscator.getJarIndex(),
+			m_destDeobfuscator.getClassSource(), m_destDeobfuscator.getJarIndex(),
 			m_classMatches.getUniqueMatches()
 		);
 		ClassMatches newMatches = new ClassMatches(matching.matches());
@@ -31,6 +31,7 @@ import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 import java.util.jar.JarFile;
 
@@ -58,6 +59,7 @@ import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Highlighter;
+import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
@@ -77,6 +79,7 @@ import cuchaz.enigma.analysis.ReferenceTreeNode;
 import cuchaz.enigma.analysis.Token;
 import cuchaz.enigma.gui.ClassSelector.ClassSelectionListener;
 import cuchaz.enigma.mapping.ArgumentEntry;
+import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.ConstructorEntry;
 import cuchaz.enigma.mapping.Entry;
@@ -106,6 +109,8 @@ public class Gui {
 	private JTree m_inheritanceTree;
 	private JTree m_implementationsTree;
 	private JTree m_callsTree;
+	private JTextField m_constantsSearch;
+	private JTree m_constantsTree;
 	private JList<Token> m_tokens;
 	private JTabbedPane m_tabs;
 	
@@ -158,6 +163,7 @@ public class Gui {
 		// init file choosers
 		m_jarFileChooser = new JFileChooser();
 		m_mappingsFileChooser = new JFileChooser();
+		m_mappingsFileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
 		m_exportSourceFileChooser = new JFileChooser();
 		m_exportSourceFileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
 		m_exportJarFileChooser = new JFileChooser();
@@ -465,6 +471,39 @@ public class Gui {
 		callPanel.setResizeWeight(1); // let the top side take all the slack
 		callPanel.resetToPreferredSizes();
 		
+		// init constants panel
+		m_constantsSearch = new JTextField();
+		m_constantsSearch.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent event) {
+				showConstants(m_constantsSearch.getText());
+			}
+		});
+		m_constantsTree = new JTree();
+		m_constantsTree.setModel(null);
+		m_constantsTree.setRootVisible(false);
+		m_constantsTree.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent event) {
+				if (event.getClickCount() == 2) {
+					// get the selected node
+					TreePath path = m_constantsTree.getSelectionPath();
+					if (path == null) {
+						return;
+					}
+					
+					Object value = ((DefaultMutableTreeNode)path.getLastPathComponent()).getUserObject();
+					if (value instanceof BehaviorEntry) {
+						navigateTo((BehaviorEntry)value);
+					}
+				}
+			}
+		});
+		JPanel constantsPanel = new JPanel();
+		constantsPanel.setLayout(new BorderLayout());
+		constantsPanel.add(m_constantsSearch, BorderLayout.NORTH);
+		constantsPanel.add(new JScrollPane(m_constantsTree), BorderLayout.CENTER);
+		
 		// layout controls
 		JPanel centerPanel = new JPanel();
 		centerPanel.setLayout(new BorderLayout());
@@ -475,6 +514,7 @@ public class Gui {
 		m_tabs.addTab("Inheritance", inheritancePanel);
 		m_tabs.addTab("Implementations", implementationsPanel);
 		m_tabs.addTab("Call Graph", callPanel);
+		m_tabs.addTab("Constants", constantsPanel);
 		JSplitPane splitRight = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, true, centerPanel, m_tabs);
 		splitRight.setResizeWeight(1); // let the left side take all the slack
 		splitRight.resetToPreferredSizes();
@@ -531,6 +571,9 @@ public class Gui {
 						if (m_mappingsFileChooser.showOpenDialog(m_frame) == JFileChooser.APPROVE_OPTION) {
 							try {
 								m_controller.openMappings(m_mappingsFileChooser.getSelectedFile());
+								if (m_controller.isDirty()) {
+									JOptionPane.showMessageDialog(m_frame, "Recovered changes that weren't saved last time.");
+								}
 							} catch (IOException ex) {
 								throw new Error(ex);
 							} catch (MappingParseException ex) {
@@ -702,6 +745,7 @@ public class Gui {
 		setDeobfClasses(null);
 		setSource(null);
 		m_classesPanel.removeAll();
+		m_constantsTree.setModel(null);
 		
 		// update menu
 		m_closeJarMenu.setEnabled(false);
@@ -897,6 +941,27 @@ public class Gui {
 		}
 	}
 	
+	private void showConstants(String text) {
+		if (text.isEmpty()) {
+			m_constantsTree.setModel(null);
+			return;
+		}
+		
+		// one node for each matching constant, with the behaviors that use it underneath
+		DefaultMutableTreeNode rootNode = new DefaultMutableTreeNode(text);
+		for (Map.Entry<String,List<BehaviorEntry>> mapEntry : m_controller.searchConstants(text).entrySet()) {
+			DefaultMutableTreeNode constantNode = new DefaultMutableTreeNode(mapEntry.getKey());
+			for (BehaviorEntry behaviorEntry : mapEntry.getValue()) {
+				constantNode.add(new DefaultMutableTreeNode(behaviorEntry));
+			}
+			rootNode.add(constantNode);
+		}
+		m_constantsTree.setModel(new DefaultTreeModel(rootNode));
+		for (int i=0; i<m_constantsTree.getRowCount(); i++) {
+			m_constantsTree.expandRow(i);
+		}
+	}
+	
 	private void navigateTo(Entry entry) {
 		if (!m_controller.entryIsInJar(entry)) {
 			// entry is not in the jar. Ignore it
@@ -1087,6 +1152,7 @@ public class Gui {
 	private void close() {
 		if (!m_controller.isDirty()) {
 			// everything is saved, we can exit safely
+			m_controller.discardJournal();
 			m_frame.dispose();
 		} else {
 			// ask to save before closing
@@ -1098,6 +1164,7 @@ public class Gui {
 					if (m_mappingsFileChooser.getSelectedFile() != null || m_mappingsFileChooser.showSaveDialog(m_frame) == JFileChooser.APPROVE_OPTION) {
 						try {
 							m_controller.saveMappings(m_mappingsFileChooser.getSelectedFile());
+							m_controller.discardJournal();
 							m_frame.dispose();
 						} catch (IOException ex) {
 							throw new Error(ex);
@@ -1107,9 +1174,10 @@ public class Gui {
 				
 				case JOptionPane.NO_OPTION:
 					// don't save, exit
+					m_controller.discardJournal();
 					m_frame.dispose();
 				break;
-			
+				
 				// cancel means do nothing
 			}
 		}
@@ -15,8 +15,10 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.JarFile;
 
 import com.google.common.collect.Lists;
@@ -25,11 +27,13 @@ import com.strobel.decompiler.languages.java.ast.CompilationUnit;
 
 import cuchaz.enigma.Deobfuscator;
 import cuchaz.enigma.Deobfuscator.ProgressListener;
+import cuchaz.enigma.MappingsJournal;
 import cuchaz.enigma.analysis.BehaviorReferenceTreeNode;
 import cuchaz.enigma.analysis.ClassImplementationsTreeNode;
 import cuchaz.enigma.analysis.ClassInheritanceTreeNode;
 import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.FieldReferenceTreeNode;
+import cuchaz.enigma.analysis.JarIndexCache;
 import cuchaz.enigma.analysis.MethodImplementationsTreeNode;
 import cuchaz.enigma.analysis.MethodInheritanceTreeNode;
 import cuchaz.enigma.analysis.SourceIndex;
@@ -37,6 +41,8 @@ import cuchaz.enigma.analysis.Token;
 import cuchaz.enigma.gui.ProgressDialog.ProgressRunnable;
 import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.DirectoryMappingsReader;
+import cuchaz.enigma.mapping.DirectoryMappingsWriter;
 import cuchaz.enigma.mapping.Entry;
 import cuchaz.enigma.mapping.FieldEntry;
 import cuchaz.enigma.mapping.MappingParseException;
@@ -52,6 +58,8 @@ public class GuiController {
 	private SourceIndex m_index;
 	private ClassEntry m_currentObfClass;
 	private boolean m_isDirty;
+	private File m_mappingsDir;
+	private MappingsJournal m_journal;
 	private Deque<EntryReference<Entry,Entry>> m_referenceStack;
 	
 	public GuiController(Gui gui) {
@@ -60,6 +68,8 @@ public class GuiController {
 		m_index = null;
 		m_currentObfClass = null;
 		m_isDirty = false;
+		m_mappingsDir = null;
+		m_journal = null;
 		m_referenceStack = Queues.newArrayDeque();
 	}
 	
@@ -69,40 +79,96 @@ public class GuiController {
 	
 	public void openJar(final JarFile jar) throws IOException {
 		m_gui.onStartOpenJar();
-		m_deobfuscator = new Deobfuscator(jar);
+		closeDeobfuscator();
+		m_deobfuscator = new Deobfuscator(jar, JarIndexCache.getDefault());
 		m_gui.onFinishOpenJar(m_deobfuscator.getJarName());
 		refreshClasses();
 	}
 	
 	public void closeJar() {
-		m_deobfuscator = null;
+		discardJournal();
+		closeDeobfuscator();
 		m_gui.onCloseJar();
 	}
 	
+	private void closeDeobfuscator() {
+		if (m_deobfuscator != null) {
+			try {
+				m_deobfuscator.close();
+			} catch (IOException ex) {
+				// the jar is going away either way
+			}
+			m_deobfuscator = null;
+		}
+	}
+	
 	public void openMappings(File file) throws IOException, MappingParseException {
-		FileReader in = new FileReader(file);
-		m_deobfuscator.setMappings(new MappingsReader().read(in));
-		in.close();
-		m_isDirty = false;
+		discardJournal();
+		if (file.isDirectory()) {
+			m_deobfuscator.setMappings(new DirectoryMappingsReader().read(file, Runtime.getRuntime().availableProcessors()));
+			m_mappingsDir = file;
+		} else {
+			FileReader in = new FileReader(file);
+			m_deobfuscator.setMappings(new MappingsReader().read(in));
+			in.close();
+			m_mappingsDir = null;
+		}
+		
+		// bring back any edits that didn't get saved last time
+		int numEdits = MappingsJournal.replay(file, m_deobfuscator);
+		if (numEdits >= 0) {
+			m_journal = MappingsJournal.resume(file);
+		} else {
+			m_journal = MappingsJournal.start(file);
+		}
+		m_isDirty = numEdits > 0;
 		m_gui.setMappingsFile(file);
 		refreshClasses();
 		refreshCurrentClass();
 	}
 	
 	public void saveMappings(File file) throws IOException {
-		FileWriter out = new FileWriter(file);
-		new MappingsWriter().write(out, m_deobfuscator.getMappings());
-		out.close();
+		if (file.isDirectory()) {
+			if (file.equals(m_mappingsDir)) {
+				// the folder already has everything that didn't change
+				new DirectoryMappingsWriter().writeChanges(file, m_deobfuscator.getMappings());
+			} else {
+				new DirectoryMappingsWriter().write(file, m_deobfuscator.getMappings());
+				m_mappingsDir = file;
+			}
+		} else {
+			FileWriter out = new FileWriter(file);
+			new MappingsWriter().write(out, m_deobfuscator.getMappings(), Runtime.getRuntime().availableProcessors());
+			out.close();
+		}
 		m_isDirty = false;
+		
+		// the saved mappings have all the edits now, so start a new journal after them
+		discardJournal();
+		m_journal = MappingsJournal.start(file);
 	}
 	
 	public void closeMappings() {
+		discardJournal();
 		m_deobfuscator.setMappings(null);
+		m_mappingsDir = null;
 		m_gui.setMappingsFile(null);
 		refreshClasses();
 		refreshCurrentClass();
 	}
 	
+	public void discardJournal() {
+		if (m_journal != null) {
+			try {
+				m_journal.delete();
+			} catch (IOException ex) {
+				throw new Error(ex);
+			} finally {
+				m_journal = null;
+			}
+		}
+	}
+	
 	public void exportSource(final File dirOut) {
 		ProgressDialog.runInThread(m_gui.getFrame(), new ProgressRunnable() {
 			@Override
@@ -209,6 +275,13 @@ public class GuiController {
 		return rootNode;
 	}
 	
+	public Map<String,List<BehaviorEntry>> searchConstants(String text) {
+		if (m_deobfuscator == null) {
+			return Collections.emptyMap();
+		}
+		return m_deobfuscator.searchConstants(text);
+	}
+	
 	public BehaviorReferenceTreeNode getMethodReferences(BehaviorEntry deobfBehaviorEntry) {
 		BehaviorEntry obfBehaviorEntry = m_deobfuscator.obfuscateEntry(deobfBehaviorEntry);
 		BehaviorReferenceTreeNode rootNode = new BehaviorReferenceTreeNode(
@@ -222,6 +295,13 @@ public class GuiController {
 	public void rename(EntryReference<Entry,Entry> deobfReference, String newName) {
 		EntryReference<Entry,Entry> obfReference = m_deobfuscator.obfuscateReference(deobfReference);
 		m_deobfuscator.rename(obfReference.getNameableEntry(), newName);
+		if (m_journal != null) {
+			try {
+				m_journal.rename(obfReference.getNameableEntry(), newName);
+			} catch (IOException ex) {
+				throw new Error(ex);
+			}
+		}
 		m_isDirty = true;
 		refreshClasses();
 		refreshCurrentClass(obfReference);
@@ -230,6 +310,13 @@ public class GuiController {
 	public void removeMapping(EntryReference<Entry,Entry> deobfReference) {
 		EntryReference<Entry,Entry> obfReference = m_deobfuscator.obfuscateReference(deobfReference);
 		m_deobfuscator.removeMapping(obfReference.getNameableEntry());
+		if (m_journal != null) {
+			try {
+				m_journal.removeMapping(obfReference.getNameableEntry());
+			} catch (IOException ex) {
+				throw new Error(ex);
+			}
+		}
 		m_isDirty = true;
 		refreshClasses();
 		refreshCurrentClass(obfReference);
@@ -238,6 +325,13 @@ public class GuiController {
 	public void markAsDeobfuscated(EntryReference<Entry,Entry> deobfReference) {
 		EntryReference<Entry,Entry> obfReference = m_deobfuscator.obfuscateReference(deobfReference);
 		m_deobfuscator.markAsDeobfuscated(obfReference.getNameableEntry());
+		if (m_journal != null) {
+			try {
+				m_journal.markAsDeobfuscated(obfReference.getNameableEntry());
+			} catch (IOException ex) {
+				throw new Error(ex);
+			}
+		}
 		m_isDirty = true;
 		refreshClasses();
 		refreshCurrentClass(obfReference);
@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ForwardingMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import cuchaz.enigma.analysis.TranslationIndex;
+
+// mappings that stay in a memory-mapped file written by BinaryMappingsWriter
+// each outer class (and its inner classes) only gets built the first time something asks for it,
+// so opening the file costs the same no matter how many mappings are in it
+// anything that walks all the classes (like classes() or writing the mappings) loads the rest of the file
+public class BinaryMappings extends Mappings {
+	
+	private static final long serialVersionUID = -1306735217370716522L;
+	
+	// NOTE: bump this whenever the file layout changes
+	public static final int FormatVersion = 1;
+	public static final int Magic = 0x454d4150; // "EMAP"
+	
+	public static interface ClassChecker {
+		// returns false to drop the class mapping
+		boolean checkClass(ClassMapping classMapping);
+	}
+	
+	// the class maps act like normal maps that already have everything in them
+	// reads that miss go to the file, and anything that changes a key loads it from the file first
+	private class LazyClassMap extends ForwardingMap<String,ClassMapping> {
+		
+		private Map<String,ClassMapping> m_classes;
+		private Set<String> m_searchedKeys;
+		private boolean m_isDeobf;
+		
+		public LazyClassMap(boolean isDeobf) {
+			m_classes = Maps.newHashMap();
+			m_searchedKeys = Sets.newHashSet();
+			m_isDeobf = isDeobf;
+		}
+		
+		@Override
+		protected Map<String,ClassMapping> delegate() {
+			loadAllClasses();
+			return m_classes;
+		}
+		
+		@Override
+		public ClassMapping get(Object key) {
+			ClassMapping classMapping = m_classes.get(key);
+			if (classMapping == null && key instanceof String && !m_allClassesLoaded && m_searchedKeys.add((String)key)) {
+				// translators ask about classes that aren't in the mappings all the time, so only search the file once per name
+				loadClass(m_isDeobf ? findDeobfClass((String)key) : findObfClass((String)key));
+				classMapping = m_classes.get(key);
+			}
+			return classMapping;
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+		
+		@Override
+		public ClassMapping put(String key, ClassMapping val) {
+			get(key);
+			return m_classes.put(key, val);
+		}
+		
+		@Override
+		public ClassMapping remove(Object key) {
+			get(key);
+			return m_classes.remove(key);
+		}
+		
+		@Override
+		public void putAll(Map<? extends String,? extends ClassMapping> map) {
+			standardPutAll(map);
+		}
+	}
+	
+	// what the obfuscating translator looks classes up in, the deobf name if there is one, otherwise the obf name
+	// a copy of that would load every class, so look in the lazy maps instead
+	private class ObfuscatingClassMap extends ForwardingMap<String,ClassMapping> {
+		
+		@Override
+		protected Map<String,ClassMapping> delegate() {
+			Map<String,ClassMapping> classes = Maps.newHashMap();
+			for (ClassMapping classMapping : classes()) {
+				if (classMapping.getDeobfName() != null) {
+					classes.put(classMapping.getDeobfName(), classMapping);
+				} else {
+					classes.put(classMapping.getObfFullName(), classMapping);
+				}
+			}
+			return classes;
+		}
+		
+		@Override
+		public ClassMapping get(Object key) {
+			ClassMapping classMapping = m_classesByDeobf.get(key);
+			if (classMapping == null) {
+				classMapping = m_classesByObf.get(key);
+				if (classMapping != null && classMapping.getDeobfName() != null) {
+					// this class goes by its deobf name
+					classMapping = null;
+				}
+			}
+			return classMapping;
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+	}
+	
+	private transient ByteBuffer m_buf;
+	private transient int m_numStrings;
+	private transient int m_stringOffsetsPos;
+	private transient int m_stringsPos;
+	private transient int m_numClasses;
+	private transient int m_classesPos;
+	private transient int m_numDeobfClasses;
+	private transient int m_deobfClassesPos;
+	private transient int m_recordsPos;
+	private transient BitSet m_loadedClasses;
+	private transient boolean m_allClassesLoaded;
+	private transient Map<Integer,Signature> m_signatures;
+	private transient ClassChecker m_checker;
+	
+	public BinaryMappings(File file)
+	throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			m_buf = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+		}
+		
+		// just read the table sizes, nothing else gets read until it's needed
+		try {
+			if (m_buf.getInt(0) != Magic) {
+				throw new IOException("Not a binary mappings file: " + file);
+			}
+			if (m_buf.getInt(4) != FormatVersion) {
+				throw new IOException("Unsupported binary mappings version " + m_buf.getInt(4) + ": " + file);
+			}
+			m_numStrings = m_buf.getInt(8);
+			m_stringOffsetsPos = 12;
+			m_stringsPos = m_stringOffsetsPos + (m_numStrings + 1)*4;
+			m_numClasses = m_buf.getInt(m_stringsPos + m_buf.getInt(m_stringsPos - 4));
+			m_classesPos = m_stringsPos + m_buf.getInt(m_stringsPos - 4) + 4;
+			m_numDeobfClasses = m_buf.getInt(m_classesPos + m_numClasses*12);
+			m_deobfClassesPos = m_classesPos + m_numClasses*12 + 4;
+			m_recordsPos = m_deobfClassesPos + m_numDeobfClasses*4;
+		} catch (IndexOutOfBoundsException ex) {
+			throw new IOException("Binary mappings file is truncated: " + file);
+		}
+		
+		m_classesByObf = new LazyClassMap(false);
+		m_classesByDeobf = new LazyClassMap(true);
+		m_loadedClasses = new BitSet(m_numClasses);
+		m_allClassesLoaded = false;
+		m_signatures = Maps.newHashMap();
+		m_checker = null;
+	}
+	
+	public static boolean isBinary(File file)
+	throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			return file.length() >= 4 && in.readInt() == Magic;
+		}
+	}
+	
+	public void setClassChecker(ClassChecker val) {
+		// only classes loaded from now on get checked
+		m_checker = val;
+	}
+	
+	public int getNumUnloadedClasses() {
+		return m_numClasses - m_loadedClasses.cardinality();
+	}
+	
+	@Override
+	public Translator getTranslator(TranslationDirection direction, TranslationIndex index) {
+		if (direction == TranslationDirection.Obfuscating) {
+			// same as the plain mappings, but without copying all the classes
+			TranslationIndex deobfIndex = new TranslationIndex(index, getTranslator(TranslationDirection.Deobfuscating, index));
+			return new Translator(direction, new ObfuscatingClassMap(), deobfIndex);
+		}
+		return super.getTranslator(direction, index);
+	}
+	
+	private int findObfClass(String obfName) {
+		return find(obfName, false);
+	}
+	
+	private int findDeobfClass(String deobfName) {
+		return find(deobfName, true);
+	}
+	
+	private int find(String name, boolean isDeobf) {
+		// binary search the class table, only the names we look at get decoded
+		int min = 0;
+		int max = (isDeobf ? m_numDeobfClasses : m_numClasses) - 1;
+		while (min <= max) {
+			int mid = (min + max) >>> 1;
+			int classIndex = isDeobf ? m_buf.getInt(m_deobfClassesPos + mid*4) : mid;
+			String midName = getString(m_buf.getInt(m_classesPos + classIndex*12 + (isDeobf ? 4 : 0)));
+			int diff = midName.compareTo(name);
+			if (diff < 0) {
+				min = mid + 1;
+			} else if (diff > 0) {
+				max = mid - 1;
+			} else {
+				return classIndex;
+			}
+		}
+		return -1;
+	}
+	
+	private void loadClass(int classIndex) {
+		if (classIndex < 0 || m_loadedClasses.get(classIndex)) {
+			return;
+		}
+		m_loadedClasses.set(classIndex);
+		
+		ClassMapping classMapping = readClass(new int[] { m_recordsPos + m_buf.getInt(m_classesPos + classIndex*12 + 8) });
+		if (m_checker != null && !m_checker.checkClass(classMapping)) {
+			return;
+		}
+		
+		// add it to the maps directly, going through the lazy maps would load it again
+		((LazyClassMap)m_classesByObf).m_classes.put(classMapping.getObfFullName(), classMapping);
+		if (classMapping.getDeobfName() != null) {
+			((LazyClassMap)m_classesByDeobf).m_classes.put(classMapping.getDeobfName(), classMapping);
+		}
+	}
+	
+	private void loadAllClasses() {
+		if (m_allClassesLoaded) {
+			return;
+		}
+		for (int i=0; i<m_numClasses; i++) {
+			loadClass(i);
+		}
+		m_allClassesLoaded = true;
+	}
+	
+	private ClassMapping readClass(int[] pos) {
+		ClassMapping classMapping = new ClassMapping(readString(pos), readString(pos));
+		int numInnerClasses = readInt(pos);
+		for (int i=0; i<numInnerClasses; i++) {
+			classMapping.addInnerClassMapping(readClass(pos));
+		}
+		int numFields = readInt(pos);
+		for (int i=0; i<numFields; i++) {
+			String obfName = readString(pos);
+			String deobfName = readString(pos);
+			classMapping.addFieldMapping(new FieldMapping(obfName, new Type(readString(pos)), deobfName));
+		}
+		int numMethods = readInt(pos);
+		for (int i=0; i<numMethods; i++) {
+			String obfName = readString(pos);
+			String deobfName = readString(pos);
+			MethodMapping methodMapping = new MethodMapping(obfName, readSignature(pos), deobfName);
+			int numArguments = readInt(pos);
+			for (int j=0; j<numArguments; j++) {
+				int index = readInt(pos);
+				methodMapping.addArgumentMapping(new ArgumentMapping(index, readString(pos)));
+			}
+			classMapping.addMethodMapping(methodMapping);
+		}
+		return classMapping;
+	}
+	
+	private int readInt(int[] pos) {
+		int val = m_buf.getInt(pos[0]);
+		pos[0] += 4;
+		return val;
+	}
+	
+	private String readString(int[] pos) {
+		return getString(readInt(pos));
+	}
+	
+	private Signature readSignature(int[] pos) {
+		// lots of methods share signatures, so only parse each one once
+		int id = readInt(pos);
+		Signature signature = m_signatures.get(id);
+		if (signature == null) {
+			signature = new Signature(getString(id));
+			m_signatures.put(id, signature);
+		}
+		return signature;
+	}
+	
+	private String getString(int id) {
+		if (id < 0) {
+			return null;
+		}
+		int start = m_buf.getInt(m_stringOffsetsPos + id*4);
+		int stop = m_buf.getInt(m_stringOffsetsPos + id*4 + 4);
+		byte[] bytes = new byte[stop - start];
+		ByteBuffer buf = m_buf.duplicate();
+		buf.position(m_stringsPos + start);
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private Object writeReplace()
+	throws ObjectStreamException {
+		// the file might not be around later, so serialize the plain mappings
+		return new Mappings(classes());
+	}
+}
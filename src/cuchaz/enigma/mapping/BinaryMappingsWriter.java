@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class BinaryMappingsWriter {
+	
+	// the layout is, all ints are big-endian:
+	//   magic, version
+	//   number of strings, the offset of each string (plus one for the end), then the UTF-8 bytes of all the strings
+	//   number of classes, then { obf name, deobf name, record offset } for each outer class, sorted by obf name
+	//   number of deobf classes, then the class number of each class that has a deobf name, sorted by deobf name
+	//   the class records
+	// names are string numbers, or -1 for no name
+	// a class record is:
+	//   obf name, deobf name
+	//   number of inner classes, then the inner class records
+	//   number of fields, then { obf name, deobf name, type } for each field
+	//   number of methods, then { obf name, deobf name, signature, number of args, then { index, name } for each arg } for each method
+	
+	private Map<String,Integer> m_strings;
+	
+	public void write(File file, Mappings mappings)
+	throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			write(out, mappings);
+		}
+	}
+	
+	public void write(OutputStream out, Mappings mappings)
+	throws IOException {
+		
+		m_strings = Maps.newLinkedHashMap();
+		
+		// the tables are sorted by name so readers can binary search them
+		List<ClassMapping> classes = Lists.newArrayList(mappings.classes());
+		Collections.sort(classes, new Comparator<ClassMapping>() {
+			@Override
+			public int compare(ClassMapping a, ClassMapping b) {
+				return a.getObfFullName().compareTo(b.getObfFullName());
+			}
+		});
+		List<Integer> deobfClasses = Lists.newArrayList();
+		for (int i=0; i<classes.size(); i++) {
+			if (classes.get(i).getDeobfName() != null) {
+				deobfClasses.add(i);
+			}
+		}
+		final List<ClassMapping> finalClasses = classes;
+		Collections.sort(deobfClasses, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return finalClasses.get(a).getDeobfName().compareTo(finalClasses.get(b).getDeobfName());
+			}
+		});
+		
+		// write the class records first, so we know where they are and which strings they need
+		ByteArrayOutputStream recordsBuf = new ByteArrayOutputStream();
+		DataOutputStream records = new DataOutputStream(recordsBuf);
+		int[] recordOffsets = new int[classes.size()];
+		for (int i=0; i<classes.size(); i++) {
+			recordOffsets[i] = records.size();
+			writeClass(records, classes.get(i));
+		}
+		records.flush();
+		
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(BinaryMappings.Magic);
+		data.writeInt(BinaryMappings.FormatVersion);
+		
+		// write the strings
+		List<byte[]> strings = Lists.newArrayList();
+		for (String string : m_strings.keySet()) {
+			strings.add(string.getBytes(StandardCharsets.UTF_8));
+		}
+		data.writeInt(strings.size());
+		int offset = 0;
+		for (byte[] string : strings) {
+			data.writeInt(offset);
+			offset += string.length;
+		}
+		data.writeInt(offset);
+		for (byte[] string : strings) {
+			data.write(string);
+		}
+		
+		// write the class tables
+		data.writeInt(classes.size());
+		for (int i=0; i<classes.size(); i++) {
+			data.writeInt(getStringId(classes.get(i).getObfFullName()));
+			data.writeInt(getStringId(classes.get(i).getDeobfName()));
+			data.writeInt(recordOffsets[i]);
+		}
+		data.writeInt(deobfClasses.size());
+		for (int i : deobfClasses) {
+			data.writeInt(i);
+		}
+		
+		recordsBuf.writeTo(data);
+		data.flush();
+		m_strings = null;
+	}
+	
+	private void writeClass(DataOutputStream out, ClassMapping classMapping)
+	throws IOException {
+		out.writeInt(addString(classMapping.getObfFullName()));
+		out.writeInt(addString(classMapping.getDeobfName()));
+		
+		List<ClassMapping> innerClasses = Lists.newArrayList(classMapping.innerClasses());
+		out.writeInt(innerClasses.size());
+		for (ClassMapping innerClassMapping : innerClasses) {
+			writeClass(out, innerClassMapping);
+		}
+		
+		List<FieldMapping> fields = Lists.newArrayList(classMapping.fields());
+		out.writeInt(fields.size());
+		for (FieldMapping fieldMapping : fields) {
+			out.writeInt(addString(fieldMapping.getObfName()));
+			out.writeInt(addString(fieldMapping.getDeobfName()));
+			out.writeInt(addString(fieldMapping.getObfType().toString()));
+		}
+		
+		List<MethodMapping> methods = Lists.newArrayList(classMapping.methods());
+		out.writeInt(methods.size());
+		for (MethodMapping methodMapping : methods) {
+			out.writeInt(addString(methodMapping.getObfName()));
+			out.writeInt(addString(methodMapping.getDeobfName()));
+			out.writeInt(addString(methodMapping.getObfSignature().toString()));
+			List<ArgumentMapping> arguments = Lists.newArrayList(methodMapping.arguments());
+			out.writeInt(arguments.size());
+			for (ArgumentMapping argumentMapping : arguments) {
+				out.writeInt(argumentMapping.getIndex());
+				out.writeInt(addString(argumentMapping.getName()));
+			}
+		}
+	}
+	
+	private int addString(String val) {
+		if (val == null) {
+			return -1;
+		}
+		Integer id = m_strings.get(val);
+		if (id == null) {
+			id = m_strings.size();
+			m_strings.put(val, id);
+		}
+		return id;
+	}
+	
+	private int getStringId(String val) {
+		if (val == null) {
+			return -1;
+		}
+		return m_strings.get(val);
+	}
+}
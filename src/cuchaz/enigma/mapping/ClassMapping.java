@@ -30,6 +30,9 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	private Map<String,MethodMapping> m_methodsByObf;
 	private Map<String,MethodMapping> m_methodsByDeobf;
 	
+	// whether this class changed since it was last loaded or saved, not counting inner classes
+	private transient boolean m_isDirty;
+	
 	public ClassMapping(String obfFullName) {
 		this(obfFullName, null);
 	}
@@ -45,6 +48,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		m_fieldsByDeobf = Maps.newHashMap();
 		m_methodsByObf = Maps.newHashMap();
 		m_methodsByDeobf = Maps.newHashMap();
+		m_isDirty = true;
 	}
 	
 	public String getObfFullName() {
@@ -61,6 +65,26 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	
 	public void setDeobfName(String val) {
 		m_deobfName = NameValidator.validateClassName(val, false);
+		m_isDirty = true;
+	}
+	
+	public boolean isDirty() {
+		if (m_isDirty) {
+			return true;
+		}
+		for (ClassMapping innerClassMapping : m_innerClassesByObfSimple.values()) {
+			if (innerClassMapping.isDirty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void markClean() {
+		m_isDirty = false;
+		for (ClassMapping innerClassMapping : m_innerClassesByObfSimple.values()) {
+			innerClassMapping.markClean();
+		}
 	}
 	
 	//// INNER CLASSES ////////
@@ -71,6 +95,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void addInnerClassMapping(ClassMapping classMapping) {
+		m_isDirty = true;
 		boolean obfWasAdded = m_innerClassesByObfSimple.put(classMapping.getObfSimpleName(), classMapping) == null;
 		assert (obfWasAdded);
 		if (classMapping.getDeobfName() != null) {
@@ -81,6 +106,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void removeInnerClassMapping(ClassMapping classMapping) {
+		m_isDirty = true;
 		boolean obfWasRemoved = m_innerClassesByObfSimple.remove(classMapping.getObfSimpleName()) != null;
 		assert (obfWasRemoved);
 		if (classMapping.getDeobfName() != null) {
@@ -127,6 +153,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void setInnerClassName(ClassEntry obfInnerClass, String deobfName) {
+		m_isDirty = true;
 		ClassMapping classMapping = getOrCreateInnerClass(obfInnerClass);
 		if (classMapping.getDeobfName() != null) {
 			boolean wasRemoved = m_innerClassesByDeobf.remove(classMapping.getDeobfName()) != null;
@@ -165,6 +192,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void addFieldMapping(FieldMapping fieldMapping) {
+		m_isDirty = true;
 		String obfKey = getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType());
 		if (m_fieldsByObf.containsKey(obfKey)) {
 			throw new Error("Already have mapping for " + m_obfFullName + "." + obfKey);
@@ -181,6 +209,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void removeFieldMapping(FieldMapping fieldMapping) {
+		m_isDirty = true;
 		boolean obfWasRemoved = m_fieldsByObf.remove(getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType())) != null;
 		assert (obfWasRemoved);
 		if (fieldMapping.getDeobfName() != null) {
@@ -225,6 +254,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	
 	
 	public void setFieldName(String obfName, Type obfType, String deobfName) {
+		m_isDirty = true;
 		assert(deobfName != null);
 		FieldMapping fieldMapping = m_fieldsByObf.get(getFieldKey(obfName, obfType));
 		if (fieldMapping == null) {
@@ -243,6 +273,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void setFieldObfNameAndType(String oldObfName, Type obfType, String newObfName, Type newObfType) {
+		m_isDirty = true;
 		assert(newObfName != null);
 		FieldMapping fieldMapping = m_fieldsByObf.remove(getFieldKey(oldObfName, obfType));
 		assert(fieldMapping != null);
@@ -269,6 +300,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void addMethodMapping(MethodMapping methodMapping) {
+		m_isDirty = true;
 		String obfKey = getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature());
 		if (m_methodsByObf.containsKey(obfKey)) {
 			throw new Error("Already have mapping for " + m_obfFullName + "." + obfKey);
@@ -287,6 +319,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void removeMethodMapping(MethodMapping methodMapping) {
+		m_isDirty = true;
 		boolean obfWasRemoved = m_methodsByObf.remove(getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature())) != null;
 		assert (obfWasRemoved);
 		if (methodMapping.getDeobfName() != null) {
@@ -314,6 +347,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void setMethodName(String obfName, Signature obfSignature, String deobfName) {
+		m_isDirty = true;
 		MethodMapping methodMapping = m_methodsByObf.get(getMethodKey(obfName, obfSignature));
 		if (methodMapping == null) {
 			methodMapping = createMethodMapping(obfName, obfSignature);
@@ -329,6 +363,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void setMethodObfNameAndSignature(String oldObfName, Signature obfSignature, String newObfName, Signature newObfSignature) {
+		m_isDirty = true;
 		assert(newObfName != null);
 		MethodMapping methodMapping = m_methodsByObf.remove(getMethodKey(oldObfName, obfSignature));
 		assert(methodMapping != null);
@@ -341,6 +376,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	//// ARGUMENTS ////////
 	
 	public void setArgumentName(String obfMethodName, Signature obfMethodSignature, int argumentIndex, String argumentName) {
+		m_isDirty = true;
 		assert(argumentName != null);
 		MethodMapping methodMapping = m_methodsByObf.get(getMethodKey(obfMethodName, obfMethodSignature));
 		if (methodMapping == null) {
@@ -350,6 +386,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void removeArgumentName(String obfMethodName, Signature obfMethodSignature, int argumentIndex) {
+		m_isDirty = true;
 		m_methodsByObf.get(getMethodKey(obfMethodName, obfMethodSignature)).removeArgumentName(argumentIndex);
 	}
 	
@@ -416,6 +453,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		for (FieldMapping fieldMapping : new ArrayList<FieldMapping>(m_fieldsByObf.values())) {
 			String oldFieldKey = getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType());
 			if (fieldMapping.renameObfClass(oldObfClassName, newObfClassName)) {
+				m_isDirty = true;
 				boolean wasRemoved = m_fieldsByObf.remove(oldFieldKey) != null;
 				assert (wasRemoved);
 				boolean wasAdded = m_fieldsByObf.put(getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType()), fieldMapping) == null;
@@ -427,6 +465,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		for (MethodMapping methodMapping : new ArrayList<MethodMapping>(m_methodsByObf.values())) {
 			String oldMethodKey = getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature());
 			if (methodMapping.renameObfClass(oldObfClassName, newObfClassName)) {
+				m_isDirty = true;
 				boolean wasRemoved = m_methodsByObf.remove(oldMethodKey) != null;
 				assert (wasRemoved);
 				boolean wasAdded = m_methodsByObf.put(getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature()), methodMapping) == null;
@@ -437,6 +476,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		if (m_obfFullName.equals(oldObfClassName)) {
 			// rename this class
 			m_obfFullName = newObfClassName;
+			m_isDirty = true;
 			return true;
 		}
 		return false;
@@ -453,7 +493,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	public static boolean isSimpleClassName(String name) {
 		return name.indexOf('/') < 0 && name.indexOf('$') < 0;
 	}
-
+	
 	public ClassEntry getObfEntry() {
 		return new ClassEntry(m_obfFullName);
 	}
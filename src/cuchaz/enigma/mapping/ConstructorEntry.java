@@ -73,7 +73,7 @@ public class ConstructorEntry implements BehaviorEntry, Serializable {
 	
 	@Override
 	public ConstructorEntry cloneToNewClass(ClassEntry classEntry) {
-		return new ConstructorEntry(this, classEntry.getName());
+		return new ConstructorEntry(classEntry, m_signature);
 	}
 	
 	@Override
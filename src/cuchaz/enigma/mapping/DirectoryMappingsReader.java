@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.collect.Lists;
+
+public class DirectoryMappingsReader {
+	
+	private static final int MinFilesPerTask = 16;
+	
+	private static class ReadFilesTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = -2829385521638201093L;
+		
+		private File m_dir;
+		private List<File> m_files;
+		private Mappings[] m_mappings;
+		private Exception[] m_errors;
+		private int m_start;
+		private int m_stop;
+		private int m_taskSize;
+		
+		public ReadFilesTask(File dir, List<File> files, Mappings[] mappings, Exception[] errors, int start, int stop, int taskSize) {
+			m_dir = dir;
+			m_files = files;
+			m_mappings = mappings;
+			m_errors = errors;
+			m_start = start;
+			m_stop = stop;
+			m_taskSize = taskSize;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (m_stop - m_start <= m_taskSize) {
+				for (int i=m_start; i<m_stop; i++) {
+					try {
+						m_mappings[i] = readFile(m_dir, m_files.get(i));
+					} catch (IOException | MappingParseException ex) {
+						m_errors[i] = ex;
+					}
+				}
+				return;
+			}
+			
+			int mid = (m_start + m_stop)/2;
+			invokeAll(
+				new ReadFilesTask(m_dir, m_files, m_mappings, m_errors, m_start, mid, m_taskSize),
+				new ReadFilesTask(m_dir, m_files, m_mappings, m_errors, mid, m_stop, m_taskSize)
+			);
+		}
+	}
+	
+	public Mappings read(File dir)
+	throws IOException, MappingParseException {
+		return read(dir, 1);
+	}
+	
+	public Mappings read(File dir, int numThreads)
+	throws IOException, MappingParseException {
+		
+		if (!dir.isDirectory()) {
+			throw new IOException("Not a mappings folder: " + dir.getAbsolutePath());
+		}
+		
+		List<File> files = Lists.newArrayList();
+		findFiles(dir, files);
+		
+		// parse every file on its own, then put the classes together in file order
+		Mappings[] fileMappings = new Mappings[files.size()];
+		Exception[] errors = new Exception[files.size()];
+		if (numThreads > 1 && files.size() > MinFilesPerTask) {
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				int taskSize = Math.max(MinFilesPerTask, files.size()/(numThreads*4));
+				pool.invoke(new ReadFilesTask(dir, files, fileMappings, errors, 0, files.size(), taskSize));
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			new ReadFilesTask(dir, files, fileMappings, errors, 0, files.size(), files.size()).compute();
+		}
+		
+		Mappings mappings = new Mappings();
+		for (int i=0; i<files.size(); i++) {
+			if (errors[i] instanceof IOException) {
+				throw (IOException)errors[i];
+			} else if (errors[i] instanceof MappingParseException) {
+				throw (MappingParseException)errors[i];
+			}
+			for (ClassMapping classMapping : fileMappings[i].classes()) {
+				mappings.addClassMapping(classMapping);
+			}
+		}
+		
+		// nothing has changed since the files were read
+		mappings.markClean();
+		return mappings;
+	}
+	
+	private static void findFiles(File dir, List<File> files) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		// listFiles() doesn't promise any order, but the class order should be the same every time
+		Arrays.sort(children);
+		for (File child : children) {
+			if (child.isDirectory()) {
+				findFiles(child, files);
+			} else if (child.getName().endsWith(DirectoryMappingsWriter.FileExtension)) {
+				files.add(child);
+			}
+		}
+	}
+	
+	private static Mappings readFile(File dir, File file)
+	throws IOException, MappingParseException {
+		
+		String path = dir.toURI().relativize(file.toURI()).getPath();
+		Mappings mappings;
+		try (FileReader in = new FileReader(file)) {
+			mappings = new MappingsReader().read(in);
+		} catch (MappingParseException ex) {
+			throw new MappingParseException(path, ex);
+		}
+		
+		// each file holds only the class it's named after, otherwise saving would put things in the wrong place
+		String obfClassName = path.substring(0, path.length() - DirectoryMappingsWriter.FileExtension.length());
+		for (ClassMapping classMapping : mappings.classes()) {
+			if (!classMapping.getObfFullName().equals(obfClassName)) {
+				throw new MappingParseException(path, new MappingParseException(1, "Expected only class " + obfClassName + ", but found " + classMapping.getObfFullName()));
+			}
+		}
+		return mappings;
+	}
+}
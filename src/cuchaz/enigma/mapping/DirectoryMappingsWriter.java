@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+public class DirectoryMappingsWriter {
+	
+	// each outer class gets its own file in the mappings folder, eg. com/example/Foo.mapping
+	// NOTE: obf names that differ only by case will collide on case-insensitive file systems
+	public static final String FileExtension = ".mapping";
+	
+	public static File getClassFile(File dir, String obfClassName) {
+		// obf names use slashes for packages, so each package gets its own folder
+		return new File(dir, obfClassName + FileExtension);
+	}
+	
+	public void write(File dir, Mappings mappings)
+	throws IOException {
+		
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't make mappings folder: " + dir.getAbsolutePath());
+		}
+		
+		// write everything, then get rid of files for classes we don't have anymore
+		Set<File> files = Sets.newHashSet();
+		for (ClassMapping classMapping : mappings.classes()) {
+			files.add(writeClass(dir, classMapping));
+		}
+		deleteStaleFiles(dir, files);
+		
+		mappings.markClean();
+	}
+	
+	public int writeChanges(File dir, Mappings mappings)
+	throws IOException {
+		
+		// only touch the files for classes that changed since the last load or save,
+		// so saving takes time in proportion to the edits instead of the whole mappings
+		for (String obfClassName : mappings.getRemovedClassNames()) {
+			if (mappings.getClassByObf(obfClassName) == null) {
+				deleteClassFile(dir, obfClassName);
+			}
+		}
+		mappings.getRemovedClassNames().clear();
+		
+		int numWritten = 0;
+		for (ClassMapping classMapping : mappings.classes()) {
+			if (classMapping.isDirty()) {
+				writeClass(dir, classMapping);
+				classMapping.markClean();
+				numWritten++;
+			}
+		}
+		return numWritten;
+	}
+	
+	private File writeClass(File dir, ClassMapping classMapping)
+	throws IOException {
+		File file = getClassFile(dir, classMapping.getObfFullName());
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Can't make mappings folder: " + parent.getAbsolutePath());
+		}
+		try (FileWriter out = new FileWriter(file)) {
+			new MappingsWriter().write(out, classMapping);
+		}
+		return file;
+	}
+	
+	private void deleteClassFile(File dir, String obfClassName)
+	throws IOException {
+		File file = getClassFile(dir, obfClassName);
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Can't delete mappings file: " + file.getAbsolutePath());
+		}
+		
+		// don't leave empty package folders behind
+		File parent = file.getParentFile();
+		while (!parent.equals(dir) && parent.delete()) {
+			parent = parent.getParentFile();
+		}
+	}
+	
+	private boolean deleteStaleFiles(File folder, Set<File> files)
+	throws IOException {
+		// returns true if the folder is empty afterwards
+		File[] children = folder.listFiles();
+		if (children == null) {
+			return false;
+		}
+		boolean isEmpty = true;
+		for (File child : children) {
+			if (child.isDirectory()) {
+				if (deleteStaleFiles(child, files)) {
+					child.delete();
+				} else {
+					isEmpty = false;
+				}
+			} else if (child.getName().endsWith(FileExtension) && !files.contains(child)) {
+				if (!child.delete()) {
+					throw new IOException("Can't delete mappings file: " + child.getAbsolutePath());
+				}
+			} else {
+				isEmpty = false;
+			}
+		}
+		return isEmpty;
+	}
+}
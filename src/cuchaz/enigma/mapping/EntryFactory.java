@@ -21,12 +21,44 @@ import javassist.expr.FieldAccess;
 import javassist.expr.MethodCall;
 import javassist.expr.NewExpr;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 import cuchaz.enigma.analysis.JarIndex;
 
 public class EntryFactory {
 	
+	// canonical instances of entries, types, and signatures, so equal ones can share memory
+	// NOTE: weak, so the canonical instances go away with the last index that uses them
+	private static final Interner<Object> m_interner = Interners.newWeakInterner();
+	
+	@SuppressWarnings("unchecked")
+	public static <T extends Entry> T intern(T entry) {
+		return (T)m_interner.intern(entry);
+	}
+	
+	public static Type intern(Type type) {
+		return (Type)m_interner.intern(type);
+	}
+	
+	public static Signature intern(Signature signature) {
+		return (Signature)m_interner.intern(signature);
+	}
+	
+	public static ClassEntry getClassEntry(String className) {
+		return intern(new ClassEntry(className));
+	}
+	
+	public static Type getType(String type) {
+		return intern(new Type(type));
+	}
+	
+	public static Signature getSignature(String signature) {
+		return intern(new Signature(signature));
+	}
+	
 	public static ClassEntry getClassEntry(CtClass c) {
-		return new ClassEntry(Descriptor.toJvmName(c.getName()));
+		return getClassEntry(Descriptor.toJvmName(c.getName()));
 	}
 	
 	public static ClassEntry getObfClassEntry(JarIndex jarIndex, ClassMapping classMapping) {
@@ -43,27 +75,23 @@ public class EntryFactory {
 	}
 	
 	public static ClassEntry getSuperclassEntry(CtClass c) {
-		return new ClassEntry(Descriptor.toJvmName(c.getClassFile().getSuperclass()));
+		return getClassEntry(Descriptor.toJvmName(c.getClassFile().getSuperclass()));
 	}
 	
 	public static FieldEntry getFieldEntry(CtField field) {
-		return new FieldEntry(
+		return intern(new FieldEntry(
 			getClassEntry(field.getDeclaringClass()),
 			field.getName(),
-			new Type(field.getFieldInfo().getDescriptor())
-		);
+			getType(field.getFieldInfo().getDescriptor())
+		));
 	}
 	
 	public static FieldEntry getFieldEntry(FieldAccess call) {
-		return new FieldEntry(
-			new ClassEntry(Descriptor.toJvmName(call.getClassName())),
-			call.getFieldName(),
-			new Type(call.getSignature())
-		);
+		return getFieldEntry(Descriptor.toJvmName(call.getClassName()), call.getFieldName(), call.getSignature());
 	}
 	
 	public static FieldEntry getFieldEntry(String className, String name, String type) {
-		return new FieldEntry(new ClassEntry(className), name, new Type(type));
+		return intern(new FieldEntry(getClassEntry(className), name, getType(type)));
 	}
 	
 	public static FieldEntry getObfFieldEntry(ClassMapping classMapping, FieldMapping fieldMapping) {
@@ -75,46 +103,48 @@ public class EntryFactory {
 	}
 	
 	public static MethodEntry getMethodEntry(CtMethod method) {
-		return new MethodEntry(
+		return intern(new MethodEntry(
 			getClassEntry(method.getDeclaringClass()),
 			method.getName(),
-			new Signature(method.getMethodInfo().getDescriptor())
-		);
+			getSignature(method.getMethodInfo().getDescriptor())
+		));
 	}
 	
 	public static MethodEntry getMethodEntry(MethodCall call) {
-		return new MethodEntry(
-			new ClassEntry(Descriptor.toJvmName(call.getClassName())),
-			call.getMethodName(),
-			new Signature(call.getSignature())
-		);
+		return getMethodEntry(Descriptor.toJvmName(call.getClassName()), call.getMethodName(), call.getSignature());
+	}
+	
+	public static MethodEntry getMethodEntry(String className, String name, String signature) {
+		return getMethodEntry(getClassEntry(className), name, getSignature(signature));
+	}
+	
+	public static MethodEntry getMethodEntry(ClassEntry classEntry, String name, Signature signature) {
+		return intern(new MethodEntry(classEntry, name, signature));
 	}
 	
 	public static ConstructorEntry getConstructorEntry(CtConstructor constructor) {
 		if (constructor.isClassInitializer()) {
-			return new ConstructorEntry(
+			return intern(new ConstructorEntry(
 				getClassEntry(constructor.getDeclaringClass())
-			);
+			));
 		} else {
-			return new ConstructorEntry(
+			return intern(new ConstructorEntry(
 				getClassEntry(constructor.getDeclaringClass()),
-				new Signature(constructor.getMethodInfo().getDescriptor())
-			);
+				getSignature(constructor.getMethodInfo().getDescriptor())
+			));
 		}
 	}
 	
 	public static ConstructorEntry getConstructorEntry(ConstructorCall call) {
-		return new ConstructorEntry(
-			new ClassEntry(Descriptor.toJvmName(call.getClassName())),
-			new Signature(call.getSignature())
-		);
+		return getConstructorEntry(Descriptor.toJvmName(call.getClassName()), call.getSignature());
 	}
 	
 	public static ConstructorEntry getConstructorEntry(NewExpr call) {
-		return new ConstructorEntry(
-			new ClassEntry(Descriptor.toJvmName(call.getClassName())),
-			new Signature(call.getSignature())
-		);
+		return getConstructorEntry(Descriptor.toJvmName(call.getClassName()), call.getSignature());
+	}
+	
+	public static ConstructorEntry getConstructorEntry(String className, String signature) {
+		return intern(new ConstructorEntry(getClassEntry(className), getSignature(signature)));
 	}
 	
 	public static BehaviorEntry getBehaviorEntry(CtBehavior behavior) {
@@ -127,30 +157,30 @@ public class EntryFactory {
 	}
 	
 	public static BehaviorEntry getBehaviorEntry(String className, String behaviorName, String behaviorSignature) {
-		return getBehaviorEntry(new ClassEntry(className), behaviorName, new Signature(behaviorSignature));
+		return getBehaviorEntry(getClassEntry(className), behaviorName, getSignature(behaviorSignature));
 	}
 
 	public static BehaviorEntry getBehaviorEntry(String className, String behaviorName) {
-		return getBehaviorEntry(new ClassEntry(className), behaviorName);
+		return getBehaviorEntry(getClassEntry(className), behaviorName);
 	}
 	
 	public static BehaviorEntry getBehaviorEntry(String className) {
-		return new ConstructorEntry(new ClassEntry(className));
+		return intern(new ConstructorEntry(getClassEntry(className)));
 	}
 	
 	public static BehaviorEntry getBehaviorEntry(ClassEntry classEntry, String behaviorName, Signature behaviorSignature) {
 		if (behaviorName.equals("<init>")) {
-			return new ConstructorEntry(classEntry, behaviorSignature);
+			return intern(new ConstructorEntry(classEntry, behaviorSignature));
 		} else if(behaviorName.equals("<clinit>")) {
-			return new ConstructorEntry(classEntry);
+			return intern(new ConstructorEntry(classEntry));
 		} else {
-			return new MethodEntry(classEntry, behaviorName, behaviorSignature);
+			return intern(new MethodEntry(classEntry, behaviorName, behaviorSignature));
 		}
 	}
 	
 	public static BehaviorEntry getBehaviorEntry(ClassEntry classEntry, String behaviorName) {
 		if(behaviorName.equals("<clinit>")) {
-			return new ConstructorEntry(classEntry);
+			return intern(new ConstructorEntry(classEntry));
 		} else {
 			throw new IllegalArgumentException("Only class initializers don't have signatures");
 		}
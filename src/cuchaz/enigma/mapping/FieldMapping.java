@@ -12,6 +12,8 @@ package cuchaz.enigma.mapping;
 
 import java.io.Serializable;
 
+import cuchaz.enigma.Util;
+
 public class FieldMapping implements Serializable, Comparable<FieldMapping>, MemberMapping<FieldEntry> {
 	
 	private static final long serialVersionUID = 8610742471440861315L;
@@ -59,7 +61,7 @@ public class FieldMapping implements Serializable, Comparable<FieldMapping>, Mem
 	
 	@Override
 	public int compareTo(FieldMapping other) {
-		return (m_obfName + m_obfType).compareTo(other.m_obfName + other.m_obfType);
+		return Util.compareJoined(m_obfName, m_obfType.toString(), other.m_obfName, other.m_obfType.toString());
 	}
 
 	public boolean renameObfClass(final String oldObfClassName, final String newObfClassName) {
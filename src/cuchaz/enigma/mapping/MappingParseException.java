@@ -14,16 +14,28 @@ public class MappingParseException extends Exception {
 	
 	private static final long serialVersionUID = -5487280332892507236L;
 	
+	private String m_file;
 	private int m_line;
 	private String m_message;
 	
 	public MappingParseException(int line, String message) {
+		m_file = null;
 		m_line = line;
 		m_message = message;
 	}
 	
+	public MappingParseException(String file, MappingParseException cause) {
+		super(cause);
+		m_file = file;
+		m_line = cause.m_line;
+		m_message = cause.m_message;
+	}
+	
 	@Override
 	public String getMessage() {
+		if (m_file != null) {
+			return m_file + ", line " + m_line + ": " + m_message;
+		}
 		return "Line " + m_line + ": " + m_message;
 	}
 }
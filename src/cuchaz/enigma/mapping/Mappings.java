@@ -30,9 +30,13 @@ public class Mappings implements Serializable {
 	protected Map<String,ClassMapping> m_classesByObf;
 	protected Map<String,ClassMapping> m_classesByDeobf;
 	
+	// obf names of outer classes that went away since the mappings were last loaded or saved
+	private transient Set<String> m_removedClassNames;
+	
 	public Mappings() {
 		m_classesByObf = Maps.newHashMap();
 		m_classesByDeobf = Maps.newHashMap();
+		m_removedClassNames = Sets.newHashSet();
 	}
 	
 	public Mappings(Iterable<ClassMapping> classes) {
@@ -69,6 +73,7 @@ public class Mappings implements Serializable {
 	public void removeClassMapping(ClassMapping classMapping) {
 		boolean obfWasRemoved = m_classesByObf.remove(classMapping.getObfFullName()) != null;
 		assert (obfWasRemoved);
+		getRemovedClassNames().add(classMapping.getObfFullName());
 		if (classMapping.getDeobfName() != null) {
 			boolean deobfWasRemoved = m_classesByDeobf.remove(classMapping.getDeobfName()) != null;
 			assert (deobfWasRemoved);
@@ -108,7 +113,7 @@ public class Mappings implements Serializable {
 			case Deobfuscating:
 				
 				return new Translator(direction, m_classesByObf, index);
-				
+			
 			case Obfuscating:
 				
 				// fill in the missing deobf class entries with obf entries
@@ -126,7 +131,7 @@ public class Mappings implements Serializable {
 				TranslationIndex deobfIndex = new TranslationIndex(index, getTranslator(TranslationDirection.Deobfuscating, index));
 				
 				return new Translator(direction, classes, deobfIndex);
-				
+			
 			default:
 				throw new Error("Invalid translation direction!");
 		}
@@ -147,6 +152,7 @@ public class Mappings implements Serializable {
 			if (classMapping.renameObfClass(oldObfName, newObfName)) {
 				boolean wasRemoved = m_classesByObf.remove(oldObfName) != null;
 				assert (wasRemoved);
+				getRemovedClassNames().add(oldObfName);
 				boolean wasAdded = m_classesByObf.put(newObfName, classMapping) == null;
 				assert (wasAdded);
 			}
@@ -172,6 +178,33 @@ public class Mappings implements Serializable {
 		return classNames;
 	}
 	
+	public Set<String> getRemovedClassNames() {
+		if (m_removedClassNames == null) {
+			// deserialized mappings don't know what was removed before
+			m_removedClassNames = Sets.newHashSet();
+		}
+		return m_removedClassNames;
+	}
+	
+	public boolean isDirty() {
+		if (!getRemovedClassNames().isEmpty()) {
+			return true;
+		}
+		for (ClassMapping classMapping : classes()) {
+			if (classMapping.isDirty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void markClean() {
+		getRemovedClassNames().clear();
+		for (ClassMapping classMapping : classes()) {
+			classMapping.markClean();
+		}
+	}
+	
 	public boolean containsDeobfClass(String deobfName) {
 		return m_classesByDeobf.containsKey(deobfName);
 	}
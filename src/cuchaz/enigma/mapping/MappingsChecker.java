@@ -59,13 +59,21 @@ public class MappingsChecker {
 	
 	public void dropBrokenMappings(Mappings mappings) {
 		for (ClassMapping classMapping : Lists.newArrayList(mappings.classes())) {
-			if (!checkClassMapping(classMapping)) {
+			if (!dropBrokenMappings(classMapping)) {
 				mappings.removeClassMapping(classMapping);
-				m_droppedClassMappings.put(EntryFactory.getObfClassEntry(m_index, classMapping), classMapping);
 			}
 		}
 	}
 	
+	public boolean dropBrokenMappings(ClassMapping classMapping) {
+		// returns false if the whole class mapping should be dropped
+		if (!checkClassMapping(classMapping)) {
+			m_droppedClassMappings.put(EntryFactory.getObfClassEntry(m_index, classMapping), classMapping);
+			return false;
+		}
+		return true;
+	}
+	
 	private boolean checkClassMapping(ClassMapping classMapping) {
 		
 		// check the class
@@ -13,62 +13,253 @@ package cuchaz.enigma.mapping;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.Map;
 
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 
 public class MappingsReader {
 	
-	public Mappings read(Reader in)
-	throws IOException, MappingParseException {
-		return read(new BufferedReader(in));
+	private static final int BufferSize = 64*1024;
+	
+	// reads one line at a time out of a big char buffer and splits it into tokens in place,
+	// so the only strings made are the ones that end up in the mappings
+	// lines end the same way as BufferedReader.readLine(), and tokens are split the same way as String.split("\\s")
+	private static class LineTokenizer {
+		
+		private Reader m_in;
+		private char[] m_buf;
+		private int m_pos;
+		private int m_limit;
+		private boolean m_skipLineFeed;
+		private int m_lineStart;
+		private int m_lineStop;
+		private int[] m_tokenStarts;
+		private int[] m_tokenStops;
+		private int m_numTokens;
+		
+		public LineTokenizer(Reader in) {
+			m_in = in;
+			m_buf = new char[BufferSize];
+			m_pos = 0;
+			m_limit = 0;
+			m_skipLineFeed = false;
+			m_lineStart = 0;
+			m_lineStop = 0;
+			m_tokenStarts = new int[8];
+			m_tokenStops = new int[8];
+			m_numTokens = 0;
+		}
+		
+		public boolean nextLine()
+		throws IOException {
+			
+			// a \r\n only ends one line
+			if (m_skipLineFeed) {
+				if (m_pos == m_limit) {
+					m_lineStart = m_pos;
+					fill();
+				}
+				if (m_pos < m_limit && m_buf[m_pos] == '\n') {
+					m_pos++;
+				}
+				m_skipLineFeed = false;
+			}
+			
+			m_lineStart = m_pos;
+			int i = m_pos;
+			while (true) {
+				for (; i<m_limit; i++) {
+					char c = m_buf[i];
+					if (c == '\n' || c == '\r') {
+						m_lineStop = i;
+						m_pos = i + 1;
+						m_skipLineFeed = c == '\r';
+						return true;
+					}
+				}
+				int numScanned = i - m_lineStart;
+				if (!fill()) {
+					// the last line doesn't need a line ending
+					if (m_limit > m_lineStart) {
+						m_lineStop = m_limit;
+						m_pos = m_limit;
+						return true;
+					}
+					return false;
+				}
+				i = m_lineStart + numScanned;
+			}
+		}
+		
+		private boolean fill()
+		throws IOException {
+			
+			// keep the part of the line we have so far, and read more after it
+			int length = m_limit - m_lineStart;
+			if (m_lineStart > 0) {
+				System.arraycopy(m_buf, m_lineStart, m_buf, 0, length);
+			} else if (length == m_buf.length) {
+				m_buf = Arrays.copyOf(m_buf, m_buf.length*2);
+			}
+			m_pos -= m_lineStart;
+			m_lineStart = 0;
+			m_limit = length;
+			
+			int numRead = m_in.read(m_buf, m_limit, m_buf.length - m_limit);
+			if (numRead < 0) {
+				return false;
+			}
+			m_limit += numRead;
+			return true;
+		}
+		
+		public boolean stripComment() {
+			// returns false if there's nothing left on the line but whitespace
+			for (int i=m_lineStart; i<m_lineStop; i++) {
+				if (m_buf[i] == '#') {
+					m_lineStop = i;
+					break;
+				}
+			}
+			for (int i=m_lineStart; i<m_lineStop; i++) {
+				if (m_buf[i] > ' ') {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		public int getIndent() {
+			int indent = 0;
+			for (int i=m_lineStart; i<m_lineStop && m_buf[i] == '\t'; i++) {
+				indent++;
+			}
+			return indent;
+		}
+		
+		public void tokenize() {
+			
+			// trim the line the same way String.trim() does
+			int start = m_lineStart;
+			int stop = m_lineStop;
+			while (start < stop && m_buf[start] <= ' ') {
+				start++;
+			}
+			while (stop > start && m_buf[stop - 1] <= ' ') {
+				stop--;
+			}
+			
+			// then split at every whitespace char, runs of whitespace give empty tokens
+			m_numTokens = 0;
+			int tokenStart = start;
+			for (int i=start; i<stop; i++) {
+				if (isWhitespace(m_buf[i])) {
+					addToken(tokenStart, i);
+					tokenStart = i + 1;
+				}
+			}
+			addToken(tokenStart, stop);
+		}
+		
+		private void addToken(int start, int stop) {
+			if (m_numTokens == m_tokenStarts.length) {
+				m_tokenStarts = Arrays.copyOf(m_tokenStarts, m_numTokens*2);
+				m_tokenStops = Arrays.copyOf(m_tokenStops, m_numTokens*2);
+			}
+			m_tokenStarts[m_numTokens] = start;
+			m_tokenStops[m_numTokens] = stop;
+			m_numTokens++;
+		}
+		
+		private static boolean isWhitespace(char c) {
+			// same as \s in a regex
+			return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+		}
+		
+		public int getNumTokens() {
+			return m_numTokens;
+		}
+		
+		public String getToken(int i) {
+			if (i >= m_numTokens) {
+				throw new ArrayIndexOutOfBoundsException(i);
+			}
+			return new String(m_buf, m_tokenStarts[i], m_tokenStops[i] - m_tokenStarts[i]);
+		}
+		
+		public String[] getTokens() {
+			String[] tokens = new String[m_numTokens];
+			for (int i=0; i<m_numTokens; i++) {
+				tokens[i] = getToken(i);
+			}
+			return tokens;
+		}
+		
+		public boolean tokenEqualsIgnoreCase(int i, String val) {
+			// same rules as String.equalsIgnoreCase()
+			int start = m_tokenStarts[i];
+			if (m_tokenStops[i] - start != val.length()) {
+				return false;
+			}
+			for (int j=0; j<val.length(); j++) {
+				char a = m_buf[start + j];
+				char b = val.charAt(j);
+				if (a == b) {
+					continue;
+				}
+				char upperA = Character.toUpperCase(a);
+				char upperB = Character.toUpperCase(b);
+				if (upperA != upperB && Character.toLowerCase(upperA) != Character.toLowerCase(upperB)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		public String getLine() {
+			return new String(m_buf, m_lineStart, m_lineStop - m_lineStart);
+		}
 	}
 	
-	public Mappings read(BufferedReader in)
+	public Mappings read(Reader in)
 	throws IOException, MappingParseException {
+		
+		// we do our own buffering, so don't bother with another buffer
 		Mappings mappings = new Mappings();
 		Deque<Object> mappingStack = Queues.newArrayDeque();
 		
+		// most signatures show up many times in a mappings file, so only parse each one once
+		Map<String,Signature> signatures = Maps.newHashMap();
+		
+		LineTokenizer line = new LineTokenizer(in);
 		int lineNumber = 0;
-		String line = null;
-		while ( (line = in.readLine()) != null) {
+		while (line.nextLine()) {
 			lineNumber++;
 			
-			// strip comments
-			int commentPos = line.indexOf('#');
-			if (commentPos >= 0) {
-				line = line.substring(0, commentPos);
-			}
-			
-			// skip blank lines
-			if (line.trim().length() <= 0) {
+			// strip comments and skip blank lines
+			if (!line.stripComment()) {
 				continue;
 			}
 			
 			// get the indent of this line
-			int indent = 0;
-			for (int i = 0; i < line.length(); i++) {
-				if (line.charAt(i) != '\t') {
-					break;
-				}
-				indent++;
-			}
+			int indent = line.getIndent();
 			
 			// handle stack pops
 			while (indent < mappingStack.size()) {
 				mappingStack.pop();
 			}
 			
-			String[] parts = line.trim().split("\\s");
+			line.tokenize();
 			try {
 				// read the first token
-				String token = parts[0];
-				
-				if (token.equalsIgnoreCase("CLASS")) {
+				if (line.tokenEqualsIgnoreCase(0, "CLASS")) {
 					ClassMapping classMapping;
 					if (indent <= 0) {
 						// outer class
-						classMapping = readClass(parts, false);
+						classMapping = readClass(line, false);
 						mappings.addClassMapping(classMapping);
 					} else {
 						
@@ -77,45 +268,50 @@ public class MappingsReader {
 							throw new MappingParseException(lineNumber, "Unexpected CLASS entry here!");
 						}
 						
-						classMapping = readClass(parts, true);
+						classMapping = readClass(line, true);
 						((ClassMapping)mappingStack.peek()).addInnerClassMapping(classMapping);
 					}
 					mappingStack.push(classMapping);
-				} else if (token.equalsIgnoreCase("FIELD")) {
+				} else if (line.tokenEqualsIgnoreCase(0, "FIELD")) {
 					if (mappingStack.isEmpty() || ! (mappingStack.peek() instanceof ClassMapping)) {
 						throw new MappingParseException(lineNumber, "Unexpected FIELD entry here!");
 					}
-					((ClassMapping)mappingStack.peek()).addFieldMapping(readField(parts));
-				} else if (token.equalsIgnoreCase("METHOD")) {
+					((ClassMapping)mappingStack.peek()).addFieldMapping(readField(line.getTokens()));
+				} else if (line.tokenEqualsIgnoreCase(0, "METHOD")) {
 					if (mappingStack.isEmpty() || ! (mappingStack.peek() instanceof ClassMapping)) {
 						throw new MappingParseException(lineNumber, "Unexpected METHOD entry here!");
 					}
-					MethodMapping methodMapping = readMethod(parts);
+					MethodMapping methodMapping = readMethod(line, signatures);
 					((ClassMapping)mappingStack.peek()).addMethodMapping(methodMapping);
 					mappingStack.push(methodMapping);
-				} else if (token.equalsIgnoreCase("ARG")) {
+				} else if (line.tokenEqualsIgnoreCase(0, "ARG")) {
 					if (mappingStack.isEmpty() || ! (mappingStack.peek() instanceof MethodMapping)) {
 						throw new MappingParseException(lineNumber, "Unexpected ARG entry here!");
 					}
-					((MethodMapping)mappingStack.peek()).addArgumentMapping(readArgument(parts));
+					((MethodMapping)mappingStack.peek()).addArgumentMapping(readArgument(line));
 				}
 			} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
-				throw new MappingParseException(lineNumber, "Malformed line:\n" + line);
+				throw new MappingParseException(lineNumber, "Malformed line:\n" + line.getLine());
 			}
 		}
 		
 		return mappings;
 	}
 	
-	private ArgumentMapping readArgument(String[] parts) {
-		return new ArgumentMapping(Integer.parseInt(parts[1]), parts[2]);
+	public Mappings read(BufferedReader in)
+	throws IOException, MappingParseException {
+		return read((Reader)in);
+	}
+	
+	private ArgumentMapping readArgument(LineTokenizer line) {
+		return new ArgumentMapping(Integer.parseInt(line.getToken(1)), line.getToken(2));
 	}
 	
-	private ClassMapping readClass(String[] parts, boolean makeSimple) {
-		if (parts.length == 2) {
-			return new ClassMapping(parts[1]);
+	private ClassMapping readClass(LineTokenizer line, boolean makeSimple) {
+		if (line.getNumTokens() == 2) {
+			return new ClassMapping(line.getToken(1));
 		} else {
-			return new ClassMapping(parts[1], parts[2]);
+			return new ClassMapping(line.getToken(1), line.getToken(2));
 		}
 	}
 	
@@ -124,11 +320,20 @@ public class MappingsReader {
 		return new FieldMapping(parts[1], new Type(parts[3]), parts[2]);
 	}
 	
-	private MethodMapping readMethod(String[] parts) {
-		if (parts.length == 3) {
-			return new MethodMapping(parts[1], new Signature(parts[2]));
+	private MethodMapping readMethod(LineTokenizer line, Map<String,Signature> signatures) {
+		if (line.getNumTokens() == 3) {
+			return new MethodMapping(line.getToken(1), getSignature(line.getToken(2), signatures));
 		} else {
-			return new MethodMapping(parts[1], new Signature(parts[3]), parts[2]);
+			return new MethodMapping(line.getToken(1), getSignature(line.getToken(3), signatures), line.getToken(2));
+		}
+	}
+	
+	private Signature getSignature(String val, Map<String,Signature> signatures) {
+		Signature signature = signatures.get(val);
+		if (signature == null) {
+			signature = new Signature(val);
+			signatures.put(val, signature);
 		}
+		return signature;
 	}
 }
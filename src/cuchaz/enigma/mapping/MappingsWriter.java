@@ -14,75 +14,191 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class MappingsWriter {
 	
+	// lines get built in a buffer and handed to the writer in big chunks
+	private static final int ChunkSize = 64*1024;
+	
+	// enough tabs for any nesting of inner classes we'll actually see
+	private static final String Tabs = "\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t";
+	
+	private static final int MinClassesPerTask = 16;
+	
+	private static class WriteClassesTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 3528349722373436817L;
+		
+		private List<ClassMapping> m_classes;
+		private StringBuilder[] m_bufs;
+		private int m_start;
+		private int m_stop;
+		private int m_taskSize;
+		
+		public WriteClassesTask(List<ClassMapping> classes, StringBuilder[] bufs, int start, int stop, int taskSize) {
+			m_classes = classes;
+			m_bufs = bufs;
+			m_start = start;
+			m_stop = stop;
+			m_taskSize = taskSize;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (m_stop - m_start <= m_taskSize) {
+				for (int i=m_start; i<m_stop; i++) {
+					m_bufs[i] = new StringBuilder();
+					write(m_bufs[i], m_classes.get(i), 0);
+				}
+				return;
+			}
+			
+			int mid = (m_start + m_stop)/2;
+			invokeAll(
+				new WriteClassesTask(m_classes, m_bufs, m_start, mid, m_taskSize),
+				new WriteClassesTask(m_classes, m_bufs, mid, m_stop, m_taskSize)
+			);
+		}
+	}
+	
 	public void write(Writer out, Mappings mappings) throws IOException {
-		write(new PrintWriter(out), mappings);
+		write(out, mappings, 1);
 	}
 	
 	public void write(PrintWriter out, Mappings mappings) throws IOException {
-		for (ClassMapping classMapping : sorted(mappings.classes())) {
-			write(out, classMapping, 0);
-		}
+		write((Writer)out, mappings, 1);
 	}
 	
-	private void write(PrintWriter out, ClassMapping classMapping, int depth) throws IOException {
-		if (classMapping.getDeobfName() == null) {
-			out.format("%sCLASS %s\n", getIndent(depth), classMapping.getObfFullName());
+	public void write(Writer out, Mappings mappings, int numThreads) throws IOException {
+		List<ClassMapping> classes = new ArrayList<ClassMapping>(mappings.classes());
+		Collections.sort(classes);
+		char[] chars = new char[ChunkSize];
+		
+		if (numThreads > 1 && classes.size() > MinClassesPerTask) {
+			
+			// write each class into its own buffer on the workers, then write the buffers out in order
+			// so the output is the same no matter how many threads there are
+			StringBuilder[] bufs = new StringBuilder[classes.size()];
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				int taskSize = Math.max(MinClassesPerTask, classes.size()/(numThreads*4));
+				pool.invoke(new WriteClassesTask(classes, bufs, 0, classes.size(), taskSize));
+			} finally {
+				pool.shutdown();
+			}
+			for (int i=0; i<bufs.length; i++) {
+				write(out, bufs[i], chars);
+				bufs[i] = null;
+			}
+			
 		} else {
-			out.format("%sCLASS %s %s\n", getIndent(depth), classMapping.getObfFullName(), classMapping.getDeobfName());
+			
+			StringBuilder buf = new StringBuilder(ChunkSize*2);
+			for (ClassMapping classMapping : classes) {
+				write(buf, classMapping, 0);
+				if (buf.length() >= ChunkSize) {
+					write(out, buf, chars);
+					buf.setLength(0);
+				}
+			}
+			write(out, buf, chars);
 		}
+		out.flush();
+	}
+	
+	public void write(Writer out, ClassMapping classMapping) throws IOException {
+		StringBuilder buf = new StringBuilder();
+		write(buf, classMapping, 0);
+		write(out, buf, new char[Math.min(buf.length() + 1, ChunkSize)]);
+		out.flush();
+	}
+	
+	private static void write(StringBuilder buf, ClassMapping classMapping, int depth) {
+		indent(buf, depth).append("CLASS ").append(classMapping.getObfFullName());
+		if (classMapping.getDeobfName() != null) {
+			buf.append(' ').append(classMapping.getDeobfName());
+		}
+		buf.append('\n');
 		
 		for (ClassMapping innerClassMapping : sorted(classMapping.innerClasses())) {
-			write(out, innerClassMapping, depth + 1);
+			write(buf, innerClassMapping, depth + 1);
 		}
 		
 		for (FieldMapping fieldMapping : sorted(classMapping.fields())) {
-			write(out, fieldMapping, depth + 1);
+			write(buf, fieldMapping, depth + 1);
 		}
 		
 		for (MethodMapping methodMapping : sorted(classMapping.methods())) {
-			write(out, methodMapping, depth + 1);
+			write(buf, methodMapping, depth + 1);
 		}
 	}
 	
-	private void write(PrintWriter out, FieldMapping fieldMapping, int depth) throws IOException {
-		out.format("%sFIELD %s %s %s\n", getIndent(depth), fieldMapping.getObfName(), fieldMapping.getDeobfName(), fieldMapping.getObfType().toString());
+	private static void write(StringBuilder buf, FieldMapping fieldMapping, int depth) {
+		indent(buf, depth).append("FIELD ").append(fieldMapping.getObfName())
+			.append(' ').append(fieldMapping.getDeobfName())
+			.append(' ').append(fieldMapping.getObfType().toString())
+			.append('\n');
 	}
 	
-	private void write(PrintWriter out, MethodMapping methodMapping, int depth) throws IOException {
-		if (methodMapping.getDeobfName() == null) {
-			out.format("%sMETHOD %s %s\n", getIndent(depth), methodMapping.getObfName(), methodMapping.getObfSignature());
-		} else {
-			out.format("%sMETHOD %s %s %s\n", getIndent(depth), methodMapping.getObfName(), methodMapping.getDeobfName(), methodMapping.getObfSignature());
+	private static void write(StringBuilder buf, MethodMapping methodMapping, int depth) {
+		indent(buf, depth).append("METHOD ").append(methodMapping.getObfName());
+		if (methodMapping.getDeobfName() != null) {
+			buf.append(' ').append(methodMapping.getDeobfName());
 		}
+		buf.append(' ').append(methodMapping.getObfSignature().toString()).append('\n');
 		
-		for (ArgumentMapping argumentMapping : sorted(methodMapping.arguments())) {
-			write(out, argumentMapping, depth + 1);
+		// arguments are already kept in order
+		for (ArgumentMapping argumentMapping : methodMapping.arguments()) {
+			write(buf, argumentMapping, depth + 1);
 		}
 	}
 	
-	private void write(PrintWriter out, ArgumentMapping argumentMapping, int depth) throws IOException {
-		out.format("%sARG %d %s\n", getIndent(depth), argumentMapping.getIndex(), argumentMapping.getName());
+	private static void write(StringBuilder buf, ArgumentMapping argumentMapping, int depth) {
+		indent(buf, depth).append("ARG ").append(argumentMapping.getIndex()).append(' ').append(argumentMapping.getName()).append('\n');
 	}
 	
-	private <T extends Comparable<T>> List<T> sorted(Iterable<T> classes) {
-		List<T> out = new ArrayList<T>();
-		for (T t : classes) {
-			out.add(t);
+	private static void write(Writer out, StringBuilder buf, char[] chars) throws IOException {
+		// copy through a reusable array instead of making a string of the whole buffer
+		for (int start=0; start<buf.length(); start+=chars.length) {
+			int stop = Math.min(buf.length(), start + chars.length);
+			buf.getChars(start, stop, chars, 0);
+			out.write(chars, 0, stop - start);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T extends Comparable<T>> Iterable<T> sorted(Iterable<T> things) {
+		List<T> out;
+		if (things instanceof Collection) {
+			// most classes only have a few members, so don't copy anything that's already in order
+			Collection<T> collection = (Collection<T>)things;
+			if (collection.size() <= 1) {
+				return collection;
+			}
+			out = new ArrayList<T>(collection);
+		} else {
+			out = new ArrayList<T>();
+			for (T t : things) {
+				out.add(t);
+			}
 		}
 		Collections.sort(out);
 		return out;
 	}
 	
-	private String getIndent(int depth) {
-		StringBuilder buf = new StringBuilder();
-		for (int i = 0; i < depth; i++) {
-			buf.append("\t");
+	private static StringBuilder indent(StringBuilder buf, int depth) {
+		if (depth <= Tabs.length()) {
+			return buf.append(Tabs, 0, depth);
+		}
+		for (int i=0; i<depth; i++) {
+			buf.append('\t');
 		}
-		return buf.toString();
+		return buf;
 	}
 }
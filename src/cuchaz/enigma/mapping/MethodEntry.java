@@ -75,7 +75,7 @@ public class MethodEntry implements BehaviorEntry, Serializable {
 	
 	@Override
 	public MethodEntry cloneToNewClass(ClassEntry classEntry) {
-		return new MethodEntry(this, classEntry.getName());
+		return new MethodEntry(classEntry, m_name, m_signature);
 	}
 	
 	@Override
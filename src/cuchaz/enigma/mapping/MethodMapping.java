@@ -16,6 +16,8 @@ import java.util.Map.Entry;
 
 import com.google.common.collect.Maps;
 
+import cuchaz.enigma.Util;
+
 public class MethodMapping implements Serializable, Comparable<MethodMapping>, MemberMapping<BehaviorEntry> {
 	
 	private static final long serialVersionUID = -4409570216084263978L;
@@ -148,7 +150,7 @@ public class MethodMapping implements Serializable, Comparable<MethodMapping>, M
 	
 	@Override
 	public int compareTo(MethodMapping other) {
-		return (m_obfName + m_obfSignature).compareTo(other.m_obfName + other.m_obfSignature);
+		return Util.compareJoined(m_obfName, m_obfSignature.toString(), other.m_obfName, other.m_obfSignature.toString());
 	}
 	
 	public boolean renameObfClass(final String oldObfClassName, final String newObfClassName) {
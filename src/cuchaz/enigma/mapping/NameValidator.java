@@ -10,17 +10,15 @@
  ******************************************************************************/
 package cuchaz.enigma.mapping;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 import javassist.bytecode.Descriptor;
 
+import com.google.common.collect.Sets;
+
 public class NameValidator {
 	
-	private static final Pattern IdentifierPattern;
-	private static final Pattern ClassPattern;
-	private static final List<String> ReservedWords = Arrays.asList(
+	private static final Set<String> ReservedWords = Sets.newHashSet(
 		"abstract", "continue", "for", "new", "switch", "assert", "default", "goto", "package", "synchronized",
 		"boolean", "do", "if", "private", "this", "break", "double", "implements", "protected", "throw", "byte",
 		"else", "import", "public", "throws", "case", "enum", "instanceof", "return", "transient", "catch",
@@ -28,30 +26,11 @@ public class NameValidator {
 		"long", "strictfp", "volatile", "const", "float", "native", "super", "while"
 	);
 	
-	static {
-		
-		// java allows all kinds of weird characters...
-		StringBuilder startChars = new StringBuilder();
-		StringBuilder partChars = new StringBuilder();
-		for (int i = Character.MIN_CODE_POINT; i <= Character.MAX_CODE_POINT; i++) {
-			if (Character.isJavaIdentifierStart(i)) {
-				startChars.appendCodePoint(i);
-			}
-			if (Character.isJavaIdentifierPart(i)) {
-				partChars.appendCodePoint(i);
-			}
-		}
-		
-		String identifierRegex = "[A-Za-z_<][A-Za-z0-9_>]*";
-		IdentifierPattern = Pattern.compile(identifierRegex);
-		ClassPattern = Pattern.compile(String.format("^(%s(\\.|/))*(%s)$", identifierRegex, identifierRegex));
-	}
-	
 	public static String validateClassName(String name, boolean packageRequired) {
 		if (name == null) {
 			return null;
 		}
-		if (!ClassPattern.matcher(name).matches() || ReservedWords.contains(name)) {
+		if (!isClassName(name) || ReservedWords.contains(name)) {
 			throw new IllegalNameException(name, "This doesn't look like a legal class name");
 		}
 		if (packageRequired && new ClassEntry(name).getPackageName() == null) {
@@ -64,7 +43,7 @@ public class NameValidator {
 		if (name == null) {
 			return null;
 		}
-		if (!IdentifierPattern.matcher(name).matches() || ReservedWords.contains(name)) {
+		if (!isIdentifier(name, 0, name.length()) || ReservedWords.contains(name)) {
 			throw new IllegalNameException(name, "This doesn't look like a legal identifier");
 		}
 		return name;
@@ -77,4 +56,41 @@ public class NameValidator {
 	public static String validateArgumentName(String name) {
 		return validateFieldName(name);
 	}
+	
+	// these checks get run on every name in a mappings file, so they're written out by hand instead of using regexes
+	// identifiers look like [A-Za-z_<][A-Za-z0-9_>]*, and class names are identifiers separated by '.' or '/'
+	
+	private static boolean isClassName(String name) {
+		int start = 0;
+		for (int i=0; i<name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '.' || c == '/') {
+				if (!isIdentifier(name, start, i)) {
+					return false;
+				}
+				start = i + 1;
+			}
+		}
+		return isIdentifier(name, start, name.length());
+	}
+	
+	private static boolean isIdentifier(String name, int start, int stop) {
+		if (start >= stop || !isIdentifierStart(name.charAt(start))) {
+			return false;
+		}
+		for (int i=start + 1; i<stop; i++) {
+			if (!isIdentifierPart(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean isIdentifierStart(char c) {
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_' || c == '<';
+	}
+	
+	private static boolean isIdentifierPart(char c) {
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '>';
+	}
 }
@@ -24,6 +24,9 @@ public class Signature implements Serializable {
 	private List<Type> m_argumentTypes;
 	private Type m_returnType;
 	
+	// signatures get turned into strings all the time for map keys, and they don't change once they're made
+	private transient String m_string;
+	
 	public Signature(String signature) {
 		try {
 			m_argumentTypes = Lists.newArrayList();
@@ -38,12 +41,12 @@ public class Signature implements Serializable {
 					i++;
 					break;
 				} else {
-					String type = Type.parseFirst(signature.substring(i));
-					m_argumentTypes.add(new Type(type));
-					i += type.length();
+					int stop = parseType(signature, i);
+					m_argumentTypes.add(EntryFactory.getType(signature.substring(i, stop)));
+					i = stop;
 				}
 			}
-			m_returnType = new Type(Type.parseFirst(signature.substring(i)));
+			m_returnType = EntryFactory.getType(signature.substring(i, parseType(signature, i)));
 		} catch (Exception ex) {
 			throw new IllegalArgumentException("Unable to parse signature: " + signature, ex);
 		}
@@ -72,14 +75,17 @@ public class Signature implements Serializable {
 	
 	@Override
 	public String toString() {
-		StringBuilder buf = new StringBuilder();
-		buf.append("(");
-		for (Type type : m_argumentTypes) {
-			buf.append(type.toString());
+		if (m_string == null) {
+			StringBuilder buf = new StringBuilder();
+			buf.append("(");
+			for (Type type : m_argumentTypes) {
+				buf.append(type.toString());
+			}
+			buf.append(")");
+			buf.append(m_returnType.toString());
+			m_string = buf.toString();
 		}
-		buf.append(")");
-		buf.append(m_returnType.toString());
-		return buf.toString();
+		return m_string;
 	}
 	
 	public Iterable<Type> types() {
@@ -105,7 +111,7 @@ public class Signature implements Serializable {
 	public int hashCode() {
 		return Util.combineHashesOrdered(m_argumentTypes.hashCode(), m_returnType.hashCode());
 	}
-
+	
 	public boolean hasClass(ClassEntry classEntry) {
 		for (Type type : types()) {
 			if (type.hasClass() && type.getClassEntry().equals(classEntry)) {
@@ -114,4 +120,12 @@ public class Signature implements Serializable {
 		}
 		return false;
 	}
+	
+	private static int parseType(String signature, int start) {
+		int stop = Type.parseFirst(signature, start);
+		if (stop < 0) {
+			throw new IllegalArgumentException("Class name never ends: " + signature.substring(start));
+		}
+		return stop;
+	}
 }
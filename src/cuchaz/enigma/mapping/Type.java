@@ -11,14 +11,11 @@
 package cuchaz.enigma.mapping;
 
 import java.io.Serializable;
-import java.util.Map;
-
-import com.google.common.collect.Maps;
 
 public class Type implements Serializable {
 	
 	private static final long serialVersionUID = 7862257669347104063L;
-
+	
 	public enum Primitive {
 		Byte('B'),
 		Character('C'),
@@ -29,17 +26,21 @@ public class Type implements Serializable {
 		Double('D'),
 		Boolean('Z');
 		
-		private static final Map<Character,Primitive> m_lookup;
+		// indexed by code, so lookups don't have to box the char
+		private static final Primitive[] m_lookup;
 		
 		static {
-			m_lookup = Maps.newTreeMap();
+			m_lookup = new Primitive['Z' + 1];
 			for (Primitive val : values()) {
-				m_lookup.put(val.getCode(), val);
+				m_lookup[val.getCode()] = val;
 			}
 		}
 		
 		public static Primitive get(char code) {
-			return m_lookup.get(code);
+			if (code >= m_lookup.length) {
+				return null;
+			}
+			return m_lookup[code];
 		}
 		
 		private char m_code;
@@ -47,51 +48,60 @@ public class Type implements Serializable {
 		private Primitive(char code) {
 			m_code = code;
 		}
-	
+		
 		public char getCode() {
 			return m_code;
 		}
 	}
 	
 	public static String parseFirst(String in) {
+		int stop = parseFirst(in, 0);
+		if (stop < 0) {
+			return null;
+		}
+		return in.substring(0, stop);
+	}
+	
+	public static int parseFirst(String in, int start) {
 		
-		if (in == null || in.length() <= 0) {
+		// read one type from the input, starting at start
+		// returns where the type stops, or -1 if a class name never ends
+		// going by index saves copying the rest of the input for every type in a signature
+		
+		if (in == null || start >= in.length()) {
 			throw new IllegalArgumentException("No type to parse, input is empty!");
 		}
 		
-		// read one type from the input
-		
-		char c = in.charAt(0);
+		char c = in.charAt(start);
 		
 		// first check for void
 		if (c == 'V') {
-			return "V";
+			return start + 1;
 		}
 		
 		// then check for primitives
 		Primitive primitive = Primitive.get(c);
 		if (primitive != null) {
-			return in.substring(0, 1);
+			return start + 1;
 		}
 		
 		// then check for classes
 		if (c == 'L') {
-			return readClass(in);
+			return readClass(in, start);
 		}
 		
 		// then check for templates
 		if (c == 'T') {
-			return readClass(in);
+			return readClass(in, start);
 		}
-
+		
 		// then check for arrays
-		int dim = countArrayDimension(in);
+		int dim = countArrayDimension(in, start);
 		if (dim > 0) {
-			String arrayType = Type.parseFirst(in.substring(dim));
-			return in.substring(0, dim + arrayType.length());
+			return parseFirst(in, start + dim);
 		}
 		
-		throw new IllegalArgumentException("don't know how to parse: " + in);
+		throw new IllegalArgumentException("don't know how to parse: " + in.substring(start));
 	}
 	
 	protected String m_name;
@@ -220,28 +230,29 @@ public class Type implements Serializable {
 	}
 	
 	private static int countArrayDimension(String in) {
-		int i=0;
+		return countArrayDimension(in, 0);
+	}
+	
+	private static int countArrayDimension(String in, int start) {
+		int i=start;
 		for(; i < in.length() && in.charAt(i) == '['; i++);
-		return i;
+		return i - start;
 	}
 	
-	private static String readClass(String in) {
+	private static int readClass(String in, int start) {
 		// read all the characters in the buffer until we hit a ';'
 		// include the parameters too
-		StringBuilder buf = new StringBuilder();
 		int depth = 0;
-		for (int i=0; i<in.length(); i++) {
+		for (int i=start; i<in.length(); i++) {
 			char c = in.charAt(i);
-			buf.append(c);
-			
 			if (c == '<') {
 				depth++;
 			} else if (c == '>') {
 				depth--;
 			} else if (depth == 0 && c == ';') {
-				return buf.toString();
+				return i + 1;
 			}
 		}
-		return null;
+		return -1;
 	}
 }
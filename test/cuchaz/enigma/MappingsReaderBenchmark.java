@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.MappingsText.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+// reads a mappings file over and over, and reports how many lines per second MappingsReader gets through
+// usage: MappingsReaderBenchmark [<mappings file>]
+// without a file, it makes up mappings that look like real ones
+public class MappingsReaderBenchmark {
+	
+	private static final int NumWarmupRuns = 5;
+	private static final int NumRuns = 20;
+	
+	public static void main(String[] args)
+	throws Exception {
+		
+		String text;
+		if (args.length > 0) {
+			text = new String(Files.readAllBytes(new File(args[0]).toPath()), StandardCharsets.UTF_8);
+		} else {
+			text = makeMappings(5000);
+		}
+		int numLines = text.split("\n").length;
+		System.out.println(String.format(Locale.ROOT, "%d lines, %d chars", numLines, text.length()));
+		
+		for (int i=0; i<NumWarmupRuns; i++) {
+			read(text);
+		}
+		
+		long bestNanos = Long.MAX_VALUE;
+		long totalNanos = 0;
+		for (int i=0; i<NumRuns; i++) {
+			long startTime = System.nanoTime();
+			read(text);
+			long nanos = System.nanoTime() - startTime;
+			bestNanos = Math.min(bestNanos, nanos);
+			totalNanos += nanos;
+		}
+		System.out.println(String.format(Locale.ROOT, "best: %.1f ms, %.0f lines/s", bestNanos/1e6, numLines*1e9/bestNanos));
+		System.out.println(String.format(Locale.ROOT, "mean: %.1f ms, %.0f lines/s", totalNanos/1e6/NumRuns, numLines*1e9*NumRuns/totalNanos));
+	}
+	
+	private static String makeMappings(int numClasses) {
+		StringBuilder buf = new StringBuilder();
+		for (int c=0; c<numClasses; c++) {
+			String obfName = "none/" + getObfName(c);
+			buf.append("CLASS ").append(obfName).append(" com/example/pkg").append(c % 20).append("/Class").append(c).append("\n");
+			for (int f=0; f<8; f++) {
+				buf.append("\tFIELD ").append(getObfName(f)).append(" m_field").append(f).append(" ");
+				buf.append(f % 2 == 0 ? "I" : "L" + obfName + ";").append("\n");
+			}
+			for (int m=0; m<10; m++) {
+				String signature = String.format("(IL%s;Ljava/lang/String;[J)L%s;", obfName, obfName);
+				if (m % 3 == 0) {
+					// unnamed methods still show up when they have named arguments
+					buf.append("\tMETHOD ").append(getObfName(m)).append(" ").append(signature).append("\n");
+				} else {
+					buf.append("\tMETHOD ").append(getObfName(m)).append(" method").append(m).append(" ").append(signature).append("\n");
+				}
+				for (int a=1; a<=3; a++) {
+					buf.append("\t\tARG ").append(a).append(" arg").append(a).append("\n");
+				}
+			}
+			if (c % 10 == 0) {
+				buf.append("\tCLASS ").append(obfName).append("$a Inner # a comment\n");
+				buf.append("\t\tFIELD a m_inner I\n");
+			}
+		}
+		return buf.toString();
+	}
+	
+	private static String getObfName(int i) {
+		StringBuilder buf = new StringBuilder();
+		do {
+			buf.append((char)('a' + i % 26));
+			i /= 26;
+		} while (i > 0);
+		return buf.toString();
+	}
+}
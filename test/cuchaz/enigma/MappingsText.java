@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import cuchaz.enigma.mapping.MappingParseException;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.MappingsWriter;
+
+public class MappingsText {
+	
+	public static Mappings read(String text)
+	throws IOException, MappingParseException {
+		return new MappingsReader().read(new StringReader(text));
+	}
+	
+	public static String toText(Mappings mappings)
+	throws IOException {
+		return toText(mappings, 1);
+	}
+	
+	public static String toText(Mappings mappings, int numThreads)
+	throws IOException {
+		StringWriter out = new StringWriter();
+		new MappingsWriter().write(out, mappings, numThreads);
+		return out.toString();
+	}
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.MappingsText.*;
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.mapping.BinaryMappings;
+import cuchaz.enigma.mapping.BinaryMappingsWriter;
+import cuchaz.enigma.mapping.ClassMapping;
+import cuchaz.enigma.mapping.Entry;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.Signature;
+import cuchaz.enigma.mapping.TranslationDirection;
+import cuchaz.enigma.mapping.Translator;
+
+public class TestBinaryMappings {
+	
+	private static final String Text =
+		"CLASS none/a com/example/Foo\n" +
+		"\tCLASS none/a$b Inner\n" +
+		"\t\tFIELD a m_outer Lnone/a;\n" +
+		"\tFIELD a m_bar I\n" +
+		"\tMETHOD a getBar ()I\n" +
+		"\tMETHOD b (ILnone/a;)V\n" +
+		"\t\tARG 1 count\n" +
+		"\t\tARG 2 foo\n" +
+		"CLASS none/b com/example/B\n" +
+		"CLASS none/c\n" +
+		"\tMETHOD a hello (Lnone/b;)Lnone/c;\n";
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	@Test
+	public void roundTrip()
+	throws Exception {
+		assertThat(toText(toBinary(read(Text))), is(toText(read(Text))));
+		
+		Mappings mappings;
+		try (InputStream in = TestBinaryMappings.class.getResourceAsStream("/cuchaz/enigma/resources/translation.mappings")) {
+			mappings = new MappingsReader().read(new InputStreamReader(in));
+		}
+		assertThat(toText(toBinary(mappings)), is(toText(mappings)));
+	}
+	
+	@Test
+	public void noClasses()
+	throws Exception {
+		BinaryMappings mappings = toBinary(new Mappings());
+		assertThat(mappings.getClassByObf("none/a"), is(nullValue()));
+		assertThat(mappings.classes(), is(empty()));
+	}
+	
+	@Test
+	public void loadsClassesLazily()
+	throws Exception {
+		BinaryMappings mappings = toBinary(read(Text));
+		assertThat(mappings.getNumUnloadedClasses(), is(3));
+		
+		ClassMapping classMapping = mappings.getClassByObf("none/a");
+		assertThat(classMapping.getDeobfName(), is("com/example/Foo"));
+		assertThat(classMapping.getInnerClassByObfSimple("b").getDeobfName(), is("Inner"));
+		assertThat(classMapping.getMethodByObf("b", new Signature("(ILnone/a;)V")).getDeobfArgumentName(2), is("foo"));
+		assertThat(mappings.getNumUnloadedClasses(), is(2));
+		
+		assertThat(mappings.getClassByObf("none/x"), is(nullValue()));
+		assertThat(mappings.getClassByDeobf("com/example/B").getObfFullName(), is("none/b"));
+		assertThat(mappings.getClassByObf("none/b").getDeobfName(), is("com/example/B"));
+		assertThat(mappings.getNumUnloadedClasses(), is(1));
+		
+		assertThat(mappings.classes().size(), is(3));
+		assertThat(mappings.getNumUnloadedClasses(), is(0));
+	}
+	
+	@Test
+	public void edits()
+	throws Exception {
+		BinaryMappings mappings = toBinary(read(Text));
+		
+		// removed classes shouldn't come back from the file
+		mappings.removeClassMapping(mappings.getClassByObf("none/b"));
+		assertThat(mappings.getClassByObf("none/b"), is(nullValue()));
+		assertThat(mappings.getClassByDeobf("com/example/B"), is(nullValue()));
+		
+		// renamed classes shouldn't be found by their old names
+		mappings.setClassDeobfName(mappings.getClassByObf("none/a"), "com/example/Bar");
+		assertThat(mappings.getClassByDeobf("com/example/Foo"), is(nullValue()));
+		assertThat(mappings.getClassByDeobf("com/example/Bar").getObfFullName(), is("none/a"));
+		
+		// classes that weren't loaded yet are still there
+		mappings.addClassMapping(new ClassMapping("none/d", "com/example/D"));
+		assertThat(mappings.containsDeobfClass("com/example/D"), is(true));
+		assertThat(mappings.classes().size(), is(3));
+		assertThat(mappings.getClassByObf("none/c"), is(not(nullValue())));
+	}
+	
+	@Test
+	public void translate()
+	throws Exception {
+		Deobfuscator deobfuscator = new Deobfuscator(new JarFile("build/test-obf/translation.jar"));
+		try (InputStream in = TestBinaryMappings.class.getResourceAsStream("/cuchaz/enigma/resources/translation.mappings")) {
+			deobfuscator.setMappings(toBinary(new MappingsReader().read(new InputStreamReader(in))));
+		}
+		Translator translator = deobfuscator.getTranslator(TranslationDirection.Deobfuscating);
+		assertThat(translator.translateEntry(newClass("none/a")), is((Entry)newClass("deobf/A_Basic")));
+		assertThat(translator.translateEntry(newField("none/a", "a", "F")), is((Entry)newField("deobf/A_Basic", "f2", "F")));
+		assertThat(translator.translateEntry(newClass("none/g$a$a")), is((Entry)newClass("deobf/G_OuterClass$A_InnerClass$A_InnerInnerClass")));
+	}
+	
+	@Test
+	public void writeJarLoadsOnlyJarClasses()
+	throws Exception {
+		Mappings textMappings;
+		try (InputStream in = TestBinaryMappings.class.getResourceAsStream("/cuchaz/enigma/resources/translation.mappings")) {
+			textMappings = new MappingsReader().read(new InputStreamReader(in));
+		}
+		textMappings.addClassMapping(new ClassMapping("none/zz", "deobf/NotInTheJar"));
+		BinaryMappings mappings = toBinary(textMappings);
+		
+		Deobfuscator deobfuscator = new Deobfuscator(new JarFile("build/test-obf/translation.jar"));
+		deobfuscator.setMappings(mappings);
+		deobfuscator.writeJar(m_tempFolder.newFile(), null);
+		assertThat(mappings.getNumUnloadedClasses(), is(greaterThan(0)));
+		
+		// the obfuscating translator still finds classes by either name
+		Translator translator = deobfuscator.getTranslator(TranslationDirection.Obfuscating);
+		assertThat(translator.translateEntry(newClass("deobf/A_Basic")), is((Entry)newClass("none/a")));
+		assertThat(translator.translateEntry(newClass("none/h")), is((Entry)newClass("none/h")));
+		assertThat(translator.translateEntry(newClass("deobf/G_OuterClass$A_InnerClass")), is((Entry)newClass("none/g$a")));
+	}
+	
+	private BinaryMappings toBinary(Mappings mappings)
+	throws Exception {
+		File file = m_tempFolder.newFile();
+		new BinaryMappingsWriter().write(file, mappings);
+		assertThat(BinaryMappings.isBinary(file), is(true));
+		return new BinaryMappings(file);
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.util.List;
+
+import javassist.CtClass;
+
+import org.junit.Test;
+
+import cuchaz.enigma.analysis.ClassSource;
+import cuchaz.enigma.analysis.JarClassSource;
+import cuchaz.enigma.bytecode.BoundedClassPool;
+
+public class TestBoundedClassPool {
+	
+	@Test
+	public void evictOldClasses()
+	throws Exception {
+		ClassSource source = new JarClassSource(new File("build/test-obf/innerClasses.jar"));
+		List<String> classNames = source.getClassNames();
+		BoundedClassPool pool = new BoundedClassPool(2);
+		for (String className : classNames) {
+			pool.makeClass(source.getClassBytes(className));
+		}
+		assertThat(pool.getNumCachedClasses(), is(2));
+		
+		// the newest classes are still there
+		String lastClassName = classNames.get(classNames.size() - 1).replace('/', '.');
+		assertThat(pool.getOrNull(lastClassName), is(not(nullValue())));
+		assertThat(pool.getOrNull(classNames.get(0).replace('/', '.')), is(nullValue()));
+	}
+	
+	@Test
+	public void renameOverWrittenClass()
+	throws Exception {
+		ClassSource source = new JarClassSource(new File("build/test-obf/innerClasses.jar"));
+		BoundedClassPool pool = new BoundedClassPool(16);
+		CtClass a = pool.makeClass(source.getClassBytes("a"));
+		a.setName("none.a");
+		a.toBytecode();
+		
+		// the first class was written out already, so it shouldn't stop another one from taking its name
+		CtClass b = pool.makeClass(source.getClassBytes("a"));
+		b.setName("none.a");
+		assertThat(pool.get("none.a"), is(sameInstance(b)));
+	}
+	
+	@Test
+	public void reload()
+	throws Exception {
+		ClassSource source = new JarClassSource(new File("build/test-obf/innerClasses.jar"));
+		BoundedClassPool pool = new BoundedClassPool(16);
+		CtClass c = pool.makeClass(source.getClassBytes("a"));
+		c.setName("none.a");
+		
+		CtClass reloaded = BoundedClassPool.reload(c);
+		assertThat(reloaded, is(not(sameInstance(c))));
+		assertThat(reloaded.getName(), is("none.a"));
+		assertThat(reloaded.getClassFile(), is(sameInstance(c.getClassFile())));
+		assertThat(pool.get("none.a"), is(sameInstance(reloaded)));
+	}
+}
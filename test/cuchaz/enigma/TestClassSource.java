@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import cuchaz.enigma.analysis.ClassSource;
+import cuchaz.enigma.analysis.DirectoryClassSource;
+import cuchaz.enigma.analysis.JarClassIterator;
+import cuchaz.enigma.analysis.JarClassSource;
+import cuchaz.enigma.analysis.JarIndex;
+
+public class TestClassSource {
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	@Test
+	public void deflatedJar()
+	throws Exception {
+		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
+		checkSameAsJar(new JarClassSource(new File(jar.getName())), jar);
+	}
+	
+	@Test
+	public void storedJar()
+	throws Exception {
+		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
+		File file = m_tempFolder.newFile();
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+			for (JarEntry entry : getClassEntries(jar)) {
+				byte[] bytes = read(jar, entry);
+				CRC32 crc = new CRC32();
+				crc.update(bytes);
+				JarEntry storedEntry = new JarEntry(entry.getName());
+				storedEntry.setMethod(ZipEntry.STORED);
+				storedEntry.setSize(bytes.length);
+				storedEntry.setCrc(crc.getValue());
+				out.putNextEntry(storedEntry);
+				out.write(bytes);
+				out.closeEntry();
+			}
+		}
+		checkSameAsJar(new JarClassSource(file), jar);
+	}
+	
+	@Test
+	public void classBiggerThanJar()
+	throws Exception {
+		// classes compress well, so a class can be bigger than the jar it's in
+		ClassPool pool = new ClassPool(true);
+		CtClass c = pool.makeClass("none.a");
+		c.getClassFile().getConstPool().addUtf8Info(Strings.repeat("compress me ", 2000));
+		byte[] bytes = c.toBytecode();
+		File file = m_tempFolder.newFile();
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+			out.putNextEntry(new JarEntry("none/a.class"));
+			out.write(bytes);
+			out.closeEntry();
+		}
+		assertThat(file.length(), is(lessThan((long)bytes.length)));
+		checkSameAsJar(new JarClassSource(file), new JarFile(file));
+	}
+	
+	@Test
+	public void directory()
+	throws Exception {
+		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
+		File dir = m_tempFolder.newFolder();
+		for (JarEntry entry : getClassEntries(jar)) {
+			File file = new File(dir, entry.getName());
+			file.getParentFile().mkdirs();
+			Files.write(read(jar, entry), file);
+		}
+		DirectoryClassSource source = new DirectoryClassSource(dir, 4);
+		checkSameAsJar(source, jar);
+		
+		JarIndex jarIndex = new JarIndex();
+		jarIndex.indexJar(jar, true);
+		JarIndex dirIndex = new JarIndex();
+		dirIndex.indexJar(source, true, 1);
+		JarIndexChecker.assertSameIndex(jarIndex, dirIndex);
+	}
+	
+	@Test
+	public void missingClass()
+	throws Exception {
+		ClassSource source = new JarClassSource(new File("build/test-obf/innerClasses.jar"));
+		assertThat(source.containsClass("none/nope"), is(false));
+		assertThat(source.getClassSize("none/nope"), is(-1));
+	}
+	
+	@Test
+	public void closedJar()
+	throws Exception {
+		ClassSource source = new JarClassSource(new File("build/test-obf/innerClasses.jar"));
+		String className = source.getClassNames().get(0);
+		source.close();
+		source.close();
+		assertThat(source.containsClass(className), is(true));
+		try {
+			source.getClassBytes(className);
+			throw new AssertionError("Expected an IOException");
+		} catch (IOException ex) {
+			assertThat(ex.getMessage(), startsWith("Jar file is closed: "));
+		}
+	}
+	
+	@Test
+	public void ownedSources()
+	throws Exception {
+		// every caller gets its own source, so closing one doesn't pull the jar out from under anyone else
+		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
+		ClassSource source = JarClassIterator.openSource(jar);
+		ClassSource otherSource = JarClassIterator.openSource(jar);
+		assertThat(otherSource, is(not(sameInstance(source))));
+		source.close();
+		checkSameAsJar(otherSource, jar);
+		otherSource.close();
+		
+		// and the deobfuscator lets go of its jar when it's closed
+		Deobfuscator deobfuscator = new Deobfuscator(jar);
+		ClassSource deobfuscatorSource = deobfuscator.getClassSource();
+		String className = deobfuscatorSource.getClassNames().get(0);
+		deobfuscator.close();
+		try {
+			deobfuscatorSource.getClassBytes(className);
+			throw new AssertionError("Expected an IOException");
+		} catch (IOException ex) {
+			assertThat(ex.getMessage(), startsWith("Jar file is closed: "));
+		}
+	}
+	
+	private void checkSameAsJar(ClassSource source, JarFile jar)
+	throws Exception {
+		List<String> classNames = Lists.newArrayList();
+		for (JarEntry entry : getClassEntries(jar)) {
+			String className = entry.getName().substring(0, entry.getName().length() - ".class".length());
+			classNames.add(className);
+			byte[] bytes = read(jar, entry);
+			assertThat(source.containsClass(className), is(true));
+			assertThat(source.getClassSize(className), is(bytes.length));
+			assertThat(source.getClassBytes(className), is(bytes));
+			
+			// and into the middle of a bigger buffer
+			byte[] buf = new byte[bytes.length + 10];
+			source.readClassBytes(className, buf, 5);
+			assertThat(Arrays.copyOfRange(buf, 5, 5 + bytes.length), is(bytes));
+		}
+		assertThat(source.getClassNames(), containsInAnyOrder(classNames.toArray()));
+	}
+	
+	private List<JarEntry> getClassEntries(JarFile jar) {
+		List<JarEntry> entries = Lists.newArrayList();
+		Enumeration<JarEntry> iter = jar.entries();
+		while (iter.hasMoreElements()) {
+			JarEntry entry = iter.nextElement();
+			if (entry.getName().endsWith(".class")) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+	
+	private byte[] read(JarFile jar, JarEntry entry)
+	throws Exception {
+		try (InputStream in = jar.getInputStream(entry)) {
+			return ByteStreams.toByteArray(in);
+		}
+	}
+}
@@ -21,6 +21,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.mapping.MethodEntry;
 
 
 public class TestDeobfed {
@@ -65,6 +66,13 @@ public class TestDeobfed {
 		));
 	}
 	
+	@Test
+	public void bridges() {
+		MethodEntry bridgeEntry = newMethod("none/e", "next", "()Ljava/lang/Object;");
+		assertThat(m_index.isBridge(bridgeEntry), is(true));
+		assertThat(m_index.getBridgedMethod(bridgeEntry), is(newMethod("none/e", "a", "()Ljava/lang/String;")));
+	}
+	
 	@Test
 	public void decompile()
 	throws Exception {
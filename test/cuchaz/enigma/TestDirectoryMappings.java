@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.MappingsText.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.mapping.ClassMapping;
+import cuchaz.enigma.mapping.DirectoryMappingsReader;
+import cuchaz.enigma.mapping.DirectoryMappingsWriter;
+import cuchaz.enigma.mapping.FieldMapping;
+import cuchaz.enigma.mapping.MappingParseException;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.Signature;
+import cuchaz.enigma.mapping.Type;
+
+public class TestDirectoryMappings {
+	
+	private static final String Text =
+		"CLASS none/a com/example/Foo\n" +
+		"\tCLASS none/a$b Inner\n" +
+		"\t\tFIELD a m_outer Lnone/a;\n" +
+		"\tFIELD a m_bar I\n" +
+		"\tMETHOD a getBar ()I\n" +
+		"\tMETHOD b (ILnone/a;)V\n" +
+		"\t\tARG 1 count\n" +
+		"\t\tARG 2 foo\n" +
+		"CLASS none/b com/example/B\n" +
+		"CLASS none/c\n" +
+		"\tMETHOD a hello (Lnone/b;)Lnone/c;\n" +
+		"CLASS pkg/d\n" +
+		"\tFIELD a m_d I\n";
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	@Test
+	public void roundTrip()
+	throws Exception {
+		File dir = m_tempFolder.newFolder();
+		new DirectoryMappingsWriter().write(dir, read(Text));
+		assertThat(new File(dir, "none/a.mapping").isFile(), is(true));
+		assertThat(new File(dir, "pkg/d.mapping").isFile(), is(true));
+		
+		Mappings mappings = new DirectoryMappingsReader().read(dir);
+		assertThat(toText(mappings), is(toText(read(Text))));
+		assertThat(mappings.isDirty(), is(false));
+		
+		// more threads shouldn't change anything
+		assertThat(toText(new DirectoryMappingsReader().read(dir, 4)), is(toText(mappings)));
+	}
+	
+	@Test
+	public void dirtyTracking()
+	throws Exception {
+		Mappings mappings = read(Text);
+		assertThat(mappings.isDirty(), is(true));
+		mappings.markClean();
+		assertThat(mappings.isDirty(), is(false));
+		
+		// edits to inner classes make the outer class dirty
+		ClassMapping classMapping = mappings.getClassByObf("none/a");
+		classMapping.getInnerClassByObfSimple("b").setFieldName("a", new Type("Lnone/a;"), "m_foo");
+		assertThat(classMapping.isDirty(), is(true));
+		assertThat(mappings.getClassByObf("none/b").isDirty(), is(false));
+		mappings.markClean();
+		
+		classMapping.setArgumentName("b", new Signature("(ILnone/a;)V"), 1, "num");
+		assertThat(classMapping.isDirty(), is(true));
+		mappings.markClean();
+		
+		mappings.setClassDeobfName(mappings.getClassByObf("none/b"), "com/example/Bee");
+		assertThat(mappings.getClassByObf("none/b").isDirty(), is(true));
+		mappings.markClean();
+		
+		mappings.removeClassMapping(mappings.getClassByObf("none/c"));
+		assertThat(mappings.isDirty(), is(true));
+		assertThat(mappings.getRemovedClassNames(), contains("none/c"));
+	}
+	
+	@Test
+	public void writeOnlyChanges()
+	throws Exception {
+		File dir = m_tempFolder.newFolder();
+		new DirectoryMappingsWriter().write(dir, read(Text));
+		Mappings mappings = new DirectoryMappingsReader().read(dir);
+		assertThat(new DirectoryMappingsWriter().writeChanges(dir, mappings), is(0));
+		
+		// files for classes that didn't change shouldn't get touched
+		File fileA = new File(dir, "none/a.mapping");
+		File fileB = new File(dir, "none/b.mapping");
+		File fileD = new File(dir, "pkg/d.mapping");
+		fileA.setLastModified(0);
+		fileB.setLastModified(0);
+		
+		mappings.getClassByObf("none/c").setMethodName("a", new Signature("(Lnone/b;)Lnone/c;"), "goodbye");
+		mappings.getClassByObf("pkg/d").addFieldMapping(new FieldMapping("b", new Type("J"), "m_e"));
+		assertThat(new DirectoryMappingsWriter().writeChanges(dir, mappings), is(2));
+		assertThat(fileA.lastModified(), is(0L));
+		assertThat(fileB.lastModified(), is(0L));
+		assertThat(fileD.lastModified(), is(not(0L)));
+		assertThat(mappings.isDirty(), is(false));
+		
+		assertThat(toText(new DirectoryMappingsReader().read(dir)), is(toText(mappings)));
+	}
+	
+	@Test
+	public void removeAndRenameClasses()
+	throws Exception {
+		File dir = m_tempFolder.newFolder();
+		new DirectoryMappingsWriter().write(dir, read(Text));
+		Mappings mappings = new DirectoryMappingsReader().read(dir);
+		
+		mappings.removeClassMapping(mappings.getClassByObf("pkg/d"));
+		mappings.renameObfClass("none/c", "none/e");
+		assertThat(new DirectoryMappingsWriter().writeChanges(dir, mappings), is(1));
+		assertThat(new File(dir, "none/c.mapping").exists(), is(false));
+		assertThat(new File(dir, "none/e.mapping").isFile(), is(true));
+		assertThat(new File(dir, "pkg").exists(), is(false));
+		
+		assertThat(toText(new DirectoryMappingsReader().read(dir)), is(toText(mappings)));
+		
+		// full writes clean up files for classes that went away too
+		Mappings otherMappings = read(Text);
+		otherMappings.removeClassMapping(otherMappings.getClassByObf("none/a"));
+		new DirectoryMappingsWriter().write(dir, otherMappings);
+		assertThat(new File(dir, "none/a.mapping").exists(), is(false));
+		assertThat(toText(new DirectoryMappingsReader().read(dir)), is(toText(otherMappings)));
+	}
+	
+	@Test
+	public void badFile()
+	throws Exception {
+		File dir = m_tempFolder.newFolder();
+		new File(dir, "none").mkdir();
+		try (FileWriter out = new FileWriter(new File(dir, "none/a.mapping"))) {
+			out.write("CLASS none/a\n\tARG 1 foo\n");
+		}
+		assertThat(getParseError(dir), is("none/a.mapping, line 2: Unexpected ARG entry here!"));
+		
+		// classes have to be in the file with their name
+		try (FileWriter out = new FileWriter(new File(dir, "none/a.mapping"))) {
+			out.write("CLASS none/b\n");
+		}
+		assertThat(getParseError(dir), startsWith("none/a.mapping, line 1: "));
+	}
+	
+	private String getParseError(File dir)
+	throws Exception {
+		try {
+			new DirectoryMappingsReader().read(dir);
+		} catch (MappingParseException ex) {
+			return ex.getMessage();
+		}
+		throw new AssertionError("Expected a parse error");
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import cuchaz.enigma.Deobfuscator.ProgressListener;
+import cuchaz.enigma.analysis.IndexStats;
+import cuchaz.enigma.analysis.JarIndex;
+
+public class TestIndexStats {
+	
+	private static class RecordingProgressListener implements ProgressListener {
+		
+		public int totalWork = -1;
+		public List<Integer> numDone = Lists.newArrayList();
+		public List<String> messages = Lists.newArrayList();
+		
+		@Override
+		public void init(int totalWork, String title) {
+			this.totalWork = totalWork;
+		}
+		
+		@Override
+		public void onProgress(int numDone, String message) {
+			this.numDone.add(numDone);
+			this.messages.add(message);
+		}
+	}
+	
+	@Test
+	public void phases()
+	throws Exception {
+		JarIndex index = new JarIndex();
+		RecordingProgressListener progress = new RecordingProgressListener();
+		index.indexJar(new JarFile("build/test-obf/innerClasses.jar"), true, 1, progress);
+		
+		IndexStats stats = index.getStats();
+		List<String> names = Lists.newArrayList();
+		for (IndexStats.Phase phase : stats.getPhases()) {
+			names.add(phase.getName());
+			assertThat(phase.getNanos(), greaterThanOrEqualTo(0L));
+			
+			// the peak is over the whole run, not just the end of each phase
+			assertThat(stats.getPeakHeapBytes(), greaterThanOrEqualTo(phase.getHeapBytes()));
+		}
+		assertThat(names, contains(
+			"Read class names",
+			"Read classes",
+			"Index members",
+			"Index references",
+			"Freeze references",
+			"Find outer classes",
+			"Rename inner classes",
+			"Group method families"
+		));
+		
+		// the listener hears about every phase, then about being done
+		assertThat(progress.totalWork, is(names.size()));
+		assertThat(progress.messages.subList(0, names.size()), is(names));
+		assertThat(progress.numDone.get(progress.numDone.size() - 1), is(progress.totalWork));
+	}
+	
+	@Test
+	public void counts()
+	throws Exception {
+		JarIndex index = new JarIndex();
+		index.indexJar(new JarFile("build/test-obf/loneClass.jar"), false);
+		
+		IndexStats stats = index.getStats();
+		assertThat(stats.getNumClasses(), is(2));
+		assertThat(stats.getNumSymbols(), is(index.getNumSymbols()));
+		assertThat(stats.getNumMemberEdges(), is(index.getNumMemberEdges()));
+		assertThat(stats.getNumBehaviorReferences(), is(greaterThan(0)));
+		assertThat(stats.getNumThreads(), is(1));
+		assertThat(stats.getNumBatches(), is(1));
+		assertThat(stats.getTotalNanos(), greaterThan(0L));
+		assertThat(stats.getPeakHeapBytes(), greaterThan(0L));
+	}
+	
+	@Test
+	public void json()
+	throws Exception {
+		JarIndex index = new JarIndex();
+		index.indexJar(new JarFile("build/test-obf/loneClass.jar"), false);
+		
+		String json = index.getStats().toJson();
+		assertThat(json, startsWith("{"));
+		assertThat(json, containsString("\"classes\": 2,"));
+		assertThat(json, containsString("{ \"name\": \"Read class names\", \"seconds\": "));
+		assertThat(json.trim(), endsWith("}"));
+	}
+	
+	@Test
+	public void cachedIndex()
+	throws Exception {
+		JarIndex index = new JarIndex();
+		index.indexJar(new JarFile("build/test-obf/loneClass.jar"), false);
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		index.write(buf);
+		
+		JarIndex readIndex = new JarIndex();
+		readIndex.read(new ByteArrayInputStream(buf.toByteArray()));
+		IndexStats stats = readIndex.getStats();
+		assertThat(stats.getPhases().size(), is(1));
+		assertThat(stats.getPhases().get(0).getName(), is("Read cached index"));
+		assertThat(stats.getNumClasses(), is(2));
+		assertThat(stats.getNumBehaviorReferences(), is(index.getStats().getNumBehaviorReferences()));
+	}
+}
@@ -21,6 +21,8 @@ import static cuchaz.enigma.TestEntryFactory.*;
 
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.MethodEntry;
 
 public class TestInnerClasses {
 	
@@ -50,6 +52,23 @@ public class TestInnerClasses {
 		m_deobfuscator = new Deobfuscator(jar);
 	}
 	
+	@Test
+	public void memberFlags() {
+		
+		// the synthetic field that points to the outer instance
+		FieldEntry outerField = newField(SimpleInner, "a", "Lnone/d;");
+		assertThat(m_index.isSynthetic(outerField), is(true));
+		assertThat(m_index.isStatic(outerField), is(false));
+		
+		// the synthetic accessor for the anonymous class
+		MethodEntry accessor = newMethod(AnonymousWithOuterAccessOuter, "a", "(Lnone/e;)Ljava/lang/String;");
+		assertThat(m_index.isSynthetic(accessor), is(true));
+		assertThat(m_index.isStatic(accessor), is(true));
+		
+		// not in the jar at all
+		assertThat(m_index.isSynthetic(newField(SimpleInner, "b", "Lnone/d;")), is(false));
+	}
+	
 	@Test
 	public void simple() {
 		assertThat(m_index.getOuterClass(SimpleInner), is(SimpleOuter));
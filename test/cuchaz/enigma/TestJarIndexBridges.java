@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.Opcode;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.mapping.MethodEntry;
+
+public class TestJarIndexBridges {
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	@Test
+	public void accessors()
+	throws Exception {
+		
+		// none/b extends none/a, and none/c has nothing to do with either
+		ClassPool pool = new ClassPool(true);
+		CtClass a = pool.makeClass("none.a");
+		a.addMethod(CtNewMethod.make("public void a() {}", a));
+		CtClass b = pool.makeClass("none.b", a);
+		CtClass c = pool.makeClass("none.c");
+		
+		// synthetic methods that just make one call look like bridges, but only calls to methods we can find count
+		addAccessor(c, "b", "none.a", "none.a", "a", "()V");
+		addAccessor(b, "b", "none.b", "none.b", "a", "()V");
+		addAccessor(c, "c", "none.c", "none.c", "hashCode", "()I");
+		addAccessor(a, "b", "none.a", "none.a", "a", "()V");
+		
+		JarIndex index = new JarIndex();
+		index.indexJar(writeJar(a, b, c), false);
+		
+		// calls into other jar classes, or to methods inherited from them, aren't bridges
+		assertThat(index.isBridge(newMethod("none/c", "b", "(Lnone/a;)V")), is(false));
+		assertThat(index.getBridgedMethod(newMethod("none/c", "b", "(Lnone/a;)V")), is(nullValue()));
+		assertThat(index.isBridge(newMethod("none/b", "b", "(Lnone/b;)V")), is(false));
+		assertThat(index.getBridgedMethod(newMethod("none/b", "b", "(Lnone/b;)V")), is(nullValue()));
+		
+		// but calls to library methods and methods in the same class still are
+		MethodEntry bridgeEntry = newMethod("none/a", "b", "(Lnone/a;)V");
+		assertThat(index.isBridge(bridgeEntry), is(true));
+		assertThat(index.getBridgedMethod(bridgeEntry), is(newMethod("none/a", "a", "()V")));
+		assertThat(index.getBridgedMethod(newMethod("none/c", "c", "(Lnone/c;)I")), is(newMethod("java/lang/Object", "hashCode", "()I")));
+	}
+	
+	private void addAccessor(CtClass c, String name, String argClassName, String calledClassName, String calledName, String calledSignature)
+	throws Exception {
+		// eg. static synthetic int access$000(Foo foo) { return foo.bar(); }
+		CtClass argClass = c.getClassPool().get(argClassName);
+		CtClass returnType = calledSignature.endsWith("V") ? CtClass.voidType : CtClass.intType;
+		CtMethod method = new CtMethod(returnType, name, new CtClass[] { argClass }, c);
+		Bytecode code = new Bytecode(c.getClassFile().getConstPool(), 1, 1);
+		code.addAload(0);
+		code.addInvokevirtual(calledClassName, calledName, calledSignature);
+		code.addOpcode(returnType == CtClass.voidType ? Opcode.RETURN : Opcode.IRETURN);
+		method.getMethodInfo().setCodeAttribute(code.toCodeAttribute());
+		method.getMethodInfo().setAccessFlags(AccessFlag.STATIC | AccessFlag.SYNTHETIC);
+		c.addMethod(method);
+	}
+	
+	private JarFile writeJar(CtClass ... classes)
+	throws Exception {
+		File file = m_tempFolder.newFile();
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+			for (CtClass c : classes) {
+				out.putNextEntry(new JarEntry(Descriptor.toJvmName(c.getName()) + ".class"));
+				out.write(c.toBytecode());
+				out.closeEntry();
+			}
+		}
+		return new JarFile(file);
+	}
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.JarIndexCache;
+
+public class TestJarIndexCache {
+	
+	private static class Gone implements Serializable {
+		private static final long serialVersionUID = 2541962128398441522L;
+	}
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	private JarFile m_jar;
+	private JarIndex m_index;
+	
+	public TestJarIndexCache()
+	throws Exception {
+		m_jar = new JarFile("build/test-obf/innerClasses.jar");
+		m_index = new JarIndex();
+		m_index.indexJar(m_jar, true);
+	}
+	
+	@Test
+	public void roundTrip()
+	throws Exception {
+		JarIndexCache cache = new JarIndexCache(m_tempFolder.newFolder());
+		File file = new File(cache.getDir(), JarIndexCache.getKey(m_jar, true) + ".index");
+		
+		// first time builds the cache
+		JarIndexChecker.assertSameIndex(m_index, cache.getIndex(m_jar, true, 1));
+		assertThat(file.exists(), is(true));
+		
+		// second time reads it back
+		long lastModified = file.lastModified();
+		JarIndexChecker.assertSameIndex(m_index, cache.getIndex(m_jar, true, 1));
+		assertThat(file.lastModified(), is(lastModified));
+	}
+	
+	@Test
+	public void brokenCacheIsRebuilt()
+	throws Exception {
+		JarIndexCache cache = new JarIndexCache(m_tempFolder.newFolder());
+		File file = new File(cache.getDir(), JarIndexCache.getKey(m_jar, true) + ".index");
+		try (FileWriter out = new FileWriter(file)) {
+			out.write("this is not a jar index");
+		}
+		
+		JarIndexChecker.assertSameIndex(m_index, cache.getIndex(m_jar, true, 1));
+		JarIndexChecker.assertSameIndex(m_index, cache.getIndex(m_jar, true, 1));
+	}
+	
+	@Test
+	public void unknownClassesAreRebuilt()
+	throws Exception {
+		JarIndexCache cache = new JarIndexCache(m_tempFolder.newFolder());
+		String key = JarIndexCache.getKey(m_jar, true);
+		File file = new File(cache.getDir(), key + ".index");
+		
+		// pretend the cache was written by a build of enigma that had a class this one doesn't
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+			out.writeObject(new Gone());
+		}
+		byte[] objectBytes = new String(buf.toByteArray(), StandardCharsets.ISO_8859_1)
+			.replace("$Gone", "$Gonx")
+			.getBytes(StandardCharsets.ISO_8859_1);
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			out.writeInt(0x454e4958);
+			out.writeInt(10);
+			out.writeUTF(key);
+			GZIPOutputStream gzipout = new GZIPOutputStream(out);
+			gzipout.write(objectBytes);
+			gzipout.finish();
+		}
+		
+		JarIndexChecker.assertSameIndex(m_index, cache.getIndex(m_jar, true, 1));
+	}
+	
+	@Test
+	public void trim()
+	throws Exception {
+		File dir = m_tempFolder.newFolder();
+		JarIndexCache cache = new JarIndexCache(dir);
+		long now = System.currentTimeMillis();
+		File oldFile = makeFile(dir, "old.index", 10, now - TimeUnit.DAYS.toMillis(40));
+		File bigFile = makeFile(dir, "big.index", 100, now - TimeUnit.DAYS.toMillis(2));
+		File newFile = makeFile(dir, "new.index", 100, now - TimeUnit.DAYS.toMillis(1));
+		File tempFile = makeFile(dir, "crashed.tmp", 10, now - TimeUnit.DAYS.toMillis(2));
+		File otherFile = makeFile(dir, "other.txt", 10, now - TimeUnit.DAYS.toMillis(40));
+		
+		// old files go, and then the oldest files until everything fits
+		cache.setMaxBytes(150);
+		cache.trim();
+		assertThat(oldFile.exists(), is(false));
+		assertThat(bigFile.exists(), is(false));
+		assertThat(newFile.exists(), is(true));
+		assertThat(tempFile.exists(), is(false));
+		assertThat(otherFile.exists(), is(true));
+	}
+	
+	@Test
+	public void disabled()
+	throws Exception {
+		String oldPath = System.getProperty("enigma.cache.dir");
+		try {
+			System.setProperty("enigma.cache.dir", "none");
+			assertThat(JarIndexCache.getDefault(), is(nullValue()));
+			System.setProperty("enigma.cache.dir", "");
+			assertThat(JarIndexCache.getDefault(), is(nullValue()));
+			System.setProperty("enigma.cache.dir", "somewhere");
+			assertThat(JarIndexCache.getDefault().getDir(), is(new File("somewhere")));
+		} finally {
+			if (oldPath == null) {
+				System.clearProperty("enigma.cache.dir");
+			} else {
+				System.setProperty("enigma.cache.dir", oldPath);
+			}
+		}
+	}
+	
+	@Test
+	public void innerClassesAreKeyed()
+	throws Exception {
+		assertThat(JarIndexCache.getKey(m_jar, true), is(not(JarIndexCache.getKey(m_jar, false))));
+	}
+	
+	private File makeFile(File dir, String name, int numBytes, long lastModified)
+	throws Exception {
+		File file = new File(dir, name);
+		Files.write(file.toPath(), new byte[numBytes]);
+		file.setLastModified(lastModified);
+		return file;
+	}
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.BitSet;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import cuchaz.enigma.analysis.ConstantIndex;
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.mapping.BehaviorEntry;
+
+public class TestJarIndexConstants {
+	
+	private JarIndex m_index;
+	
+	public TestJarIndexConstants()
+	throws Exception {
+		m_index = new JarIndex();
+		m_index.indexJar(new JarFile("build/test-obf/constants.jar"), false);
+	}
+	
+	@Test
+	public void strings() {
+		assertThat(m_index.getConstantUsers("Hello, constants!"), contains((BehaviorEntry)newMethod("none/a", "a", "()Ljava/lang/String;")));
+		assertThat(m_index.getConstantUsers("Hello again"), contains((BehaviorEntry)newMethod("none/a", "b", "()Ljava/lang/String;")));
+		assertThat(m_index.getConstantUsers("Hello, constants! "), contains((BehaviorEntry)newMethod("none/a", "a", "(I)V")));
+		assertThat(m_index.getConstantUsers("Goodbye"), is(empty()));
+	}
+	
+	@Test
+	public void numbers() {
+		assertThat(m_index.getConstantUsers(0xcafebabe), contains((BehaviorEntry)newMethod("none/a", "a", "()I")));
+		assertThat(m_index.getConstantUsers(1000), contains((BehaviorEntry)newMethod("none/a", "b", "()I")));
+		assertThat(m_index.getConstantUsers(1234567890123L), contains((BehaviorEntry)newMethod("none/a", "a", "()J")));
+		
+		// ints and longs are different constants
+		assertThat(m_index.getConstantUsers(1000L), is(empty()));
+	}
+	
+	@Test
+	public void classes() {
+		assertThat(m_index.getClassConstantUsers(newClass("none/a")), contains((BehaviorEntry)newMethod("none/a", "a", "()Ljava/lang/Class;")));
+		assertThat(m_index.getClassConstantUsers(newClass("java/lang/String")), is(empty()));
+	}
+	
+	@Test
+	public void search() {
+		assertThat(m_index.findStringConstantsWithPrefix("Hello"), contains("Hello again", "Hello, constants!", "Hello, constants! "));
+		assertThat(m_index.findStringConstantsWithPrefix("Hello,"), contains("Hello, constants!", "Hello, constants! "));
+		assertThat(m_index.findStringConstantsWithPrefix("hello"), is(empty()));
+		assertThat(m_index.findStringConstantsContaining("again"), contains("Hello again"));
+		assertThat(m_index.findStringConstantsContaining("constants"), contains("Hello, constants!", "Hello, constants! "));
+		assertThat(m_index.findStringConstantsContaining("nope"), is(empty()));
+	}
+	
+	@Test
+	public void searchAll()
+	throws Exception {
+		Deobfuscator deobfuscator = new Deobfuscator(new JarFile("build/test-obf/constants.jar"));
+		assertThat(deobfuscator.searchConstants("again").keySet(), contains("\"Hello again\""));
+		assertThat(deobfuscator.searchConstants("1000").keySet(), contains("1000 (int)"));
+		assertThat(deobfuscator.searchConstants("none/a").keySet(), contains("none/a.class"));
+		
+		// text that can't be a class name is still fine to search for
+		assertThat(deobfuscator.searchConstants("a$b/c").keySet(), is(empty()));
+	}
+	
+	@Test
+	public void cache()
+	throws Exception {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		m_index.write(buf);
+		JarIndex index = new JarIndex();
+		index.read(new ByteArrayInputStream(buf.toByteArray()));
+		assertThat(index.getConstantUsers("Hello again"), contains((BehaviorEntry)newMethod("none/a", "b", "()Ljava/lang/String;")));
+		assertThat(index.getConstantUsers(1234567890123L), contains((BehaviorEntry)newMethod("none/a", "a", "()J")));
+		assertThat(index.getClassConstantUsers(newClass("none/a")), contains((BehaviorEntry)newMethod("none/a", "a", "()Ljava/lang/Class;")));
+		assertThat(index.findStringConstantsContaining("again"), contains("Hello again"));
+	}
+	
+	@Test
+	public void usesAndRemoves() {
+		ConstantIndex constants = new ConstantIndex();
+		constants.addUse("foo", 5);
+		constants.addUse("foo", 3);
+		constants.addUse("foo", 5);
+		constants.addUse("bar", 3);
+		constants.addUse(42, 7);
+		constants.freeze();
+		assertThat(constants.getUsers("foo"), is(new int[] { 3, 5 }));
+		assertThat(constants.getUsers("bar"), is(new int[] { 3 }));
+		assertThat(constants.getUsers(42), is(new int[] { 7 }));
+		assertThat(constants.getNumUses(), is(4));
+		
+		// new uses join the frozen ones
+		constants.addUse("foo", 1);
+		constants.addUse("baz", 2);
+		BitSet removed = new BitSet();
+		removed.set(3);
+		constants.freeze(removed);
+		assertThat(constants.getUsers("foo"), is(new int[] { 1, 5 }));
+		assertThat(constants.getUsers("baz"), is(new int[] { 2 }));
+		
+		// nobody uses bar anymore
+		assertThat(constants.getUsers("bar"), is(new int[] {}));
+		assertThat(constants.getConstants(), not(hasItem((Object)"bar")));
+		assertThat(constants.findStringsContaining("ba"), contains("baz"));
+	}
+	
+	@Test
+	public void substringsMatchBruteForce() {
+		
+		// lots of repeats and shared parts, to give the suffix sort a workout
+		List<String> strings = Lists.newArrayList(
+			"", "a", "aa", "aaa", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa", "ab", "abab", "ababababababababababab", "ba", "b",
+			"mississippi", "issi", "ssi", "ppi", "com/example/Foo", "com/example/Bar", "com/other/Foo", "Foo", "\0a", "a\0b",
+			"été", "the quick brown fox", "the lazy dog", "quick"
+		);
+		for (int i=0; i<50; i++) {
+			strings.add("prefix" + i + "suffix");
+		}
+		ConstantIndex constants = new ConstantIndex();
+		for (int i=0; i<strings.size(); i++) {
+			constants.addUse(strings.get(i), i);
+		}
+		constants.freeze();
+		
+		List<String> queries = Lists.newArrayList("", "a", "aa", "aaaa", "ab", "ba", "bab", "ssi", "issi", "i", "Foo", "/", "example", "\0", "a\0", "té", "qu", "fix1", "x4", "suffix", "zzz", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+		for (String query : queries) {
+			List<String> expected = Lists.newArrayList();
+			List<String> expectedPrefix = Lists.newArrayList();
+			for (String string : strings) {
+				if (string.contains(query)) {
+					expected.add(string);
+				}
+				if (string.startsWith(query)) {
+					expectedPrefix.add(string);
+				}
+			}
+			assertThat(query, constants.findStringsContaining(query), containsInAnyOrder(expected.toArray()));
+			assertThat(query, constants.findStringsWithPrefix(query), containsInAnyOrder(expectedPrefix.toArray()));
+		}
+	}
+}
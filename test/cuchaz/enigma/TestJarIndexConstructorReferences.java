@@ -121,4 +121,17 @@ public class TestJarIndexConstructorReferences {
 			newBehaviorReferenceByMethod(source, m_callerClass.getName(), "g", "()V")
 		));
 	}
+	
+	@Test
+	public void referencedBehaviors() {
+		assertThat(m_index.getReferencedBehaviors(newMethod(m_callerClass, "a", "()V")), hasItem(
+			(BehaviorEntry)newConstructor(m_baseClass, "()V")
+		));
+		assertThat(m_index.getReferencedBehaviors(newConstructor(m_subClass, "(III)V")), containsInAnyOrder(
+			(BehaviorEntry)newConstructor(m_baseClass, "()V")
+		));
+		assertThat(m_index.getReferencedBehaviors(newConstructor(m_subClass, "(II)V")), containsInAnyOrder(
+			(BehaviorEntry)newConstructor(m_subClass, "(I)V")
+		));
+	}
 }
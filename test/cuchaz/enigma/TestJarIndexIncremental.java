@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.EnclosingMethodAttribute;
+import javassist.bytecode.InnerClassesAttribute;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+
+import cuchaz.enigma.analysis.JarClassIterator;
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.bytecode.ClassRenamer;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.ClassNameReplacer;
+
+public class TestJarIndexIncremental {
+	
+	// hide the inner classes, so the index has to find them on its own
+	private static final Map<String,String> InnerClassRenames = ImmutableMap.of(
+		"d$a", "g",
+		"a$1", "h",
+		"c$a", "i"
+	);
+	
+	private static final ClassEntry SimpleOuter = newClass("none/d");
+	private static final ClassEntry SimpleInner = newClass("none/g");
+	private static final ClassEntry AnonymousOuter = newClass("none/a");
+	private static final ClassEntry AnonymousInner = newClass("none/h");
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	@Test
+	public void unchanged()
+	throws Exception {
+		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
+		JarIndex index = new JarIndex();
+		index.indexJar(jar, true);
+		
+		assertThat(index.updateJar(jar), is(0));
+		checkSameAsNew(index, jar);
+	}
+	
+	@Test
+	public void changedClass()
+	throws Exception {
+		JarIndex index = new JarIndex();
+		index.indexJar(new JarFile("build/test-obf/innerClasses.jar"), true);
+		JarFile jar = writeJar("build/test-obf/innerClasses.jar", Collections.<String,String>emptyMap(), Arrays.<String>asList(), "f$a$a$a");
+		
+		// nothing else can resolve through the changed class, so it's the only one that needs indexing again
+		assertThat(index.updateJar(jar), is(1));
+		checkSameAsNew(index, jar);
+	}
+	
+	@Test
+	public void removedAndAddedClasses()
+	throws Exception {
+		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
+		JarFile smallerJar = writeJar("build/test-obf/innerClasses.jar", Collections.<String,String>emptyMap(), Arrays.asList("b", "b$1", "f$a"), null);
+		JarIndex index = new JarIndex();
+		index.indexJar(jar, true);
+		
+		index.updateJar(smallerJar);
+		checkSameAsNew(index, smallerJar);
+		index.updateJar(jar);
+		checkSameAsNew(index, jar);
+	}
+	
+	@Test
+	public void differentJar()
+	throws Exception {
+		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
+		JarIndex index = new JarIndex();
+		index.indexJar(new JarFile("build/test-obf/inheritanceTree.jar"), true);
+		
+		index.updateJar(jar);
+		checkSameAsNew(index, jar);
+	}
+	
+	@Test
+	public void changedOuterClass()
+	throws Exception {
+		JarIndex index = new JarIndex();
+		index.indexJar(writeJar("build/test-obf/innerClasses.jar", InnerClassRenames, Arrays.<String>asList(), null), true);
+		assertThat(index.getOuterClass(SimpleInner), is(SimpleOuter));
+		assertThat(index.getAnonymousClassCaller(AnonymousInner).getClassEntry(), is(AnonymousOuter));
+		JarFile jar = writeJar("build/test-obf/innerClasses.jar", InnerClassRenames, Arrays.<String>asList(), "d");
+		
+		index.updateJar(jar);
+		checkSameAsNew(index, jar);
+		assertThat(index.getOuterClass(SimpleInner), is(SimpleOuter));
+		assertThat(index.containsObfClass(newClass("none/d$g")), is(true));
+	}
+	
+	@Test
+	public void removedOuterClass()
+	throws Exception {
+		JarFile jar = writeJar("build/test-obf/innerClasses.jar", InnerClassRenames, Arrays.<String>asList(), null);
+		JarFile smallerJar = writeJar("build/test-obf/innerClasses.jar", InnerClassRenames, Arrays.asList("d", "a"), null);
+		JarIndex index = new JarIndex();
+		index.indexJar(jar, true);
+		
+		// without their outer classes, the inner classes get their old names back
+		index.updateJar(smallerJar);
+		checkSameAsNew(index, smallerJar);
+		assertThat(index.getOuterClass(SimpleInner), is(nullValue()));
+		assertThat(index.isAnonymousClass(AnonymousInner), is(false));
+		assertThat(index.containsObfClass(SimpleInner), is(true));
+		assertThat(index.containsObfClass(newClass("none/d$g")), is(false));
+		
+		// and put them back again
+		index.updateJar(jar);
+		checkSameAsNew(index, jar);
+		assertThat(index.getOuterClass(SimpleInner), is(SimpleOuter));
+		assertThat(index.isAnonymousClass(AnonymousInner), is(true));
+		assertThat(index.containsObfClass(newClass("none/d$g")), is(true));
+	}
+	
+	private void checkSameAsNew(JarIndex index, JarFile jar) {
+		JarIndex newIndex = new JarIndex();
+		newIndex.indexJar(jar, true);
+		JarIndexChecker.assertSameIndex(newIndex, index);
+		for (ClassEntry classEntry : Arrays.asList(SimpleInner, AnonymousInner)) {
+			assertThat(index.getOuterClass(classEntry), is(newIndex.getOuterClass(classEntry)));
+			assertThat(index.getAnonymousClassCaller(classEntry), is(newIndex.getAnonymousClassCaller(classEntry)));
+		}
+	}
+	
+	private JarFile writeJar(String path, final Map<String,String> renames, List<String> removedClassNames, String changedClassName)
+	throws Exception {
+		File file = m_tempFolder.newFile();
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+			for (CtClass c : JarClassIterator.classes(new JarFile(path))) {
+				ClassEntry classEntry = new ClassEntry(Descriptor.toJvmName(c.getName()));
+				if (removedClassNames.contains(classEntry.getName())) {
+					continue;
+				}
+				if (classEntry.getName().equals(changedClassName)) {
+					c.addField(new CtField(CtClass.intType, "z", c));
+				}
+				if (!renames.isEmpty()) {
+					Iterator<?> iter = c.getClassFile().getAttributes().iterator();
+					while (iter.hasNext()) {
+						String name = ((AttributeInfo)iter.next()).getName();
+						if (name.equals(InnerClassesAttribute.tag) || name.equals(EnclosingMethodAttribute.tag)) {
+							iter.remove();
+						}
+					}
+					ClassRenamer.renameClasses(c, new ClassNameReplacer() {
+						@Override
+						public String replace(String className) {
+							return renames.get(className);
+						}
+					});
+				}
+				out.putNextEntry(new JarEntry(Descriptor.toJvmName(c.getName()) + ".class"));
+				out.write(c.toBytecode());
+				out.closeEntry();
+			}
+		}
+		return new JarFile(file);
+	}
+}
@@ -23,19 +23,25 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarFile;
 
 import org.junit.Test;
 
+import com.google.common.collect.Maps;
+
 import cuchaz.enigma.analysis.Access;
 import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.analysis.TranslationIndex;
 import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.EntryFactory;
 import cuchaz.enigma.mapping.FieldEntry;
 import cuchaz.enigma.mapping.MethodEntry;
 
@@ -97,6 +103,52 @@ public class TestJarIndexInheritanceTree {
 		assertThat(index.getSubclass(m_subClassB), is(empty()));
 	}
 	
+	@Test
+	public void resolutionCache() {
+		
+		TranslationIndex index = m_index.getTranslationIndex();
+		MethodEntry inheritedMethod = newMethod(m_subClassB, "a", "()Ljava/lang/String;");
+		
+		// once an entry is resolved, the next lookup uses the cache
+		assertThat(index.resolveEntryClass(inheritedMethod), is(m_baseClass));
+		long misses = index.getResolutionCacheMisses();
+		long hits = index.getResolutionCacheHits();
+		assertThat(index.resolveEntryClass(inheritedMethod), is(m_baseClass));
+		assertThat(index.getResolutionCacheMisses(), is(misses));
+		assertThat(index.getResolutionCacheHits(), is(hits + 1));
+		
+		// failed lookups get cached too
+		MethodEntry libraryMethod = newMethod(m_subClassB, "hashCode", "()I");
+		assertThat(index.resolveEntryClass(libraryMethod), is(nullValue()));
+		assertThat(index.resolveEntryClass(libraryMethod), is(nullValue()));
+		assertThat(index.getResolutionCacheMisses(), is(misses + 1));
+		assertThat(index.getResolutionCacheHits(), is(hits + 2));
+		
+		// renames invalidate the cache
+		Map<String,String> renames = Maps.newHashMap();
+		renames.put(m_baseClass.getName(), "none/z");
+		index.renameClasses(renames);
+		assertThat(index.resolveEntryClass(inheritedMethod), is(newClass("none/z")));
+		assertThat(index.getResolutionCacheMisses(), is(misses + 2));
+	}
+	
+	@Test
+	public void sharedEntries() {
+		
+		// everything the index stores should be the canonical instance
+		for (ClassEntry classEntry : m_index.getObfClassEntries()) {
+			assertThat(EntryFactory.intern(classEntry), is(sameInstance(classEntry)));
+		}
+		for (BehaviorEntry behaviorEntry : m_index.getObfBehaviorEntries()) {
+			assertThat(EntryFactory.intern(behaviorEntry), is(sameInstance(behaviorEntry)));
+			assertThat(behaviorEntry.getClassEntry(), is(sameInstance(EntryFactory.getClassEntry(behaviorEntry.getClassName()))));
+			for (EntryReference<BehaviorEntry,BehaviorEntry> reference : m_index.getBehaviorReferences(behaviorEntry)) {
+				assertThat(EntryFactory.intern(reference.entry), is(sameInstance(reference.entry)));
+				assertThat(EntryFactory.intern(reference.context), is(sameInstance(reference.context)));
+			}
+		}
+	}
+	
 	@Test
 	public void access() {
 		assertThat(m_index.getAccess(m_nameField), is(Access.Private));
@@ -66,6 +66,9 @@ public class TestJarIndexLoneClass {
 		assertThat(m_index.getAccess(newMethod("none/a", "a", "()Ljava/lang/String;")), is(Access.Public));
 		assertThat(m_index.getAccess(newField("none/a", "b", "Ljava/lang/String;")), is(nullValue()));
 		assertThat(m_index.getAccess(newField("none/a", "a", "LFoo;")), is(nullValue()));
+		assertThat(m_index.isStatic(newMethod("cuchaz/enigma/inputs/Keep", "a", "([Ljava/lang/String;)V")), is(true));
+		assertThat(m_index.isStatic(newMethod("none/a", "a", "()Ljava/lang/String;")), is(false));
+		assertThat(m_index.isSynthetic(newField("none/a", "a", "Ljava/lang/String;")), is(false));
 	}
 	
 	@Test
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.analysis.JarIndex;
+
+public class TestJarIndexMemoryBudget {
+	
+	// small enough to read one class at a time and spill every reference edge
+	private static final long TinyBudget = 1;
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	@Test
+	public void translation()
+	throws Exception {
+		checkSameAsUnbounded("build/test-obf/translation.jar", 1);
+	}
+	
+	@Test
+	public void innerClasses()
+	throws Exception {
+		checkSameAsUnbounded("build/test-obf/innerClasses.jar", 1);
+	}
+	
+	@Test
+	public void innerClassesParallel()
+	throws Exception {
+		checkSameAsUnbounded("build/test-obf/innerClasses.jar", 4);
+	}
+	
+	@Test
+	public void update()
+	throws Exception {
+		JarIndex index = newBoundedIndex();
+		index.indexJar(new JarFile("build/test-obf/inheritanceTree.jar"), true);
+		
+		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
+		index.updateJar(jar);
+		JarIndexChecker.assertSameIndex(newUnboundedIndex(jar), index);
+	}
+	
+	@Test
+	public void readWrite()
+	throws Exception {
+		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
+		JarIndex index = newBoundedIndex();
+		index.indexJar(jar, true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		index.write(out);
+		
+		// indices read back with a budget go right back to the spill files
+		JarIndex readIndex = newBoundedIndex();
+		readIndex.read(new ByteArrayInputStream(out.toByteArray()));
+		JarIndexChecker.assertSameIndex(newUnboundedIndex(jar), readIndex);
+	}
+	
+	@Test
+	public void parseBudget() {
+		checkBudget("", 0);
+		checkBudget("4096", 4096);
+		checkBudget("16k", 16*1024);
+		checkBudget("512M", 512L*1024*1024);
+		checkBudget("2g", 2L*1024*1024*1024);
+		checkBudget("lots", 0);
+	}
+	
+	private void checkSameAsUnbounded(String path, int numThreads)
+	throws Exception {
+		JarFile jar = new JarFile(path);
+		JarIndex boundedIndex = newBoundedIndex();
+		boundedIndex.indexJar(jar, true, numThreads);
+		
+		JarIndexChecker.assertSameIndex(newUnboundedIndex(jar), boundedIndex);
+	}
+	
+	private JarIndex newBoundedIndex()
+	throws Exception {
+		JarIndex index = new JarIndex();
+		index.setMemoryBudget(TinyBudget, m_tempFolder.newFolder());
+		return index;
+	}
+	
+	private JarIndex newUnboundedIndex(JarFile jar) {
+		JarIndex index = new JarIndex();
+		index.indexJar(jar, true);
+		return index;
+	}
+	
+	private void checkBudget(String value, long expected) {
+		String oldValue = System.getProperty("enigma.index.memory");
+		System.setProperty("enigma.index.memory", value);
+		try {
+			assertThat(JarIndex.getDefaultMemoryBudget(), is(expected));
+		} finally {
+			if (oldValue != null) {
+				System.setProperty("enigma.index.memory", oldValue);
+			} else {
+				System.clearProperty("enigma.index.memory");
+			}
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Iterator;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import javassist.CtClass;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.EnclosingMethodAttribute;
+import javassist.bytecode.InnerClassesAttribute;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.analysis.JarClassIterator;
+import cuchaz.enigma.analysis.JarIndex;
+
+public class TestJarIndexParallel {
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	@Test
+	public void translation()
+	throws Exception {
+		checkSameAsSerial("build/test-obf/translation.jar");
+	}
+	
+	@Test
+	public void innerClasses()
+	throws Exception {
+		checkSameAsSerial("build/test-obf/innerClasses.jar");
+	}
+	
+	@Test
+	public void inheritanceTree()
+	throws Exception {
+		checkSameAsSerial("build/test-obf/inheritanceTree.jar");
+	}
+	
+	@Test
+	public void innerClassesWithoutAttributes()
+	throws Exception {
+		// make the index find the outer classes from the references instead
+		File file = m_tempFolder.newFile();
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+			for (CtClass c : JarClassIterator.classes(new JarFile("build/test-obf/innerClasses.jar"))) {
+				Iterator<?> iter = c.getClassFile().getAttributes().iterator();
+				while (iter.hasNext()) {
+					String name = ((AttributeInfo)iter.next()).getName();
+					if (name.equals(InnerClassesAttribute.tag) || name.equals(EnclosingMethodAttribute.tag)) {
+						iter.remove();
+					}
+				}
+				out.putNextEntry(new JarEntry(Descriptor.toJvmName(c.getName()) + ".class"));
+				out.write(c.toBytecode());
+				out.closeEntry();
+			}
+		}
+		checkSameAsSerial(file.getPath());
+	}
+	
+	private void checkSameAsSerial(String path)
+	throws Exception {
+		JarFile jar = new JarFile(path);
+		JarIndex serialIndex = new JarIndex();
+		serialIndex.indexJar(jar, true);
+		JarIndex parallelIndex = new JarIndex();
+		parallelIndex.indexJar(jar, true, 4);
+		
+		JarIndexChecker.assertSameIndex(serialIndex, parallelIndex);
+	}
+}
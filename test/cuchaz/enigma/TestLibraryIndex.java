@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.LibraryIndex;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.MethodEntry;
+
+public class TestLibraryIndex {
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	@Test
+	public void libraryJar()
+	throws Exception {
+		File cacheDir = m_tempFolder.newFolder();
+		LibraryIndex library = new LibraryIndex(Arrays.asList(new File("build/test-obf/inheritanceTree.jar")), false, cacheDir);
+		
+		// libraries keep their own class names, the default package isn't moved anywhere
+		assertThat(library.containsClass(newClass("b")), is(true));
+		assertThat(library.containsClass(newClass("java/lang/Object")), is(false));
+		assertThat(library.getSuperclass(newClass("b")), is(newClass("a")));
+		assertThat(library.entryExists(newMethod("a", "a", "()Ljava/lang/String;")), is(true));
+		assertThat(library.entryExists(newMethod("a", "a", "()I")), is(false));
+		
+		// private members aren't visible to anything else, so the library doesn't keep them
+		assertThat(library.entryExists(newField("a", "a", "Ljava/lang/String;")), is(false));
+	}
+	
+	@Test
+	public void cached()
+	throws Exception {
+		File cacheDir = m_tempFolder.newFolder();
+		LibraryIndex library = new LibraryIndex(Arrays.asList(new File("build/test-obf/inheritanceTree.jar")), false, cacheDir);
+		int numClasses = library.getNumClasses();
+		assertThat(cacheDir.list().length, is(1));
+		
+		LibraryIndex cachedLibrary = new LibraryIndex(Arrays.asList(new File("build/test-obf/inheritanceTree.jar")), false, cacheDir);
+		assertThat(cachedLibrary.getKey(), is(library.getKey()));
+		assertThat(cachedLibrary.getNumClasses(), is(numClasses));
+		assertThat(cachedLibrary.getSuperclass(newClass("d")), is(newClass("b")));
+	}
+	
+	@Test
+	public void resolveThroughJdk()
+	throws Exception {
+		MethodEntry toString = newMethod("none/a", "toString", "()Ljava/lang/String;");
+		ClassEntry objectClass = newClass("java/lang/Object");
+		
+		JarIndex index = new JarIndex();
+		index.indexJar(new JarFile("build/test-obf/inheritanceTree.jar"), true);
+		assertThat(index.getTranslationIndex().resolveEntryClass(toString), is(nullValue()));
+		
+		LibraryIndex library = new LibraryIndex(Collections.<File>emptyList(), true, m_tempFolder.newFolder());
+		assertThat(library.getSuperclass(newClass("java/util/ArrayList")), is(newClass("java/util/AbstractList")));
+		index = new JarIndex();
+		index.setLibraryIndex(library);
+		index.indexJar(new JarFile("build/test-obf/inheritanceTree.jar"), true);
+		assertThat(index.getTranslationIndex().resolveEntryClass(toString), is(objectClass));
+	}
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.MappingsText.*;
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.mapping.ArgumentEntry;
+import cuchaz.enigma.mapping.Entry;
+import cuchaz.enigma.mapping.MappingParseException;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.MappingsWriter;
+import cuchaz.enigma.mapping.TranslationDirection;
+
+public class TestMappingsJournal {
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	@Test
+	public void replay()
+	throws Exception {
+		File file = makeMappingsFile();
+		Deobfuscator deobfuscator = open(file);
+		MappingsJournal journal = MappingsJournal.start(file);
+		edit(deobfuscator, journal);
+		journal.close();
+		
+		Deobfuscator recovered = open(file);
+		assertThat(MappingsJournal.replay(file, recovered), is(6));
+		assertThat(toText(recovered.getMappings()), is(toText(deobfuscator.getMappings())));
+		assertThat(recovered.getTranslator(TranslationDirection.Deobfuscating).translateEntry(newClass("none/h")), is((Entry)newClass("deobf/H_Lonely")));
+	}
+	
+	@Test
+	public void noEdits()
+	throws Exception {
+		File file = makeMappingsFile();
+		assertThat(MappingsJournal.replay(file, open(file)), is(-1));
+		
+		// no edits, no journal file
+		MappingsJournal.start(file).close();
+		assertThat(MappingsJournal.getJournalFile(file).exists(), is(false));
+		assertThat(MappingsJournal.replay(file, open(file)), is(-1));
+		
+		MappingsJournal journal = MappingsJournal.start(file);
+		journal.rename(newField("none/a", "a", "I"), "count");
+		journal.close();
+		assertThat(MappingsJournal.getJournalFile(file).exists(), is(true));
+		
+		// starting over throws the old edits away right away
+		MappingsJournal.start(file).delete();
+		assertThat(MappingsJournal.getJournalFile(file).exists(), is(false));
+	}
+	
+	@Test
+	public void folderStamp()
+	throws Exception {
+		File dir = m_tempFolder.newFolder();
+		new File(dir, "none").mkdir();
+		File fileA = new File(dir, "none/a.mapping");
+		File fileB = new File(dir, "none/b.mapping");
+		writeText(fileA, "CLASS none/a\n");
+		writeText(fileB, "CLASS none/b\n");
+		fileA.setLastModified(1000000);
+		fileB.setLastModified(2000000);
+		String stamp = MappingsJournal.getSnapshotStamp(dir);
+		assertThat(MappingsJournal.getSnapshotStamp(dir), is(stamp));
+		
+		// an older file changed, but the newest time and the number of files didn't
+		writeText(fileA, "CLASS none/a deobf/A\n");
+		fileA.setLastModified(1000000);
+		assertThat(MappingsJournal.getSnapshotStamp(dir), is(not(stamp)));
+	}
+	
+	@Test
+	public void cutOffEdit()
+	throws Exception {
+		File file = makeMappingsFile();
+		MappingsJournal journal = MappingsJournal.start(file);
+		journal.rename(newField("none/a", "a", "I"), "count");
+		journal.close();
+		
+		// pretend the app crashed halfway through writing an edit
+		try (FileOutputStream out = new FileOutputStream(MappingsJournal.getJournalFile(file), true)) {
+			out.write("RENAME CLASS none/h deo".getBytes("UTF-8"));
+		}
+		assertThat(MappingsJournal.replay(file, open(file)), is(1));
+		
+		// new edits shouldn't get glued onto the cut off one
+		journal = MappingsJournal.resume(file);
+		journal.rename(newClass("none/h"), "deobf/H_Lonely");
+		journal.close();
+		Deobfuscator recovered = open(file);
+		assertThat(MappingsJournal.replay(file, recovered), is(2));
+		assertThat(recovered.getTranslator(TranslationDirection.Deobfuscating).translateEntry(newClass("none/h")), is((Entry)newClass("deobf/H_Lonely")));
+	}
+	
+	@Test
+	public void staleJournal()
+	throws Exception {
+		File file = makeMappingsFile();
+		MappingsJournal journal = MappingsJournal.start(file);
+		journal.rename(newField("none/a", "a", "I"), "count");
+		journal.close();
+		
+		// once the mappings are saved again, the edits are already in them
+		String text = toText(open(file).getMappings());
+		try (FileWriter out = new FileWriter(file)) {
+			out.write(text.replace("CLASS none/h\n", "CLASS none/h deobf/H_Lonely\n"));
+		}
+		assertThat(MappingsJournal.replay(file, open(file)), is(-1));
+	}
+	
+	@Test
+	public void badEdit()
+	throws Exception {
+		File file = makeMappingsFile();
+		MappingsJournal journal = MappingsJournal.start(file);
+		journal.rename(newClass("none/h"), "deobf/A_Basic");
+		journal.close();
+		try {
+			MappingsJournal.replay(file, open(file));
+			throw new AssertionError("Expected a parse error");
+		} catch (MappingParseException ex) {
+			assertThat(ex.getMessage(), startsWith(MappingsJournal.getJournalFile(file).getName() + ", line 2: "));
+		}
+	}
+	
+	private void edit(Deobfuscator deobfuscator, MappingsJournal journal)
+	throws Exception {
+		Entry[] entries = {
+			newClass("none/h"),
+			newField("none/a", "a", "I"),
+			newMethod("none/a", "a", "(I)V"),
+			new ArgumentEntry(newMethod("none/a", "a", "(I)V"), 1, "a")
+		};
+		String[] names = { "deobf/H_Lonely", "count", "setCount", "val" };
+		for (int i=0; i<entries.length; i++) {
+			deobfuscator.rename(entries[i], names[i]);
+			journal.rename(entries[i], names[i]);
+		}
+		deobfuscator.removeMapping(newField("none/a", "a", "F"));
+		journal.removeMapping(newField("none/a", "a", "F"));
+		deobfuscator.markAsDeobfuscated(newMethod("none/c", "c", "()I"));
+		journal.markAsDeobfuscated(newMethod("none/c", "c", "()I"));
+	}
+	
+	private File makeMappingsFile()
+	throws Exception {
+		File file = m_tempFolder.newFile();
+		try (InputStream in = TestMappingsJournal.class.getResourceAsStream("/cuchaz/enigma/resources/translation.mappings")) {
+			Mappings mappings = new MappingsReader().read(new InputStreamReader(in));
+			try (FileWriter out = new FileWriter(file)) {
+				new MappingsWriter().write(out, mappings);
+			}
+		}
+		return file;
+	}
+	
+	private void writeText(File file, String text)
+	throws Exception {
+		try (FileWriter out = new FileWriter(file)) {
+			out.write(text);
+		}
+	}
+	
+	private Deobfuscator open(File file)
+	throws Exception {
+		Deobfuscator deobfuscator = new Deobfuscator(new JarFile("build/test-obf/translation.jar"));
+		try (FileReader in = new FileReader(file)) {
+			deobfuscator.setMappings(new MappingsReader().read(in), false);
+		}
+		return deobfuscator;
+	}
+}
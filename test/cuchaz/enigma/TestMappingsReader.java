@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.MappingsText.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+import cuchaz.enigma.mapping.ClassMapping;
+import cuchaz.enigma.mapping.IllegalNameException;
+import cuchaz.enigma.mapping.MappingParseException;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MethodMapping;
+import cuchaz.enigma.mapping.Signature;
+import cuchaz.enigma.mapping.Type;
+
+public class TestMappingsReader {
+	
+	private static final String Text =
+		"CLASS none/a com/example/Foo\n" +
+		"\tFIELD a m_bar I\n" +
+		"\tMETHOD a getBar ()I\n" +
+		"\tMETHOD b (ILnone/a;)V\n" +
+		"\t\tARG 1 count\n" +
+		"\tCLASS none/a$b Inner\n" +
+		"\t\tFIELD a m_outer Lnone/a;\n" +
+		"CLASS none/c\n";
+	
+	@Test
+	public void everything()
+	throws Exception {
+		check(read(Text));
+	}
+	
+	@Test
+	public void lineEndings()
+	throws Exception {
+		check(read(Text.replace("\n", "\r\n")));
+		check(read(Text.replace("\n", "\r")));
+		check(read(Text.substring(0, Text.length() - 1)));
+	}
+	
+	@Test
+	public void commentsAndBlankLines()
+	throws Exception {
+		check(read(
+			"# a comment\n" +
+			"CLASS none/a com/example/Foo # another comment\n" +
+			"\n" +
+			"\t  \t\n" +
+			"\tFIELD a m_bar I\n" +
+			"#\tFIELD b m_notHere I\n" +
+			"\tMETHOD a getBar ()I\n" +
+			"\tMETHOD b (ILnone/a;)V\n" +
+			"\t\tARG 1 count#\n" +
+			"\tCLASS none/a$b Inner\n" +
+			"\t\tFIELD a m_outer Lnone/a;\n" +
+			"CLASS none/c\n"
+		));
+	}
+	
+	@Test
+	public void keywordsIgnoreCase()
+	throws Exception {
+		Mappings mappings = read("class none/a Foo\n\tField a m_bar I\n");
+		assertThat(mappings.getClassByObf("none/a").getDeobfFieldName("a", new Type("I")), is("m_bar"));
+	}
+	
+	@Test
+	public void longLine()
+	throws Exception {
+		// longer than the read buffer
+		StringBuilder buf = new StringBuilder();
+		buf.append("CLASS none/a Foo #");
+		for (int i=0; i<200000; i++) {
+			buf.append('x');
+		}
+		buf.append("\n\tFIELD a m_bar I\n");
+		Mappings mappings = read(buf.toString());
+		assertThat(mappings.getClassByObf("none/a").getDeobfFieldName("a", new Type("I")), is("m_bar"));
+	}
+	
+	@Test
+	public void malformedLines()
+	throws Exception {
+		assertParseError("CLASS none/a Foo\n\n\tFIELD a m_bar\n", "Line 3: Malformed line:\n\tFIELD a m_bar");
+		assertParseError("CLASS none/a Foo\r\n\tMETHOD a foo (I\r\n", "Line 2: Malformed line:\n\tMETHOD a foo (I");
+		assertParseError("CLASS none/a Foo\n\tMETHOD a foo ()V\n\t\tARG x bar # comment\n", "Line 3: Malformed line:\n\t\tARG x bar ");
+		assertParseError("CLASS\n", "Line 1: Malformed line:\nCLASS");
+		assertParseError("\n\n\tFIELD a m_bar I\n", "Line 3: Unexpected FIELD entry here!");
+	}
+	
+	@Test(expected = IllegalNameException.class)
+	public void illegalName()
+	throws Exception {
+		read("CLASS none/a 1Foo\n");
+	}
+	
+	@Test
+	public void sharedSignatures()
+	throws Exception {
+		Mappings mappings = read("CLASS none/a\n\tMETHOD a foo (I)V\n\tMETHOD b bar (I)V\n");
+		ClassMapping classMapping = mappings.getClassByObf("none/a");
+		Signature signature = new Signature("(I)V");
+		assertThat(
+			classMapping.getMethodByObf("a", signature).getObfSignature(),
+			is(sameInstance(classMapping.getMethodByObf("b", signature).getObfSignature()))
+		);
+	}
+	
+	private void check(Mappings mappings) {
+		ClassMapping classMapping = mappings.getClassByObf("none/a");
+		assertThat(classMapping.getDeobfName(), is("com/example/Foo"));
+		assertThat(classMapping.getDeobfFieldName("a", new Type("I")), is("m_bar"));
+		assertThat(classMapping.getMethodByObf("a", new Signature("()I")).getDeobfName(), is("getBar"));
+		MethodMapping methodMapping = classMapping.getMethodByObf("b", new Signature("(ILnone/a;)V"));
+		assertThat(methodMapping.getDeobfName(), is(nullValue()));
+		assertThat(methodMapping.getDeobfArgumentName(1), is("count"));
+		ClassMapping innerClassMapping = classMapping.getInnerClassByObfSimple("b");
+		assertThat(innerClassMapping.getDeobfName(), is("Inner"));
+		assertThat(innerClassMapping.getDeobfFieldName("a", new Type("Lnone/a;")), is("m_outer"));
+		assertThat(mappings.getClassByObf("none/c").getDeobfName(), is(nullValue()));
+	}
+	
+	private void assertParseError(String text, String message)
+	throws Exception {
+		try {
+			read(text);
+		} catch (MappingParseException ex) {
+			assertThat(ex.getMessage(), is(message));
+			return;
+		}
+		throw new AssertionError("Expected a parse error");
+	}
+}
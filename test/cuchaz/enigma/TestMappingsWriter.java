@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.MappingsText.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+import cuchaz.enigma.mapping.Mappings;
+
+public class TestMappingsWriter {
+	
+	@Test
+	public void sorted()
+	throws Exception {
+		String text =
+			"CLASS none/b\n" +
+			"CLASS none/aa\n" +
+			"CLASS none/a com/example/Foo\n" +
+			"\tMETHOD b (I)V\n" +
+			"\t\tARG 2 b\n" +
+			"\t\tARG 1 a\n" +
+			"\tMETHOD a getBar ()I\n" +
+			"\tFIELD aa m_baz I\n" +
+			"\tFIELD a m_bar Lnone/a;\n" +
+			"\tFIELD a m_foo I\n" +
+			"\tCLASS none/a$b Inner\n" +
+			"\t\tFIELD a m_outer Lnone/a;\n";
+		
+		// classes by length then name, members by name then type, args by index
+		assertThat(toText(read(text), 1), is(
+			"CLASS none/a com/example/Foo\n" +
+			"\tCLASS none/a$b Inner\n" +
+			"\t\tFIELD a m_outer Lnone/a;\n" +
+			"\tFIELD a m_foo I\n" +
+			"\tFIELD a m_bar Lnone/a;\n" +
+			"\tFIELD aa m_baz I\n" +
+			"\tMETHOD a getBar ()I\n" +
+			"\tMETHOD b (I)V\n" +
+			"\t\tARG 1 a\n" +
+			"\t\tARG 2 b\n" +
+			"CLASS none/b\n" +
+			"CLASS none/aa\n"
+		));
+	}
+	
+	@Test
+	public void parallelMatchesSerial()
+	throws Exception {
+		StringBuilder buf = new StringBuilder();
+		for (int i=0; i<500; i++) {
+			buf.append("CLASS none/c").append(i).append(i % 3 == 0 ? "" : " com/example/C" + i).append("\n");
+			for (int j=0; j<i % 7; j++) {
+				buf.append("\tFIELD f").append(j).append(" m_f").append(j).append(" I\n");
+				buf.append("\tMETHOD m").append(j).append(" (Lnone/c").append(i).append(";)V\n");
+				buf.append("\t\tARG 1 a").append(j).append("\n");
+			}
+		}
+		Mappings mappings = read(buf.toString());
+		String serial = toText(mappings, 1);
+		assertThat(toText(mappings, 4), is(serial));
+		assertThat(toText(read(serial), 3), is(serial));
+	}
+	
+	@Test
+	public void compareJoined() {
+		String[] strings = { "", "a", "ab", "b", "I", "Ia", "(I)V", "a(I)V" };
+		for (String a1 : strings) {
+			for (String a2 : strings) {
+				for (String b1 : strings) {
+					for (String b2 : strings) {
+						assertThat(Integer.signum(Util.compareJoined(a1, a2, b1, b2)), is(Integer.signum((a1 + a2).compareTo(b1 + b2))));
+					}
+				}
+			}
+		}
+	}
+}
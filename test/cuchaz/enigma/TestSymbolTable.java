@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import cuchaz.enigma.analysis.SymbolTable;
+import cuchaz.enigma.mapping.Entry;
+
+public class TestSymbolTable {
+	
+	@Test
+	public void renameOnlyChangesMentions() {
+		SymbolTable symbols = new SymbolTable();
+		int classId = symbols.add(newClass("none/b"));
+		int fieldId = symbols.add(newField("none/a", "a", "Lnone/b;"));
+		int methodId = symbols.add(newMethod("none/a", "a", "([Lnone/b;I)V"));
+		int otherId = symbols.add(newMethod("none/a", "b", "(Lnone/c;)Lnone/a;"));
+		
+		Map<Entry,Entry> renamedEntries = symbols.renameClasses(ImmutableMap.of("none/b", "none/a$b"));
+		assertThat(renamedEntries.size(), is(3));
+		assertThat(renamedEntries.get(newField("none/a", "a", "Lnone/b;")), is((Entry)newField("none/a", "a", "Lnone/a$b;")));
+		
+		// ids stay the same, and the old entries are gone
+		assertThat(symbols.getEntry(classId), is((Entry)newClass("none/a$b")));
+		assertThat(symbols.getId(newMethod("none/a", "a", "([Lnone/a$b;I)V")), is(methodId));
+		assertThat(symbols.getId(newField("none/a", "a", "Lnone/a$b;")), is(fieldId));
+		assertThat(symbols.getId(newClass("none/b")), is(SymbolTable.NoId));
+		assertThat(symbols.getEntry(otherId), is((Entry)newMethod("none/a", "b", "(Lnone/c;)Lnone/a;")));
+	}
+	
+	@Test
+	public void renameAgain() {
+		SymbolTable symbols = new SymbolTable();
+		int fieldId = symbols.add(newField("none/a", "a", "Lnone/b;"));
+		symbols.renameClasses(ImmutableMap.of("none/b", "none/a$b"));
+		
+		// the renamed entries should mention the new name now
+		assertThat(symbols.renameClasses(ImmutableMap.of("none/b", "none/c")).isEmpty(), is(true));
+		symbols.renameClasses(ImmutableMap.of("none/a$b", "none/b"));
+		assertThat(symbols.getEntry(fieldId), is((Entry)newField("none/a", "a", "Lnone/b;")));
+	}
+	
+	@Test
+	public void swap() {
+		SymbolTable symbols = new SymbolTable();
+		int aId = symbols.add(newClass("none/a"));
+		int bId = symbols.add(newClass("none/b"));
+		
+		symbols.renameClasses(ImmutableMap.of("none/a", "none/b", "none/b", "none/a"));
+		assertThat(symbols.getEntry(aId), is((Entry)newClass("none/b")));
+		assertThat(symbols.getEntry(bId), is((Entry)newClass("none/a")));
+		assertThat(symbols.getId(newClass("none/a")), is(bId));
+		assertThat(symbols.getId(newClass("none/b")), is(aId));
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.inputs.constants;
+
+public class Constants {
+	
+	public String getGreeting() {
+		return "Hello, constants!";
+	}
+	
+	public String getOtherGreeting() {
+		return "Hello again";
+	}
+	
+	public int getMagic() {
+		return 0xcafebabe;
+	}
+	
+	public long getBigNumber() {
+		return 1234567890123L;
+	}
+	
+	public int getSmallNumber() {
+		// small enough for sipush
+		return 1000;
+	}
+	
+	public Class<?> getType() {
+		return Constants.class;
+	}
+	
+	public void log(int i) {
+		System.out.println("Hello, constants! " + i);
+	}
+}